@@ -57,7 +57,9 @@ import com.threerings.parlor.util.ParlorContext;
  * table director can notify them when table related things happen. </p>
  *
  * <p> The table services expect that the place object being used as a lobby in which the table
- * matchmaking takes place implements the {@link TableLobbyObject} interface. </p>
+ * matchmaking takes place implements the {@link TableLobbyObject} interface. The director learns
+ * of tables via that object's tables set, so it will see no tables in lobbies whose server has
+ * disabled publishing them (see <code>TableManager.setLobbyPublishing</code>). </p>
  */
 public class TableDirector extends BasicDirector
     implements SetListener, InvocationService_ResultListener
@@ -0,0 +1,86 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.client {
+
+import com.threerings.io.TypedArray;
+
+import com.threerings.presents.client.InvocationDecoder;
+
+import com.threerings.parlor.client.TableListReceiver;
+import com.threerings.parlor.data.Table;
+
+/**
+ * Dispatches calls to a {@link TableListReceiver} instance.
+ */
+public class TableListDecoder extends InvocationDecoder
+{
+    /** The generated hash code used to identify this receiver class. */
+    public static const RECEIVER_CODE :String = "bcae948330d2e80f4b81756169952a70";
+
+    /** The method id used to dispatch {@link TableListReceiver#tableUpdated}
+     * notifications. */
+    public static const TABLE_UPDATED :int = 1;
+
+    /** The method id used to dispatch {@link TableListReceiver#tableWindowUpdated}
+     * notifications. */
+    public static const TABLE_WINDOW_UPDATED :int = 2;
+
+    /**
+     * Creates a decoder that may be registered to dispatch invocation
+     * service notifications to the specified receiver.
+     */
+    public function TableListDecoder (receiver :TableListReceiver)
+    {
+        this.receiver = receiver;
+    }
+
+    // documentation inherited
+    override public function getReceiverCode () :String
+    {
+        return RECEIVER_CODE;
+    }
+
+    // documentation inherited
+    override public function dispatchNotification (
+            methodId :int, args :Array) :void
+    {
+        var trec :TableListReceiver = (receiver as TableListReceiver);
+        switch (methodId) {
+        case TABLE_UPDATED:
+            trec.tableUpdated(
+                (args[0] as int), (args[1] as Table)
+            );
+            return;
+
+        case TABLE_WINDOW_UPDATED:
+            trec.tableWindowUpdated(
+                (args[0] as int), (args[1] as TypedArray), (args[2] as int)
+            );
+            return;
+
+        default:
+            super.dispatchNotification(methodId, args);
+            return;
+        }
+    }
+}
+}
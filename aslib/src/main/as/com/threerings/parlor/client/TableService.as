@@ -28,6 +28,7 @@ import com.threerings.presents.client.InvocationService_InvocationListener;
 import com.threerings.presents.client.InvocationService_ResultListener;
 
 import com.threerings.parlor.data.TableConfig;
+import com.threerings.parlor.data.TableQuery;
 import com.threerings.parlor.game.data.GameConfig;
 
 /**
@@ -49,5 +50,11 @@ public interface TableService extends InvocationService
 
     // from Java interface TableService
     function startTableNow (arg1 :int, arg2 :InvocationService_InvocationListener) :void;
+
+    // from Java interface TableService
+    function subscribeToTables (arg1 :TableQuery, arg2 :InvocationService_ResultListener) :void;
+
+    // from Java interface TableService
+    function unsubscribeFromTables (arg1 :InvocationService_InvocationListener) :void;
 }
 }
@@ -107,5 +107,31 @@ public class TableMarshaller extends InvocationMarshaller
             Integer.valueOf(arg1), listener2
         ]);
     }
+
+    /** The method id used to dispatch <code>subscribeToTables</code> requests. */
+    public static const SUBSCRIBE_TO_TABLES :int = 6;
+
+    // from interface TableService
+    public function subscribeToTables (arg1 :TableQuery, arg2 :InvocationService_ResultListener) :void
+    {
+        var listener2 :InvocationMarshaller_ResultMarshaller = new InvocationMarshaller_ResultMarshaller();
+        listener2.listener = arg2;
+        sendRequest(SUBSCRIBE_TO_TABLES, [
+            arg1, listener2
+        ]);
+    }
+
+    /** The method id used to dispatch <code>unsubscribeFromTables</code> requests. */
+    public static const UNSUBSCRIBE_FROM_TABLES :int = 7;
+
+    // from interface TableService
+    public function unsubscribeFromTables (arg1 :InvocationService_InvocationListener) :void
+    {
+        var listener1 :InvocationMarshaller_ListenerMarshaller = new InvocationMarshaller_ListenerMarshaller();
+        listener1.listener = arg1;
+        sendRequest(UNSUBSCRIBE_FROM_TABLES, [
+            listener1
+        ]);
+    }
 }
 }
@@ -0,0 +1,99 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.data {
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.io.SimpleStreamableObject;
+
+/**
+ * Describes a filtered, sorted window onto the tables in a lobby.
+ */
+public class TableQuery extends SimpleStreamableObject
+{
+    /** Sorts tables in the order in which they were created. */
+    public static const SORT_BY_ID :int = 0;
+
+    /** Sorts tables with the fewest open seats first. */
+    public static const SORT_BY_OPEN_SEATS :int = 1;
+
+    /** Sorts tables by ascending rating. */
+    public static const SORT_BY_RATING :int = 2;
+
+    /** If non-null, only tables for the game with this identifier are matched. */
+    public var gameIdent :String;
+
+    /** Only tables with at least this many open seats are matched. */
+    public var minOpenSeats :int;
+
+    /** Whether tables whose game is already in play are matched. */
+    public var includeInPlay :Boolean;
+
+    /** Only tables rated at least this highly are matched. */
+    public var minRating :int = int.MIN_VALUE;
+
+    /** Only tables rated at most this highly are matched. */
+    public var maxRating :int = int.MAX_VALUE;
+
+    /** One of SORT_BY_ID, SORT_BY_OPEN_SEATS or SORT_BY_RATING. */
+    public var sortOrder :int = SORT_BY_ID;
+
+    /** The index of the first matching table in our window. */
+    public var offset :int;
+
+    /** The maximum number of tables in our window. */
+    public var count :int = 20;
+
+    public function TableQuery ()
+    {
+        // nothing needed
+    }
+
+    // from Streamable
+    override public function readObject (ins :ObjectInputStream) :void
+    {
+        super.readObject(ins);
+        gameIdent = (ins.readField(String) as String);
+        minOpenSeats = ins.readInt();
+        includeInPlay = ins.readBoolean();
+        minRating = ins.readInt();
+        maxRating = ins.readInt();
+        sortOrder = ins.readByte();
+        offset = ins.readInt();
+        count = ins.readInt();
+    }
+
+    // from Streamable
+    override public function writeObject (out :ObjectOutputStream) :void
+    {
+        super.writeObject(out);
+        out.writeField(gameIdent);
+        out.writeInt(minOpenSeats);
+        out.writeBoolean(includeInPlay);
+        out.writeInt(minRating);
+        out.writeInt(maxRating);
+        out.writeByte(sortOrder);
+        out.writeInt(offset);
+        out.writeInt(count);
+    }
+}
+}
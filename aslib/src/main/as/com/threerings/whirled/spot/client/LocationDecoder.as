@@ -0,0 +1,75 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.spot.client {
+
+import com.threerings.io.TypedArray;
+
+import com.threerings.presents.client.InvocationDecoder;
+
+import com.threerings.whirled.spot.client.LocationReceiver;
+
+/**
+ * Dispatches calls to a {@link LocationReceiver} instance.
+ */
+public class LocationDecoder extends InvocationDecoder
+{
+    /** The generated hash code used to identify this receiver class. */
+    public static const RECEIVER_CODE :String = "0a17e3617535c2deda3ccf1c09364fb6";
+
+    /** The method id used to dispatch {@link LocationReceiver#locationsUpdated}
+     * notifications. */
+    public static const LOCATIONS_UPDATED :int = 1;
+
+    /**
+     * Creates a decoder that may be registered to dispatch invocation
+     * service notifications to the specified receiver.
+     */
+    public function LocationDecoder (receiver :LocationReceiver)
+    {
+        this.receiver = receiver;
+    }
+
+    // documentation inherited
+    override public function getReceiverCode () :String
+    {
+        return RECEIVER_CODE;
+    }
+
+    // documentation inherited
+    override public function dispatchNotification (
+            methodId :int, args :Array) :void
+    {
+        var lrec :LocationReceiver = (receiver as LocationReceiver);
+        switch (methodId) {
+        case LOCATIONS_UPDATED:
+            lrec.locationsUpdated(
+                (args[0] as TypedArray)
+            );
+            return;
+
+        default:
+            super.dispatchNotification(methodId, args);
+            return;
+        }
+    }
+}
+}
@@ -0,0 +1,41 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.spot.client {
+
+import com.threerings.io.TypedArray;
+
+import com.threerings.presents.client.InvocationReceiver;
+
+/**
+ * Defines the notifications delivered by a scene that sends precise location changes only to the
+ * bodies interested in them. Such changes precede the corresponding updates to the scene object's
+ * occupant locations.
+ */
+public interface LocationReceiver extends InvocationReceiver
+{
+    /**
+     * Dispatched with the latest locations (as SceneLocation instances) of the bodies near the
+     * recipient that have moved.
+     */
+    function locationsUpdated (locs :TypedArray) :void;
+}
+}
@@ -20,7 +20,10 @@
 // Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
 
 package com.threerings.whirled.spot.client {
+import com.threerings.io.TypedArray;
+
 import com.threerings.util.Log;
+import com.threerings.util.ObserverList;
 import com.threerings.util.ResultListener;
 
 import com.threerings.presents.client.BasicDirector;
@@ -59,7 +62,7 @@ import com.threerings.whirled.util.WhirledContext;
  * Extends the standard scene director with facilities to move between locations within a scene.
  */
 public class SpotSceneDirector extends BasicDirector
-    implements Subscriber, AttributeChangeListener
+    implements Subscriber, AttributeChangeListener, LocationReceiver
 {
     private static const log :Log = Log.getLog(SpotSceneDirector);
 
@@ -84,6 +87,35 @@ public class SpotSceneDirector extends BasicDirector
 
         // wire ourselves up to hear about leave place notifications
         locdir.addLocationObserver(new LocationAdapter(null, handleSceneChange, null));
+
+        // register to hear precise location updates from interest managed scenes
+        _wctx.getClient().getInvocationDirector().registerReceiver(new LocationDecoder(this));
+    }
+
+    /**
+     * Adds a receiver to be notified of the precise location changes sent by scenes that send
+     * them only to interested bodies. Scenes that do not do so publish all location changes via
+     * their scene object's occupant locations.
+     */
+    public function addLocationReceiver (receiver :LocationReceiver) :void
+    {
+        _locationReceivers.add(receiver);
+    }
+
+    /**
+     * Removes a receiver added via {@link #addLocationReceiver}.
+     */
+    public function removeLocationReceiver (receiver :LocationReceiver) :void
+    {
+        _locationReceivers.remove(receiver);
+    }
+
+    // from interface LocationReceiver
+    public function locationsUpdated (locs :TypedArray) :void
+    {
+        _locationReceivers.apply(function (receiver :LocationReceiver) :void {
+            receiver.locationsUpdated(locs);
+        });
     }
 
     /**
@@ -457,6 +489,9 @@ public class SpotSceneDirector extends BasicDirector
 
     /** The cluster chat object for the cluster we currently occupy. */
     protected var _clobj :DObject;
+
+    /** Receivers of precise location changes. */
+    protected var _locationReceivers :ObserverList = new ObserverList();
 }
 }
 
@@ -140,10 +140,11 @@ public class ZoneDirector extends BasicDirector
             sceneVers = pendingModel.version;
         }
 
-        // issue a moveTo request
+        // issue a moveTo request; we don't cache zone summaries, so we always report having no
+        // cached version and receive the complete summary
         log.info("Issuing zoned moveTo(" + ZoneUtil.toString(_pendingZoneId) +
                  ", " + sceneId + ", " + sceneVers + ").");
-        _zservice.moveTo(_pendingZoneId, sceneId, sceneVers, this);
+        _zservice.moveTo(_pendingZoneId, sceneId, sceneVers, 0, this);
     }
 
     override protected function fetchServices (client :Client) :void
@@ -29,6 +29,6 @@ import com.threerings.presents.client.InvocationService;
 public interface ZoneService extends InvocationService
 {
     // from Java interface ZoneService
-    function moveTo (arg1 :int, arg2 :int, arg3 :int, arg4 :ZoneService_ZoneMoveListener) :void;
+    function moveTo (arg1 :int, arg2 :int, arg3 :int, arg4 :int, arg5 :ZoneService_ZoneMoveListener) :void;
 }
 }
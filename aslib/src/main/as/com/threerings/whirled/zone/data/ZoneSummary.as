@@ -41,9 +41,21 @@ public class ZoneSummary extends SimpleStreamableObject
     /** The name of the zone. */
     public var name :Name;
 
-    /** The summary information for all of the scenes in the zone. */
+    /** The summary information for all of the scenes in the zone, or in
+     * a delta, for the scenes added or modified since the base version. */
     public var scenes :TypedArray;
 
+    /** The version of this summary, or zero if the zone manager does not
+     * version its summaries. */
+    public var version :int;
+
+    /** If non-zero, this summary is a delta relative to the client's
+     * cached summary with this version. */
+    public var baseVersion :int;
+
+    /** In a delta, the ids of the scenes removed since the base version. */
+    public var removedSceneIds :TypedArray;
+
     public function ZoneSummary ()
     {
         // nothing needed
@@ -64,6 +76,9 @@ public class ZoneSummary extends SimpleStreamableObject
         zoneId = ins.readInt();
         name = Name(ins.readObject());
         scenes = TypedArray(ins.readObject());
+        version = ins.readInt();
+        baseVersion = ins.readInt();
+        removedSceneIds = TypedArray(ins.readField(TypedArray.getJavaType(int)));
     }
 
     // from interface Streamable
@@ -73,6 +88,9 @@ public class ZoneSummary extends SimpleStreamableObject
         out.writeInt(zoneId);
         out.writeObject(name);
         out.writeObject(scenes);
+        out.writeInt(version);
+        out.writeInt(baseVersion);
+        out.writeField(removedSceneIds);
     }
 }
 }
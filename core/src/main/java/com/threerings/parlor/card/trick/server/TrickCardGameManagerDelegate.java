@@ -27,7 +27,6 @@ import java.util.List;
 import com.google.common.collect.Lists;
 
 import com.samskivert.util.ArrayUtil;
-import com.samskivert.util.Interval;
 import com.samskivert.util.RandomUtil;
 import com.threerings.util.Name;
 
@@ -49,6 +48,8 @@ import com.threerings.parlor.card.data.PlayerCard;
 import com.threerings.parlor.card.server.CardGameManager;
 import com.threerings.parlor.card.trick.data.TrickCardGameMarshaller;
 import com.threerings.parlor.card.trick.data.TrickCardGameObject;
+import com.threerings.parlor.game.server.GameManager;
+import com.threerings.parlor.server.TimerWheel;
 import com.threerings.parlor.turn.server.TurnGameManagerDelegate;
 
 import static com.threerings.parlor.card.Log.log;
@@ -75,15 +76,16 @@ public class TrickCardGameManagerDelegate extends TurnGameManagerDelegate
     {
         super.init(plmgr, omgr, invmgr);
 
-        // Create these intervals HERE after the _omgr is actually initialized.
-        _turnTimeoutInterval = new Interval(_omgr) {
+        // Create these timers HERE after our manager is actually initialized.
+        TimerWheel timers = ((GameManager)plmgr).getTimerWheel();
+        _turnTimeoutInterval = new TimerWheel.Timer(timers) {
             @Override
             public void expired () {
                 _turnTimedOut = true;
                 turnTimedOut();
             }
         };
-        _endTrickInterval = new Interval(_omgr) {
+        _endTrickInterval = new TimerWheel.Timer(timers) {
             @Override
             public void expired () {
                 endTrick();
@@ -582,10 +584,10 @@ public class TrickCardGameManagerDelegate extends TurnGameManagerDelegate
     }
 
     /** The all-purpose turn timeout interval.  */
-    protected Interval _turnTimeoutInterval;
+    protected TimerWheel.Timer _turnTimeoutInterval;
 
     /** Calls {@link #endTrick} upon expiration. */
-    protected Interval _endTrickInterval;
+    protected TimerWheel.Timer _endTrickInterval;
 
     /** The card game manager. */
     protected CardGameManager _cgmgr;
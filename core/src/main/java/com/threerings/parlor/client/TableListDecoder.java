@@ -0,0 +1,79 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.client;
+
+import com.threerings.parlor.data.Table;
+import com.threerings.presents.client.InvocationDecoder;
+
+/**
+ * Dispatches calls to a {@link TableListReceiver} instance.
+ */
+public class TableListDecoder extends InvocationDecoder
+{
+    /** The generated hash code used to identify this receiver class. */
+    public static final String RECEIVER_CODE = "bcae948330d2e80f4b81756169952a70";
+
+    /** The method id used to dispatch {@link TableListReceiver#tableUpdated}
+     * notifications. */
+    public static final int TABLE_UPDATED = 1;
+
+    /** The method id used to dispatch {@link TableListReceiver#tableWindowUpdated}
+     * notifications. */
+    public static final int TABLE_WINDOW_UPDATED = 2;
+
+    /**
+     * Creates a decoder that may be registered to dispatch invocation
+     * service notifications to the specified receiver.
+     */
+    public TableListDecoder (TableListReceiver receiver)
+    {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public String getReceiverCode ()
+    {
+        return RECEIVER_CODE;
+    }
+
+    @Override
+    public void dispatchNotification (int methodId, Object[] args)
+    {
+        switch (methodId) {
+        case TABLE_UPDATED:
+            ((TableListReceiver)receiver).tableUpdated(
+                ((Integer)args[0]).intValue(), (Table)args[1]
+            );
+            return;
+
+        case TABLE_WINDOW_UPDATED:
+            ((TableListReceiver)receiver).tableWindowUpdated(
+                ((Integer)args[0]).intValue(), (Table[])args[1], ((Integer)args[2]).intValue()
+            );
+            return;
+
+        default:
+            super.dispatchNotification(methodId, args);
+            return;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.client;
+
+import com.threerings.presents.client.InvocationReceiver;
+
+import com.threerings.parlor.data.Table;
+
+/**
+ * Defines the notifications delivered to a client that has subscribed to a window of a lobby's
+ * tables via {@link TableService#subscribeToTables}.
+ */
+public interface TableListReceiver extends InvocationReceiver
+{
+    /**
+     * Dispatched when a table in the client's window has changed without altering the window's
+     * membership or order.
+     *
+     * @param subscriptionId the id of the subscription returned by the subscribe request.
+     * @param table the updated table.
+     */
+    public void tableUpdated (int subscriptionId, Table table);
+
+    /**
+     * Dispatched when the subscription is first made and whenever tables enter, leave or move
+     * within the client's window.
+     *
+     * @param subscriptionId the id of the subscription returned by the subscribe request.
+     * @param tables the tables in the window, in sorted order.
+     * @param matchCount the total number of tables matching the subscription's query, which may
+     * be used to page through them.
+     */
+    public void tableWindowUpdated (int subscriptionId, Table[] tables, int matchCount);
+}
@@ -26,6 +26,7 @@ import com.threerings.util.Name;
 import com.threerings.presents.client.InvocationService;
 
 import com.threerings.parlor.data.TableConfig;
+import com.threerings.parlor.data.TableQuery;
 import com.threerings.parlor.game.data.GameConfig;
 
 /**
@@ -71,4 +72,20 @@ public interface TableService extends InvocationService
      * Requests that another user be booted from the specified table.
      */
     public void bootPlayer (int tableId, Name target, InvocationListener listener);
+
+    /**
+     * Requests that the current user be sent only those tables that match the supplied query and
+     * fall within its window, via a {@link TableListReceiver}. Any previous subscription made by
+     * this user with this service is replaced, which is how a client pages through the tables.
+     *
+     * @param query the filter, sort order and window of tables desired.
+     * @param listener will be sent the subscription id, which identifies the notifications
+     * delivered for this subscription.
+     */
+    public void subscribeToTables (TableQuery query, ResultListener listener);
+
+    /**
+     * Requests that the current user no longer be sent table list notifications.
+     */
+    public void unsubscribeFromTables (InvocationListener listener);
 }
@@ -74,4 +74,12 @@ public interface ParlorCodes extends InvocationCodes
     /** An error code returned by the table services when a user requests to leave a table for
      * which the game is already in progress. */
     public static final String GAME_ALREADY_STARTED = "m.game_already_started";
+
+    /** An error code returned by the matchmaking services when a user requests to join a queue
+     * but they're already in one. */
+    public static final String ALREADY_QUEUED = "m.already_queued";
+
+    /** An error code delivered by the matchmaking services to a queued party that left the queue,
+     * or one of whose members logged off, before being matched. */
+    public static final String QUEUE_CANCELLED = "m.queue_cancelled";
 }
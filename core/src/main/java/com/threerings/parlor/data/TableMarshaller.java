@@ -105,4 +105,30 @@ public class TableMarshaller extends InvocationMarshaller
             Integer.valueOf(arg1), listener2
         });
     }
+
+    /** The method id used to dispatch {@link #subscribeToTables} requests. */
+    public static final int SUBSCRIBE_TO_TABLES = 6;
+
+    // from interface TableService
+    public void subscribeToTables (TableQuery arg1, InvocationService.ResultListener arg2)
+    {
+        InvocationMarshaller.ResultMarshaller listener2 = new InvocationMarshaller.ResultMarshaller();
+        listener2.listener = arg2;
+        sendRequest(SUBSCRIBE_TO_TABLES, new Object[] {
+            arg1, listener2
+        });
+    }
+
+    /** The method id used to dispatch {@link #unsubscribeFromTables} requests. */
+    public static final int UNSUBSCRIBE_FROM_TABLES = 7;
+
+    // from interface TableService
+    public void unsubscribeFromTables (InvocationService.InvocationListener arg1)
+    {
+        ListenerMarshaller listener1 = new ListenerMarshaller();
+        listener1.listener = arg1;
+        sendRequest(UNSUBSCRIBE_FROM_TABLES, new Object[] {
+            listener1
+        });
+    }
 }
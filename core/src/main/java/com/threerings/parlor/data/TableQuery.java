@@ -0,0 +1,114 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.data;
+
+import com.google.common.base.Objects;
+
+import com.threerings.io.SimpleStreamableObject;
+
+/**
+ * Describes a filtered, sorted window onto the tables in a lobby. Clients subscribe to a query
+ * via {@link com.threerings.parlor.client.TableService#subscribeToTables} and are thereafter sent
+ * only the tables that fall within their window.
+ */
+public class TableQuery extends SimpleStreamableObject
+    implements Cloneable
+{
+    /** Sorts tables in the order in which they were created. */
+    public static final byte SORT_BY_ID = 0;
+
+    /** Sorts tables with the fewest open seats first, so that nearly full tables are listed
+     * before empty ones. */
+    public static final byte SORT_BY_OPEN_SEATS = 1;
+
+    /** Sorts tables by ascending rating. */
+    public static final byte SORT_BY_RATING = 2;
+
+    /** If non-null, only tables for the game with this identifier are matched. */
+    public String gameIdent;
+
+    /** Only tables with at least this many open seats are matched. */
+    public int minOpenSeats;
+
+    /** Whether tables whose game is already in play are matched. */
+    public boolean includeInPlay;
+
+    /** Only tables rated at least this highly are matched. */
+    public int minRating = Integer.MIN_VALUE;
+
+    /** Only tables rated at most this highly are matched. */
+    public int maxRating = Integer.MAX_VALUE;
+
+    /** One of {@link #SORT_BY_ID}, {@link #SORT_BY_OPEN_SEATS} or {@link #SORT_BY_RATING}. */
+    public byte sortOrder = SORT_BY_ID;
+
+    /** The index of the first matching table in our window. */
+    public int offset;
+
+    /** The maximum number of tables in our window. */
+    public int count = DEFAULT_COUNT;
+
+    /**
+     * Returns a copy of this query with its window cleared, which identifies the set of tables
+     * matched by this query regardless of which page of them is being viewed.
+     */
+    public TableQuery getFilter ()
+    {
+        TableQuery filter = clone();
+        filter.offset = 0;
+        filter.count = 0;
+        return filter;
+    }
+
+    @Override
+    public TableQuery clone ()
+    {
+        try {
+            return (TableQuery)super.clone();
+        } catch (CloneNotSupportedException cnse) {
+            throw new AssertionError(cnse);
+        }
+    }
+
+    @Override
+    public boolean equals (Object other)
+    {
+        if (!(other instanceof TableQuery)) {
+            return false;
+        }
+        TableQuery oquery = (TableQuery)other;
+        return Objects.equal(gameIdent, oquery.gameIdent) && minOpenSeats == oquery.minOpenSeats &&
+            includeInPlay == oquery.includeInPlay && minRating == oquery.minRating &&
+            maxRating == oquery.maxRating && sortOrder == oquery.sortOrder &&
+            offset == oquery.offset && count == oquery.count;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+        return Objects.hashCode(gameIdent, minOpenSeats, includeInPlay, minRating, maxRating,
+                                sortOrder, offset, count);
+    }
+
+    /** The number of tables in a window if not otherwise specified. */
+    protected static final int DEFAULT_COUNT = 20;
+}
@@ -25,10 +25,10 @@ import java.util.Arrays;
 import java.util.List;
 
 import com.google.common.collect.Lists;
+import com.google.inject.Inject;
 
 import com.samskivert.util.ArrayIntSet;
 import com.samskivert.util.IntListUtil;
-import com.samskivert.util.Interval;
 import com.samskivert.util.RepeatCallTracker;
 import com.samskivert.util.Tuple;
 
@@ -53,6 +53,7 @@ import com.threerings.parlor.game.data.GameObject;
 import com.threerings.parlor.game.data.UserIdentifier;
 import com.threerings.parlor.server.ParlorSender;
 import com.threerings.parlor.server.PlayManager;
+import com.threerings.parlor.server.TimerWheel;
 
 import static com.threerings.parlor.Log.log;
 
@@ -74,6 +75,15 @@ public class GameManager extends PlaceManager
         return _gameconfig;
     }
 
+    /**
+     * Returns the timer wheel shared by all game managers, on which this manager and its
+     * delegates should schedule their timers rather than creating individual intervals.
+     */
+    public TimerWheel getTimerWheel ()
+    {
+        return _timers;
+    }
+
     /**
      * Returns the unique numeric identifier for our managed game. See {@link GameConfig#getGameId}.
      */
@@ -788,7 +798,7 @@ public class GameManager extends PlaceManager
         _gameconfig = (GameConfig)_config;
 
         // start up our tick interval
-        (_tickInterval = _omgr.newInterval(new Runnable() {
+        (_tickInterval = _timers.newTimer(new Runnable() {
             public void run () {
                 tick(System.currentTimeMillis());
             }
@@ -846,7 +856,7 @@ public class GameManager extends PlaceManager
 
         // start up a no-show timer if needed
         if (needsNoShowTimer()) {
-            (_noShowInterval = new Interval(_omgr) {
+            (_noShowInterval = new TimerWheel.Timer(_timers) {
                 @Override
                 public void expired () {
                     checkForNoShows();
@@ -1121,7 +1131,7 @@ public class GameManager extends PlaceManager
     protected void startAITicker ()
     {
         if (_aiTicker == null) {
-            (_aiTicker = _omgr.newInterval(new Runnable() {
+            (_aiTicker = _timers.newTimer(new Runnable() {
                 public void run () {
                     tickAIs();
                 }
@@ -1376,16 +1386,19 @@ public class GameManager extends PlaceManager
     protected RepeatCallTracker _gameEndTracker = new RepeatCallTracker();
 
     /** The interval used to check for no-shows. */
-    protected Interval _noShowInterval;
+    protected TimerWheel.Timer _noShowInterval;
 
     /** Whether we have already postponed the start of the game. */
     protected boolean _postponedStart = false;
 
     /** The interval for the game manager tick. */
-    protected Interval _tickInterval;
+    protected TimerWheel.Timer _tickInterval;
 
     /** The interval for the AI tick. */
-    protected Interval _aiTicker;
+    protected TimerWheel.Timer _aiTicker;
+
+    /** The timer wheel on which we schedule our ticks and timeouts. */
+    @Inject protected TimerWheel _timers;
 
     /** The default value returned by {@link #getNoShowTime}. */
     protected static final long DEFAULT_NOSHOW_DELAY = 30 * 1000L;
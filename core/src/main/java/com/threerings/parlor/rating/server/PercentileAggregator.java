@@ -0,0 +1,245 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.rating.server;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.jdbc.RepositoryUnit;
+import com.samskivert.util.Interval;
+import com.samskivert.util.Invoker;
+import com.samskivert.util.Lifecycle;
+import com.samskivert.util.StringUtil;
+
+import com.threerings.presents.annotation.MainInvoker;
+import com.threerings.presents.dobj.RootDObjectManager;
+
+import com.threerings.parlor.rating.server.persist.RatingRepository;
+import com.threerings.parlor.rating.util.Percentiler;
+
+import static com.threerings.parlor.Log.log;
+
+/**
+ * Aggregates values recorded to percentile distributions and periodically merges them into the
+ * distributions stored in the {@link RatingRepository}. Values are buffered in memory for each
+ * game and mode and written once per flush interval, and because the buffered counts are merged
+ * with (rather than written over) the stored counts, any number of servers may record values for
+ * the same game.
+ */
+@Singleton
+public class PercentileAggregator
+    implements Lifecycle.InitComponent, Lifecycle.ShutdownComponent
+{
+    /** Statistics on our flushing activity. */
+    public static class FlushStats
+        implements Cloneable
+    {
+        /** The number of values recorded to the aggregator. */
+        public long recorded;
+
+        /** The number of times buffered values were flushed to the repository. */
+        public int flushes;
+
+        /** The number of distributions merged into the repository. */
+        public int merges;
+
+        /** The number of distribution merges that failed and were requeued. */
+        public int failures;
+
+        @Override
+        public FlushStats clone ()
+        {
+            try {
+                return (FlushStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
+    @Inject public PercentileAggregator (Lifecycle cycle)
+    {
+        cycle.addComponent(this);
+    }
+
+    /**
+     * Configures the interval at which buffered values are flushed to the repository. This must
+     * be called before the server is initialized.
+     */
+    public void setFlushInterval (long interval)
+    {
+        _flushInterval = interval;
+    }
+
+    /**
+     * Records a value to the distribution for the specified game and mode. The value will be
+     * merged into the stored distribution on the next flush.
+     */
+    public void recordValue (int gameId, int gameMode, float value)
+    {
+        Long key = toKey(gameId, gameMode);
+        Percentiler tiler = _pending.get(key);
+        if (tiler == null) {
+            _pending.put(key, tiler = new Percentiler());
+        }
+        tiler.recordValue(value, false);
+        _stats.recorded++;
+    }
+
+    /**
+     * Returns the most recent merged distribution for the specified game and mode, or null if we
+     * have not yet flushed any values for that game and mode. This does not include values
+     * recorded since the last flush.
+     */
+    public Percentiler getPercentiler (int gameId, int gameMode)
+    {
+        return _merged.get(toKey(gameId, gameMode));
+    }
+
+    /**
+     * Returns a snapshot of our flush statistics.
+     */
+    public FlushStats getStats ()
+    {
+        return _stats.clone();
+    }
+
+    /**
+     * Merges all buffered values into the repository. This is called automatically every flush
+     * interval and when the server shuts down.
+     */
+    public void flush ()
+    {
+        if (_pending.isEmpty()) {
+            return;
+        }
+
+        final Map<Long, Percentiler> pending = _pending;
+        _pending = Maps.newHashMap();
+        _stats.flushes++;
+
+        _invoker.postUnit(new RepositoryUnit("flushPercentiles(" + pending.size() + ")") {
+            @Override public void invokePersist () throws Exception {
+                for (Map.Entry<Long, Percentiler> entry : pending.entrySet()) {
+                    long key = entry.getKey();
+                    try {
+                        _results.put(entry.getKey(), _repo.mergePercentile(
+                                         (int)(key >> 32), (int)key, entry.getValue()));
+                    } catch (Exception e) {
+                        log.warning("Failed to merge percentile", "gameId", (int)(key >> 32),
+                                    "gameMode", (int)key, e);
+                    }
+                }
+            }
+            @Override public void handleSuccess () {
+                _merged.putAll(_results);
+                _stats.merges += _results.size();
+                for (Map.Entry<Long, Percentiler> entry : pending.entrySet()) {
+                    if (!_results.containsKey(entry.getKey())) {
+                        requeue(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            @Override public void handleFailure (Exception error) {
+                log.warning("Failed to flush percentiles", "count", pending.size(), error);
+                for (Map.Entry<Long, Percentiler> entry : pending.entrySet()) {
+                    requeue(entry.getKey(), entry.getValue());
+                }
+            }
+            protected Map<Long, Percentiler> _results = Maps.newHashMap();
+        });
+    }
+
+    // from interface Lifecycle.InitComponent
+    public void init ()
+    {
+        _flusher = _omgr.newInterval(new Runnable() {
+            public void run () {
+                flush();
+            }
+        });
+        _flusher.schedule(_flushInterval, true);
+    }
+
+    // from interface Lifecycle.ShutdownComponent
+    public void shutdown ()
+    {
+        if (_flusher != null) {
+            _flusher.cancel();
+        }
+        flush();
+    }
+
+    /**
+     * Returns any values that failed to be written to the pending buffer so that they will be
+     * retried on the next flush.
+     */
+    protected void requeue (Long key, Percentiler delta)
+    {
+        _stats.failures++;
+        Percentiler tiler = _pending.get(key);
+        if (tiler == null) {
+            _pending.put(key, delta);
+        } else {
+            tiler.merge(delta);
+        }
+    }
+
+    /**
+     * Combines a game id and mode into a single key.
+     */
+    protected static Long toKey (int gameId, int gameMode)
+    {
+        return (((long)gameId) << 32) | (gameMode & 0xFFFFFFFFL);
+    }
+
+    /** Values recorded since our last flush, keyed on game id and mode. */
+    protected Map<Long, Percentiler> _pending = Maps.newHashMap();
+
+    /** The most recently merged distributions, keyed on game id and mode. */
+    protected Map<Long, Percentiler> _merged = Maps.newHashMap();
+
+    /** Statistics on our flushing activity. */
+    protected FlushStats _stats = new FlushStats();
+
+    /** The interval at which we flush buffered values to the repository. */
+    protected long _flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    /** Flushes our buffered values periodically. */
+    protected Interval _flusher;
+
+    @Inject protected RootDObjectManager _omgr;
+    @Inject protected @MainInvoker Invoker _invoker;
+    @Inject protected RatingRepository _repo;
+
+    /** The default interval at which we flush buffered values to the repository. */
+    protected static final long DEFAULT_FLUSH_INTERVAL = 60 * 1000L;
+}
@@ -31,7 +31,7 @@ import com.google.inject.Inject;
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 import com.samskivert.util.Invoker;
-import com.samskivert.jdbc.RepositoryUnit;
+import com.samskivert.util.ResultListener;
 
 import com.threerings.util.Name;
 import com.threerings.util.TimeUtil;
@@ -49,6 +49,8 @@ import com.threerings.parlor.rating.data.RatingCodes;
 import com.threerings.parlor.rating.server.persist.RatingRecord;
 import com.threerings.parlor.rating.server.persist.RatingRepository;
 
+import static com.threerings.parlor.Log.log;
+
 /**
  * Rates players after each game and handles persisting the results.
  */
@@ -177,7 +179,8 @@ public abstract class RatingDelegate extends GameManagerDelegate
 
     /**
      * Loads up rating information for the specified set of player ids and stores them in the
-     * {@link #_ratings} table.
+     * {@link #_ratings} table. Loads are coalesced with those of other games by the {@link
+     * RatingPersister}.
      */
     protected void loadRatings (final Collection<PlayerRating> ratings)
     {
@@ -185,56 +188,50 @@ public abstract class RatingDelegate extends GameManagerDelegate
             return;
         }
 
+        List<Integer> playerIds = Lists.newArrayListWithCapacity(ratings.size());
+        for (PlayerRating rating : ratings) {
+            playerIds.add(rating.playerId);
+        }
+
         final int gameId = getGameId();
-        _invoker.postUnit(new RepositoryUnit("loadRatings(" + gameId + ")") {
-            @Override public void invokePersist () throws Exception {
-                // map the records by player id so that we can correlate with the db results
-                IntMap<PlayerRating> map = IntMaps.newHashIntMap();
+        _persister.loadRatings(gameId, playerIds, new ResultListener<IntMap<RatingRecord>>() {
+            public void requestCompleted (IntMap<RatingRecord> records) {
+                // update our ratings with the loaded data and stuff them into _ratings
                 for (PlayerRating rating : ratings) {
-                    map.put(rating.playerId, rating);
-                }
-
-                // load up the ratings data from the database, update the records
-                Integer[] playerIds = map.keySet().toArray(new Integer[map.size()]);
-                for (RatingRecord record : _repo.getRatings(gameId, playerIds)) {
-                    PlayerRating rating = map.get(record.playerId);
-                    if (rating != null) {
+                    RatingRecord record = records.get(rating.playerId);
+                    if (record != null) {
                         rating.rating = record.rating;
                         rating.experience = record.experience;
-                    } // else { hell frozen over, pigs flying }
-                }
-            }
-
-            @Override public void handleSuccess () {
-                // stuff our populated records into the _ratings mapping
-                for (PlayerRating rating : ratings) {
+                    }
                     _ratings.put(rating.playerId, rating);
                 }
             }
+            public void requestFailed (Exception cause) {
+                log.warning("Failed to load ratings", "gameId", gameId, "ratings", ratings, cause);
+            }
         });
     }
 
+    /**
+     * Saves the supplied ratings. Saves are coalesced with those of other games by the {@link
+     * RatingPersister}.
+     */
     protected void saveRatings (final Collection<PlayerRating> ratings)
     {
-        if (ratings.size() == 0) {
-            return;
-        }
-
         final int gameId = getGameId();
-        _invoker.postUnit(new RepositoryUnit("saveRatings(" + gameId + ")") {
-            @Override public void invokePersist () throws Exception {
-                for (PlayerRating rating : ratings) {
-                    _repo.setRating(gameId, rating.playerId, rating.rating, rating.experience);
-                }
-            }
-
-            @Override public void handleSuccess () {
-                // let subclasses publish the new ratings if they so desire
-                for (PlayerRating rating : ratings) {
+        for (final PlayerRating rating : ratings) {
+            RatingRecord record = new RatingRecord(
+                gameId, rating.playerId, rating.rating, rating.experience);
+            _persister.saveRating(record, new ResultListener<RatingRecord>() {
+                public void requestCompleted (RatingRecord result) {
+                    // let subclasses publish the new rating if they so desire
                     updateRatingInMemory(gameId, rating);
                 }
-            }
-        });
+                public void requestFailed (Exception cause) {
+                    // the persister will have logged the failure
+                }
+            });
+        }
     }
 
     /**
@@ -360,5 +357,6 @@ public abstract class RatingDelegate extends GameManagerDelegate
 
     // our dependencies
     @Inject protected RatingRepository _repo;
+    @Inject protected RatingPersister _persister;
     @Inject protected @MainInvoker Invoker _invoker;
 }
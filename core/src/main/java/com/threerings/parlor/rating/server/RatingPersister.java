@@ -0,0 +1,411 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.rating.server;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.jdbc.RepositoryUnit;
+import com.samskivert.util.IntMap;
+import com.samskivert.util.IntMaps;
+import com.samskivert.util.Interval;
+import com.samskivert.util.Invoker;
+import com.samskivert.util.Lifecycle;
+import com.samskivert.util.ResultListener;
+import com.samskivert.util.StringUtil;
+
+import com.threerings.presents.annotation.MainInvoker;
+import com.threerings.presents.dobj.RootDObjectManager;
+
+import com.threerings.parlor.rating.server.persist.RatingRecord;
+import com.threerings.parlor.rating.server.persist.RatingRepository;
+
+import static com.threerings.parlor.Log.log;
+
+/**
+ * Loads and saves ratings on behalf of all {@link RatingDelegate} instances on this server.
+ * Requests made within a short window are coalesced into a single query (for loads) or a single
+ * invoker unit (for saves) and recently seen ratings are cached so that players who play several
+ * games in a row need not have their ratings reloaded for each game. Caching is disabled unless
+ * enabled via {@link #configure}. Any pending loads and saves are flushed when the server shuts
+ * down.
+ *
+ * <p> All methods must be called on the distributed object thread, and all listeners are
+ * notified on that thread.
+ */
+@Singleton
+public class RatingPersister
+    implements Lifecycle.ShutdownComponent
+{
+    /** Statistics on our persistence activity. */
+    public static class PersistStats
+        implements Cloneable
+    {
+        /** The number of ratings requested via {@link RatingPersister#loadRatings}. */
+        public int requested;
+
+        /** The number of requested ratings that were satisfied by our cache. */
+        public int cacheHits;
+
+        /** The number of load queries issued to the repository. */
+        public int loads;
+
+        /** The number of ratings queued for saving. */
+        public int queuedSaves;
+
+        /** The number of ratings actually written (queued saves of the same rating coalesce). */
+        public int writes;
+
+        /** The number of save units issued to the repository. */
+        public int saveFlushes;
+
+        @Override
+        public PersistStats clone ()
+        {
+            try {
+                return (PersistStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
+    @Inject public RatingPersister (Lifecycle cycle)
+    {
+        cycle.addComponent(this);
+    }
+
+    /**
+     * Configures our request coalescing windows and cache size. The cache assumes that this
+     * server is the only one writing ratings for the players it hosts, so it must not be enabled
+     * if ratings may be modified elsewhere.
+     *
+     * @param loadWindow the time to wait for additional load requests before issuing a query.
+     * @param saveWindow the time to wait for additional saves before writing them.
+     * @param cacheSize the maximum number of ratings to cache, or zero to disable caching.
+     */
+    public void configure (long loadWindow, long saveWindow, int cacheSize)
+    {
+        _loadWindow = loadWindow;
+        _saveWindow = saveWindow;
+        _cacheSize = cacheSize;
+        while (_cache.size() > _cacheSize) {
+            _cache.remove(_cache.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Loads the ratings for the specified players for the specified game. The listener will be
+     * supplied with a mapping from player id to rating record; players with no stored rating will
+     * be omitted from the mapping.
+     */
+    public void loadRatings (int gameId, Collection<Integer> playerIds,
+                             ResultListener<IntMap<RatingRecord>> listener)
+    {
+        PendingLoad load = new PendingLoad();
+        load.gameId = gameId;
+        load.listener = listener;
+        for (int playerId : playerIds) {
+            RatingRecord record = _cache.get(toKey(gameId, playerId));
+            if (record == null) {
+                load.missing.add(playerId);
+            } else if (record != NO_RATING) {
+                load.result.put(playerId, record);
+            }
+        }
+        _stats.requested += playerIds.size();
+        _stats.cacheHits += playerIds.size() - load.missing.size();
+
+        if (load.missing.isEmpty()) {
+            listener.requestCompleted(load.result);
+            return;
+        }
+
+        _pendingLoads.add(load);
+        if (_pendingLoads.size() == 1) {
+            if (_loadInterval == null) {
+                _loadInterval = new Interval(_omgr) {
+                    @Override public void expired () {
+                        flushLoads();
+                    }
+                };
+            }
+            _loadInterval.schedule(_loadWindow);
+        }
+    }
+
+    /**
+     * Queues the supplied rating to be saved. If the same player's rating for the same game is
+     * saved again before the queue is flushed, only the most recent rating is written. The
+     * listener (which may be null) is notified once the rating has been written.
+     */
+    public void saveRating (RatingRecord record, ResultListener<RatingRecord> listener)
+    {
+        Long key = toKey(record.gameId, record.playerId);
+        PendingSave save = _pendingSaves.remove(key);
+        if (save == null) {
+            save = new PendingSave();
+        }
+        save.record = record;
+        if (listener != null) {
+            save.listeners.add(listener);
+        }
+        // reinsert the save so that it is written in the order of its most recent update
+        _pendingSaves.put(key, save);
+        cacheRecord(key, record);
+        _stats.queuedSaves++;
+
+        if (_pendingSaves.size() == 1) {
+            if (_saveInterval == null) {
+                _saveInterval = new Interval(_omgr) {
+                    @Override public void expired () {
+                        flushSaves();
+                    }
+                };
+            }
+            _saveInterval.schedule(_saveWindow);
+        }
+    }
+
+    /**
+     * Returns a snapshot of our persistence statistics.
+     */
+    public PersistStats getStats ()
+    {
+        return _stats.clone();
+    }
+
+    // from interface Lifecycle.ShutdownComponent
+    public void shutdown ()
+    {
+        // flushing cancels our intervals and hands any outstanding work to the invoker
+        flushLoads();
+        flushSaves();
+    }
+
+    /**
+     * Issues a single query to load the ratings for all pending load requests.
+     */
+    protected void flushLoads ()
+    {
+        if (_loadInterval != null) {
+            _loadInterval.cancel();
+        }
+        if (_pendingLoads.isEmpty()) {
+            return;
+        }
+
+        // make sure any pending saves hit the database before we read from it
+        flushSaves();
+
+        final List<PendingLoad> loads = _pendingLoads;
+        _pendingLoads = Lists.newArrayList();
+        final Set<Integer> gameIds = Sets.newHashSet(), playerIds = Sets.newHashSet();
+        for (PendingLoad load : loads) {
+            gameIds.add(load.gameId);
+            playerIds.addAll(load.missing);
+        }
+        _stats.loads++;
+
+        _invoker.postUnit(new RepositoryUnit("loadRatings(" + loads.size() + ")") {
+            @Override public void invokePersist () throws Exception {
+                for (RatingRecord record : _repo.getRatings(gameIds, playerIds)) {
+                    _loaded.put(toKey(record.gameId, record.playerId), record);
+                }
+            }
+            @Override public void handleSuccess () {
+                for (PendingLoad load : loads) {
+                    for (int playerId : load.missing) {
+                        Long key = toKey(load.gameId, playerId);
+                        // a save queued since we issued our query is more recent than the
+                        // database, so we prefer our cached copy if we have one
+                        RatingRecord record = _cache.get(key);
+                        if (record == null) {
+                            record = _loaded.get(key);
+                            cacheRecord(key, (record == null) ? NO_RATING : record);
+                        }
+                        if (record != null && record != NO_RATING) {
+                            load.result.put(playerId, record);
+                        }
+                    }
+                    load.listener.requestCompleted(load.result);
+                }
+            }
+            @Override public void handleFailure (Exception error) {
+                for (PendingLoad load : loads) {
+                    load.listener.requestFailed(error);
+                }
+            }
+            protected Map<Long, RatingRecord> _loaded = Maps.newHashMap();
+        });
+    }
+
+    /**
+     * Writes all pending saves to the database in a single invoker unit.
+     */
+    protected void flushSaves ()
+    {
+        if (_saveInterval != null) {
+            _saveInterval.cancel();
+        }
+        if (_pendingSaves.isEmpty()) {
+            return;
+        }
+
+        final List<PendingSave> saves = Lists.newArrayList(_pendingSaves.values());
+        _pendingSaves.clear();
+        final List<RatingRecord> records = Lists.newArrayListWithCapacity(saves.size());
+        for (PendingSave save : saves) {
+            records.add(save.record);
+        }
+        _stats.saveFlushes++;
+        _stats.writes += records.size();
+
+        _invoker.postUnit(new RepositoryUnit("saveRatings(" + records.size() + ")") {
+            @Override public void invokePersist () throws Exception {
+                _repo.setRatings(records);
+            }
+            @Override public void handleSuccess () {
+                for (PendingSave save : saves) {
+                    for (ResultListener<RatingRecord> listener : save.listeners) {
+                        listener.requestCompleted(save.record);
+                    }
+                }
+            }
+            @Override public void handleFailure (Exception error) {
+                log.warning("Failed to save ratings", "count", records.size(), error);
+                for (PendingSave save : saves) {
+                    // our cached copy may not match the database, so drop it
+                    _cache.remove(toKey(save.record.gameId, save.record.playerId));
+                    for (ResultListener<RatingRecord> listener : save.listeners) {
+                        listener.requestFailed(error);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds the supplied record to our cache, evicting the least recently used record if the cache
+     * is full.
+     */
+    protected void cacheRecord (Long key, RatingRecord record)
+    {
+        if (_cacheSize > 0) {
+            _cache.put(key, record);
+        }
+    }
+
+    /**
+     * Combines a game id and player id into a single key.
+     */
+    protected static Long toKey (int gameId, int playerId)
+    {
+        return (((long)gameId) << 32) | (playerId & 0xFFFFFFFFL);
+    }
+
+    /** Tracks a request to load ratings. */
+    protected static class PendingLoad
+    {
+        /** The game for which ratings are being loaded. */
+        public int gameId;
+
+        /** The players whose ratings were not in our cache. */
+        public Set<Integer> missing = Sets.newHashSet();
+
+        /** The ratings loaded so far, mapped by player id. */
+        public IntMap<RatingRecord> result = IntMaps.newHashIntMap();
+
+        /** The listener to notify when the load is complete. */
+        public ResultListener<IntMap<RatingRecord>> listener;
+    }
+
+    /** Tracks a rating that has been queued for saving. */
+    protected static class PendingSave
+    {
+        /** The most recent rating to be saved. */
+        public RatingRecord record;
+
+        /** The listeners to notify once the rating has been written. */
+        public List<ResultListener<RatingRecord>> listeners = Lists.newArrayListWithCapacity(1);
+    }
+
+    /** Load requests waiting to be issued to the repository. */
+    protected List<PendingLoad> _pendingLoads = Lists.newArrayList();
+
+    /** Saves waiting to be written to the repository, keyed on game id and player id. */
+    protected Map<Long, PendingSave> _pendingSaves = Maps.newLinkedHashMap();
+
+    /** Recently seen ratings keyed on game id and player id, in LRU order. */
+    protected Map<Long, RatingRecord> _cache =
+        new LinkedHashMap<Long, RatingRecord>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry (Map.Entry<Long, RatingRecord> eldest) {
+            return size() > _cacheSize;
+        }
+    };
+
+    /** The time to wait for additional load requests before querying the repository. */
+    protected long _loadWindow = DEFAULT_LOAD_WINDOW;
+
+    /** The time to wait for additional saves before writing to the repository. */
+    protected long _saveWindow = DEFAULT_SAVE_WINDOW;
+
+    /** The maximum number of ratings in our cache. */
+    protected int _cacheSize = DEFAULT_CACHE_SIZE;
+
+    /** Used to flush our pending loads and saves. */
+    protected Interval _loadInterval, _saveInterval;
+
+    /** Statistics on our persistence activity. */
+    protected PersistStats _stats = new PersistStats();
+
+    @Inject protected RootDObjectManager _omgr;
+    @Inject protected @MainInvoker Invoker _invoker;
+    @Inject protected RatingRepository _repo;
+
+    /** Cached to indicate that a player has no stored rating for a game. */
+    protected static final RatingRecord NO_RATING = new RatingRecord();
+
+    /** The default time to wait for additional load requests, in milliseconds. */
+    protected static final long DEFAULT_LOAD_WINDOW = 50L;
+
+    /** The default time to wait for additional saves, in milliseconds. */
+    protected static final long DEFAULT_SAVE_WINDOW = 1000L;
+
+    /** The default maximum number of cached ratings (caching is disabled by default). */
+    protected static final int DEFAULT_CACHE_SIZE = 0;
+}
@@ -37,11 +37,14 @@ import com.google.inject.Singleton;
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 
+import com.samskivert.depot.DatabaseException;
 import com.samskivert.depot.DepotRepository;
+import com.samskivert.depot.DuplicateKeyException;
 import com.samskivert.depot.PersistenceContext;
 import com.samskivert.depot.PersistentRecord;
 import com.samskivert.depot.Query;
 import com.samskivert.depot.clause.OrderBy;
+import com.samskivert.depot.clause.Where;
 import com.samskivert.depot.expression.SQLExpression;
 
 import com.threerings.parlor.rating.util.Percentiler;
@@ -83,6 +86,20 @@ public class RatingRepository extends DepotRepository
             RatingRecord.GAME_ID.eq(gameId), RatingRecord.PLAYER_ID.in(players)).select();
     }
 
+    /**
+     * Fetch the ratings registered for any of the given players for any of the given games in a
+     * single query. Note that this returns every matching (game, player) combination, so callers
+     * interested in specific pairs must filter the results.
+     */
+    public List<RatingRecord> getRatings (Collection<Integer> gameIds, Collection<Integer> players)
+    {
+        if (gameIds.isEmpty() || players.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return from(RatingRecord.class).where(
+            RatingRecord.GAME_ID.in(gameIds), RatingRecord.PLAYER_ID.in(players)).select();
+    }
+
     /**
      * Fetch and return all the registered {@link RatingRecord} rows for the given player. Ratings
      * will be returned in order of most recently to least recently updated.
@@ -152,6 +169,16 @@ public class RatingRepository extends DepotRepository
         delete(RatingRecord.getKey(gameId, playerId));
     }
 
+    /**
+     * Stores all of the supplied ratings, updating or creating rows as necessary.
+     */
+    public void setRatings (Collection<RatingRecord> ratings)
+    {
+        for (RatingRecord record : ratings) {
+            store(record);
+        }
+    }
+
     /**
      * Loads the percentile distribution associated with the specified game and mode. null will
      * never be returned, rather a blank percentiler will be created and returned.
@@ -189,6 +216,48 @@ public class RatingRepository extends DepotRepository
         store(record);
     }
 
+    /**
+     * Merges the values recorded to the supplied percentiler into the stored distribution for the
+     * specified game and mode, rather than overwriting it, so that multiple servers may record
+     * values for the same game. The stored record is only replaced if it has not been modified
+     * by another writer since we loaded it; if it has, the merge is retried.
+     *
+     * @return the merged distribution as written to the database.
+     */
+    public Percentiler mergePercentile (int gameId, int gameMode, Percentiler delta)
+    {
+        for (int ii = 0; ii < MAX_MERGE_TRIES; ii++) {
+            PercentileRecord record = load(PercentileRecord.getKey(gameId, gameMode));
+            Percentiler tiler = (record == null) ? new Percentiler() : new Percentiler(record.data);
+            tiler.merge(delta);
+            byte[] data = tiler.toBytes();
+
+            if (record == null) {
+                PercentileRecord nrecord = new PercentileRecord();
+                nrecord.gameId = gameId;
+                nrecord.gameMode = gameMode;
+                nrecord.data = data;
+                try {
+                    insert(nrecord);
+                    return tiler;
+                } catch (DuplicateKeyException dke) {
+                    continue; // someone else created the record first, merge with theirs
+                }
+            }
+
+            if (updatePartial(PercentileRecord.class,
+                              new Where(PercentileRecord.GAME_ID, gameId,
+                                        PercentileRecord.GAME_MODE, gameMode,
+                                        PercentileRecord.DATA, record.data),
+                              PercentileRecord.getKey(gameId, gameMode),
+                              PercentileRecord.DATA, data) > 0) {
+                return tiler;
+            }
+        }
+        throw new DatabaseException("Unable to merge percentile [gameId=" + gameId +
+                                    ", gameMode=" + gameMode + "]");
+    }
+
     /**
      * Deletes the percentile record for the specified game and game mode.
      */
@@ -270,4 +339,7 @@ public class RatingRepository extends DepotRepository
         classes.add(RatingRecord.class);
         classes.add(PercentileRecord.class);
     }
+
+    /** The number of times we'll attempt to merge a percentile before giving up. */
+    protected static final int MAX_MERGE_TRIES = 5;
 }
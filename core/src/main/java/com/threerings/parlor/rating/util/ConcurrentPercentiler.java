@@ -0,0 +1,339 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.rating.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.threerings.parlor.Log.log;
+
+/**
+ * A {@link Percentiler} that may be recorded into by many threads at once without locking.
+ * Recording a value only increments an atomic bucket counter; percentiles are computed from a
+ * snapshot of the histogram when {@link #recomputePercentiles} is called (generally periodically
+ * by some thread other than those recording values) and queries are answered from the most
+ * recent snapshot. The serialized form is identical to that of {@link Percentiler}.
+ */
+public class ConcurrentPercentiler
+{
+    /**
+     * Creates an empty percentiler.
+     */
+    public ConcurrentPercentiler ()
+    {
+        this(new Percentiler());
+    }
+
+    /**
+     * Creates a percentiler that expects values to fall within the given range.
+     */
+    public ConcurrentPercentiler (int min, int max)
+    {
+        this(new Percentiler(min, max));
+    }
+
+    /**
+     * Creates a percentiler from its serialized representation (as created by either this class
+     * or {@link Percentiler}).
+     */
+    public ConcurrentPercentiler (byte[] data)
+    {
+        this(new Percentiler(data));
+    }
+
+    /**
+     * Records a value. The percentiles will not reflect this value until the next call to {@link
+     * #recomputePercentiles}.
+     */
+    public void recordValue (float value)
+    {
+        while (true) {
+            Histogram hist = _hist.get();
+
+            // if this is the first value ever recorded, establish our range
+            if (hist.empty) {
+                int min = (int)Math.floor(value), max = Math.max((int)Math.ceil(value), min + 1);
+                _hist.compareAndSet(hist, new Histogram(min, max, null, null, false));
+                continue;
+            }
+
+            if (value >= hist.min && value <= hist.max) {
+                hist.counts.incrementAndGet(hist.toBucketIndex(value));
+                _total.incrementAndGet();
+                return;
+            }
+
+            // otherwise we need to expand our range; if another thread beats us to it, we'll
+            // simply try again with its new histogram
+            _hist.compareAndSet(hist, hist.expand(value));
+        }
+    }
+
+    /**
+     * Returns the total number of values ever recorded to this percentiler.
+     */
+    public long getRecordedCount ()
+    {
+        return _total.get();
+    }
+
+    /**
+     * Returns true if this percentiler has been modified since it was created or since the last
+     * call to {@link #clearModified}.
+     */
+    public boolean isModified ()
+    {
+        return _total.get() != _snapTotal;
+    }
+
+    /**
+     * Clears this percentiler's "is modified" state. Values recorded concurrently with this call
+     * may or may not be considered to have modified the percentiler.
+     */
+    public void clearModified ()
+    {
+        _snapTotal = _total.get();
+    }
+
+    /**
+     * Recomputes the percentile cutoffs from a snapshot of the current histogram.
+     */
+    public void recomputePercentiles ()
+    {
+        _snapshot = toPercentiler();
+    }
+
+    /**
+     * Returns the percent of all numbers seen that are lower than the specified value as of the
+     * most recent call to {@link #recomputePercentiles}.
+     *
+     * @see Percentiler#getPercentile
+     */
+    public int getPercentile (float value)
+    {
+        return _snapshot.getPercentile(value);
+    }
+
+    /**
+     * Returns the score necessary to attain the specified percentile as of the most recent call
+     * to {@link #recomputePercentiles}.
+     *
+     * @see Percentiler#getRequiredScore
+     */
+    public float getRequiredScore (int percentile)
+    {
+        return _snapshot.getRequiredScore(percentile);
+    }
+
+    /**
+     * Returns the largest score seen by this percentiler.
+     */
+    public int getMaxScore ()
+    {
+        return _hist.get().max;
+    }
+
+    /**
+     * Returns the smallest score seen by this percentiler.
+     */
+    public int getMinScore ()
+    {
+        return _hist.get().min;
+    }
+
+    /**
+     * Returns a snapshot of the counts for each bucket.
+     */
+    public int[] getCounts ()
+    {
+        return _hist.get().snapshot();
+    }
+
+    /**
+     * Returns a single-threaded {@link Percentiler} containing a snapshot of this percentiler's
+     * histogram, with its percentiles computed.
+     */
+    public Percentiler toPercentiler ()
+    {
+        Histogram hist = _hist.get();
+        Percentiler tiler = new Percentiler();
+        if (!hist.empty) {
+            tiler._min = hist.min;
+            tiler._max = hist.max;
+        }
+        tiler._counts = hist.snapshot();
+        for (int count : tiler._counts) {
+            tiler._total += count;
+        }
+        tiler._snapTotal = tiler._total;
+        tiler._fixedRange = _fixedRange;
+        tiler.recomputePercentiles();
+        return tiler;
+    }
+
+    /**
+     * Converts a snapshot of this percentiler to a byte array so that it may be stored into a
+     * database.
+     */
+    public byte[] toBytes ()
+    {
+        return toPercentiler().toBytes();
+    }
+
+    @Override
+    public String toString ()
+    {
+        return _snapshot.toString();
+    }
+
+    /**
+     * Initializes this percentiler from the state of the supplied single-threaded percentiler.
+     */
+    protected ConcurrentPercentiler (Percentiler tiler)
+    {
+        _fixedRange = tiler._fixedRange;
+        Histogram hist = new Histogram(
+            tiler._min, tiler._max, null, null, (tiler._total == 0 && !_fixedRange));
+        for (int ii = 0; ii < Percentiler.BUCKET_COUNT; ii++) {
+            hist.counts.set(ii, tiler._counts[ii]);
+        }
+        _hist.set(hist);
+        _total.set(tiler._total);
+        _snapTotal = tiler._total;
+        tiler.recomputePercentiles();
+        _snapshot = tiler;
+    }
+
+    /**
+     * A histogram covering a fixed range. When our range must be expanded, a new histogram is
+     * created containing the remapped counts of its predecessor and swapped into place. Threads
+     * that obtained the old histogram before the swap may still record values into it, so each
+     * histogram retains its predecessor along with the counts that were copied from it, and any
+     * values recorded to the predecessor after the copy are folded in when a snapshot is taken.
+     * Because our range grows geometrically, the chain of predecessors remains short.
+     */
+    protected class Histogram
+    {
+        /** The range covered by this histogram. */
+        public final int min, max;
+
+        /** True if no value has yet established our range. */
+        public final boolean empty;
+
+        /** The count of values recorded to each bucket. */
+        public final AtomicIntegerArray counts = new AtomicIntegerArray(Percentiler.BUCKET_COUNT);
+
+        /** The histogram that we replaced, or null. */
+        public final Histogram prev;
+
+        /** The counts that were copied from our predecessor when we were created. */
+        public final int[] prevCopied;
+
+        public Histogram (int min, int max, Histogram prev, int[] prevCopied, boolean empty)
+        {
+            this.min = min;
+            this.max = max;
+            this.prev = prev;
+            this.prevCopied = prevCopied;
+            this.empty = empty;
+        }
+
+        /**
+         * Creates a new histogram that covers the supplied value and contains our counts.
+         */
+        public Histogram expand (float value)
+        {
+            if (_fixedRange) {
+                log.warning("Recording value outside of initially fixed range",
+                    "min", min, "max", max, "value", value);
+                _fixedRange = false;
+            }
+
+            // expand by 20% in the direction of either our new minimum or new maximum
+            int newmin = (value < min) ? (max - (int)Math.ceil((max - value) * 1.2f)) : min;
+            int newmax = (value > max) ? (min + (int)Math.ceil((value - min) * 1.2f)) : max;
+
+            int[] copied = snapshot();
+            Histogram hist = new Histogram(newmin, newmax, this, copied, false);
+            int[] counts = Percentiler.remap(copied, min, max, newmin, newmax);
+            for (int ii = 0; ii < counts.length; ii++) {
+                hist.counts.set(ii, counts[ii]);
+            }
+            return hist;
+        }
+
+        /**
+         * Returns the counts of all values recorded to this histogram, including those recorded
+         * to our predecessors after we were created.
+         */
+        public int[] snapshot ()
+        {
+            int[] result = new int[Percentiler.BUCKET_COUNT];
+            for (int ii = 0; ii < result.length; ii++) {
+                result[ii] = counts.get(ii);
+            }
+            if (prev == null) {
+                return result;
+            }
+
+            // counts only ever increase, so anything beyond what we copied was recorded late
+            int[] late = prev.snapshot();
+            boolean anyLate = false;
+            for (int ii = 0; ii < late.length; ii++) {
+                late[ii] -= prevCopied[ii];
+                anyLate = anyLate || (late[ii] != 0);
+            }
+            if (anyLate) {
+                late = Percentiler.remap(late, prev.min, prev.max, min, max);
+                for (int ii = 0; ii < result.length; ii++) {
+                    result[ii] += late[ii];
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the bucket to which the supplied (in range) value is assigned.
+         */
+        public int toBucketIndex (float value)
+        {
+            int idx = Math.round((value - min) * Percentiler.BUCKET_COUNT / (max - min));
+            return Math.max(0, Math.min(idx, Percentiler.BUCKET_COUNT-1));
+        }
+    }
+
+    /** Our current histogram. */
+    protected AtomicReference<Histogram> _hist = new AtomicReference<Histogram>();
+
+    /** The total number of data points recorded to this percentiler. */
+    protected AtomicLong _total = new AtomicLong();
+
+    /** The value of {@link #_total} at creation time or as of a call to {@link #clearModified}. */
+    protected volatile long _snapTotal;
+
+    /** If this percentiler was created with a fixed range (and has not since exceeded it). */
+    protected volatile boolean _fixedRange;
+
+    /** The snapshot from which percentile queries are answered. */
+    protected volatile Percentiler _snapshot;
+}
@@ -133,36 +133,8 @@ public class Percentiler
                          "new", ("" + newmin + ":" + newmax), "old", ("" + _min + ":" + _max));
             }
 
-            // create a new counts array and map the old array to the new
-            float ndelta = (newmax - newmin) / (float)BUCKET_COUNT;
-            float odelta = (_max - _min) / (float)BUCKET_COUNT;
-            int[] counts = new int[BUCKET_COUNT];
-
-            for (int ii = 0; ii < BUCKET_COUNT; ii++) {
-                // determine the first new bucket that contains some or all of the old bucket
-                float obot = _min + odelta * ii;
-                int newidx = Math.min(BUCKET_COUNT-1, (int)Math.floor((obot - newmin) / ndelta));
-
-                // compute how much of this bucket (if any) spills over into the next bucket
-                float newoff = (float)Math.IEEEremainder(obot - newmin, ndelta);
-                float nextfrac = (newoff + odelta) - ndelta;
-
-                // now put this bucket's contents into either one or two new buckets
-                if (nextfrac <= 0 || newidx == BUCKET_COUNT-1) {
-                    counts[newidx] += _counts[ii];
-                } else {
-                    int next = Math.round(_counts[ii] * nextfrac / odelta);
-                    counts[newidx] += (_counts[ii] - next);
-                    counts[newidx+1] += next;
-                }
-            }
-
-            // put the remapped histogram into place
-            _min = newmin;
-            _max = newmax;
-            _counts = counts;
-
-            // force a recalculation
+            // remap our histogram into the new range and force a recalculation
+            resize(newmin, newmax);
             _nextRecomp = 0;
         }
 
@@ -178,6 +150,47 @@ public class Percentiler
         }
     }
 
+    /**
+     * Adds all of the values recorded to the supplied percentiler to this percentiler. Our range
+     * is expanded to cover that of the other percentiler if necessary and its histogram is
+     * remapped into our range before its bucket counts are added to ours. The percentiles are
+     * recomputed once the merge is complete.
+     */
+    public void merge (Percentiler other)
+    {
+        if (other._total == 0) {
+            return;
+        }
+
+        if (_total == 0 && !_fixedRange) {
+            // we have no data of our own, so we simply adopt the other histogram
+            _min = other._min;
+            _max = other._max;
+            _counts = other._counts.clone();
+
+        } else {
+            int newmin = Math.min(_min, other._min), newmax = Math.max(_max, other._max);
+            if (newmin != _min || newmax != _max) {
+                if (_fixedRange) {
+                    log.warning("Merging values outside of initially fixed range",
+                        "min", _min, "max", _max, "omin", other._min, "omax", other._max);
+                    _fixedRange = false;
+                }
+                resize(newmin, newmax);
+            }
+
+            int[] ocounts = (other._min == _min && other._max == _max) ? other._counts :
+                remap(other._counts, other._min, other._max, _min, _max);
+            for (int ii = 0; ii < BUCKET_COUNT; ii++) {
+                _counts[ii] += ocounts[ii];
+            }
+        }
+
+        _total += other._total;
+        recomputePercentiles();
+        _nextRecomp = (int)(_total/20);
+    }
+
     /**
      * Returns the total number of values ever recorded to this percentiler.
      */
@@ -404,6 +417,48 @@ public class Percentiler
         return buf.toString();
     }
 
+    /**
+     * Redistributes our histogram into the specified new range.
+     */
+    protected void resize (int newmin, int newmax)
+    {
+        _counts = remap(_counts, _min, _max, newmin, newmax);
+        _min = newmin;
+        _max = newmax;
+    }
+
+    /**
+     * Maps a histogram covering the old range into a new histogram covering the new range, which
+     * must contain the old range.
+     */
+    protected static int[] remap (int[] ocounts, int omin, int omax, int newmin, int newmax)
+    {
+        float ndelta = (newmax - newmin) / (float)BUCKET_COUNT;
+        float odelta = (omax - omin) / (float)BUCKET_COUNT;
+        int[] counts = new int[BUCKET_COUNT];
+
+        for (int ii = 0; ii < BUCKET_COUNT; ii++) {
+            // determine the first new bucket that contains some or all of the old bucket
+            float obot = omin + odelta * ii;
+            int newidx = Math.min(BUCKET_COUNT-1, (int)Math.floor((obot - newmin) / ndelta));
+
+            // compute how much of this bucket (if any) spills over into the next bucket
+            float newoff = (float)Math.IEEEremainder(obot - newmin, ndelta);
+            float nextfrac = (newoff + odelta) - ndelta;
+
+            // now put this bucket's contents into either one or two new buckets
+            if (nextfrac <= 0 || newidx == BUCKET_COUNT-1) {
+                counts[newidx] += ocounts[ii];
+            } else {
+                int next = Math.round(ocounts[ii] * nextfrac / odelta);
+                counts[newidx] += (ocounts[ii] - next);
+                counts[newidx+1] += next;
+            }
+        }
+
+        return counts;
+    }
+
     /**
      * Returns the histogram bucket to which this value is assigned.
      */
@@ -0,0 +1,693 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.server;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.util.IntMap;
+import com.samskivert.util.IntMaps;
+import com.samskivert.util.Interval;
+import com.samskivert.util.Lifecycle;
+import com.samskivert.util.ResultListener;
+import com.samskivert.util.StringUtil;
+import com.samskivert.util.Tuple;
+
+import com.threerings.util.Name;
+
+import com.threerings.presents.dobj.RootDObjectManager;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.crowd.data.BodyObject;
+import com.threerings.crowd.data.OccupantInfo;
+import com.threerings.crowd.server.PlaceRegistry;
+
+import com.threerings.parlor.data.ParlorCodes;
+import com.threerings.parlor.game.data.GameConfig;
+import com.threerings.parlor.game.data.GameObject;
+import com.threerings.parlor.game.data.UserIdentifier;
+import com.threerings.parlor.game.server.GameManager;
+import com.threerings.parlor.rating.data.RatingCodes;
+import com.threerings.parlor.rating.server.RatingPersister;
+import com.threerings.parlor.rating.server.persist.RatingRecord;
+import com.threerings.parlor.rating.util.Percentiler;
+
+import static com.threerings.parlor.Log.log;
+
+/**
+ * Matches queued players into games automatically, as an alternative to their finding and
+ * joining tables via the {@link TableManager}. Players queue for a particular game, singly or as
+ * a party, and are periodically formed into matches in batches. Parties are matched with others
+ * of similar rating (as loaded via the {@link RatingPersister} for rated games), and the range of
+ * ratings a party will accept widens the longer it waits. Matched games are created through the
+ * {@link PlaceRegistry} just as they are for tables.
+ */
+@Singleton
+public class MatchmakingManager
+    implements Lifecycle.ShutdownComponent, ParlorCodes
+{
+    /** Statistics on a single matchmaking queue. */
+    public static class QueueStats
+        implements Cloneable
+    {
+        /** The number of players currently queued. */
+        public int queued;
+
+        /** The number of parties that have joined the queue. */
+        public long enqueued;
+
+        /** The number of matches formed. */
+        public long matches;
+
+        /** The number of parties that left the queue, or were removed on logging off, before
+         * being matched. */
+        public long cancelled;
+
+        /** The number of matched games that could not be created. */
+        public long failures;
+
+        /** The median time, in seconds, that a matched party spent waiting. */
+        public float medianWait;
+
+        /** The 90th percentile time, in seconds, that a matched party spent waiting. */
+        public float p90Wait;
+
+        /** The 99th percentile time, in seconds, that a matched party spent waiting. */
+        public float p99Wait;
+
+        @Override
+        public QueueStats clone ()
+        {
+            try {
+                return (QueueStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
+    /** A party awaiting a match. */
+    public static class Ticket
+    {
+        /** The members of the party. */
+        public final BodyObject[] party;
+
+        /** Notified with the oid of the game object once the party is matched. */
+        public final ResultListener<Integer> listener;
+
+        /** The configuration of the game requested by the party. */
+        public final GameConfig config;
+
+        /** The time at which the party joined the queue. */
+        public final long queuedAt;
+
+        /** The average rating of the party's members, valid once {@link #ready} is set. */
+        public int rating = RatingCodes.DEFAULT_RATING;
+
+        /** Whether the party's rating has been resolved and it may be matched. */
+        public boolean ready;
+
+        /** Whether the party has left the queue. */
+        public boolean cancelled;
+
+        /** The queue in which the party waits. */
+        public Queue queue;
+
+        public Ticket (BodyObject[] party, GameConfig config, long queuedAt,
+                       ResultListener<Integer> listener) {
+            this.party = party;
+            this.config = config;
+            this.queuedAt = queuedAt;
+            this.listener = listener;
+        }
+
+        /** Returns the number of seats this party will occupy. */
+        public int size () {
+            return party.length;
+        }
+
+        @Override public String toString () {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
+    /**
+     * The parties queued for a particular game and match size, and the logic to match them.
+     */
+    public static class Queue
+    {
+        /** The number of players in each match formed from this queue. */
+        public final int matchSize;
+
+        public Queue (int matchSize) {
+            this.matchSize = matchSize;
+        }
+
+        /**
+         * Adds the supplied ticket to this queue.
+         */
+        public void add (Ticket ticket) {
+            ticket.queue = this;
+            _tickets.add(ticket);
+            _queued += ticket.size();
+            _stats.enqueued++;
+        }
+
+        /**
+         * Marks the supplied ticket as having left the queue. It is removed during the next pass.
+         */
+        public void cancel (Ticket ticket) {
+            if (!ticket.cancelled) {
+                ticket.cancelled = true;
+                _queued -= ticket.size();
+                _stats.cancelled++;
+            }
+        }
+
+        /**
+         * Returns true if no parties are queued.
+         */
+        public boolean isEmpty () {
+            return _tickets.isEmpty();
+        }
+
+        /**
+         * Forms as many matches as possible from the ready parties in this queue, removing them
+         * from the queue and recording their wait times.
+         *
+         * @param now the current time.
+         * @param window the rating window parameters to apply.
+         */
+        public List<List<Ticket>> formMatches (long now, RatingWindow window) {
+            // sort the ready tickets by rating
+            List<Ticket> ready = Lists.newArrayListWithCapacity(_tickets.size());
+            for (Ticket ticket : _tickets) {
+                if (ticket.ready && !ticket.cancelled) {
+                    ready.add(ticket);
+                }
+            }
+            Collections.sort(ready, BY_RATING);
+
+            // sweep through them in rating order, greedily filling a match from each ticket and
+            // those just above it for as long as everyone's window admits everyone else
+            List<List<Ticket>> matches = Lists.newArrayList();
+            boolean[] used = new boolean[ready.size()];
+            List<Ticket> match = Lists.newArrayListWithCapacity(matchSize);
+            for (int ii = 0, ll = ready.size(); ii < ll; ii++) {
+                if (used[ii]) {
+                    continue;
+                }
+                Ticket first = ready.get(ii);
+                int seats = first.size(), tolerance = window.getTolerance(now - first.queuedAt);
+                match.clear();
+                match.add(first);
+                for (int jj = ii + 1, looked = 0; jj < ll && seats < matchSize &&
+                         looked < matchSize * MAX_LOOKAHEAD; jj++) {
+                    if (used[jj]) {
+                        continue;
+                    }
+                    looked++;
+                    Ticket cand = ready.get(jj);
+                    int ctol = Math.min(tolerance, window.getTolerance(now - cand.queuedAt));
+                    if (cand.rating - first.rating > ctol) {
+                        // candidates are sorted by rating, but a long waiting candidate further
+                        // on might yet have a wider window, so only stop at the absolute maximum
+                        if (cand.rating - first.rating > window.maximum) {
+                            break;
+                        }
+                        continue;
+                    }
+                    if (seats + cand.size() > matchSize) {
+                        continue;
+                    }
+                    match.add(cand);
+                    seats += cand.size();
+                    tolerance = ctol;
+                }
+                if (seats < matchSize) {
+                    continue;
+                }
+
+                // mark the members of the match as used (searching forward from the first, as
+                // they were added in rating order)
+                for (int jj = ii, mm = 0; mm < match.size(); jj++) {
+                    if (ready.get(jj) == match.get(mm)) {
+                        used[jj] = true;
+                        mm++;
+                    }
+                }
+                for (Ticket ticket : match) {
+                    ticket.cancelled = true; // so that it is purged from the queue
+                    _queued -= ticket.size();
+                    _waits.recordValue((now - ticket.queuedAt) / 1000f, false);
+                }
+                _stats.matches++;
+                matches.add(Lists.newArrayList(match));
+            }
+
+            // finally purge the matched and cancelled tickets
+            for (int ii = _tickets.size() - 1; ii >= 0; ii--) {
+                if (_tickets.get(ii).cancelled) {
+                    _tickets.set(ii, _tickets.get(_tickets.size() - 1));
+                    _tickets.remove(_tickets.size() - 1);
+                }
+            }
+            return matches;
+        }
+
+        /**
+         * Returns a snapshot of this queue's statistics.
+         */
+        public QueueStats getStats () {
+            QueueStats stats = _stats.clone();
+            stats.queued = _queued;
+            if (_waits.getRecordedCount() > 0) {
+                _waits.recomputePercentiles();
+                stats.medianWait = _waits.getRequiredScore(50);
+                stats.p90Wait = _waits.getRequiredScore(90);
+                stats.p99Wait = _waits.getRequiredScore(99);
+            }
+            return stats;
+        }
+
+        /** The parties in this queue, in no particular order. */
+        protected List<Ticket> _tickets = Lists.newArrayList();
+
+        /** The number of players in the (uncancelled) parties in this queue. */
+        protected int _queued;
+
+        /** The wait times of matched parties, in seconds. */
+        protected Percentiler _waits = new Percentiler();
+
+        /** Our statistics. */
+        protected QueueStats _stats = new QueueStats();
+    }
+
+    /** Defines how the range of ratings a party will accept widens as it waits. */
+    public static class RatingWindow
+    {
+        /** The rating difference accepted by a party that has only just joined the queue. */
+        public final int initial;
+
+        /** The additional rating difference accepted for each second a party waits. */
+        public final int growth;
+
+        /** The largest rating difference that will ever be accepted. */
+        public final int maximum;
+
+        public RatingWindow (int initial, int growth, int maximum) {
+            this.initial = initial;
+            this.growth = growth;
+            this.maximum = maximum;
+        }
+
+        /** Returns the rating difference accepted by a party that has waited the specified
+         * number of milliseconds. */
+        public int getTolerance (long waited) {
+            return (int)Math.min(maximum, initial + growth * Math.max(waited, 0L) / 1000L);
+        }
+    }
+
+    /** Identifies a queue by game configuration and match size. */
+    public static class QueueKey
+    {
+        /** The configuration of the game requested by the queue's parties. */
+        public final GameConfig config;
+
+        /** The number of players in each match formed from the queue. */
+        public final int matchSize;
+
+        public QueueKey (GameConfig config, int matchSize) {
+            this.config = config;
+            this.matchSize = matchSize;
+        }
+
+        @Override public boolean equals (Object other) {
+            return (other instanceof QueueKey) && ((QueueKey)other).config.equals(config) &&
+                ((QueueKey)other).matchSize == matchSize;
+        }
+
+        @Override public int hashCode () {
+            return config.hashCode() * 31 + matchSize;
+        }
+
+        @Override public String toString () {
+            return config.getGameIdent() + ":" + matchSize + (config.rated ? "" : ":unrated");
+        }
+    }
+
+    @Inject public MatchmakingManager (Lifecycle cycle)
+    {
+        cycle.addComponent(this);
+    }
+
+    /**
+     * Configures the manager.
+     *
+     * @param matchInterval the time between attempts to form matches from the queues.
+     * @param window the range of ratings accepted by queued parties.
+     */
+    public void configure (long matchInterval, RatingWindow window)
+    {
+        _matchInterval = matchInterval;
+        _window = window;
+        if (_matcher != null) {
+            _matcher.schedule(_matchInterval, true);
+        }
+    }
+
+    /**
+     * Queues the supplied party for a game with the supplied configuration.
+     *
+     * @param config the configuration of the game desired. Parties are matched with others that
+     * requested an equivalent configuration (see {@link GameConfig#equals}) and the same match
+     * size.
+     * @param matchSize the total number of players in the game.
+     * @param party the players to be matched together.
+     * @param listener will be notified with the oid of the game object once a game has been
+     * created for the party, or of failure if the party is removed from the queue.
+     *
+     * @exception InvocationException thrown if a member of the party is already queued or the
+     * party is too large for the requested game.
+     */
+    public void joinQueue (GameConfig config, int matchSize, BodyObject[] party,
+                           ResultListener<Integer> listener)
+        throws InvocationException
+    {
+        if (party.length == 0 || party.length > matchSize) {
+            log.warning("Requested to queue invalid party", "config", config,
+                "matchSize", matchSize, "party", party.length);
+            throw new InvocationException(INTERNAL_ERROR);
+        }
+        for (BodyObject body : party) {
+            if (_tickets.containsKey(body.getOid())) {
+                throw new InvocationException(ALREADY_QUEUED);
+            }
+        }
+
+        QueueKey key = new QueueKey(config, matchSize);
+        Queue queue = _queues.get(key);
+        if (queue == null) {
+            _queues.put(key, queue = new Queue(matchSize));
+        }
+
+        Ticket ticket = new Ticket(party, config, System.currentTimeMillis(), listener);
+        queue.add(ticket);
+        for (BodyObject body : party) {
+            _tickets.put(body.getOid(), ticket);
+        }
+        resolveRating(ticket);
+
+        if (_matcher == null) {
+            _matcher = new Interval(_omgr) {
+                @Override public void expired () {
+                    formMatches();
+                }
+            };
+            _matcher.schedule(_matchInterval, true);
+        }
+    }
+
+    /**
+     * Removes the party containing the specified player from its queue.
+     *
+     * @return true if the player was queued, false otherwise.
+     */
+    public boolean leaveQueue (BodyObject body)
+    {
+        Ticket ticket = _tickets.get(body.getOid());
+        if (ticket == null) {
+            return false;
+        }
+        cancel(ticket, new InvocationException(QUEUE_CANCELLED));
+        return true;
+    }
+
+    /**
+     * Returns true if the specified player is currently queued.
+     */
+    public boolean isQueued (BodyObject body)
+    {
+        return _tickets.containsKey(body.getOid());
+    }
+
+    /**
+     * Returns a snapshot of the statistics of each of our queues, keyed by game configuration and
+     * match size.
+     */
+    public Map<QueueKey, QueueStats> getQueueStats ()
+    {
+        Map<QueueKey, QueueStats> stats = Maps.newHashMap();
+        for (Map.Entry<QueueKey, Queue> entry : _queues.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+
+    // from interface Lifecycle.ShutdownComponent
+    public void shutdown ()
+    {
+        if (_matcher != null) {
+            _matcher.cancel();
+            _matcher = null;
+        }
+    }
+
+    /**
+     * Resolves the rating of the supplied party, after which it may be matched. Unrated games
+     * match all parties at the default rating.
+     */
+    protected void resolveRating (final Ticket ticket)
+    {
+        if (!ticket.config.rated) {
+            ticket.ready = true;
+            return;
+        }
+
+        final List<Integer> playerIds = Lists.newArrayListWithCapacity(ticket.size());
+        for (BodyObject body : ticket.party) {
+            playerIds.add(getPlayerPersistentId(body));
+        }
+        _persister.loadRatings(ticket.config.getGameId(), playerIds,
+                               new ResultListener<IntMap<RatingRecord>>() {
+            public void requestCompleted (IntMap<RatingRecord> result) {
+                int total = 0;
+                for (int playerId : playerIds) {
+                    RatingRecord record = result.get(playerId);
+                    total += (record == null) ? RatingCodes.DEFAULT_RATING : record.rating;
+                }
+                ticket.rating = total / playerIds.size();
+                ticket.ready = true;
+            }
+            public void requestFailed (Exception cause) {
+                log.warning("Failed to load ratings for queued party; using default",
+                    "ticket", ticket, cause);
+                ticket.ready = true;
+            }
+        });
+    }
+
+    /**
+     * Returns the persistent id of the supplied player, used to load their rating. This should
+     * agree with the game's {@link GameManager#getPlayerPersistentId}.
+     */
+    protected int getPlayerPersistentId (BodyObject body)
+    {
+        return UserIdentifier.getUserId(body.getVisibleName());
+    }
+
+    /**
+     * Forms matches from all of our queues and creates their games.
+     */
+    protected void formMatches ()
+    {
+        // we notify no one until we're done with the queues, as listeners may join or leave them
+        long now = System.currentTimeMillis();
+        List<Ticket> departed = Lists.newArrayList();
+        List<Tuple<Queue, List<Ticket>>> matched = Lists.newArrayList();
+        for (Iterator<Queue> iter = _queues.values().iterator(); iter.hasNext(); ) {
+            Queue queue = iter.next();
+            // drop parties whose members have departed since they queued
+            for (Ticket ticket : queue._tickets) {
+                if (!ticket.cancelled && !isPresent(ticket)) {
+                    queue.cancel(ticket);
+                    clearTicket(ticket);
+                    departed.add(ticket);
+                }
+            }
+            for (List<Ticket> match : queue.formMatches(now, _window)) {
+                for (Ticket ticket : match) {
+                    clearTicket(ticket);
+                }
+                matched.add(Tuple.newTuple(queue, match));
+            }
+            if (queue.isEmpty()) {
+                iter.remove();
+            }
+        }
+        if (_queues.isEmpty()) {
+            _matcher.cancel();
+            _matcher = null;
+        }
+
+        for (Ticket ticket : departed) {
+            ticket.listener.requestFailed(new InvocationException(QUEUE_CANCELLED));
+        }
+        for (Tuple<Queue, List<Ticket>> match : matched) {
+            createGame(match.left, match.right);
+        }
+    }
+
+    /**
+     * Returns true if all members of the supplied party are still online.
+     */
+    protected boolean isPresent (Ticket ticket)
+    {
+        for (BodyObject body : ticket.party) {
+            if (!body.isActive() || body.status == OccupantInfo.DISCONNECTED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a game for the supplied matched parties and notifies them of it.
+     */
+    protected void createGame (Queue queue, List<Ticket> match)
+    {
+        // the longest waiting party's configuration is used for the game
+        Ticket oldest = match.get(0);
+        List<Name> players = Lists.newArrayListWithCapacity(queue.matchSize);
+        for (Ticket ticket : match) {
+            if (ticket.queuedAt < oldest.queuedAt) {
+                oldest = ticket;
+            }
+            for (BodyObject body : ticket.party) {
+                players.add(body.getVisibleName());
+            }
+        }
+        GameConfig config = oldest.config.clone();
+        config.players = players.toArray(new Name[players.size()]);
+
+        int gameOid;
+        try {
+            GameManager gmgr = createGameManager(config);
+            gameOid = ((GameObject)gmgr.getPlaceObject()).getOid();
+        } catch (Throwable t) {
+            log.warning("Failed to create manager for matched game", "config", config, t);
+            queue._stats.failures++;
+            for (Ticket ticket : match) {
+                ticket.listener.requestFailed(new InvocationException(INTERNAL_ERROR));
+            }
+            return;
+        }
+        for (Ticket ticket : match) {
+            ticket.listener.requestCompleted(gameOid);
+        }
+    }
+
+    /**
+     * Creates a {@link GameManager} using the supplied config, in the same manner as {@link
+     * TableManager#createGameManager}.
+     */
+    protected GameManager createGameManager (GameConfig config)
+        throws InstantiationException, InvocationException
+    {
+        return (GameManager)_plreg.createPlace(config);
+    }
+
+    /**
+     * Removes the supplied ticket from its queue and notifies its listener of the cancellation.
+     */
+    protected void cancel (Ticket ticket, Exception cause)
+    {
+        ticket.queue.cancel(ticket);
+        clearTicket(ticket);
+        ticket.listener.requestFailed(cause);
+    }
+
+    /**
+     * Clears the mappings from the members of the supplied party to its ticket.
+     */
+    protected void clearTicket (Ticket ticket)
+    {
+        for (BodyObject body : ticket.party) {
+            if (_tickets.get(body.getOid()) == ticket) {
+                _tickets.remove(body.getOid());
+            }
+        }
+    }
+
+    /** Our queues, by game configuration and match size. */
+    protected Map<QueueKey, Queue> _queues = Maps.newHashMap();
+
+    /** The ticket for each queued player, by body oid. */
+    protected IntMap<Ticket> _tickets = IntMaps.newHashIntMap();
+
+    /** Periodically forms matches while any parties are queued. */
+    protected Interval _matcher;
+
+    /** The time between attempts to form matches. */
+    protected long _matchInterval = DEFAULT_MATCH_INTERVAL;
+
+    /** The range of ratings accepted by queued parties. */
+    protected RatingWindow _window = DEFAULT_WINDOW;
+
+    @Inject protected RootDObjectManager _omgr;
+    @Inject protected PlaceRegistry _plreg;
+    @Inject protected RatingPersister _persister;
+
+    /** The default time between attempts to form matches. */
+    protected static final long DEFAULT_MATCH_INTERVAL = 1000L;
+
+    /** By default, parties accept opponents within 50 points, widening by 10 points per second
+     * to at most 400 points. */
+    protected static final RatingWindow DEFAULT_WINDOW = new RatingWindow(50, 10, 400);
+
+    /** The number of candidates (per seat) considered when filling a match from any one party. */
+    protected static final int MAX_LOOKAHEAD = 4;
+
+    /** Orders tickets by rating and then by time queued. */
+    protected static final Comparator<Ticket> BY_RATING = new Comparator<Ticket>() {
+        public int compare (Ticket t1, Ticket t2) {
+            if (t1.rating != t2.rating) {
+                return (t1.rating < t2.rating) ? -1 : 1;
+            }
+            return (t1.queuedAt < t2.queuedAt) ? -1 : ((t1.queuedAt == t2.queuedAt) ? 0 : 1);
+        }
+    };
+}
@@ -0,0 +1,515 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.server;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.IntMap;
+import com.samskivert.util.IntMaps;
+import com.samskivert.util.StringUtil;
+
+import com.threerings.presents.data.ClientObject;
+
+import com.threerings.parlor.data.Table;
+import com.threerings.parlor.data.TableQuery;
+
+/**
+ * Maintains filtered, sorted views of the tables managed by a {@link TableManager} so that
+ * clients may subscribe to a window of the tables in a lobby and be sent only the tables in that
+ * window, rather than every table in the lobby object.
+ *
+ * <p> Subscriptions with the same filter (see {@link TableQuery#getFilter}) share a single sorted
+ * view, which is maintained incrementally as tables are listed, updated and unlisted. A change
+ * to a table is only sent to those subscribers whose window it affects.
+ */
+public class TableDirectory
+{
+    /** Statistics on the operation of the directory. */
+    public static class DirectoryStats
+        implements Cloneable
+    {
+        /** The number of active subscriptions. */
+        public int subscriptions;
+
+        /** The number of distinct views maintained for those subscriptions. */
+        public int views;
+
+        /** The number of complete windows sent to subscribers. */
+        public long windowsSent;
+
+        /** The number of single table updates sent to subscribers. */
+        public long updatesSent;
+
+        /** The number of table changes that affected no subscriber's window. */
+        public long changesIgnored;
+
+        @Override
+        public DirectoryStats clone ()
+        {
+            try {
+                return (DirectoryStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
+    /**
+     * Creates a directory of the supplied tables, which is expected to be the table manager's
+     * mapping of all of its tables. Only the tables subsequently reported via {@link
+     * #tableListed} will be visible to subscribers.
+     */
+    public TableDirectory (IntMap<Table> tables)
+    {
+        _tables = tables;
+    }
+
+    /**
+     * Subscribes the supplied client to the tables matching the supplied query, replacing any
+     * previous subscription, and sends it the initial contents of its window.
+     *
+     * @return the id of the newly created subscription.
+     */
+    public int subscribe (ClientObject client, TableQuery query)
+    {
+        unsubscribe(client.getOid());
+
+        TableQuery filter = query.getFilter();
+        View view = _views.get(filter);
+        if (view == null) {
+            _views.put(filter, view = createView(filter));
+        }
+
+        Subscription sub = new Subscription(client, ++_nextSubscriptionId, query, view);
+        view.subs.add(sub);
+        _subs.put(client.getOid(), sub);
+        sendWindow(sub);
+        return sub.id;
+    }
+
+    /**
+     * Returns the id that will be assigned to the next subscription.
+     */
+    public int getNextSubscriptionId ()
+    {
+        return _nextSubscriptionId + 1;
+    }
+
+    /**
+     * Removes the subscription of the specified client, if it has one.
+     */
+    public void unsubscribe (int clientOid)
+    {
+        Subscription sub = _subs.remove(clientOid);
+        if (sub == null) {
+            return;
+        }
+        sub.view.subs.remove(sub);
+        if (sub.view.subs.isEmpty()) {
+            _views.remove(sub.view.filter);
+        }
+    }
+
+    /**
+     * Returns the number of tables that match the supplied query.
+     */
+    public int getMatchCount (TableQuery query)
+    {
+        View view = _views.get(query.getFilter());
+        if (view != null) {
+            return view.entries.size();
+        }
+        int count = 0;
+        for (int tableId : _listed) {
+            Table table = _tables.get(tableId);
+            if (table != null && matches(query, table)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Makes the supplied table visible to subscribers.
+     */
+    public void tableListed (Table table)
+    {
+        if (_listed.add(table.tableId)) {
+            tableChanged(table);
+        } else {
+            tableUpdated(table);
+        }
+    }
+
+    /**
+     * Notes that the supplied table has changed. This is ignored if the table is not listed.
+     */
+    public void tableUpdated (Table table)
+    {
+        if (_listed.contains(table.tableId)) {
+            tableChanged(table);
+        }
+    }
+
+    /**
+     * Removes the specified table from the view of subscribers.
+     */
+    public void tableUnlisted (int tableId)
+    {
+        if (!_listed.remove(tableId)) {
+            return;
+        }
+        boolean affected = false;
+        for (View view : _views.values()) {
+            int oidx = view.remove(tableId);
+            if (oidx >= 0) {
+                affected |= view.tableMoved(oidx, -1, null);
+            }
+        }
+        if (!affected) {
+            _stats.changesIgnored++;
+        }
+        purgeDeparted();
+    }
+
+    /**
+     * Clears out all subscriptions and views.
+     */
+    public void clear ()
+    {
+        _subs.clear();
+        _views.clear();
+        _listed.clear();
+    }
+
+    /**
+     * Returns a snapshot of our statistics.
+     */
+    public DirectoryStats getStats ()
+    {
+        DirectoryStats stats = _stats.clone();
+        stats.subscriptions = _subs.size();
+        stats.views = _views.size();
+        return stats;
+    }
+
+    /**
+     * Returns true if the supplied table matches the filter portion of the supplied query.
+     */
+    protected boolean matches (TableQuery query, Table table)
+    {
+        if (query.gameIdent != null &&
+            (table.config == null || !query.gameIdent.equals(table.config.getGameIdent()))) {
+            return false;
+        }
+        if (!query.includeInPlay && table.inPlay()) {
+            return false;
+        }
+        if (getOpenSeats(table) < query.minOpenSeats) {
+            return false;
+        }
+        int rating = getRating(table);
+        return (rating >= query.minRating && rating <= query.maxRating);
+    }
+
+    /**
+     * Returns the number of unoccupied seats at the supplied table.
+     */
+    protected int getOpenSeats (Table table)
+    {
+        return (table.players == null) ? 0 : table.players.length - table.getOccupiedCount();
+    }
+
+    /**
+     * Returns the rating used to filter and sort the supplied table. Tables have no intrinsic
+     * rating, so this returns zero; derived classes may, for example, use the average rating of
+     * the table's players.
+     */
+    protected int getRating (Table table)
+    {
+        return 0;
+    }
+
+    /**
+     * Returns the key by which the supplied table is sorted in views using the supplied order.
+     * Ties are broken by table id.
+     */
+    protected int getSortKey (byte sortOrder, Table table)
+    {
+        switch (sortOrder) {
+        case TableQuery.SORT_BY_OPEN_SEATS: return getOpenSeats(table);
+        case TableQuery.SORT_BY_RATING: return getRating(table);
+        default: return 0;
+        }
+    }
+
+    /**
+     * Creates and populates a view of the listed tables that match the supplied filter.
+     */
+    protected View createView (TableQuery filter)
+    {
+        View view = new View(filter);
+        for (int tableId : _listed) {
+            Table table = _tables.get(tableId);
+            if (table != null && matches(filter, table)) {
+                Entry entry = new Entry(table, getSortKey(filter.sortOrder, table));
+                view.entries.add(entry);
+                view.byId.put(tableId, entry);
+            }
+        }
+        Collections.sort(view.entries, ENTRY_ORDER);
+        return view;
+    }
+
+    /**
+     * Updates the position of the supplied table in all views, notifying affected subscribers.
+     */
+    protected void tableChanged (Table table)
+    {
+        boolean affected = false;
+        for (View view : _views.values()) {
+            int oidx = view.remove(table.tableId);
+            int nidx = matches(view.filter, table) ? view.insert(table) : -1;
+            if (oidx >= 0 || nidx >= 0) {
+                affected |= view.tableMoved(oidx, nidx, table);
+            }
+        }
+        if (!affected) {
+            _stats.changesIgnored++;
+        }
+        purgeDeparted();
+    }
+
+    /**
+     * Removes the subscriptions of clients found to have logged off while notifying views. This
+     * is deferred until we're no longer iterating over our views.
+     */
+    protected void purgeDeparted ()
+    {
+        for (int ii = 0, ll = _departed.size(); ii < ll; ii++) {
+            unsubscribe(_departed.get(ii).client.getOid());
+        }
+        _departed.clear();
+    }
+
+    /**
+     * Returns true if the supplied subscriber is still logged on.
+     */
+    protected boolean isConnected (ClientObject client)
+    {
+        return client.isActive();
+    }
+
+    /**
+     * Sends the complete contents of the supplied subscription's window to its subscriber.
+     */
+    protected void sendWindow (Subscription sub)
+    {
+        List<Entry> entries = sub.view.entries;
+        int start = Math.min(sub.query.offset, entries.size());
+        int end = Math.min(sub.getEnd(), entries.size());
+        Table[] tables = new Table[end - start];
+        for (int ii = start; ii < end; ii++) {
+            tables[ii - start] = entries.get(ii).table;
+        }
+        TableListSender.tableWindowUpdated(sub.client, sub.id, tables, entries.size());
+        _stats.windowsSent++;
+    }
+
+    /**
+     * Sends the supplied updated table to the supplied subscription's subscriber.
+     */
+    protected void sendUpdate (Subscription sub, Table table)
+    {
+        TableListSender.tableUpdated(sub.client, sub.id, table);
+        _stats.updatesSent++;
+    }
+
+    /** A table in a view along with the sort key it had when it was inserted. */
+    protected static class Entry
+    {
+        /** The table in question. */
+        public final Table table;
+
+        /** The table's sort key when it was inserted, used to locate it after it changes. */
+        public final int sortKey;
+
+        public Entry (Table table, int sortKey) {
+            this.table = table;
+            this.sortKey = sortKey;
+        }
+    }
+
+    /** The sorted tables matching a particular filter and the subscriptions viewing them. */
+    protected class View
+    {
+        /** The filter that defines this view. */
+        public final TableQuery filter;
+
+        /** The matching tables, in sorted order. */
+        public final List<Entry> entries = Lists.newArrayList();
+
+        /** The entries in this view, by table id. */
+        public final IntMap<Entry> byId = IntMaps.newHashIntMap();
+
+        /** The subscriptions viewing this view. */
+        public final List<Subscription> subs = Lists.newArrayList();
+
+        public View (TableQuery filter) {
+            this.filter = filter;
+        }
+
+        /** Removes the specified table, returning the index it occupied or -1. */
+        public int remove (int tableId) {
+            Entry entry = byId.remove(tableId);
+            if (entry == null) {
+                return -1;
+            }
+            int idx = Collections.binarySearch(entries, entry, ENTRY_ORDER);
+            entries.remove(idx);
+            return idx;
+        }
+
+        /** Inserts the supplied table, returning the index at which it was inserted. */
+        public int insert (Table table) {
+            Entry entry = new Entry(table, getSortKey(filter.sortOrder, table));
+            int idx = -(Collections.binarySearch(entries, entry, ENTRY_ORDER) + 1);
+            entries.add(idx, entry);
+            byId.put(table.tableId, entry);
+            return idx;
+        }
+
+        /**
+         * Notifies the subscriptions whose windows are affected by a table moving from one index
+         * to another, either of which may be -1 if the table was added or removed.
+         *
+         * @return true if any subscription was notified.
+         */
+        public boolean tableMoved (int oidx, int nidx, Table table) {
+            boolean notified = false;
+            for (Subscription sub : subs) {
+                if (!isConnected(sub.client)) {
+                    _departed.add(sub);
+
+                } else if (oidx == nidx) {
+                    // the table changed in place, so only its subscribers need the new version
+                    if (oidx >= sub.query.offset && oidx < sub.getEnd()) {
+                        sendUpdate(sub, table);
+                        notified = true;
+                    }
+
+                } else if (affects(sub, oidx, nidx)) {
+                    sendWindow(sub);
+                    notified = true;
+                }
+            }
+            return notified;
+        }
+
+        /** Returns true if a table moving between the specified indices alters the supplied
+         * subscription's window. */
+        protected boolean affects (Subscription sub, int oidx, int nidx) {
+            int start = sub.query.offset, end = sub.getEnd();
+            if (oidx < 0) {
+                return nidx < end; // everything at or after the insertion point shifts right
+            } else if (nidx < 0) {
+                return oidx < end; // everything after the removal point shifts left
+            } else {
+                // a move entirely before or entirely after the window leaves it unchanged
+                return !((oidx < start && nidx < start) || (oidx >= end && nidx >= end));
+            }
+        }
+    }
+
+    /** A client's subscription to a window of a view. */
+    protected static class Subscription
+    {
+        /** The subscribed client. */
+        public final ClientObject client;
+
+        /** The id by which the client identifies this subscription. */
+        public final int id;
+
+        /** The query, including window, to which the client subscribed. */
+        public final TableQuery query;
+
+        /** The view containing the tables matching the query. */
+        public final View view;
+
+        public Subscription (ClientObject client, int id, TableQuery query, View view) {
+            this.client = client;
+            this.id = id;
+            this.query = query;
+            this.view = view;
+        }
+
+        /** Returns the index just past the end of this subscription's window. */
+        public int getEnd () {
+            return (int)Math.min((long)query.offset + query.count, Integer.MAX_VALUE);
+        }
+    }
+
+    /** The table manager's mapping of all of its tables. */
+    protected IntMap<Table> _tables;
+
+    /** The ids of the tables that are visible to subscribers. */
+    protected ArrayIntSet _listed = new ArrayIntSet();
+
+    /** Our views, by filter. */
+    protected Map<TableQuery, View> _views = Maps.newHashMap();
+
+    /** Our subscriptions, by subscriber oid. */
+    protected IntMap<Subscription> _subs = IntMaps.newHashIntMap();
+
+    /** Subscriptions whose clients were found to have logged off, awaiting removal. */
+    protected List<Subscription> _departed = Lists.newArrayList();
+
+    /** Used to assign subscription ids. */
+    protected int _nextSubscriptionId;
+
+    /** Statistics on the operation of the directory. */
+    protected DirectoryStats _stats = new DirectoryStats();
+
+    /** Orders view entries by sort key and then by table id. */
+    protected static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+        public int compare (Entry e1, Entry e2) {
+            if (e1.sortKey != e2.sortKey) {
+                return (e1.sortKey < e2.sortKey) ? -1 : 1;
+            }
+            int id1 = e1.table.tableId, id2 = e2.table.tableId;
+            return (id1 < id2) ? -1 : ((id1 == id2) ? 0 : 1);
+        }
+    };
+}
@@ -0,0 +1,60 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.server;
+
+import com.threerings.parlor.client.TableListDecoder;
+import com.threerings.parlor.client.TableListReceiver;
+import com.threerings.parlor.data.Table;
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationSender;
+
+/**
+ * Used to issue notifications to a {@link TableListReceiver} instance on a
+ * client.
+ */
+public class TableListSender extends InvocationSender
+{
+    /**
+     * Issues a notification that will result in a call to {@link
+     * TableListReceiver#tableUpdated} on a client.
+     */
+    public static void tableUpdated (
+        ClientObject target, int arg1, Table arg2)
+    {
+        sendNotification(
+            target, TableListDecoder.RECEIVER_CODE, TableListDecoder.TABLE_UPDATED,
+            new Object[] { Integer.valueOf(arg1), arg2 });
+    }
+
+    /**
+     * Issues a notification that will result in a call to {@link
+     * TableListReceiver#tableWindowUpdated} on a client.
+     */
+    public static void tableWindowUpdated (
+        ClientObject target, int arg1, Table[] arg2, int arg3)
+    {
+        sendNotification(
+            target, TableListDecoder.RECEIVER_CODE, TableListDecoder.TABLE_WINDOW_UPDATED,
+            new Object[] { Integer.valueOf(arg1), arg2, Integer.valueOf(arg3) });
+    }
+
+}
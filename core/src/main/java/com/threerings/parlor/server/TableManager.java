@@ -23,7 +23,9 @@ package com.threerings.parlor.server;
 
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
+import com.samskivert.util.Interval;
 import com.samskivert.util.ListUtil;
+import com.samskivert.util.StringUtil;
 
 import com.google.common.base.Preconditions;
 
@@ -49,12 +51,14 @@ import com.threerings.crowd.data.OccupantInfo;
 import com.threerings.crowd.data.PlaceObject;
 import com.threerings.crowd.server.PlaceRegistry;
 
+import com.threerings.parlor.client.TableListReceiver;
 import com.threerings.parlor.client.TableService;
 import com.threerings.parlor.data.ParlorCodes;
 import com.threerings.parlor.data.Table;
 import com.threerings.parlor.data.TableConfig;
 import com.threerings.parlor.data.TableLobbyObject;
 import com.threerings.parlor.data.TableMarshaller;
+import com.threerings.parlor.data.TableQuery;
 import com.threerings.parlor.game.data.GameConfig;
 import com.threerings.parlor.game.data.GameObject;
 import com.threerings.parlor.game.server.GameManager;
@@ -68,6 +72,36 @@ import static com.threerings.parlor.Log.log;
 public class TableManager
     implements ParlorCodes, TableProvider
 {
+    /** Statistics on the publication of tables to the lobby object. */
+    public static class LobbyStats
+        implements Cloneable
+    {
+        /** The number of table events published to the lobby object. */
+        public long published;
+
+        /** The number of table events that were coalesced or cancelled rather than published. */
+        public long suppressed;
+
+        /** The number of times pending table changes were flushed to the lobby object. */
+        public int flushes;
+
+        @Override
+        public LobbyStats clone ()
+        {
+            try {
+                return (LobbyStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
     /**
      * Creates a table manager that will manage tables in the supplied distributed object (which
      * must implement {@link TableLobbyObject}.
@@ -78,6 +112,7 @@ public class TableManager
         _omgr = omgr;
         _invmgr = invmgr;
         _plreg = plreg;
+        _directory = createDirectory();
 
         if (tableObject != null) {
             setTableObject(tableObject);
@@ -111,11 +146,61 @@ public class TableManager
         return _tables.size();
     }
 
+    /**
+     * Configures the interval at which table changes are published to the lobby object. If
+     * non-zero, updates to and removals of tables are coalesced such that at most one event is
+     * published per table per interval. New tables are always published immediately, as the
+     * creator's client expects to find its table in the lobby object as soon as its creation
+     * request is processed. If zero (the default), all changes are published immediately.
+     */
+    public void setPublishInterval (long interval)
+    {
+        _publishInterval = interval;
+        if (interval <= 0) {
+            flushLobby();
+        }
+    }
+
+    /**
+     * Configures whether tables are published to the lobby object's tables set. Tables are
+     * published by default. Lobbies with very many tables may disable this to avoid distributing
+     * every table to every occupant, but only if their clients find tables via {@link
+     * TableService#subscribeToTables} and a {@link TableListReceiver}: the stock
+     * {@code TableDirector} reads the tables set and will see no tables at all if this is
+     * disabled.
+     */
+    public void setLobbyPublishing (boolean publish)
+    {
+        _publishToLobby = publish;
+    }
+
+    /**
+     * Returns the directory through which clients subscribe to windows of our tables.
+     */
+    public TableDirectory getDirectory ()
+    {
+        return _directory;
+    }
+
+    /**
+     * Returns a snapshot of our lobby publication statistics.
+     */
+    public LobbyStats getLobbyStats ()
+    {
+        return _lobbyStats.clone();
+    }
+
     /**
      * This must be called when the table manager is no longer needed.
      */
     public void shutdown ()
     {
+        flushLobby();
+        if (_publisher != null) {
+            _publisher.cancel();
+            _publisher = null;
+        }
+        _directory.clear();
         if (_tlobj != null) {
             _invmgr.clearDispatcher(_tlobj.getTableService());
             _tlobj.setTableService(null);
@@ -348,6 +433,35 @@ public class TableManager
         updateTableInLobby(table);
     }
 
+    // from interface TableProvider
+    public void subscribeToTables (ClientObject caller, TableQuery query,
+                                   TableService.ResultListener listener)
+        throws InvocationException
+    {
+        // if we're managing tables in a place, only its occupants may see them
+        if (_dobj instanceof PlaceObject &&
+            !((PlaceObject)_dobj).occupants.contains(caller.getOid())) {
+            throw new InvocationException(INTERNAL_ERROR);
+        }
+
+        // don't let a client request an arbitrarily large window
+        query.offset = Math.max(query.offset, 0);
+        query.count = Math.max(0, Math.min(query.count, MAX_WINDOW_SIZE));
+
+        // report the subscription id before the window arrives so the client will recognize it
+        int subscriptionId = _directory.getNextSubscriptionId();
+        listener.requestProcessed(subscriptionId);
+        _directory.subscribe(caller, query);
+    }
+
+    // from interface TableProvider
+    public void unsubscribeFromTables (ClientObject caller,
+                                       TableService.InvocationListener listener)
+        throws InvocationException
+    {
+        _directory.unsubscribe(caller.getOid());
+    }
+
     /**
      * Publishes a newly created table to the lobby object. Can also be overridden by custom
      * managers that want to react to table creation.
@@ -588,7 +702,22 @@ public class TableManager
      */
     protected void addTableToLobby (Table table)
     {
-        _tlobj.addToTables(table);
+        _directory.tableListed(table);
+        if (!_publishToLobby) {
+            return;
+        }
+
+        PendingChange change = _pending.get(table.tableId);
+        if (change == null) {
+            _tlobj.addToTables(table);
+            _lobbyStats.published++;
+        } else {
+            // the table was removed and re-added within an interval, so it is still published
+            // and we need only publish its latest state when we flush
+            change.action = UPDATE;
+            change.table = table;
+            _lobbyStats.suppressed++;
+        }
     }
 
     /**
@@ -596,9 +725,28 @@ public class TableManager
      */
     protected void updateTableInLobby (Table table)
     {
-        // the table may not have been published, see shouldPublish()
-        if (_tlobj.getTables().containsKey(table.tableId)) {
-            _tlobj.updateTables(table);
+        _directory.tableUpdated(table);
+        if (!_publishToLobby) {
+            return;
+        }
+
+        if (_publishInterval <= 0) {
+            // the table may not have been published, see shouldPublish()
+            if (isInLobby(table.tableId)) {
+                _tlobj.updateTables(table);
+                _lobbyStats.published++;
+            }
+            return;
+        }
+
+        PendingChange change = _pending.get(table.tableId);
+        if (change != null) {
+            // an update is already pending, which will publish the table's latest state when
+            // flushed (and a pending remove takes precedence)
+            _lobbyStats.suppressed++;
+        } else if (isInLobby(table.tableId)) {
+            _pending.put(table.tableId, new PendingChange(UPDATE, table));
+            schedulePublish();
         }
     }
 
@@ -607,8 +755,108 @@ public class TableManager
      */
     protected void removeTableFromLobby (Integer tableId)
     {
-        if (_tlobj.getTables().containsKey(tableId)) {
-            _tlobj.removeFromTables(tableId);
+        _directory.tableUnlisted(tableId);
+        if (!_publishToLobby) {
+            return;
+        }
+
+        if (_publishInterval <= 0) {
+            if (isInLobby(tableId)) {
+                _tlobj.removeFromTables(tableId);
+                _lobbyStats.published++;
+            }
+            return;
+        }
+
+        PendingChange change = _pending.get(tableId);
+        if (change != null) {
+            // the pending update need not be published as the table is going away
+            change.action = REMOVE;
+            change.table = null;
+            _lobbyStats.suppressed++;
+        } else if (isInLobby(tableId)) {
+            _pending.put(tableId, new PendingChange(REMOVE, null));
+            schedulePublish();
+        }
+    }
+
+    /**
+     * Returns true if the specified table is currently published in the lobby object.
+     */
+    protected boolean isInLobby (int tableId)
+    {
+        return _tlobj.getTables().containsKey(tableId);
+    }
+
+    /**
+     * Creates the directory through which clients subscribe to windows of our tables. Derived
+     * classes may override this to supply a directory that, for example, rates tables.
+     */
+    protected TableDirectory createDirectory ()
+    {
+        return new TableDirectory(_tables);
+    }
+
+    /**
+     * Ensures that our pending table changes will be flushed after the publish interval.
+     */
+    protected void schedulePublish ()
+    {
+        if (_pending.size() == 1) {
+            if (_publisher == null) {
+                _publisher = new Interval(_omgr) {
+                    @Override public void expired () {
+                        flushLobby();
+                    }
+                };
+            }
+            _publisher.schedule(_publishInterval);
+        }
+    }
+
+    /**
+     * Publishes all pending table changes to the lobby object in a single transaction.
+     */
+    protected void flushLobby ()
+    {
+        if (_pending.isEmpty() || _tlobj == null) {
+            _pending.clear();
+            return;
+        }
+
+        _lobbyStats.flushes++;
+        _dobj.startTransaction();
+        try {
+            for (IntMap.IntEntry<PendingChange> entry : _pending.intEntrySet()) {
+                PendingChange change = entry.getValue();
+                switch (change.action) {
+                case UPDATE:
+                    _tlobj.updateTables(change.table);
+                    break;
+                case REMOVE:
+                    _tlobj.removeFromTables(entry.getIntKey());
+                    break;
+                }
+                _lobbyStats.published++;
+            }
+        } finally {
+            _dobj.commitTransaction();
+        }
+        _pending.clear();
+    }
+
+    /** A table change awaiting publication to the lobby object. */
+    protected static class PendingChange
+    {
+        /** {@link #UPDATE} or {@link #REMOVE}. */
+        public int action;
+
+        /** The table to be updated. */
+        public Table table;
+
+        public PendingChange (int action, Table table) {
+            this.action = action;
+            this.table = table;
         }
     }
 
@@ -670,6 +918,7 @@ public class TableManager
             // if an occupant departed, see if they are in a pending table
             if (event.getName().equals(PlaceObject.OCCUPANTS)) {
                 bodyLeft(event.getOid());
+                _directory.unsubscribe(event.getOid());
             }
         }
     };
@@ -701,7 +950,31 @@ public class TableManager
     /** Whether or not tables should support booting. */
     protected boolean _allowBooting = false;
 
+    /** The interval at which table changes are published, or zero to publish immediately. */
+    protected long _publishInterval;
+
+    /** Updates and removals awaiting publication, by table id. */
+    protected IntMap<PendingChange> _pending = IntMaps.newHashIntMap();
+
+    /** Publishes our pending table changes, created when first needed. */
+    protected Interval _publisher;
+
+    /** Statistics on the publication of tables to the lobby object. */
+    protected LobbyStats _lobbyStats = new LobbyStats();
+
+    /** Whether tables are published to the lobby object's tables set. */
+    protected boolean _publishToLobby = true;
+
+    /** The directory through which clients subscribe to windows of our tables. */
+    protected TableDirectory _directory;
+
     protected RootDObjectManager _omgr;
     protected InvocationManager _invmgr;
     protected PlaceRegistry _plreg;
+
+    /** The largest window of tables a client may subscribe to. */
+    protected static final int MAX_WINDOW_SIZE = 100;
+
+    /** Pending table change actions. */
+    protected static final int UPDATE = 0, REMOVE = 1;
 }
@@ -25,6 +25,7 @@ import javax.annotation.Generated;
 
 import com.threerings.parlor.client.TableService;
 import com.threerings.parlor.data.TableConfig;
+import com.threerings.parlor.data.TableQuery;
 import com.threerings.parlor.game.data.GameConfig;
 import com.threerings.presents.client.InvocationService;
 import com.threerings.presents.data.ClientObject;
@@ -68,4 +69,16 @@ public interface TableProvider extends InvocationProvider
      */
     void startTableNow (ClientObject caller, int arg1, InvocationService.InvocationListener arg2)
         throws InvocationException;
+
+    /**
+     * Handles a {@link TableService#subscribeToTables} request.
+     */
+    void subscribeToTables (ClientObject caller, TableQuery arg1, InvocationService.ResultListener arg2)
+        throws InvocationException;
+
+    /**
+     * Handles a {@link TableService#unsubscribeFromTables} request.
+     */
+    void unsubscribeFromTables (ClientObject caller, InvocationService.InvocationListener arg1)
+        throws InvocationException;
 }
@@ -0,0 +1,469 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.server;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.util.Interval;
+import com.samskivert.util.RunQueue;
+import com.samskivert.util.StringUtil;
+
+import com.threerings.presents.dobj.RootDObjectManager;
+
+import static com.threerings.parlor.Log.log;
+
+/**
+ * A hierarchical timer wheel that allows many game managers (and their delegates) to share a
+ * single {@link Interval} rather than each scheduling several of their own. Timers are rounded up
+ * to the wheel's resolution and all timers that come due in the same tick are expired in a single
+ * batch on the run queue (generally the distributed object thread). Scheduling and cancelling a
+ * timer are constant time operations.
+ *
+ * <p> The wheel consists of four levels: the first contains a slot for each of the next 256
+ * ticks and each subsequent level contains 64 slots, each of which spans an entire revolution of
+ * the level below it. When a level completes a revolution, the next slot of the level above it is
+ * redistributed ("cascaded") into the levels below.
+ */
+@Singleton
+public class TimerWheel
+{
+    /**
+     * A timer that can be scheduled on a {@link TimerWheel}. The methods mirror those of {@link
+     * Interval} and, like those of Interval, must only be called on the wheel's run queue.
+     */
+    public static abstract class Timer
+    {
+        /**
+         * Creates a timer that will be scheduled on the supplied wheel.
+         */
+        public Timer (TimerWheel wheel)
+        {
+            _wheel = wheel;
+        }
+
+        /**
+         * Called on the wheel's run queue when the timer expires.
+         */
+        public abstract void expired ();
+
+        /**
+         * Schedules this timer to expire once after the specified delay, cancelling any previous
+         * schedule.
+         */
+        public void schedule (long delay)
+        {
+            schedule(delay, 0L);
+        }
+
+        /**
+         * Schedules this timer to expire after the specified delay and, if <code>repeat</code> is
+         * true, every <code>delay</code> milliseconds thereafter.
+         */
+        public void schedule (long delay, boolean repeat)
+        {
+            schedule(delay, repeat ? delay : 0L);
+        }
+
+        /**
+         * Schedules this timer to expire after the specified initial delay and then every
+         * <code>repeatDelay</code> milliseconds thereafter (or only once if the repeat delay is
+         * zero), cancelling any previous schedule.
+         */
+        public void schedule (long initialDelay, long repeatDelay)
+        {
+            cancel();
+            _repeatTicks = (repeatDelay > 0) ? _wheel.toTicks(repeatDelay) : 0L;
+            _wheel.insert(this, _wheel._currentTick + _wheel.toTicks(initialDelay));
+        }
+
+        /**
+         * Cancels this timer.
+         *
+         * @return true if the timer was scheduled (or due to expire in the current batch) and
+         * has been cancelled, false if it was not scheduled.
+         */
+        public boolean cancel ()
+        {
+            switch (_state) {
+            case SCHEDULED:
+                _wheel.unlink(this);
+                break;
+            case DUE:
+                break;
+            default:
+                return false;
+            }
+            _state = IDLE;
+            _repeatTicks = 0L;
+            return true;
+        }
+
+        /**
+         * Returns true if this timer is scheduled to expire.
+         */
+        public boolean isScheduled ()
+        {
+            return _state != IDLE;
+        }
+
+        /** The wheel on which this timer is scheduled. */
+        protected TimerWheel _wheel;
+
+        /** Our scheduling state: idle, scheduled or due to expire in the current batch. */
+        protected int _state = IDLE;
+
+        /** The tick on which this timer is due to expire. */
+        protected long _deadline;
+
+        /** The number of ticks between repeated expirations, or zero. */
+        protected long _repeatTicks;
+
+        /** The level and slot in which we are linked. */
+        protected int _level, _slot;
+
+        /** Our neighbors in our slot's list. */
+        protected Timer _prev, _next;
+    }
+
+    /** Statistics on the wheel's activity. */
+    public static class WheelStats
+        implements Cloneable
+    {
+        /** The number of timers currently scheduled. */
+        public int scheduled;
+
+        /** The number of ticks processed. */
+        public long ticks;
+
+        /** The number of ticks in which at least one timer expired. */
+        public long batches;
+
+        /** The total number of timers expired. */
+        public long expired;
+
+        /** The largest number of timers expired in a single tick. */
+        public int maxBatchSize;
+
+        /** The number of timers moved to a lower level of the wheel. */
+        public long cascaded;
+
+        @Override
+        public WheelStats clone ()
+        {
+            try {
+                return (WheelStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
+    @Inject public TimerWheel (RootDObjectManager omgr)
+    {
+        this(omgr, DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * Creates a wheel that expires its timers on the supplied run queue, with the specified
+     * resolution in milliseconds. If the run queue is null, the wheel will only be advanced by
+     * explicit calls to {@link #advance}.
+     */
+    public TimerWheel (RunQueue runQueue, long resolution)
+    {
+        _runQueue = runQueue;
+        _resolution = resolution;
+        for (int ll = 0; ll < LEVELS; ll++) {
+            _slots[ll] = new Timer[(ll == 0) ? ROOT_SLOTS : LEVEL_SLOTS];
+        }
+    }
+
+    /**
+     * Creates a new timer on this wheel that calls the supplied runnable when it expires.
+     */
+    public Timer newTimer (final Runnable action)
+    {
+        return new Timer(this) {
+            @Override public void expired () {
+                action.run();
+            }
+        };
+    }
+
+    /**
+     * Returns the resolution of this wheel in milliseconds.
+     */
+    public long getResolution ()
+    {
+        return _resolution;
+    }
+
+    /**
+     * Returns a snapshot of this wheel's statistics.
+     */
+    public WheelStats getStats ()
+    {
+        WheelStats stats = _stats.clone();
+        stats.scheduled = _count;
+        return stats;
+    }
+
+    /**
+     * Advances the wheel by the specified number of ticks, expiring all timers that come due.
+     * This is normally called by our driving interval, based on the elapsed time.
+     */
+    protected void advance (long ticks)
+    {
+        for (long tt = 0; tt < ticks && _count > 0; tt++) {
+            long tick = ++_currentTick;
+            _stats.ticks++;
+
+            // cascade the higher levels if the lower levels have completed a revolution
+            for (int ll = 1; ll < LEVELS; ll++) {
+                if ((tick & ((1L << shift(ll)) - 1)) != 0) {
+                    break;
+                }
+                cascade(ll, (int)((tick >> shift(ll)) & (LEVEL_SLOTS - 1)));
+            }
+
+            expire((int)(tick & (ROOT_SLOTS - 1)));
+        }
+
+        // if we have nothing left to do, we can stop the driver; if we ran out of timers before
+        // catching up, fast forward to the present
+        if (_count == 0) {
+            _currentTick = Math.max(_currentTick, _targetTick);
+            if (_driver != null) {
+                _driver.cancel();
+                _driver = null;
+            }
+        }
+    }
+
+    /**
+     * Expires all of the timers in the specified slot of the first level.
+     */
+    protected void expire (int slot)
+    {
+        Timer timer = _slots[0][slot];
+        if (timer == null) {
+            return;
+        }
+
+        // unlink everything in the slot before calling any timers, as they may schedule or cancel
+        // one another
+        _slots[0][slot] = null;
+        for (; timer != null; timer = timer._next) {
+            timer._state = DUE;
+            timer._prev = null;
+            _due.add(timer);
+            _count--;
+        }
+        for (Timer due : _due) {
+            due._next = null;
+        }
+
+        int size = _due.size();
+        _stats.batches++;
+        _stats.expired += size;
+        _stats.maxBatchSize = Math.max(_stats.maxBatchSize, size);
+
+        try {
+            for (int ii = 0; ii < size; ii++) {
+                Timer due = _due.get(ii);
+                if (due._state != DUE) {
+                    continue; // cancelled or rescheduled by an earlier timer in this batch
+                }
+                if (due._repeatTicks > 0) {
+                    insert(due, _currentTick + due._repeatTicks);
+                } else {
+                    due._state = IDLE;
+                }
+                try {
+                    due.expired();
+                } catch (Throwable t) {
+                    log.warning("Timer choked during expiration", "timer", due, t);
+                }
+            }
+        } finally {
+            _due.clear();
+        }
+    }
+
+    /**
+     * Redistributes the timers in the specified slot of the specified level into lower levels.
+     */
+    protected void cascade (int level, int slot)
+    {
+        Timer timer = _slots[level][slot];
+        _slots[level][slot] = null;
+        while (timer != null) {
+            Timer next = timer._next;
+            timer._prev = timer._next = null;
+            _count--;
+            insert(timer, timer._deadline);
+            _stats.cascaded++;
+            timer = next;
+        }
+    }
+
+    /**
+     * Links the supplied timer into the appropriate slot for the specified deadline.
+     */
+    protected void insert (Timer timer, long deadline)
+    {
+        // a timer cascaded on the tick of its deadline goes into the slot about to be expired
+        deadline = Math.max(deadline, _currentTick);
+        long delta = deadline - _currentTick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << shift(level + 1))) {
+            level++;
+        }
+        // if the deadline is beyond the range of the wheel, park it as far out as we can; it
+        // will be cascaded back up to the top level until it comes within range
+        long slotTick = Math.min(deadline, _currentTick + (1L << shift(LEVELS)) - 1);
+        int slot = (int)((slotTick >> shift(level)) & (_slots[level].length - 1));
+
+        timer._deadline = deadline;
+        timer._level = level;
+        timer._slot = slot;
+        timer._state = SCHEDULED;
+        timer._prev = null;
+        timer._next = _slots[level][slot];
+        if (timer._next != null) {
+            timer._next._prev = timer;
+        }
+        _slots[level][slot] = timer;
+        _count++;
+
+        startDriver();
+    }
+
+    /**
+     * Removes the supplied (scheduled) timer from its slot.
+     */
+    protected void unlink (Timer timer)
+    {
+        if (timer._prev == null) {
+            _slots[timer._level][timer._slot] = timer._next;
+        } else {
+            timer._prev._next = timer._next;
+        }
+        if (timer._next != null) {
+            timer._next._prev = timer._prev;
+        }
+        timer._prev = timer._next = null;
+        _count--;
+    }
+
+    /**
+     * Starts the interval that drives the wheel if it is not already running.
+     */
+    protected void startDriver ()
+    {
+        if (_driver != null || _runQueue == null) {
+            return;
+        }
+
+        // the wheel does not advance while idle, so pick up our clock from where we left off
+        _epoch = System.currentTimeMillis() - _currentTick * _resolution;
+        _driver = new Interval(_runQueue) {
+            @Override public void expired () {
+                _targetTick = (System.currentTimeMillis() - _epoch) / _resolution;
+                advance(_targetTick - _currentTick);
+            }
+        };
+        _driver.schedule(_resolution, true);
+    }
+
+    /**
+     * Converts the supplied delay into a (positive) number of ticks, rounding up.
+     */
+    protected long toTicks (long delay)
+    {
+        return Math.max(1L, (delay + _resolution - 1) / _resolution);
+    }
+
+    /**
+     * Returns the number of bits by which a tick must be shifted to obtain its slot in the
+     * specified level.
+     */
+    protected static int shift (int level)
+    {
+        return (level == 0) ? 0 : ROOT_BITS + (level - 1) * LEVEL_BITS;
+    }
+
+    /** The queue on which we expire timers. */
+    protected RunQueue _runQueue;
+
+    /** The duration of a tick, in milliseconds. */
+    protected long _resolution;
+
+    /** The slots of each level of the wheel, each containing a list of timers. */
+    protected Timer[][] _slots = new Timer[LEVELS][];
+
+    /** The most recently processed tick. */
+    protected long _currentTick;
+
+    /** The tick to which the driver is currently advancing the wheel. */
+    protected long _targetTick;
+
+    /** The time corresponding to tick zero. */
+    protected long _epoch;
+
+    /** The number of timers linked into the wheel. */
+    protected int _count;
+
+    /** The interval that drives the wheel while timers are scheduled. */
+    protected Interval _driver;
+
+    /** Used to collect the timers that expire on a particular tick. */
+    protected List<Timer> _due = Lists.newArrayList();
+
+    /** Statistics on our activity. */
+    protected WheelStats _stats = new WheelStats();
+
+    /** Timer states. */
+    protected static final int IDLE = 0, SCHEDULED = 1, DUE = 2;
+
+    /** The default wheel resolution, in milliseconds. */
+    protected static final long DEFAULT_RESOLUTION = 100L;
+
+    /** The number of levels in the wheel. */
+    protected static final int LEVELS = 4;
+
+    /** The number of bits of the tick used to index the first level and each other level. */
+    protected static final int ROOT_BITS = 8, LEVEL_BITS = 6;
+
+    /** The number of slots in the first level and each other level. */
+    protected static final int ROOT_SLOTS = 1 << ROOT_BITS, LEVEL_SLOTS = 1 << LEVEL_BITS;
+}
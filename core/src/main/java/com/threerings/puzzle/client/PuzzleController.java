@@ -53,6 +53,7 @@ import com.threerings.parlor.game.client.GameController;
 import com.threerings.parlor.game.data.GameObject;
 
 import com.threerings.puzzle.data.Board;
+import com.threerings.puzzle.data.BoardSummary;
 import com.threerings.puzzle.data.PuzzleCodes;
 import com.threerings.puzzle.data.PuzzleObject;
 import com.threerings.puzzle.util.PuzzleContext;
@@ -778,6 +779,22 @@ public abstract class PuzzleController extends GameController
         });
     }
 
+    /**
+     * Called when a player's board summary is updated. If the server sent a delta rather than a
+     * complete summary, it is applied to the player's previous summary, which is then restored to
+     * the puzzle object. Listeners that wish to see the complete summary should be registered
+     * after this controller enters the place, or read the summary from the puzzle object later.
+     */
+    protected void summaryUpdated (ElementUpdatedEvent event)
+    {
+        BoardSummary summary = (BoardSummary)event.getValue();
+        BoardSummary osummary = (BoardSummary)event.getOldValue();
+        if (summary != null && summary.isDelta() && osummary != null) {
+            osummary.applyDelta(summary);
+            _puzobj.summaries[event.getIndex()] = osummary;
+        }
+    }
+
     /**
      * Catches clicks an unpauses, without passing the click through to the puzzle.
      */
@@ -863,6 +880,8 @@ public abstract class PuzzleController extends GameController
                 if (event.getIntValue() == GameObject.PLAYER_LEFT_GAME) {
                     playerKnockedOut(event.getIndex());
                 }
+            } else if (name.equals(PuzzleObject.SUMMARIES)) {
+                summaryUpdated(event);
             }
         }
     };
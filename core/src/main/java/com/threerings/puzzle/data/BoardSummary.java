@@ -68,6 +68,64 @@ public abstract class BoardSummary extends SimpleStreamableObject
      */
     public abstract void summarize ();
 
+    /**
+     * Returns true if this summary may differ from the summary that was last published to the
+     * clients (as noted by a call to {@link #published}). The default implementation is unable to
+     * tell and so always returns true.
+     */
+    public boolean isModified ()
+    {
+        return true;
+    }
+
+    /**
+     * Called by the {@link com.threerings.puzzle.server.PuzzleManager} when this summary has been
+     * published to the clients, either in full or via a delta.
+     */
+    public void published ()
+    {
+        // nothing by default
+    }
+
+    /**
+     * Creates a delta that will transform the summary that was last published to the clients into
+     * this summary when applied via {@link #applyDelta}, or returns null if deltas are not
+     * supported or the delta would not be smaller than this summary. The default implementation
+     * returns null.
+     */
+    public BoardSummary createDelta ()
+    {
+        return null;
+    }
+
+    /**
+     * Returns true if this summary is a delta created by {@link #createDelta} rather than a
+     * complete summary.
+     */
+    public boolean isDelta ()
+    {
+        return false;
+    }
+
+    /**
+     * Updates this summary with the contents of the supplied delta. This is only ever called with
+     * deltas created by {@link #createDelta}, so derived classes that create deltas must override
+     * it; the default implementation does nothing.
+     */
+    public void applyDelta (BoardSummary delta)
+    {
+        // nothing by default
+    }
+
+    /**
+     * Returns the approximate number of bytes required to marshal this summary, for use in
+     * tracking the savings made by publishing deltas. The default implementation returns zero.
+     */
+    public int getPayloadSize ()
+    {
+        return 0;
+    }
+
     /** The board that we're summarizing.  This is only valid on the server, and on the client only
      * for the actual player's board. */
     protected transient Board _board;
@@ -0,0 +1,356 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.puzzle.drop.data;
+
+import java.util.Arrays;
+
+import com.threerings.puzzle.data.Board;
+
+/**
+ * A {@link DropBoard} that additionally maintains bitboards of the occupied cells in each row
+ * and column, and of the cells containing each piece type, allowing drop distances, column
+ * levels and runs of like pieces to be computed a row or column at a time rather than a piece at
+ * a time. Boards may be no more than 64 pieces wide or high.
+ *
+ * <p> The bitboards are derived from the piece array, which remains the canonical (and
+ * serialized) representation of the board. They are rebuilt on demand when the board data is
+ * replaced wholesale, so callers that modify the array returned by {@link #getBoard} directly
+ * must call {@link #boardModified} afterwards.
+ */
+public class BitDropBoard extends DropBoard
+{
+    /** The maximum width or height of a bit drop board. */
+    public static final int MAX_DIMENSION = 64;
+
+    /**
+     * Constructs an empty drop board for use when unserializing.
+     */
+    public BitDropBoard ()
+    {
+    }
+
+    /**
+     * Constructs a drop board of the given dimensions with its pieces initialized to PIECE_NONE,
+     * maintaining bitboards for the specified number of piece types.
+     */
+    public BitDropBoard (int bwid, int bhei, int pieceTypes)
+    {
+        super(bwid, bhei);
+        init(pieceTypes);
+    }
+
+    /**
+     * Constructs a drop board with the given board and dimensions, maintaining bitboards for the
+     * specified number of piece types.
+     */
+    public BitDropBoard (int[] board, int bwid, int bhei, int pieceTypes)
+    {
+        super(board, bwid, bhei);
+        init(pieceTypes);
+    }
+
+    /**
+     * Returns a bitmask with a bit set for each column in the specified row that is part of a
+     * horizontal run of at least <code>minLength</code> of the specified piece.
+     */
+    public long getHorizontalRuns (int piece, int row, int minLength)
+    {
+        ensureBits();
+        return isTracked(piece) ? findRuns(_rowBits[piece][row], minLength) : 0L;
+    }
+
+    /**
+     * Returns a bitmask with a bit set for each row in the specified column that is part of a
+     * vertical run of at least <code>minLength</code> of the specified piece.
+     */
+    public long getVerticalRuns (int piece, int col, int minLength)
+    {
+        ensureBits();
+        return isTracked(piece) ? findRuns(_colBits[piece][col], minLength) : 0L;
+    }
+
+    /**
+     * Returns a bitmask with a bit set for each column in the specified row that contains the
+     * specified piece.
+     */
+    public long getRowPieces (int piece, int row)
+    {
+        ensureBits();
+        return isTracked(piece) ? _rowBits[piece][row] : 0L;
+    }
+
+    /**
+     * Returns a bitmask with a bit set for each row in the specified column that contains the
+     * specified piece.
+     */
+    public long getColumnPieces (int piece, int col)
+    {
+        ensureBits();
+        return isTracked(piece) ? _colBits[piece][col] : 0L;
+    }
+
+    @Override
+    public boolean setPiece (int col, int row, int piece)
+    {
+        if (!isValidPosition(col, row)) {
+            return super.setPiece(col, row, piece); // log the failure
+        }
+
+        int idx = coordsToIndex(col, row), opiece = _board[idx];
+        _board[idx] = piece;
+        if (_bitsValid && opiece != piece) {
+            updateBits(col, row, opiece, false);
+            updateBits(col, row, piece, true);
+        }
+        return true;
+    }
+
+    @Override
+    public void fill (int piece)
+    {
+        super.fill(piece);
+        boardModified();
+    }
+
+    @Override
+    public void setBoard (int[] board, int bwid, int bhei)
+    {
+        super.setBoard(board, bwid, bhei);
+        boardModified();
+    }
+
+    @Override
+    public void setBoard (int[] board)
+    {
+        super.setBoard(board);
+        boardModified();
+    }
+
+    @Override
+    public void boardModified ()
+    {
+        _bitsValid = false;
+    }
+
+    @Override
+    public int getDropDistance (int col, int row)
+    {
+        if (col < 0 || col >= _bwid || row >= _bhei) {
+            return super.getDropDistance(col, row);
+        }
+        ensureBits();
+        long below;
+        if (row < 0) {
+            below = _colOcc[col];
+        } else if (row + 1 < MAX_DIMENSION) {
+            below = _colOcc[col] & (-1L << (row + 1));
+        } else {
+            below = 0L; // shifting by 64 would leave the mask unchanged
+        }
+        // rows are numbered from the top, so the lowest set bit is the topmost piece below us
+        return (below == 0L) ? (_bhei - 1 - row) : (Long.numberOfTrailingZeros(below) - row - 1);
+    }
+
+    @Override
+    public boolean isRowEmpty (int row)
+    {
+        ensureBits();
+        return _rowOcc[row] == 0L;
+    }
+
+    @Override
+    public boolean rowContainsPieces (int row, int blankPiece)
+    {
+        return (blankPiece == PIECE_NONE) ? !isRowEmpty(row) :
+            super.rowContainsPieces(row, blankPiece);
+    }
+
+    @Override
+    public void getColumnLevels (byte[] columns)
+    {
+        ensureBits();
+        for (int col = 0; col < _bwid; col++) {
+            long occ = _colOcc[col];
+            columns[col] = (byte)((occ == 0L) ? 0 : (_bhei - Long.numberOfTrailingZeros(occ)));
+        }
+    }
+
+    @Override
+    public boolean equals (Board other)
+    {
+        if (other instanceof BitDropBoard) {
+            BitDropBoard bother = (BitDropBoard)other;
+            if (bother.getClass() == getClass() && bother._bwid == _bwid &&
+                bother._bhei == _bhei) {
+                int size = size();
+                for (int ii = 0; ii < size; ii++) {
+                    if (_board[ii] != bother._board[ii]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return super.equals(other);
+    }
+
+    @Override
+    public BitDropBoard clone ()
+    {
+        BitDropBoard board = (BitDropBoard)super.clone();
+        if (_bitsValid) {
+            board._colOcc = _colOcc.clone();
+            board._rowOcc = _rowOcc.clone();
+            board._colBits = deepClone(_colBits);
+            board._rowBits = deepClone(_rowBits);
+        } else {
+            board._colOcc = board._rowOcc = null;
+            board._colBits = board._rowBits = null;
+        }
+        return board;
+    }
+
+    /**
+     * Configures the number of piece types we track.
+     */
+    protected void init (int pieceTypes)
+    {
+        if (_bwid > MAX_DIMENSION || _bhei > MAX_DIMENSION) {
+            throw new IllegalArgumentException(
+                "Board too large for bitboards [wid=" + _bwid + ", hei=" + _bhei + "]");
+        }
+        _pieceTypes = pieceTypes;
+    }
+
+    /**
+     * Returns true if we maintain bitboards for the specified piece.
+     */
+    protected boolean isTracked (int piece)
+    {
+        return piece >= 0 && piece < _pieceTypes;
+    }
+
+    /**
+     * Rebuilds our bitboards from the board data if they have been invalidated.
+     */
+    protected void ensureBits ()
+    {
+        if (_bitsValid) {
+            return;
+        }
+
+        if (_colOcc == null || _colOcc.length != _bwid || _rowOcc.length != _bhei ||
+                _colBits.length != _pieceTypes) {
+            _colOcc = new long[_bwid];
+            _rowOcc = new long[_bhei];
+            _colBits = new long[_pieceTypes][_bwid];
+            _rowBits = new long[_pieceTypes][_bhei];
+        } else {
+            Arrays.fill(_colOcc, 0L);
+            Arrays.fill(_rowOcc, 0L);
+            for (int ii = 0; ii < _pieceTypes; ii++) {
+                Arrays.fill(_colBits[ii], 0L);
+                Arrays.fill(_rowBits[ii], 0L);
+            }
+        }
+
+        _bitsValid = true;
+        for (int row = 0; row < _bhei; row++) {
+            for (int col = 0; col < _bwid; col++) {
+                updateBits(col, row, _board[coordsToIndex(col, row)], true);
+            }
+        }
+    }
+
+    /**
+     * Sets or clears the bits associated with the specified piece at the specified location.
+     */
+    protected void updateBits (int col, int row, int piece, boolean set)
+    {
+        if (piece == PIECE_NONE) {
+            return;
+        }
+        long cbit = 1L << row, rbit = 1L << col;
+        if (set) {
+            _colOcc[col] |= cbit;
+            _rowOcc[row] |= rbit;
+        } else {
+            _colOcc[col] &= ~cbit;
+            _rowOcc[row] &= ~rbit;
+        }
+        if (isTracked(piece)) {
+            if (set) {
+                _colBits[piece][col] |= cbit;
+                _rowBits[piece][row] |= rbit;
+            } else {
+                _colBits[piece][col] &= ~cbit;
+                _rowBits[piece][row] &= ~rbit;
+            }
+        }
+    }
+
+    /**
+     * Returns a mask of all bits in the supplied bits that are part of a run of at least the
+     * specified length.
+     */
+    protected static long findRuns (long bits, int minLength)
+    {
+        // first find the bits that start a run of the desired length...
+        long starts = bits;
+        for (int ii = 1; ii < minLength && starts != 0L; ii++) {
+            starts &= bits >>> ii;
+        }
+        // ...then extend each start through the rest of its run
+        long runs = starts;
+        for (int ii = 1; ii < minLength && starts != 0L; ii++) {
+            runs |= starts << ii;
+        }
+        return runs;
+    }
+
+    /**
+     * Returns a deep copy of the supplied two-dimensional array.
+     */
+    protected static long[][] deepClone (long[][] bits)
+    {
+        long[][] copy = new long[bits.length][];
+        for (int ii = 0; ii < bits.length; ii++) {
+            copy[ii] = bits[ii].clone();
+        }
+        return copy;
+    }
+
+    /** The number of piece types for which we maintain bitboards. */
+    protected int _pieceTypes = DEFAULT_PIECE_TYPES;
+
+    /** Whether our bitboards reflect the current board data. */
+    protected transient boolean _bitsValid;
+
+    /** The occupied rows of each column and occupied columns of each row. */
+    protected transient long[] _colOcc, _rowOcc;
+
+    /** The rows of each column and columns of each row containing each piece type. */
+    protected transient long[][] _colBits, _rowBits;
+
+    /** The default number of piece types for which we maintain bitboards. */
+    protected static final int DEFAULT_PIECE_TYPES = 16;
+}
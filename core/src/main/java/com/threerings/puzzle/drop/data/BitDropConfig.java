@@ -0,0 +1,38 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.puzzle.drop.data;
+
+/**
+ * An extension of {@link DropConfig} implemented by the configurations of games that wish to use
+ * a {@link BitDropBoard} rather than a plain {@link DropBoard}.
+ *
+ * @see com.threerings.puzzle.drop.util.DropBoardUtil#createBoard
+ */
+public interface BitDropConfig extends DropConfig
+{
+    /** Returns true if this game's boards should be backed by bitboards. */
+    public boolean useBitBoards ();
+
+    /** Returns the number of distinct piece types (with values from zero to one less than this
+     * count) for which bitboards should be maintained. */
+    public int getPieceTypeCount ();
+}
@@ -258,6 +258,23 @@ public class DropBoard extends Board
      */
     public int[] getForgivingRotation (
         int[] rows, int[] cols, int orient, int dir, int rtype, float pctdone, boolean canPopup)
+    {
+        int[] result = new int[4];
+        return getForgivingRotation(rows, cols, orient, dir, rtype, pctdone, canPopup, result) ?
+            result : null;
+    }
+
+    /**
+     * Rotates the given block in the given direction and fills in the supplied four element array
+     * with its final state as described in {@link #getForgivingRotation(int[],int[],int,int,int,
+     * float,boolean)}. This variant allows callers that rotate frequently to avoid allocating a
+     * result array for every rotation.
+     *
+     * @return true if the block could be rotated, false if not (in which case the contents of the
+     * result array are undefined).
+     */
+    public boolean getForgivingRotation (int[] rows, int[] cols, int orient, int dir, int rtype,
+                                         float pctdone, boolean canPopup, int[] result)
     {
         int px = cols[0], py = rows[0];
 
@@ -294,7 +311,7 @@ public class DropBoard extends Board
 //                    log.info("Block is empty", "ox", ox + "cx", cx, "oy", oy, "oidx", oidx,
 //                        "orient", DirectionUtil.toShortString(orient), "owid", ORIENT_WIDTHS[oidx],
 //                        "ohei", ORIENT_HEIGHTS[oidx]);
-                    return new int[] { orient, px + cx, py, 0 };
+                    return setRotation(result, orient, px + cx, py, 0);
                 }
             }
 
@@ -307,7 +324,7 @@ public class DropBoard extends Board
 //                        "ox", ox, "oy", (oy - 1), "oidx", oidx,
  //                       "orient", DirectionUtil.toShortString(orient), "owid", ORIENT_WIDTHS[oidx],
   //                      "ohei", ORIENT_HEIGHTS[oidx], "bhei", _bhei);
-                    return new int[] { orient, px, py - 1, 1 };
+                    return setRotation(result, orient, px, py - 1, 1);
                 }
             }
         }
@@ -316,7 +333,7 @@ public class DropBoard extends Board
         // is entirely surrounded by other pieces there are always two valid orientations.
         log.warning("**** We're horked and couldn't rotate at all!");
 //         System.exit(0);
-        return null;
+        return false;
     }
 
     /**
@@ -453,6 +470,9 @@ public class DropBoard extends Board
      */
     public boolean setSegment (int dir, int col, int row, int len, int piece)
     {
+        if (_setPieceOp == null) {
+            _setPieceOp = new SetPieceOperation();
+        }
         _setPieceOp.init(piece);
         applyOp(dir, col, row, len, _setPieceOp);
         return !_setPieceOp.getError();
@@ -468,6 +488,9 @@ public class DropBoard extends Board
      */
     public void setSegment (int dir, int col, int row, int[] pieces)
     {
+        if (_setSegmentOp == null) {
+            _setSegmentOp = new SetSegmentOperation();
+        }
         _setSegmentOp.init(dir, pieces);
         applyOp(dir, col, row, pieces.length, _setSegmentOp);
     }
@@ -654,6 +677,17 @@ public class DropBoard extends Board
         // is largely the point of this method, after all.
         int[] dest = board.getBoard();
         System.arraycopy(_board, 0, dest, 0, (_bwid*_bhei));
+        board.boardModified();
+    }
+
+    /**
+     * Notes that the raw board data was modified other than via {@link #setPiece}, allowing
+     * derived classes to discard any state computed from it. Callers that modify the array
+     * returned by {@link #getBoard} directly must call this when they're done.
+     */
+    public void boardModified ()
+    {
+        // nothing by default
     }
 
     /**
@@ -695,9 +729,24 @@ public class DropBoard extends Board
     {
         DropBoard board = (DropBoard)super.clone();
         board._board = _board.clone();
+        // the clone may be used on another thread, so it must not share our scratch operations
+        board._setSegmentOp = null;
+        board._setPieceOp = null;
         return board;
     }
 
+    /**
+     * Fills in the supplied rotation result array.
+     */
+    protected static boolean setRotation (int[] result, int orient, int col, int row, int popped)
+    {
+        result[0] = orient;
+        result[1] = col;
+        result[2] = row;
+        result[3] = popped;
+        return true;
+    }
+
     /**
      * Converts from column & row to an index into our board array.
      */
@@ -814,6 +863,13 @@ public class DropBoard extends Board
     /** The bounds of this board. */
     protected transient Rectangle _bounds;
 
+    /** The operation used to set the pieces in a board segment, created on demand. Each board
+     * has its own so that boards may be manipulated on different threads. */
+    protected transient SetSegmentOperation _setSegmentOp;
+
+    /** The operation used to set a piece in a board segment, created on demand. */
+    protected transient SetPieceOperation _setPieceOp;
+
     // used to reconfigure the block when rotating it
     protected static final int[][][] ROTATE_DX = {
         //  W  N  E  S       W  N  E  S
@@ -843,12 +899,6 @@ public class DropBoard extends Board
     // used to coerce the block when rotating either a space to the left or right (or not at all)
     protected static final int[] COERCE_DX = { 0, 1, -1 };
 
-    /** The operation used to set the pieces in a board segment. */
-    protected static final SetSegmentOperation _setSegmentOp = new SetSegmentOperation();
-
-    /** The operation used to set a piece in a board segment. */
-    protected static final SetPieceOperation _setPieceOp = new SetPieceOperation();
-
     /** The number of characters to which each board piece should be padded when outputting for
      * debug purposes. */
     protected static final int DEFAULT_PAD_WIDTH = 3;
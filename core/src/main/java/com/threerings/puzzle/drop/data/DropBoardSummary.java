@@ -21,6 +21,8 @@
 
 package com.threerings.puzzle.drop.data;
 
+import java.util.Arrays;
+
 import com.threerings.puzzle.data.Board;
 import com.threerings.puzzle.data.BoardSummary;
 
@@ -29,9 +31,12 @@ import com.threerings.puzzle.data.BoardSummary;
  */
 public class DropBoardSummary extends BoardSummary
 {
-    /** The row levels for each column. */
+    /** The row levels for each column, or in a delta, the row levels for the changed columns. */
     public byte[] columns;
 
+    /** In a delta, the indices of the changed columns; null in a complete summary. */
+    public byte[] changed;
+
     /**
      * Constructs an empty drop board summary for use when un-serializing.
      */
@@ -83,6 +88,90 @@ public class DropBoardSummary extends BoardSummary
         _dboard.getColumnLevels(columns);
     }
 
+    @Override
+    public boolean isModified ()
+    {
+        return !isSummarizedByColumns() || !Arrays.equals(columns, _published);
+    }
+
+    @Override
+    public void published ()
+    {
+        if (_published == null || _published.length != columns.length) {
+            _published = columns.clone();
+        } else {
+            System.arraycopy(columns, 0, _published, 0, columns.length);
+        }
+    }
+
+    @Override
+    public BoardSummary createDelta ()
+    {
+        // column indices are sent as bytes, so we can't delta enormously wide boards
+        if (!isSummarizedByColumns() || _published == null ||
+            _published.length != columns.length || columns.length > 256) {
+            return null;
+        }
+
+        int count = 0;
+        for (int ii = 0; ii < columns.length; ii++) {
+            if (columns[ii] != _published[ii]) {
+                count++;
+            }
+        }
+        // a delta costs two bytes per changed column, so only bother if it's smaller
+        if (count * 2 >= columns.length) {
+            return null;
+        }
+
+        DropBoardSummary delta = new DropBoardSummary();
+        delta.columns = new byte[count];
+        delta.changed = new byte[count];
+        for (int ii = 0, idx = 0; ii < columns.length; ii++) {
+            if (columns[ii] != _published[ii]) {
+                delta.changed[idx] = (byte)ii;
+                delta.columns[idx++] = columns[ii];
+            }
+        }
+        return delta;
+    }
+
+    @Override
+    public boolean isDelta ()
+    {
+        return (changed != null);
+    }
+
+    @Override
+    public void applyDelta (BoardSummary delta)
+    {
+        DropBoardSummary ddelta = (DropBoardSummary)delta;
+        for (int ii = 0; ii < ddelta.changed.length; ii++) {
+            columns[ddelta.changed[ii] & 0xFF] = ddelta.columns[ii];
+        }
+    }
+
+    @Override
+    public int getPayloadSize ()
+    {
+        return columns.length + ((changed == null) ? 0 : changed.length);
+    }
+
+    /**
+     * Returns true if {@link #columns} is the only published state of this summary, in which case
+     * changes are detected and deltas created by comparing the columns alone. Derived classes
+     * that add streamed fields of their own are always republished in full unless they override
+     * this method to return true (in which case they must also override {@link #isModified},
+     * {@link #createDelta} and {@link #applyDelta} to account for those fields).
+     */
+    protected boolean isSummarizedByColumns ()
+    {
+        return getClass() == DropBoardSummary.class;
+    }
+
     /** The drop board we're summarizing. */
     protected transient DropBoard _dboard;
+
+    /** The column levels as of our last publication, on the server. */
+    protected transient byte[] _published;
 }
@@ -44,6 +44,14 @@ public class SegmentInfo
      * Constructs a segment info object.
      */
     public SegmentInfo (int dir, int x, int y, int len)
+    {
+        set(dir, x, y, len);
+    }
+
+    /**
+     * Reinitializes this segment info object so that it may be reused.
+     */
+    public void set (int dir, int x, int y, int len)
     {
         this.dir = dir;
         this.x = x;
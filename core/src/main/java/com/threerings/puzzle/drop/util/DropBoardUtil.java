@@ -23,6 +23,11 @@ package com.threerings.puzzle.drop.util;
 
 import com.threerings.util.DirectionCodes;
 
+import com.threerings.puzzle.drop.data.BitDropBoard;
+import com.threerings.puzzle.drop.data.BitDropConfig;
+import com.threerings.puzzle.drop.data.DropBoard;
+import com.threerings.puzzle.drop.data.DropConfig;
+
 public class DropBoardUtil
     implements DirectionCodes
 {
@@ -56,4 +61,20 @@ public class DropBoardUtil
     {
         return (orient + ((dir == CW) ? 2 : 6)) % DIRECTION_COUNT;
     }
+
+    /**
+     * Creates an empty board of the dimensions specified by the supplied configuration. A
+     * {@link BitDropBoard} is created if the configuration is a {@link BitDropConfig} that
+     * requests one and the board is small enough to be represented with bitboards, otherwise a
+     * plain {@link DropBoard} is created.
+     */
+    public static DropBoard createBoard (DropConfig config)
+    {
+        int bwid = config.getBoardWidth(), bhei = config.getBoardHeight();
+        if (config instanceof BitDropConfig && ((BitDropConfig)config).useBitBoards() &&
+                bwid <= BitDropBoard.MAX_DIMENSION && bhei <= BitDropBoard.MAX_DIMENSION) {
+            return new BitDropBoard(bwid, bhei, ((BitDropConfig)config).getPieceTypeCount());
+        }
+        return new DropBoard(bwid, bhei);
+    }
 }
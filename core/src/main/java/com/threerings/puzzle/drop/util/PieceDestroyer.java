@@ -67,8 +67,12 @@ public class PieceDestroyer
      * Destroys all pieces in the given board that are in contiguous rows or columns of pieces,
      * returning a list of {@link SegmentInfo} objects detailing the destroyed piece segments.
      * Note that a single list is used internally to gather the segment info, and so callers that
-     * care to modify the list should create their own copy; also, the pieces in the segments may
-     * overlap, i.e., two segments may contain the same piece.
+     * care to modify the list should create their own copy; likewise the segment info objects
+     * themselves are reused by subsequent calls. Also, the pieces in the segments may overlap,
+     * i.e., two segments may contain the same piece.
+     *
+     * <p> This method allocates nothing once the destroyer has warmed up, but as a result a
+     * destroyer must not be used by multiple threads at once.
      */
     public List<SegmentInfo> destroyPieces (DropBoard board, PieceOperation destroyOp)
     {
@@ -112,11 +116,28 @@ public class PieceDestroyer
         board.applyOp(dir, x, y, _lengthOp);
         int len = _lengthOp.getLength();
         if (len >= _logic.getMinimumLength()) {
-            _destroyed.add(new SegmentInfo(dir, x, y, len));
+            _destroyed.add(obtainSegment(dir, x, y, len));
         }
         return len;
     }
 
+    /**
+     * Returns a segment info object from our pool (creating one if needed) initialized with the
+     * specified values.
+     */
+    protected SegmentInfo obtainSegment (int dir, int x, int y, int len)
+    {
+        int size = _destroyed.size();
+        if (size < _segments.size()) {
+            SegmentInfo si = _segments.get(size);
+            si.set(dir, x, y, len);
+            return si;
+        }
+        SegmentInfo si = new SegmentInfo(dir, x, y, len);
+        _segments.add(si);
+        return si;
+    }
+
     /**
      * A piece operation that calculates the length of the contiguous piece segment to which it is
      * applied.
@@ -170,4 +191,8 @@ public class PieceDestroyer
 
     /** The list of destroyed piece segments. */
     protected List<SegmentInfo> _destroyed = Lists.newArrayList();
+
+    /** All segment info objects we have created, which are reused for each destroy pass (the
+     * first {@link #_destroyed}.size() of which are in use). */
+    protected List<SegmentInfo> _segments = Lists.newArrayList();
 }
@@ -0,0 +1,305 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.puzzle.server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.samskivert.util.Lifecycle;
+import com.samskivert.util.StringUtil;
+
+import static com.threerings.puzzle.Log.log;
+
+/**
+ * Runs puzzle board verification (the comparison of server and client board states that takes
+ * place when board syncing is enabled) on a small pool of worker threads rather than on the
+ * distributed object thread. Each game obtains a {@link Queue} on which it submits checks; the
+ * checks for any one player are run in the order in which they were submitted, while those for
+ * different players and different games are run in parallel.
+ */
+@Singleton
+public class BoardVerifier
+    implements Lifecycle.ShutdownComponent
+{
+    /** Statistics on a game's verification activity. */
+    public static class VerifyStats
+        implements Cloneable
+    {
+        /** The number of checks currently awaiting execution. */
+        public int pending;
+
+        /** The largest number of checks that were ever awaiting execution at once. */
+        public int maxPending;
+
+        /** The number of checks that have been run. */
+        public long verified;
+
+        /** The number of checks that were discarded because too many were pending. */
+        public int dropped;
+
+        /** The total milliseconds between the submission and completion of all run checks. */
+        public long totalLatency;
+
+        /** The longest time in milliseconds between the submission and completion of a check. */
+        public long maxLatency;
+
+        /**
+         * Returns the average time in milliseconds between the submission and completion of a
+         * check.
+         */
+        public long getAverageLatency ()
+        {
+            return (verified == 0) ? 0 : (totalLatency / verified);
+        }
+
+        @Override
+        public VerifyStats clone ()
+        {
+            try {
+                return (VerifyStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
+    /**
+     * Orders and tracks the checks submitted for a single game.
+     */
+    public class Queue
+    {
+        /**
+         * Submits a check to be run on behalf of the specified player. The check will not be run
+         * until all checks previously submitted for that player have completed.
+         *
+         * @return true if the check was queued, false if it was discarded because this game
+         * already has too many checks pending.
+         */
+        public boolean submit (int pidx, Runnable check)
+        {
+            Lane lane;
+            boolean start;
+            synchronized (this) {
+                if (_stats.pending >= _maxPending) {
+                    _stats.dropped++;
+                    return false;
+                }
+                if (pidx >= _lanes.length) {
+                    Lane[] lanes = new Lane[pidx+1];
+                    System.arraycopy(_lanes, 0, lanes, 0, _lanes.length);
+                    _lanes = lanes;
+                }
+                if ((lane = _lanes[pidx]) == null) {
+                    lane = _lanes[pidx] = new Lane(this);
+                }
+                lane.tasks.add(new Task(check));
+                _stats.maxPending = Math.max(_stats.maxPending, ++_stats.pending);
+                start = !lane.running;
+                lane.running = true;
+            }
+            if (start) {
+                execute(lane);
+            }
+            return true;
+        }
+
+        /**
+         * Returns a snapshot of this game's verification statistics.
+         */
+        public synchronized VerifyStats getStats ()
+        {
+            return _stats.clone();
+        }
+
+        /**
+         * Called by a lane when it has run one of its checks.
+         */
+        protected synchronized void checkRun (long latency)
+        {
+            _stats.pending--;
+            _stats.verified++;
+            _stats.totalLatency += latency;
+            _stats.maxLatency = Math.max(_stats.maxLatency, latency);
+        }
+
+        /** The lanes for each player, created as needed. */
+        protected Lane[] _lanes = new Lane[0];
+
+        /** Statistics on this game's verification activity. */
+        protected VerifyStats _stats = new VerifyStats();
+    }
+
+    @Inject public BoardVerifier (Lifecycle cycle)
+    {
+        cycle.addComponent(this);
+    }
+
+    /**
+     * Configures the number of threads used to run checks and the maximum number of checks that
+     * may be pending for any one game before further checks are discarded. This must be called
+     * before any checks are submitted.
+     */
+    public void configure (int threads, int maxPending)
+    {
+        _threads = threads;
+        _maxPending = maxPending;
+    }
+
+    /**
+     * Creates a queue on which a game may submit its checks.
+     */
+    public Queue createQueue ()
+    {
+        return new Queue();
+    }
+
+    // from interface Lifecycle.ShutdownComponent
+    public void shutdown ()
+    {
+        synchronized (this) {
+            if (_executor != null) {
+                _executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Schedules the supplied lane for execution on our worker threads.
+     */
+    protected void execute (Lane lane)
+    {
+        ExecutorService executor;
+        synchronized (this) {
+            if (_executor == null) {
+                _executor = new ThreadPoolExecutor(
+                    _threads, _threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread (Runnable runnable) {
+                            Thread thread = new Thread(
+                                runnable, "BoardVerifier-" + _threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            }
+            executor = _executor;
+        }
+        try {
+            executor.execute(lane);
+        } catch (RejectedExecutionException ree) {
+            log.warning("Discarding board checks submitted after shutdown", "lane", lane);
+        }
+    }
+
+    /** A check and the time at which it was submitted. */
+    protected static class Task
+    {
+        /** The check to be run. */
+        public final Runnable check;
+
+        /** The time at which the check was submitted. */
+        public final long submitted = System.currentTimeMillis();
+
+        public Task (Runnable check) {
+            this.check = check;
+        }
+    }
+
+    /**
+     * Runs the checks for a single player in order. A lane is scheduled on the executor only
+     * while it has checks to run, and never more than once at a time.
+     */
+    protected class Lane implements Runnable
+    {
+        /** The checks awaiting execution, guarded by our queue's monitor. */
+        public final ArrayDeque<Task> tasks = new ArrayDeque<Task>();
+
+        /** Whether this lane is scheduled on the executor, guarded by our queue's monitor. */
+        public boolean running;
+
+        public Lane (Queue queue) {
+            _queue = queue;
+        }
+
+        public void run () {
+            // run a limited number of checks before yielding our thread to other lanes so that one
+            // busy player can't monopolize a worker
+            for (int ii = 0; ii < MAX_CHECKS_PER_RUN; ii++) {
+                Task task;
+                synchronized (_queue) {
+                    if ((task = tasks.poll()) == null) {
+                        running = false;
+                        return;
+                    }
+                }
+                try {
+                    task.check.run();
+                } catch (Throwable t) {
+                    log.warning("Board check failed", "check", task.check, t);
+                }
+                _queue.checkRun(System.currentTimeMillis() - task.submitted);
+            }
+            synchronized (_queue) {
+                if (tasks.isEmpty()) {
+                    running = false;
+                    return;
+                }
+            }
+            execute(this);
+        }
+
+        protected Queue _queue;
+    }
+
+    /** The executor on which our lanes run, created on first use. */
+    protected ExecutorService _executor;
+
+    /** The number of worker threads we use. */
+    protected int _threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    /** The maximum number of checks that may be pending for any one game. */
+    protected int _maxPending = DEFAULT_MAX_PENDING;
+
+    /** Used to number our worker threads. */
+    protected AtomicInteger _threadCount = new AtomicInteger();
+
+    /** The default maximum number of checks that may be pending for any one game. */
+    protected static final int DEFAULT_MAX_PENDING = 1024;
+
+    /** The maximum number of checks a lane runs before yielding its thread. */
+    protected static final int MAX_CHECKS_PER_RUN = 16;
+}
@@ -23,9 +23,12 @@ package com.threerings.puzzle.server;
 
 import java.util.Arrays;
 
+import com.google.inject.Inject;
+
 import com.samskivert.util.IntListUtil;
 import com.samskivert.util.Interval;
 import com.samskivert.util.RandomUtil;
+import com.samskivert.util.StringUtil;
 
 import com.threerings.presents.data.ClientObject;
 
@@ -45,6 +48,39 @@ import static com.threerings.puzzle.Log.log;
 public abstract class PuzzleManager extends GameManager
     implements PuzzleCodes, PuzzleGameProvider
 {
+    /** Statistics on the publication of a puzzle's board summaries. */
+    public static class SummaryStats
+        implements Cloneable
+    {
+        /** The number of summaries published in full. */
+        public int full;
+
+        /** The number of summaries published as deltas. */
+        public int deltas;
+
+        /** The number of summaries not published because they had not changed. */
+        public int unchanged;
+
+        /** The approximate number of summary bytes we avoided sending. */
+        public long bytesSaved;
+
+        @Override
+        public SummaryStats clone ()
+        {
+            try {
+                return (SummaryStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
     /**
      * Returns the boards for all players.
      */
@@ -71,6 +107,26 @@ public abstract class PuzzleManager extends GameManager
         return false;
     }
 
+    /**
+     * Returns whether this puzzle publishes modified board summaries individually, as deltas
+     * where the summaries support them (see {@link BoardSummary#createDelta}), rather than
+     * republishing the entire summaries array whenever any summary changes. Clients must be
+     * running a {@link com.threerings.puzzle.client.PuzzleController} that resolves summary
+     * deltas. The default implementation returns <code>false</code>.
+     */
+    protected boolean publishSummaryDeltas ()
+    {
+        return false;
+    }
+
+    /**
+     * Returns statistics on the publication of this puzzle's board summaries.
+     */
+    public SummaryStats getSummaryStats ()
+    {
+        return _summaryStats.clone();
+    }
+
     /**
      * Returns whether this puzzle compares board states before it applies progress events, or
      * after. The default implementation returns <code>true</code>.
@@ -80,6 +136,29 @@ public abstract class PuzzleManager extends GameManager
         return true;
     }
 
+    /**
+     * Returns whether this puzzle compares board states on the {@link BoardVerifier} worker
+     * threads rather than on the distributed object thread. The server board is snapshotted at
+     * each comparison point so that the comparison may take place later without regard to
+     * subsequent changes. Asynchronous comparisons are made via {@link
+     * #compareBoards(String,int,Board,Board,int,boolean)} and bypass {@link
+     * #compareBoards(int,Board,int,boolean)}, so puzzles that customize the latter should leave
+     * this disabled. The default implementation returns <code>false</code>.
+     */
+    protected boolean verifyBoardsAsync ()
+    {
+        return false;
+    }
+
+    /**
+     * Returns statistics on this puzzle's asynchronous board verification, or null if no boards
+     * have been verified asynchronously.
+     */
+    public BoardVerifier.VerifyStats getVerifyStats ()
+    {
+        return (_verifyQueue == null) ? null : _verifyQueue.getStats();
+    }
+
     /**
      * Handles the server and client states being out of sync when in debug mode. The default
      * implementation halts the server.
@@ -267,7 +346,58 @@ public abstract class PuzzleManager extends GameManager
             // generate the latest summaries
             updateBoardSummaries();
             // then broadcast them to the clients
-            _puzobj.setSummaries(_puzobj.summaries);
+            publishBoardSummaries();
+        }
+    }
+
+    /**
+     * Broadcasts any board summaries that have changed since they were last published.
+     */
+    protected void publishBoardSummaries ()
+    {
+        BoardSummary[] summaries = _puzobj.summaries;
+        if (summaries == null) {
+            return;
+        }
+
+        boolean modified = false;
+        for (BoardSummary summary : summaries) {
+            modified = modified || (summary != null && summary.isModified());
+        }
+
+        if (modified && !publishSummaryDeltas()) {
+            _puzobj.setSummaries(summaries);
+            for (BoardSummary summary : summaries) {
+                if (summary != null) {
+                    summary.published();
+                    _summaryStats.full++;
+                }
+            }
+            return;
+        }
+
+        for (int ii = 0; ii < summaries.length; ii++) {
+            BoardSummary summary = summaries[ii];
+            if (summary == null) {
+                continue;
+            } else if (!summary.isModified()) {
+                _summaryStats.unchanged++;
+                _summaryStats.bytesSaved += summary.getPayloadSize();
+                continue;
+            }
+            BoardSummary delta = summary.createDelta();
+            if (delta == null) {
+                _puzobj.setSummariesAt(summary, ii);
+                _summaryStats.full++;
+            } else {
+                // the delta goes out in the event, but we keep the complete summary locally (the
+                // event won't be reapplied to our copy of the object as it carries the old value)
+                _puzobj.setSummariesAt(delta, ii);
+                _puzobj.summaries[ii] = summary;
+                _summaryStats.deltas++;
+                _summaryStats.bytesSaved += summary.getPayloadSize() - delta.getPayloadSize();
+            }
+            summary.published();
         }
     }
 
@@ -312,6 +442,13 @@ public abstract class PuzzleManager extends GameManager
         }
 
         _puzobj.setSummaries(summaries);
+        if (summaries != null) {
+            for (BoardSummary summary : summaries) {
+                if (summary != null) {
+                    summary.published();
+                }
+            }
+        }
     }
 
     /**
@@ -337,6 +474,14 @@ public abstract class PuzzleManager extends GameManager
         // send along one final status update
         sendStatusUpdate();
 
+        if (_verifyQueue != null) {
+            log.info("Board verification stats", "game", _puzobj.which(),
+                "stats", _verifyQueue.getStats());
+        }
+        if (needsBoardSummaries()) {
+            log.info("Board summary stats", "game", _puzobj.which(), "stats", _summaryStats);
+        }
+
         super.gameDidEnd();
     }
 
@@ -369,7 +514,7 @@ public abstract class PuzzleManager extends GameManager
             // if we have state syncing enabled, make sure the board is correct before applying the
             // event
             if (before && (cboard != null)) {
-                compareBoards(pidx, cboard, gevent, before);
+                verifyBoard(pidx, cboard, gevent, before);
             }
 
             _boards[pidx].seedFromEvent(pidx, gevent);
@@ -381,43 +526,89 @@ public abstract class PuzzleManager extends GameManager
 
             // maybe we are comparing boards afterwards
             if (!before && (cboard != null)) {
-                compareBoards(pidx, cboard, gevent, before);
+                verifyBoard(pidx, cboard, gevent, before);
             }
         }
     }
 
+    /**
+     * Compares our server board to the specified sent-back user board, either immediately or on
+     * the {@link BoardVerifier} worker threads per {@link #verifyBoardsAsync}.
+     */
+    protected void verifyBoard (
+        final int pidx, final Board boardstate, final int gevent, final boolean before)
+    {
+        if (!verifyBoardsAsync()) {
+            compareBoards(pidx, boardstate, gevent, before);
+            return;
+        }
+
+        if (_verifyQueue == null) {
+            _verifyQueue = _verifier.createQueue();
+        }
+        final String which = _puzobj.which();
+        final Board sboard = _boards[pidx].clone();
+        boolean queued = _verifyQueue.submit(pidx, new Runnable() {
+            public void run () {
+                if (!compareBoards(which, pidx, sboard, boardstate, gevent, before) &&
+                        DEBUG_PUZZLE) {
+                    _omgr.postRunnable(new Runnable() {
+                        public void run () {
+                            handleBoardNotEqual();
+                        }
+                    });
+                }
+            }
+        });
+        if (!queued && !_verifyOverflowed) {
+            log.warning("Too many board checks pending, skipping verification",
+                "game", which, "stats", _verifyQueue.getStats());
+            _verifyOverflowed = true;
+        }
+    }
+
     /**
      * Compare our server board to the specified sent-back user board.
      */
     protected void compareBoards (int pidx, Board boardstate, int gevent, boolean before)
+    {
+        if (!compareBoards(_puzobj.which(), pidx, _boards[pidx], boardstate, gevent, before) &&
+                DEBUG_PUZZLE) {
+            handleBoardNotEqual();
+        }
+    }
+
+    /**
+     * Compares the supplied server board to the specified sent-back user board, logging and
+     * dumping the boards as appropriate. This may be called on a {@link BoardVerifier} thread
+     * and so must not reference the puzzle object or other distributed object thread state.
+     *
+     * @return true if the boards were equal or no user board was provided.
+     */
+    protected boolean compareBoards (String which, int pidx, Board sboard, Board boardstate,
+                                     int gevent, boolean before)
     {
         if (DEBUG_PUZZLE) {
             log.info((before ? "About to apply " : "Just applied "),
-                "game", _puzobj.which(), "pidx", pidx, "event", gevent);
+                "game", which, "pidx", pidx, "event", gevent);
         }
         if (boardstate == null) {
             if (DEBUG_PUZZLE) {
                 log.info("No board state provided. Can't compare.");
             }
-            return;
+            return true;
         }
-        boolean equal = _boards[pidx].equals(boardstate);
+        boolean equal = sboard.equals(boardstate);
         if (!equal) {
             log.warning("Client and server board states not equal!",
-                "game", _puzobj.which(), "type", _puzobj.getClass().getName());
+                "game", which, "type", getClass().getName());
         }
-        if (DEBUG_PUZZLE) {
-            // if we're debugging, dump the board state every time we're about to apply an event
-            _boards[pidx].dumpAndCompare(boardstate);
-        }
-        if (!equal) {
-            if (DEBUG_PUZZLE) {
-                handleBoardNotEqual();
-            } else {
-                // dump the board state since we're not debugging and didn't just do it above
-                _boards[pidx].dumpAndCompare(boardstate);
-            }
+        if (DEBUG_PUZZLE || !equal) {
+            // if we're debugging, dump the board state every time we're about to apply an event,
+            // otherwise dump it only when it's not what we expected
+            sboard.dumpAndCompare(boardstate);
         }
+        return equal;
     }
 
     /**
@@ -557,4 +748,16 @@ public abstract class PuzzleManager extends GameManager
 
     /** Tracks the last time we received a progress event from each player in this puzzle. */
     protected long[] _lastProgress;
+
+    /** Statistics on the publication of our board summaries. */
+    protected SummaryStats _summaryStats = new SummaryStats();
+
+    /** Our queue of pending board checks, created when we first need it. */
+    protected BoardVerifier.Queue _verifyQueue;
+
+    /** Whether we've warned about our queue of board checks overflowing. */
+    protected boolean _verifyOverflowed;
+
+    /** Runs our board checks off of the distributed object thread. */
+    @Inject protected BoardVerifier _verifier;
 }
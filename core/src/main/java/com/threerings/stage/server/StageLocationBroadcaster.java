@@ -0,0 +1,82 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.stage.server;
+
+import com.threerings.media.util.MathUtil;
+
+import com.threerings.miso.util.MisoUtil;
+
+import com.threerings.whirled.spot.data.Location;
+import com.threerings.whirled.spot.server.LocationBroadcaster;
+
+import com.threerings.stage.data.StageLocation;
+
+/**
+ * An interest managed {@link LocationBroadcaster} for stage scenes, which divides the scene into
+ * square cells of tiles. Bodies are sent the precise location changes of those in their own and
+ * the eight surrounding cells.
+ */
+public class StageLocationBroadcaster extends LocationBroadcaster
+{
+    /**
+     * Creates a broadcaster for a stage scene.
+     *
+     * @param tickInterval the time between ticks.
+     * @param publishTicks the number of ticks between publications to the scene object.
+     * @param cellTiles the width and height, in tiles, of our interest cells.
+     */
+    public StageLocationBroadcaster (long tickInterval, int publishTicks, int cellTiles)
+    {
+        super(tickInterval, publishTicks);
+        _cellTiles = Math.max(cellTiles, 1);
+    }
+
+    @Override
+    protected long getCell (Location loc)
+    {
+        StageLocation sloc = (StageLocation)loc;
+        return toCell(MathUtil.floorDiv(MisoUtil.fullToTile(sloc.x), _cellTiles),
+                      MathUtil.floorDiv(MisoUtil.fullToTile(sloc.y), _cellTiles));
+    }
+
+    @Override
+    protected long[] getNeighborCells (long cell)
+    {
+        int cx = (int)(cell >> 32), cy = (int)cell;
+        long[] cells = new long[9];
+        for (int dy = -1, ii = 0; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                cells[ii++] = toCell(cx + dx, cy + dy);
+            }
+        }
+        return cells;
+    }
+
+    /** Packs cell coordinates into a cell key. */
+    protected static long toCell (int cx, int cy)
+    {
+        return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    /** The width and height, in tiles, of our interest cells. */
+    protected int _cellTiles;
+}
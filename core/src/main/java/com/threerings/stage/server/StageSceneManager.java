@@ -22,6 +22,7 @@
 package com.threerings.stage.server;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -30,6 +31,7 @@ import java.awt.Point;
 import java.awt.Rectangle;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import com.samskivert.util.HashIntMap;
@@ -66,6 +68,9 @@ import com.threerings.stage.data.StageScene;
 import com.threerings.stage.data.StageSceneMarshaller;
 import com.threerings.stage.data.StageSceneModel;
 import com.threerings.stage.data.StageSceneObject;
+import com.threerings.stage.util.FootprintCache;
+import com.threerings.stage.util.NavGrid;
+import com.threerings.stage.util.OccupancyGrid;
 import com.threerings.stage.util.StageSceneUtil;
 
 import static com.threerings.stage.Log.log;
@@ -113,8 +118,7 @@ public class StageSceneManager extends SpotSceneManager
                               boolean allowOverlap)
     {
         // determine whether or not any object overlap our footprint
-        Rectangle foot = StageSceneUtil.getObjectFootprint(
-            StageServer.tilemgr, info.tileId, info.x, info.y);
+        Rectangle foot = getFootprintCache().getObjectFootprint(info.tileId, info.x, info.y);
         if (foot == null) {
             log.warning("Aiya! Unable to compute object footprint! " +
                         "[where=" + where() + ", info=" + info + "].");
@@ -162,9 +166,27 @@ public class StageSceneManager extends SpotSceneManager
      */
     public boolean isPassable (int tx, int ty)
     {
-        return (StageSceneUtil.isPassable(
-                    StageServer.tilemgr, _mmodel.getBaseTileId(tx, ty)) &&
-                !checkContains(_footprints, tx, ty));
+        return _navgrid.isStandable(tx, ty);
+    }
+
+    /**
+     * Returns true if a body standing at the first location could walk to the second location
+     * without passing through impassable tiles or object footprints. Paths are cached, so this is
+     * cheap enough to use when validating client initiated movement.
+     */
+    public boolean isReachable (StageLocation from, StageLocation to)
+    {
+        return _navgrid.isReachable(MisoUtil.fullToTile(from.x), MisoUtil.fullToTile(from.y),
+                                    MisoUtil.fullToTile(to.x), MisoUtil.fullToTile(to.y));
+    }
+
+    /**
+     * Returns the navigation grid for this scene, which is available once the scene has been
+     * resolved.
+     */
+    public NavGrid getNavGrid ()
+    {
+        return _navgrid;
     }
 
     /**
@@ -216,6 +238,7 @@ public class StageSceneManager extends SpotSceneManager
         // cast some scene related bits
         _sscene = (StageScene)_scene;
         _mmodel = StageMisoSceneModel.getSceneModel(_scene.getSceneModel());
+        _navgrid = createNavGrid();
 
         // note the footprints of all objects and portals in this scene
         computeFootprints();
@@ -235,6 +258,13 @@ public class StageSceneManager extends SpotSceneManager
 
         // then recompute some internal structures if need be
         if (tilesModified) {
+            // if we know exactly which objects changed, we can update their footprints directly
+            if (update instanceof ModifyObjectsUpdate) {
+                ModifyObjectsUpdate mupdate = (ModifyObjectsUpdate)update;
+                if (updateFootprints(mupdate.removed, mupdate.added)) {
+                    _footprintsVersion = _sscene.getVersion();
+                }
+            }
             sceneTilesModified();
         }
     }
@@ -243,12 +273,17 @@ public class StageSceneManager extends SpotSceneManager
      * Called when any change is made to a scene's base or object tiles
      * (resulting in a change in the way the scene looks). If any sneaky
      * business need be done to deal with said addition, it can be handled
-     * here.
+     * here. Overrides must call super so that our footprints are kept up to
+     * date.
      */
     protected void sceneTilesModified ()
     {
-        // compute the object footprints of all objects in this scene
-        computeFootprints();
+        // compute the object footprints of all objects in this scene (unless they've already been
+        // incrementally updated for the current scene version)
+        if (_footprintsVersion != _sscene.getVersion()) {
+            computeFootprints();
+        }
+        _footprintsVersion = -1;
     }
 
     @Override
@@ -273,7 +308,7 @@ public class StageSceneManager extends SpotSceneManager
         super.bodyLeft(bodyOid);
 
         // out ye go!
-        _loners.remove(bodyOid);
+        clearLoner(bodyOid);
     }
 
     @Override
@@ -284,7 +319,52 @@ public class StageSceneManager extends SpotSceneManager
         // keep a rectangle around for each un-clustered occupant
         StageLocation sloc = (StageLocation) loc;
         int tx = MisoUtil.fullToTile(sloc.x), ty = MisoUtil.fullToTile(sloc.y);
-        _loners.put(source.getOid(), new Rectangle(tx, ty, 1, 1));
+        setLoner(source.getOid(), tx, ty);
+    }
+
+    /**
+     * Notes that the specified un-clustered body is standing on the specified tile.
+     */
+    protected void setLoner (int bodyOid, int tx, int ty)
+    {
+        clearLoner(bodyOid);
+        Rectangle rect = new Rectangle(tx, ty, 1, 1);
+        _loners.put(bodyOid, rect);
+        _lonerGrid.add(rect);
+    }
+
+    /**
+     * Clears out the un-clustered footprint of the specified body, if they have one.
+     */
+    protected void clearLoner (int bodyOid)
+    {
+        Rectangle rect = _loners.remove(bodyOid);
+        if (rect != null) {
+            _lonerGrid.remove(rect);
+        }
+    }
+
+    /**
+     * Updates our cluster occupancy grid to reflect the current bounds of the supplied cluster.
+     * This must be called whenever a cluster's bounds are changed.
+     */
+    protected void reindexCluster (ClusterRecord clrec)
+    {
+        Cluster cl = clrec.getCluster();
+        Rectangle orect = _clusterRects.get(cl.clusterOid);
+        if (orect != null && orect.equals(cl)) {
+            return; // no change
+        }
+        if (orect != null) {
+            _clusterGrid.remove(orect);
+        }
+        if (clrec.size() > 0 && cl.width > 0 && cl.height > 0) {
+            Rectangle nrect = new Rectangle(cl);
+            _clusterRects.put(cl.clusterOid, nrect);
+            _clusterGrid.add(nrect);
+        } else {
+            _clusterRects.remove(cl.clusterOid);
+        }
     }
 
     /**
@@ -294,12 +374,15 @@ public class StageSceneManager extends SpotSceneManager
      */
     protected void computeFootprints ()
     {
+        _navgrid.baseTilesChanged();
         _footprints.clear();
+        _footprintGrid.clear();
+        _objectFootprints.clear();
         _mmodel.visitObjects(new StageMisoSceneModel.ObjectVisitor() {
             public void visit (ObjectInfo info) {
-                Rectangle foot = StageSceneUtil.getObjectFootprint(
-                    StageServer.tilemgr, info.tileId, info.x, info.y);
-                _footprints.add(foot);
+                // clone the key, as the visitor reuses a single ObjectInfo instance for
+                // uninteresting objects in a section
+                addFootprint(info.clone());
             }
         });
 
@@ -315,6 +398,71 @@ public class StageSceneManager extends SpotSceneManager
             _plocs.add(new Point(MisoUtil.fullToTile(loc.x),
                                  MisoUtil.fullToTile(loc.y)));
         }
+        _navgrid.setPortals(_plocs);
+    }
+
+    /**
+     * Creates the navigation grid for this scene. This is called once our scene data has been
+     * resolved.
+     */
+    protected NavGrid createNavGrid ()
+    {
+        return new NavGrid(StageServer.tilemgr, _mmodel, _footprintGrid);
+    }
+
+    /**
+     * Incrementally updates our object footprints to reflect the removal and addition of the
+     * specified objects (either of which may be null).
+     *
+     * @return true if the footprints were successfully updated, false if they were found to be
+     * inconsistent with the modification (in which case they should be recomputed from scratch).
+     */
+    protected boolean updateFootprints (ObjectInfo[] removed, ObjectInfo[] added)
+    {
+        boolean consistent = true;
+        if (removed != null) {
+            for (ObjectInfo info : removed) {
+                Rectangle foot = _objectFootprints.remove(info);
+                if (foot == null) {
+                    consistent = false;
+                    continue;
+                }
+                _footprints.remove(foot);
+                _footprintGrid.remove(foot);
+                _navgrid.footprintsChanged();
+            }
+        }
+        if (added != null) {
+            for (ObjectInfo info : added) {
+                consistent = addFootprint(info) && consistent;
+            }
+        }
+        return consistent;
+    }
+
+    /**
+     * Returns the footprint cache shared by all stage scene managers.
+     */
+    protected static FootprintCache getFootprintCache ()
+    {
+        if (StageServer.footprints == null) {
+            StageServer.footprints = new FootprintCache(StageServer.tilemgr);
+        }
+        return StageServer.footprints;
+    }
+
+    /**
+     * Computes and notes the footprint of the supplied object.
+     *
+     * @return false if we already had a footprint for an identical object.
+     */
+    protected boolean addFootprint (ObjectInfo info)
+    {
+        Rectangle foot = getFootprintCache().getObjectFootprint(info.tileId, info.x, info.y);
+        _footprints.add(foot);
+        _footprintGrid.add(foot);
+        _navgrid.footprintsChanged();
+        return (_objectFootprints.put(info, foot) == null);
     }
 
     /**
@@ -327,20 +475,19 @@ public class StageSceneManager extends SpotSceneManager
         int tx = MisoUtil.fullToTile(loc.x), ty = MisoUtil.fullToTile(loc.y);
 
         // make sure the tile at that location is passable
-        if (!StageSceneUtil.isPassable(StageServer.tilemgr,
-                                    _mmodel.getBaseTileId(tx, ty))) {
+        if (!_navgrid.isPassable(tx, ty)) {
 //             Log.info("Rejecting non-passable loc [who=" + source.who() +
 //                      ", loc=" + loc + "].");
             return false;
         }
 
         // if they're moving to stand on a portal, let them do it
-        if (allowPortals && _plocs.contains(new Point(tx, ty))) {
+        if (allowPortals && _navgrid.isPortal(tx, ty)) {
             return true;
         }
 
         // if they are already standing on this tile, allow it
-        SceneLocation cloc = _ssobj.occupantLocs.get(Integer.valueOf(source.getOid()));
+        SceneLocation cloc = locationForBody(source.getOid());
         if (cloc != null) {
             StageLocation sloc = (StageLocation) cloc.loc;
             if (MisoUtil.fullToTile(sloc.x) == tx &&
@@ -353,16 +500,16 @@ public class StageSceneManager extends SpotSceneManager
 
         // make sure they're not standing in a cluster footprint, an
         // object footprint, or in the same tile as another scene occupant
-        if (checkContains(_ssobj.clusters, tx, ty) ||
-            checkContains(_footprints, tx, ty) ||
-            checkContains(_loners.values(), tx, ty)) {
+        if (_clusterGrid.isOccupied(tx, ty) ||
+            _footprintGrid.isOccupied(tx, ty) ||
+            _lonerGrid.isOccupied(tx, ty)) {
 //             Log.info("Rejecting loc [who=" + source.who() +
 //                      ", loc=" + loc + ", inCluster=" +
-//                      checkContains(_ssobj.clusters.iterator(), tx, ty) +
+//                      _clusterGrid.isOccupied(tx, ty) +
 //                      ", inFootprint=" +
-//                      checkContains(_footprints.iterator(), tx, ty) +
+//                      _footprintGrid.isOccupied(tx, ty) +
 //                      ", onLoner=" +
-//                      checkContains(_loners.values().iterator(), tx, ty) +
+//                      _lonerGrid.isOccupied(tx, ty) +
 //                      "].");
             return false;
         }
@@ -370,7 +517,7 @@ public class StageSceneManager extends SpotSceneManager
         return true;
     }
 
-    /** Helper function for {@link #validateLocation(BodyObject,StageLocation,boolean)}. */
+    /** Helper function for checking containment in a collection of rectangles. */
     protected boolean checkContains (Iterable<? extends Rectangle> rects, int tx, int ty)
     {
         for (Rectangle rect : rects) {
@@ -455,16 +602,25 @@ public class StageSceneManager extends SpotSceneManager
                 }
             }
 
-            // if this is our last pass and we didn't find anything,
-            // revert back to the portal location
+            // if this is our last pass and we didn't find anything, use
+            // the nearest free spot to the portal, or failing that, revert
+            // back to the portal location
             if (fan == MAX_FAN-1) {
-                sloc = base;
+                Point spot = _navgrid.findNearestSpot(
+                    MisoUtil.fullToTile(base.x), MisoUtil.fullToTile(base.y),
+                    minDistance, getCanStandPred(), body);
+                if (spot == null) {
+                    sloc = base;
+                } else {
+                    sloc.x = MisoUtil.toFull(spot.x, metrics.finegran/2);
+                    sloc.y = MisoUtil.toFull(spot.y, metrics.finegran/2);
+                }
             }
         }
 
         tx = MisoUtil.fullToTile(sloc.x);
         ty = MisoUtil.fullToTile(sloc.y);
-        _loners.put(body.getOid(), new Rectangle(tx, ty, 1, 1));
+        setLoner(body.getOid(), tx, ty);
 
         return new SceneLocation(sloc, body.getOid());
     }
@@ -523,8 +679,8 @@ public class StageSceneManager extends SpotSceneManager
 
             // if this rect overlaps objects, other clusters, portals or
             // impassable tiles, it's no good
-            if (checkIntersects(_ssobj.clusters, rect, cl) ||
-                checkIntersects(_footprints, rect, cl) ||
+            if (checkClusterIntersects(rect, cl) ||
+                _footprintGrid.intersects(rect) ||
                 checkPortals(rect) || checkViolatesPassability(rect)) {
                 rect = null;
             } else {
@@ -600,7 +756,26 @@ public class StageSceneManager extends SpotSceneManager
         return true;
     }
 
-    /** Helper function for {@link #canAddBody}. */
+    /**
+     * Helper function for {@link #canAddBody}. Returns true if the supplied rectangle intersects
+     * any cluster other than the specified one.
+     */
+    protected boolean checkClusterIntersects (Rectangle rect, Cluster ignore)
+    {
+        // subtract the coverage contributed by the ignored cluster itself (each of its tiles is
+        // covered exactly once by it); anything left over belongs to some other cluster
+        int coverage = _clusterGrid.getCoverage(rect);
+        Rectangle irect = _clusterRects.get(ignore.clusterOid);
+        if (irect != null) {
+            Rectangle overlap = irect.intersection(rect);
+            if (!overlap.isEmpty()) {
+                coverage -= overlap.width * overlap.height;
+            }
+        }
+        return coverage > 0;
+    }
+
+    /** Helper function for checking intersection with a collection of rectangles. */
     protected boolean checkIntersects (
         Iterable<? extends Rectangle> rects, Rectangle rect, Rectangle ignore)
     {
@@ -643,8 +818,7 @@ public class StageSceneManager extends SpotSceneManager
                     // border
                     continue;
 
-                } else if (!StageSceneUtil.isPassable(
-                               StageServer.tilemgr, btid)) {
+                } else if (!_navgrid.isPassable(xx, yy)) {
 //                     Log.info("Cluster impassable " +
 //                              "[rect=" + StringUtil.toString(rect) +
 //                              ", spot=" + StringUtil.coordsToString(xx, yy) +
@@ -665,7 +839,7 @@ public class StageSceneManager extends SpotSceneManager
 
         // remove them from the loners map if they were in it
         int bodyOid = body.getOid();
-        _loners.remove(bodyOid);
+        clearLoner(bodyOid);
 
         Cluster cl = clrec.getCluster();
         if (clrec.size() == 1) {
@@ -682,10 +856,14 @@ public class StageSceneManager extends SpotSceneManager
                 cl.x = MisoUtil.fullToTile(sloc.x);
                 cl.y = MisoUtil.fullToTile(sloc.y);
             }
+            reindexCluster(clrec);
             // we'll do everything else when occupant two shows up
             return;
         }
 
+        // note our (potentially expanded) bounds
+        reindexCluster(clrec);
+
         // generate a list of all valid locations for this cluster
         List<SceneLocation> locs = StageSceneUtil.getClusterLocs(cl);
 
@@ -708,7 +886,7 @@ public class StageSceneManager extends SpotSceneManager
     /** Helper function for {@link #bodyAdded}. */
     protected void positionBody (Cluster cl, int bodyOid, List<SceneLocation> locs)
     {
-        SceneLocation sloc = _ssobj.occupantLocs.get(Integer.valueOf(bodyOid));
+        SceneLocation sloc = locationForBody(bodyOid);
         if (sloc == null) {
             BodyObject user = (BodyObject)_omgr.getObject(bodyOid);
             String who = (user == null) ? ("" + bodyOid) : user.who();
@@ -726,7 +904,7 @@ public class StageSceneManager extends SpotSceneManager
             cloc.bodyOid = bodyOid;
 //             Log.info("Moving " + bodyOid + " to " + cloc +
 //                      " for " + cl + ".");
-            _ssobj.updateOccupantLocs(cloc);
+            publishLocation(cloc);
         }
     }
 
@@ -738,6 +916,7 @@ public class StageSceneManager extends SpotSceneManager
         // if we've been reduced to a zero person cluster, we can skip all
         // this because the cluster will be destroyed when we return
         if (clrec.size() < 1) {
+            reindexCluster(clrec);
             return;
         }
 
@@ -753,6 +932,7 @@ public class StageSceneManager extends SpotSceneManager
         // otherwise shrink the cluster
         cl.width = target;
         cl.height = target;
+        reindexCluster(clrec);
 
         // generate a list of all valid locations for this cluster
         List<SceneLocation> locs = StageSceneUtil.getClusterLocs(cl);
@@ -829,6 +1009,30 @@ public class StageSceneManager extends SpotSceneManager
      * any clusters. */
     protected HashIntMap<Rectangle> _loners = new HashIntMap<Rectangle>();
 
+    /** The footprint of each of our scene objects. */
+    protected HashMap<ObjectInfo, Rectangle> _objectFootprints = Maps.newHashMap();
+
+    /** The scene version for which our footprints were incrementally updated, or -1. Because
+     * every update changes the scene version, a value left over from an earlier update can never
+     * cause a later modification to be skipped. */
+    protected int _footprintsVersion = -1;
+
+    /** Tracks the tiles covered by {@link #_footprints}. */
+    protected OccupancyGrid _footprintGrid = new OccupancyGrid();
+
+    /** Caches the passability of our tiles along with paths and distances over them. */
+    protected NavGrid _navgrid;
+
+    /** Tracks the tiles covered by {@link #_loners}. */
+    protected OccupancyGrid _lonerGrid = new OccupancyGrid();
+
+    /** Tracks the tiles covered by our clusters. */
+    protected OccupancyGrid _clusterGrid = new OccupancyGrid();
+
+    /** The bounds with which each of our clusters is currently entered into {@link
+     * #_clusterGrid}, keyed on cluster oid. */
+    protected HashIntMap<Rectangle> _clusterRects = new HashIntMap<Rectangle>();
+
     /** Contains the (tile) coordinates of all of our portals. */
     protected HashSet<Point> _plocs = Sets.newHashSet();
 
@@ -31,6 +31,7 @@ import com.threerings.media.tile.bundle.BundledTileSetRepository;
 import com.threerings.whirled.server.WhirledServer;
 
 import com.threerings.stage.data.StageCodes;
+import com.threerings.stage.util.FootprintCache;
 
 import static com.threerings.stage.Log.log;
 
@@ -55,6 +56,9 @@ public abstract class StageServer extends WhirledServer
     /** Provides access to our tile repository. */
     public static TileManager tilemgr;
 
+    /** Caches object footprints computed from {@link #tilemgr}; used only on the dobj thread. */
+    public static FootprintCache footprints;
+
     @Override // from WhirledServer
     public void init (Injector injector)
         throws Exception
@@ -69,6 +73,7 @@ public abstract class StageServer extends WhirledServer
         tilemgr = new TileManager(null);
         tilemgr.setTileSetRepository(
             new BundledTileSetRepository(rsrcmgr, null, StageCodes.TILESET_RSRC_SET));
+        footprints = new FootprintCache(tilemgr);
 
         log.info("Stage server initialized.");
     }
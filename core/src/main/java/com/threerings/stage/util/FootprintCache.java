@@ -0,0 +1,99 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.stage.util;
+
+import java.awt.Rectangle;
+
+import com.samskivert.util.HashIntMap;
+
+import com.threerings.media.tile.TileManager;
+
+/**
+ * Caches the base dimensions of object tiles so that object footprints can be computed without
+ * going back to the tile manager for every object. A single cache can be shared by everything
+ * that computes footprints using the same tile manager (for example, all of the scene managers on
+ * a server). The cache is not thread safe and should only be used from a single thread.
+ */
+public class FootprintCache
+{
+    /**
+     * Creates a footprint cache that looks up uncached tiles with the supplied tile manager.
+     */
+    public FootprintCache (TileManager tilemgr)
+    {
+        _tilemgr = tilemgr;
+    }
+
+    /**
+     * Computes the footprint, in absolute tile coordinates, for the specified object with origin
+     * as specified.
+     *
+     * @see StageSceneUtil#getObjectFootprint(TileManager,int,int,int)
+     */
+    public Rectangle getObjectFootprint (int tileId, int ox, int oy)
+    {
+        Rectangle foot = new Rectangle();
+        getObjectFootprint(tileId, ox, oy, foot);
+        return foot;
+    }
+
+    /**
+     * Fills in the footprint, in absolute tile coordinates, for the specified object with origin
+     * as specified.
+     *
+     * @return true if the object's tile was found and the footprint filled in, false if an error
+     * occurred trying to look up the associated object tile.
+     *
+     * @see StageSceneUtil#getObjectFootprint(TileManager,int,int,int,Rectangle)
+     */
+    public boolean getObjectFootprint (int tileId, int ox, int oy, Rectangle foot)
+    {
+        Integer dims = _dims.get(tileId);
+        if (dims == null) {
+            // look up the tile and cache its dimensions; failures are not cached as the tile set
+            // may simply not be available yet
+            if (!StageSceneUtil.getObjectFootprint(_tilemgr, tileId, 0, 0, foot)) {
+                return false;
+            }
+            _dims.put(tileId, dims = Integer.valueOf((foot.width << 16) | foot.height));
+        }
+
+        int bwidth = dims >>> 16, bheight = dims & 0xFFFF;
+        foot.setBounds(ox - bwidth + 1, oy - bheight + 1, bwidth, bheight);
+        return true;
+    }
+
+    /**
+     * Clears all cached dimensions, which should be done if the tile sets are reloaded.
+     */
+    public void clear ()
+    {
+        _dims.clear();
+    }
+
+    /** The tile manager from which we look up uncached tiles. */
+    protected TileManager _tilemgr;
+
+    /** The base width and height (packed into the high and low 16 bits) of each object tile we've
+     * looked up, keyed on fully qualified tile id. */
+    protected HashIntMap<Integer> _dims = new HashIntMap<Integer>();
+}
@@ -0,0 +1,418 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.stage.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.awt.Point;
+
+import com.samskivert.util.HashIntMap;
+
+import com.threerings.media.tile.TileManager;
+import com.threerings.media.util.AStarPathUtil;
+
+import com.threerings.stage.data.StageMisoSceneModel;
+
+/**
+ * Caches the navigational structure of a stage scene: which tiles can be walked upon (their base
+ * tile is passable and no object footprint covers them) and which tiles contain portals. Base
+ * tile passability is looked up through the tile manager only the first time a tile is queried,
+ * after which every traversal check is a pair of constant time grid lookups.
+ *
+ * <p> On top of that the grid maintains a bounded cache of breadth first distance fields (used to
+ * locate the nearest free spot to a portal or other source tile) and a bounded cache of computed
+ * paths (used to validate movement on the server). Both caches are discarded whenever the object
+ * footprints or base tiles of the scene change, so the owner of the grid must call {@link
+ * #footprintsChanged} or {@link #baseTilesChanged} following any such modification.
+ */
+public class NavGrid
+{
+    /**
+     * Creates a navigation grid for the supplied scene model.
+     *
+     * @param footprints the occupancy grid tracking the object footprints of the scene, which is
+     * maintained by the caller.
+     */
+    public NavGrid (TileManager tilemgr, StageMisoSceneModel model, OccupancyGrid footprints)
+    {
+        _tilemgr = tilemgr;
+        _model = model;
+        _footprints = footprints;
+    }
+
+    /**
+     * Returns true if the base tile at the specified tile coordinate is passable.
+     */
+    public boolean isPassable (int tx, int ty)
+    {
+        return (getFlags(tx, ty) & PASSABLE) != 0;
+    }
+
+    /**
+     * Returns true if the specified tile can be stood upon: its base tile is passable and it is
+     * not covered by an object footprint.
+     */
+    public boolean isStandable (int tx, int ty)
+    {
+        return isPassable(tx, ty) && !_footprints.isOccupied(tx, ty);
+    }
+
+    /**
+     * Returns true if the specified tile contains a portal.
+     */
+    public boolean isPortal (int tx, int ty)
+    {
+        return (getFlags(tx, ty) & PORTAL) != 0;
+    }
+
+    /**
+     * Replaces the set of tiles that contain portals.
+     */
+    public void setPortals (Iterable<Point> portals)
+    {
+        for (Point pt : _portals) {
+            setFlag(pt.x, pt.y, PORTAL, false);
+        }
+        _portals.clear();
+        for (Point pt : portals) {
+            _portals.add(new Point(pt));
+            setFlag(pt.x, pt.y, PORTAL, true);
+        }
+    }
+
+    /**
+     * Returns a traversal predicate that accepts standable tiles. The traverser is ignored.
+     */
+    public AStarPathUtil.TraversalPred getTraversalPred ()
+    {
+        return _pred;
+    }
+
+    /**
+     * Must be called whenever the object footprints of the scene are modified.
+     */
+    public void footprintsChanged ()
+    {
+        _fields.clear();
+        _paths.clear();
+    }
+
+    /**
+     * Must be called whenever the base tiles of the scene are modified. Passability will be
+     * looked up anew as tiles are subsequently queried.
+     */
+    public void baseTilesChanged ()
+    {
+        _cells.clear();
+        for (Point pt : _portals) {
+            setFlag(pt.x, pt.y, PORTAL, true);
+        }
+        footprintsChanged();
+    }
+
+    /**
+     * Returns the number of steps needed to walk from the source tile to the target tile, or -1
+     * if the target cannot be reached within {@link #MAX_DISTANCE} steps.
+     */
+    public int getDistance (int sx, int sy, int tx, int ty)
+    {
+        return getField(sx, sy).getDistance(tx, ty);
+    }
+
+    /**
+     * Locates the standable tile nearest (in walking distance) to the specified source tile that
+     * is at least <code>minDist</code> steps away from it and is accepted by the supplied
+     * predicate (which is generally used to exclude tiles occupied by other bodies).
+     *
+     * @return the tile coordinates of the spot, or null if no such spot lies within {@link
+     * #MAX_DISTANCE} steps of the source.
+     */
+    public Point findNearestSpot (int sx, int sy, int minDist,
+                                  AStarPathUtil.TraversalPred pred, Object traverser)
+    {
+        DistanceField field = getField(sx, sy);
+        for (int ii = 0; ii < field.count; ii++) {
+            if (field.dists[ii] < minDist) {
+                continue;
+            }
+            int coord = field.coords[ii], tx = coord >> 16, ty = (short)coord;
+            if (pred.canTraverse(traverser, tx, ty)) {
+                return new Point(tx, ty);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a path of standable tiles from the first tile to the second, or null if no path of
+     * {@link #MAX_PATH_LENGTH} or fewer steps exists. Paths are cached, so the returned list must
+     * not be modified.
+     */
+    public List<Point> getPath (int ax, int ay, int bx, int by)
+    {
+        Long key = ((long)pack(ax, ay) << 32) | (pack(bx, by) & 0xFFFFFFFFL);
+        List<Point> path = _paths.get(key);
+        if (path == null) {
+            path = AStarPathUtil.getPath(
+                _pred, null, MAX_PATH_LENGTH, ax, ay, bx, by, false);
+            _paths.put(key, (path == null) ? NO_PATH : path);
+        }
+        return (path == NO_PATH) ? null : path;
+    }
+
+    /**
+     * Returns true if a path of {@link #MAX_PATH_LENGTH} or fewer steps exists between the
+     * specified tiles.
+     */
+    public boolean isReachable (int ax, int ay, int bx, int by)
+    {
+        return getPath(ax, ay, bx, by) != null;
+    }
+
+    /**
+     * Looks up the passability of the specified tile's base tile.
+     */
+    protected boolean computePassable (int tx, int ty)
+    {
+        return StageSceneUtil.isPassable(_tilemgr, _model.getBaseTileId(tx, ty));
+    }
+
+    /**
+     * Returns true if the specified tile lies within a section of the scene. Tiles outside every
+     * section have no base tile and are thus impassable.
+     */
+    protected boolean isInBounds (int tx, int ty)
+    {
+        return _model.getSection(_model.getSectionKey(tx, ty)) != null;
+    }
+
+    /**
+     * Returns the flags for the specified tile, looking up its passability if necessary.
+     */
+    protected int getFlags (int tx, int ty)
+    {
+        byte[] bucket = getBucket(tx, ty);
+        if (bucket == null) {
+            return KNOWN; // outside the scene, so impassable
+        }
+        int idx = OccupancyGrid.cellIndex(tx, ty);
+        int flags = bucket[idx];
+        if ((flags & KNOWN) == 0) {
+            flags |= KNOWN | (computePassable(tx, ty) ? PASSABLE : 0);
+            bucket[idx] = (byte)flags;
+        }
+        return flags;
+    }
+
+    /**
+     * Sets or clears the specified flag on the specified tile.
+     */
+    protected void setFlag (int tx, int ty, int flag, boolean set)
+    {
+        byte[] bucket = getBucket(tx, ty);
+        if (bucket == null) {
+            return; // outside the scene, so there's nothing to mark
+        }
+        int idx = OccupancyGrid.cellIndex(tx, ty);
+        bucket[idx] = (byte)(set ? (bucket[idx] | flag) : (bucket[idx] & ~flag));
+    }
+
+    /**
+     * Returns the bucket containing the specified tile, creating it if necessary. Buckets are
+     * only created for tiles within the scene (see {@link #isInBounds}), so that queries of
+     * arbitrary coordinates cannot grow our cache without bound; null is returned for tiles
+     * outside the scene whose bucket does not already exist.
+     */
+    protected byte[] getBucket (int tx, int ty)
+    {
+        int key = OccupancyGrid.bucketKey(tx, ty);
+        byte[] bucket = _cells.get(key);
+        if (bucket == null && isInBounds(tx, ty)) {
+            _cells.put(key, bucket = new byte[OccupancyGrid.BUCKET_AREA]);
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the distance field for the specified source tile, computing it if necessary.
+     */
+    protected DistanceField getField (int sx, int sy)
+    {
+        Integer key = pack(sx, sy);
+        DistanceField field = _fields.get(key);
+        if (field == null) {
+            _fields.put(key, field = computeField(sx, sy));
+        }
+        return field;
+    }
+
+    /**
+     * Computes the distance field for the specified source tile by walking outward from it, one
+     * step (in any of the eight directions) at a time, over standable tiles.
+     */
+    protected DistanceField computeField (int sx, int sy)
+    {
+        DistanceField field = new DistanceField();
+        field.visit(sx, sy, 0);
+        for (int ii = 0; ii < field.count; ii++) {
+            int dist = field.dists[ii] + 1;
+            if (dist > MAX_DISTANCE) {
+                break;
+            }
+            int coord = field.coords[ii], cx = coord >> 16, cy = (short)coord;
+            for (int dd = 0; dd < STEP_DX.length; dd++) {
+                int tx = cx + STEP_DX[dd], ty = cy + STEP_DY[dd];
+                if (field.getDistance(tx, ty) < 0 && isStandable(tx, ty)) {
+                    field.visit(tx, ty, dist);
+                }
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Packs the specified tile coordinates into a single integer.
+     */
+    protected static int pack (int tx, int ty)
+    {
+        return (tx << 16) | (ty & 0xFFFF);
+    }
+
+    /** The tiles reachable from a particular source tile, in order of increasing distance. */
+    protected static class DistanceField
+    {
+        /** The packed coordinates of the reached tiles. */
+        public int[] coords = new int[64];
+
+        /** The distance to each of the reached tiles. */
+        public int[] dists = new int[64];
+
+        /** The number of tiles reached. */
+        public int count;
+
+        /** Returns the distance to the specified tile, or -1 if it was not reached. */
+        public int getDistance (int tx, int ty) {
+            byte[] bucket = _reached.get(OccupancyGrid.bucketKey(tx, ty));
+            return (bucket == null) ? -1 : bucket[OccupancyGrid.cellIndex(tx, ty)] - 1;
+        }
+
+        /** Notes that the specified tile was reached at the specified distance. */
+        public void visit (int tx, int ty, int dist) {
+            if (count == coords.length) {
+                int[] ncoords = new int[count*2], ndists = new int[count*2];
+                System.arraycopy(coords, 0, ncoords, 0, count);
+                System.arraycopy(dists, 0, ndists, 0, count);
+                coords = ncoords;
+                dists = ndists;
+            }
+            coords[count] = pack(tx, ty);
+            dists[count++] = dist;
+
+            int key = OccupancyGrid.bucketKey(tx, ty);
+            byte[] bucket = _reached.get(key);
+            if (bucket == null) {
+                _reached.put(key, bucket = new byte[OccupancyGrid.BUCKET_AREA]);
+            }
+            bucket[OccupancyGrid.cellIndex(tx, ty)] = (byte)(dist + 1);
+        }
+
+        /** The distance (plus one) to each reached tile, in buckets keyed by bucket coord. */
+        protected HashIntMap<byte[]> _reached = new HashIntMap<byte[]>();
+    }
+
+    /** A map that retains only its most recently accessed entries. */
+    protected static class LRUMap<K, V> extends LinkedHashMap<K, V>
+    {
+        public LRUMap (int maxSize) {
+            super(16, 0.75f, true);
+            _maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry (Map.Entry<K, V> eldest) {
+            return size() > _maxSize;
+        }
+
+        protected int _maxSize;
+    }
+
+    /** Used to look up base tile passability. */
+    protected TileManager _tilemgr;
+
+    /** The scene model whose base tiles we examine. */
+    protected StageMisoSceneModel _model;
+
+    /** Tracks the tiles covered by object footprints. */
+    protected OccupancyGrid _footprints;
+
+    /** The flags for each tile, in buckets of {@link OccupancyGrid#BUCKET_AREA} tiles, keyed by
+     * bucket coord. */
+    protected HashIntMap<byte[]> _cells = new HashIntMap<byte[]>();
+
+    /** The tile coordinates of our portals. */
+    protected List<Point> _portals = new ArrayList<Point>();
+
+    /** Our most recently used distance fields, keyed by packed source coordinate. */
+    protected LRUMap<Integer, DistanceField> _fields =
+        new LRUMap<Integer, DistanceField>(MAX_FIELDS);
+
+    /** Our most recently used paths, keyed by packed start and end coordinates. */
+    protected LRUMap<Long, List<Point>> _paths = new LRUMap<Long, List<Point>>(MAX_PATHS);
+
+    /** Accepts standable tiles. */
+    protected AStarPathUtil.TraversalPred _pred = new AStarPathUtil.TraversalPred() {
+        public boolean canTraverse (Object traverser, int tx, int ty) {
+            return isStandable(tx, ty);
+        }
+    };
+
+    /** Notes that a tile's passability has been looked up. */
+    protected static final int KNOWN = 1 << 0;
+
+    /** Notes that a tile's base tile is passable. */
+    protected static final int PASSABLE = 1 << 1;
+
+    /** Notes that a tile contains a portal. */
+    protected static final int PORTAL = 1 << 2;
+
+    /** The farthest (in steps) that a distance field extends from its source. */
+    protected static final int MAX_DISTANCE = 32;
+
+    /** The longest path we'll search for. */
+    protected static final int MAX_PATH_LENGTH = 128;
+
+    /** The number of distance fields we cache. */
+    protected static final int MAX_FIELDS = 32;
+
+    /** The number of paths we cache. */
+    protected static final int MAX_PATHS = 256;
+
+    /** Stands in for a nonexistent path in our path cache. */
+    protected static final List<Point> NO_PATH = new ArrayList<Point>(0);
+
+    /** The offsets to the eight tiles adjacent to a tile. */
+    protected static final int[] STEP_DX = { 1, 1, 0, -1, -1, -1, 0, 1 };
+    protected static final int[] STEP_DY = { 0, 1, 1, 1, 0, -1, -1, -1 };
+}
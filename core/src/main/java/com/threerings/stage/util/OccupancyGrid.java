@@ -0,0 +1,182 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.stage.util;
+
+import java.awt.Rectangle;
+
+import com.samskivert.util.HashIntMap;
+
+/**
+ * Tracks how many rectangles (object footprints, clusters, standing bodies and the like) cover
+ * each tile of a scene, allowing constant time occupancy checks. The grid is sparse: tiles are
+ * grouped into square buckets which are only allocated while some tile in them is covered, so
+ * scenes of any extent (including negative tile coordinates) can be tracked cheaply.
+ *
+ * <p> Rectangles must be removed with exactly the bounds with which they were added.
+ */
+public class OccupancyGrid
+{
+    /**
+     * Notes that the specified rectangle (in tile coordinates) covers its tiles.
+     */
+    public void add (Rectangle rect)
+    {
+        adjust(rect.x, rect.y, rect.width, rect.height, 1);
+    }
+
+    /**
+     * Notes that the specified rectangle (in tile coordinates) no longer covers its tiles.
+     */
+    public void remove (Rectangle rect)
+    {
+        adjust(rect.x, rect.y, rect.width, rect.height, -1);
+    }
+
+    /**
+     * Adds <code>delta</code> to the coverage count of every tile in the specified region.
+     */
+    public void adjust (int x, int y, int width, int height, int delta)
+    {
+        for (int ty = y, ey = y + height; ty < ey; ty++) {
+            for (int tx = x, ex = x + width; tx < ex; tx++) {
+                adjust(tx, ty, delta);
+            }
+        }
+    }
+
+    /**
+     * Adds <code>delta</code> to the coverage count of the specified tile.
+     */
+    public void adjust (int tx, int ty, int delta)
+    {
+        int key = bucketKey(tx, ty);
+        int[] bucket = _buckets.get(key);
+        if (bucket == null) {
+            if (delta <= 0) {
+                return; // nothing to remove
+            }
+            _buckets.put(key, bucket = new int[BUCKET_AREA+1]);
+        }
+
+        int idx = cellIndex(tx, ty);
+        int ocount = bucket[idx];
+        int ncount = Math.max(ocount + delta, 0);
+        bucket[idx] = ncount;
+
+        // the last slot tracks the number of covered tiles in the bucket
+        if (ocount == 0 && ncount > 0) {
+            bucket[BUCKET_AREA]++;
+        } else if (ocount > 0 && ncount == 0 && --bucket[BUCKET_AREA] == 0) {
+            _buckets.remove(key);
+        }
+    }
+
+    /**
+     * Returns the number of rectangles covering the specified tile.
+     */
+    public int getCount (int tx, int ty)
+    {
+        int[] bucket = _buckets.get(bucketKey(tx, ty));
+        return (bucket == null) ? 0 : bucket[cellIndex(tx, ty)];
+    }
+
+    /**
+     * Returns true if any rectangle covers the specified tile.
+     */
+    public boolean isOccupied (int tx, int ty)
+    {
+        return getCount(tx, ty) > 0;
+    }
+
+    /**
+     * Returns true if any tile in the supplied rectangle is covered.
+     */
+    public boolean intersects (Rectangle rect)
+    {
+        for (int ty = rect.y, ey = rect.y + rect.height; ty < ey; ty++) {
+            for (int tx = rect.x, ex = rect.x + rect.width; tx < ex; tx++) {
+                if (isOccupied(tx, ty)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the sum of the coverage counts of all tiles in the supplied rectangle.
+     */
+    public int getCoverage (Rectangle rect)
+    {
+        int coverage = 0;
+        for (int ty = rect.y, ey = rect.y + rect.height; ty < ey; ty++) {
+            for (int tx = rect.x, ex = rect.x + rect.width; tx < ex; tx++) {
+                coverage += getCount(tx, ty);
+            }
+        }
+        return coverage;
+    }
+
+    /**
+     * Returns true if no tiles are covered.
+     */
+    public boolean isEmpty ()
+    {
+        return _buckets.isEmpty();
+    }
+
+    /**
+     * Clears out all coverage information.
+     */
+    public void clear ()
+    {
+        _buckets.clear();
+    }
+
+    /**
+     * Returns the key of the bucket that contains the specified tile.
+     */
+    protected static int bucketKey (int tx, int ty)
+    {
+        return ((tx >> BUCKET_SHIFT) << 16) | ((ty >> BUCKET_SHIFT) & 0xFFFF);
+    }
+
+    /**
+     * Returns the index of the specified tile within its bucket.
+     */
+    protected static int cellIndex (int tx, int ty)
+    {
+        return ((ty & BUCKET_MASK) << BUCKET_SHIFT) | (tx & BUCKET_MASK);
+    }
+
+    /** Our coverage counts, in buckets of {@link #BUCKET_AREA} tiles, keyed by bucket coord. */
+    protected HashIntMap<int[]> _buckets = new HashIntMap<int[]>();
+
+    /** The log base 2 of the width and height of a bucket. */
+    protected static final int BUCKET_SHIFT = 4;
+
+    /** Masks tile coordinates to coordinates within a bucket. */
+    protected static final int BUCKET_MASK = (1 << BUCKET_SHIFT) - 1;
+
+    /** The number of tiles in a bucket. */
+    protected static final int BUCKET_AREA = 1 << (2 * BUCKET_SHIFT);
+}
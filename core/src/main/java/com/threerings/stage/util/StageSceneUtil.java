@@ -21,7 +21,6 @@
 
 package com.threerings.stage.util;
 
-import java.util.Comparator;
 import java.util.List;
 
 import java.awt.Point;
@@ -29,8 +28,6 @@ import java.awt.Rectangle;
 
 import com.google.common.collect.Lists;
 
-import com.samskivert.util.SortableArrayList;
-
 import com.threerings.util.DirectionCodes;
 import com.threerings.util.DirectionUtil;
 
@@ -338,74 +335,60 @@ public class StageSceneUtil
         Rectangle foot, int dist, AStarPathUtil.TraversalPred pred,
         Object traverser, final Point nearto, int orient)
     {
-        // generate a list of the tile coordinates of all squares around
-        // this footprint
-        SortableArrayList<StageLocation> spots = new SortableArrayList<StageLocation>();
-
+        // examine the squares around this footprint one ring at a time, choosing from each ring
+        // the standable spot closest to the supplied point; the predicate is only consulted for
+        // spots closer than the best found so far
+        int[] best = new int[4];
         for (int dd = 1; dd <= dist; dd++) {
             int yy1 = foot.y-dd, yy2 = foot.y+foot.height+dd-1;
             int xx1 = foot.x-dd, xx2 = foot.x+foot.width+dd-1;
+            best[3] = Integer.MAX_VALUE;
 
-            // get the corners
-            spots.add(
-                new StageLocation(xx1, yy1, (byte)DirectionCodes.SOUTHWEST));
-            spots.add(
-                new StageLocation(xx1, yy2, (byte)DirectionCodes.SOUTHEAST));
-            spots.add(
-                new StageLocation(xx2, yy1, (byte)DirectionCodes.NORTHWEST));
-            spots.add(
-                new StageLocation(xx2, yy2, (byte)DirectionCodes.NORTHEAST));
+            // check the corners
+            considerSpot(xx1, yy1, DirectionCodes.SOUTHWEST, nearto, pred, traverser, best);
+            considerSpot(xx1, yy2, DirectionCodes.SOUTHEAST, nearto, pred, traverser, best);
+            considerSpot(xx2, yy1, DirectionCodes.NORTHWEST, nearto, pred, traverser, best);
+            considerSpot(xx2, yy2, DirectionCodes.NORTHEAST, nearto, pred, traverser, best);
 
             // then the sides
             for (int xx = xx1+1; xx < xx2; xx++) {
-                spots.add(
-                    new StageLocation(xx, yy1, (byte)DirectionCodes.WEST));
-                spots.add(
-                    new StageLocation(xx, yy2, (byte)DirectionCodes.EAST));
+                considerSpot(xx, yy1, DirectionCodes.WEST, nearto, pred, traverser, best);
+                considerSpot(xx, yy2, DirectionCodes.EAST, nearto, pred, traverser, best);
             }
             for (int yy = yy1+1; yy < yy2; yy++) {
-                spots.add(
-                    new StageLocation(xx1, yy, (byte)DirectionCodes.SOUTH));
-                spots.add(
-                    new StageLocation(xx2, yy, (byte)DirectionCodes.NORTH));
+                considerSpot(xx1, yy, DirectionCodes.SOUTH, nearto, pred, traverser, best);
+                considerSpot(xx2, yy, DirectionCodes.NORTH, nearto, pred, traverser, best);
             }
 
-            // sort them in order of closeness to the players current
-            // coordinate
-            spots.sort(new Comparator<StageLocation>() {
-                public int compare (StageLocation o1, StageLocation o2) {
-                    return dist(o1) - dist(o2);
-                }
-                private final int dist (StageLocation l) {
-                    return Math.round(100*MathUtil.distance(
-                                          l.x, l.y, nearto.x, nearto.y));
-                }
-            });
-
-            // return the first spot that can be "traversed" which we're
-            // taking to mean "stood upon"
-            for (int ii = 0, ll = spots.size(); ii < ll; ii++) {
-                StageLocation loc = spots.get(ii);
-                if (pred.canTraverse(traverser, loc.x, loc.y)) {
-                    // convert to full coordinates
-                    loc.x = MisoUtil.toFull(loc.x, 2);
-                    loc.y = MisoUtil.toFull(loc.y, 2);
-
-                    // see if we need to override the orientation
-                    if (DirectionCodes.NONE != orient) {
-                        loc.orient = (byte) orient;
-                    }
-                    return loc;
-                }
+            if (best[3] != Integer.MAX_VALUE) {
+                // convert to full coordinates, overriding the orientation if requested
+                return new StageLocation(
+                    MisoUtil.toFull(best[0], 2), MisoUtil.toFull(best[1], 2),
+                    (byte)((DirectionCodes.NONE != orient) ? orient : best[2]));
             }
-
-            // clear this list and try one further out
-            spots.clear();
         }
 
         return null;
     }
 
+    /**
+     * Helper function for {@link #findStandingSpot}. Records the supplied spot in
+     * <code>best</code> (as x, y, orientation and distance) if it is closer to
+     * <code>nearto</code> than the spot already recorded there and can be stood upon.
+     */
+    protected static void considerSpot (
+        int x, int y, int orient, Point nearto, AStarPathUtil.TraversalPred pred,
+        Object traverser, int[] best)
+    {
+        int dist = Math.round(100*MathUtil.distance(x, y, nearto.x, nearto.y));
+        if (dist < best[3] && pred.canTraverse(traverser, x, y)) {
+            best[0] = x;
+            best[1] = y;
+            best[2] = orient;
+            best[3] = dist;
+        }
+    }
+
     /**
      * Returns an array of the objects intersected by the supplied tile
      * coordinate rectangle.
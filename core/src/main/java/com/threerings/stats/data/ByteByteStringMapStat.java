@@ -21,6 +21,8 @@
 
 package com.threerings.stats.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 import com.threerings.io.ObjectInputStream;
@@ -30,10 +32,25 @@ import com.threerings.io.ObjectOutputStream;
  * Maps up to 127 string values to integers in the range 0 - 127.
  */
 public class ByteByteStringMapStat extends StringMapStat
+    implements Stat.DataPersistable
 {
     @Override
     public void persistTo (ObjectOutputStream out, AuxDataSource aux)
         throws IOException
+    {
+        writeTo(out, aux);
+    }
+
+    @Override
+    public void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
+        throws IOException, ClassNotFoundException
+    {
+        readFrom(in, aux);
+    }
+
+    // from interface DataPersistable
+    public void writeTo (DataOutput out, AuxDataSource aux)
+        throws IOException
     {
         out.writeByte(_keys.length);
         for (int ii = 0; ii < _keys.length; ii++) {
@@ -42,9 +59,9 @@ public class ByteByteStringMapStat extends StringMapStat
         }
     }
 
-    @Override
-    public void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
-        throws IOException, ClassNotFoundException
+    // from interface DataPersistable
+    public void readFrom (DataInput in, AuxDataSource aux)
+        throws IOException
     {
         _keys = new String[in.readByte()];
         _values = new int[_keys.length];
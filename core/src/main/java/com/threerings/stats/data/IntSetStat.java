@@ -21,6 +21,8 @@
 
 package com.threerings.stats.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 import com.samskivert.util.StringUtil;
@@ -34,6 +36,7 @@ import com.threerings.util.StreamableArrayIntSet;
  * Used to track a statistic comprised of a bounded set of integers.
  */
 public class IntSetStat extends SetStat<Integer>
+    implements Stat.DataPersistable
 {
     /**
      * Constructs a new IntSetStat that will store up to 255 ints.
@@ -88,6 +91,20 @@ public class IntSetStat extends SetStat<Integer>
     @Override
     public void persistTo (ObjectOutputStream out, AuxDataSource aux)
         throws IOException
+    {
+        writeTo(out, aux);
+    }
+
+    @Override
+    public void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
+        throws IOException, ClassNotFoundException
+    {
+        readFrom(in, aux);
+    }
+
+    // from interface DataPersistable
+    public void writeTo (DataOutput out, AuxDataSource aux)
+        throws IOException
     {
         out.writeByte(_maxSize - 128);
         out.writeByte(_intSet.size() - 128);
@@ -96,9 +113,9 @@ public class IntSetStat extends SetStat<Integer>
         }
     }
 
-    @Override
-    public void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
-        throws IOException, ClassNotFoundException
+    // from interface DataPersistable
+    public void readFrom (DataInput in, AuxDataSource aux)
+        throws IOException
     {
         _maxSize = in.readByte() + 128;
         int numValues = in.readByte() + 128;
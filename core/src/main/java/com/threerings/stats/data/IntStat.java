@@ -21,6 +21,8 @@
 
 package com.threerings.stats.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 import com.threerings.io.ObjectInputStream;
@@ -30,6 +32,7 @@ import com.threerings.io.ObjectOutputStream;
  * Used to track a single integer statistic.
  */
 public class IntStat extends Stat
+    implements Stat.DataPersistable
 {
     /**
      * Returns the value of this integer statistic.
@@ -74,12 +77,26 @@ public class IntStat extends Stat
     public void persistTo (ObjectOutputStream out, AuxDataSource aux)
         throws IOException
     {
-        out.writeInt(_value);
+        writeTo(out, aux);
     }
 
     @Override
     public void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
         throws IOException, ClassNotFoundException
+    {
+        readFrom(in, aux);
+    }
+
+    // from interface DataPersistable
+    public void writeTo (DataOutput out, AuxDataSource aux)
+        throws IOException
+    {
+        out.writeInt(_value);
+    }
+
+    // from interface DataPersistable
+    public void readFrom (DataInput in, AuxDataSource aux)
+        throws IOException
     {
         _value = in.readInt();
     }
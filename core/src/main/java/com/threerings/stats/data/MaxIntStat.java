@@ -22,17 +22,17 @@
 package com.threerings.stats.data;
 
 import java.io.EOFException;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
-import com.threerings.io.ObjectInputStream;
-import com.threerings.io.ObjectOutputStream;
-
 /**
  * Extends the {@link IntStat} by maintaining a maximum value which is updated every time a value
  * is accumulated to the stat. Thus we track an accumulating value as well as the largest amount by
  * which it has ever accumulated.
  */
 public class MaxIntStat extends IntStat
+    implements Stat.DataPersistable
 {
     /**
      * Returns the maximum value every accumulated to this integer statistic.
@@ -59,18 +59,18 @@ public class MaxIntStat extends IntStat
     }
 
     @Override // from IntStat
-    public void persistTo (ObjectOutputStream out, AuxDataSource aux)
+    public void writeTo (DataOutput out, AuxDataSource aux)
         throws IOException
     {
-        super.persistTo(out, aux);
+        super.writeTo(out, aux);
         out.writeInt(_maxValue);
     }
 
     @Override // from IntStat
-    public void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
-        throws IOException, ClassNotFoundException
+    public void readFrom (DataInput in, AuxDataSource aux)
+        throws IOException
     {
-        super.unpersistFrom(in, aux);
+        super.readFrom(in, aux);
         try {
             _maxValue = in.readInt();
         } catch (EOFException eofe) {
@@ -21,17 +21,17 @@
 
 package com.threerings.stats.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
-import com.threerings.io.ObjectInputStream;
-import com.threerings.io.ObjectOutputStream;
-
 /**
  * Extends the {@link IntStat} by maintaining the maximum value that the stat has ever been
  * assigned (unlike {@link MaxIntStat}, which tracks the maximum value that the stat has ever
  * been incremented by).
  */
 public class MaxValueIntStat extends IntStat
+    implements Stat.DataPersistable
 {
     /**
      * Returns the maximum value that this integer statistic has ever been assigned.
@@ -55,18 +55,18 @@ public class MaxValueIntStat extends IntStat
     }
 
     @Override // from IntStat
-    public void persistTo (ObjectOutputStream out, AuxDataSource aux)
+    public void writeTo (DataOutput out, AuxDataSource aux)
         throws IOException
     {
-        super.persistTo(out, aux);
+        super.writeTo(out, aux);
         out.writeInt(_maxValue);
     }
 
     @Override // from IntStat
-    public void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
-        throws IOException, ClassNotFoundException
+    public void readFrom (DataInput in, AuxDataSource aux)
+        throws IOException
     {
-        super.unpersistFrom(in, aux);
+        super.readFrom(in, aux);
         _maxValue = in.readInt();
     }
 
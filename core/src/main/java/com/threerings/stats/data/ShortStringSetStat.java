@@ -21,6 +21,8 @@
 
 package com.threerings.stats.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 import com.threerings.io.ObjectInputStream;
@@ -30,10 +32,25 @@ import com.threerings.io.ObjectOutputStream;
  * A string set that maps its values to shorts.
  */
 public class ShortStringSetStat extends StringSetStat
+    implements Stat.DataPersistable
 {
     @Override
     public void persistTo (ObjectOutputStream out, AuxDataSource aux)
         throws IOException
+    {
+        writeTo(out, aux);
+    }
+
+    @Override
+    public void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
+        throws IOException, ClassNotFoundException
+    {
+        readFrom(in, aux);
+    }
+
+    // from interface DataPersistable
+    public void writeTo (DataOutput out, AuxDataSource aux)
+        throws IOException
     {
         out.writeShort(_values.length);
         for (String value : _values) {
@@ -41,9 +58,9 @@ public class ShortStringSetStat extends StringSetStat
         }
     }
 
-    @Override
-    public void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
-        throws IOException, ClassNotFoundException
+    // from interface DataPersistable
+    public void readFrom (DataInput in, AuxDataSource aux)
+        throws IOException
     {
         _values = new String[in.readShort()];
         for (int ii = 0; ii < _values.length; ii++) {
@@ -21,8 +21,13 @@
 
 package com.threerings.stats.data;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.CRC32;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
 
@@ -71,6 +76,32 @@ public abstract class Stat
         public String getCodeString (Type type, int code);
     }
 
+    /**
+     * Implemented by stats that persist only primitive data and can thus be persisted without
+     * object streams. A stat class opts into this by declaring that it implements this interface
+     * itself (see {@link Stat#isDataPersistable}); derived classes that wish to remain opted in
+     * must declare it again. Such stats generally implement {@link Stat#persistTo} and {@link
+     * Stat#unpersistFrom} by calling {@link #writeTo} and {@link #readFrom}.
+     */
+    public static interface DataPersistable
+    {
+        /**
+         * Serializes this instance for storage in the item database using only primitive data.
+         * The data written must be identical to that which would be written by {@link
+         * Stat#persistTo}, so that the two may be used interchangeably.
+         */
+        public void writeTo (DataOutput out, AuxDataSource aux)
+            throws IOException;
+
+        /**
+         * Unserializes this item from primitive data obtained from the item database.
+         *
+         * @see #writeTo
+         */
+        public void readFrom (DataInput in, AuxDataSource aux)
+            throws IOException;
+    }
+
     /**
      * Maps a {@link Type}'s code code back to a {@link Type} instance.
      */
@@ -180,6 +211,24 @@ public abstract class Stat
     public abstract void unpersistFrom (ObjectInputStream in, AuxDataSource aux)
         throws IOException, ClassNotFoundException;
 
+    /**
+     * Returns true if this stat's class itself (rather than one of its ancestors) declares that it
+     * implements {@link DataPersistable}, in which case the repository persists it via {@link
+     * DataPersistable#writeTo} and {@link DataPersistable#readFrom} without the overhead of
+     * creating object streams. Because the declaration is not inherited, a derived class that
+     * overrides {@link #persistTo} and {@link #unpersistFrom} is always persisted with them.
+     */
+    public final boolean isDataPersistable ()
+    {
+        Class<?> clazz = getClass();
+        Boolean persistable = _dataPersistable.get(clazz);
+        if (persistable == null) {
+            persistable = Arrays.asList(clazz.getInterfaces()).contains(DataPersistable.class);
+            _dataPersistable.put(clazz, persistable);
+        }
+        return persistable;
+    }
+
     @Override
     public String toString ()
     {
@@ -226,4 +275,8 @@ public abstract class Stat
 
     /** The table mapping stat codes to enumerated types. */
     protected static HashIntMap<Type> _codeToType = new HashIntMap<Type>();
+
+    /** Whether or not each stat class declares that it is {@link DataPersistable}. */
+    protected static ConcurrentMap<Class<?>, Boolean> _dataPersistable =
+        new ConcurrentHashMap<Class<?>, Boolean>();
 }
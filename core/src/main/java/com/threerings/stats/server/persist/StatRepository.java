@@ -24,14 +24,20 @@ package com.threerings.stats.server.persist;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -44,6 +50,7 @@ import com.samskivert.depot.DepotRepository;
 import com.samskivert.depot.DuplicateKeyException;
 import com.samskivert.depot.Funcs;
 import com.samskivert.depot.Key;
+import com.samskivert.depot.Ops;
 import com.samskivert.depot.PersistenceContext;
 import com.samskivert.depot.PersistentRecord;
 import com.samskivert.depot.clause.FieldDefinition;
@@ -86,7 +93,13 @@ public class StatRepository extends DepotRepository
                                 StatRecord.STAT_CODE, modifier.getType().code());
 
         for (int ii = 0; ii < MAX_UPDATE_TRIES; ii++) {
-            StatRecord record = load(StatRecord.class, where); // TODO: force cache skip on ii > 0
+            // on our first try we can use our cached copy of the stat; if that turns out to be
+            // stale, our update will fail and the stale copy will have been flushed
+            StatRecord record = (ii == 0) ? getCachedRecord(playerId, modifier.getType().code()) :
+                null;
+            if (record == null) {
+                record = load(StatRecord.class, where); // TODO: force cache skip on ii > 0
+            }
             Stat stat = (record == null) ? modifier.getType().newStat() :
                 decodeStat(record.statCode, record.statData, record.modCount);
             @SuppressWarnings("unchecked") T tstat = (T)stat;
@@ -94,7 +107,10 @@ public class StatRepository extends DepotRepository
             if (!tstat.isModified()) {
                 return null;
             }
-            if (updateStat(playerId, tstat, false)) {
+            // if the stat doesn't exist yet, insert it directly; either way, if we collide with
+            // another writer, we reload the stat and try again
+            if ((record == null) ? writeStat(playerId, tstat, false) :
+                updateStat(playerId, tstat, false)) {
                 return tstat;
             }
         }
@@ -104,6 +120,90 @@ public class StatRepository extends DepotRepository
             "[stat=" + modifier.getType() + ", pid=" + playerId + "]");
     }
 
+    /**
+     * Applies the supplied modifications to the stats of the specified player. See {@link
+     * #updateStats(IntMap)}.
+     */
+    public List<Stat> updateStats (int playerId, Collection<? extends StatModifier<?>> modifiers)
+    {
+        IntMap<Collection<? extends StatModifier<?>>> mods = IntMaps.newHashIntMap();
+        mods.put(playerId, modifiers);
+        List<Stat> stats = updateStats(mods).get(playerId);
+        return (stats == null) ? new ArrayList<Stat>() : stats;
+    }
+
+    /**
+     * Applies the supplied modifications to the stats of the specified players (for example, all
+     * of the players in a just completed game). This is equivalent to calling {@link #updateStat}
+     * for each modifier, but the affected stats are loaded with a single query, and multiple
+     * modifications to the same stat result in a single write. Stats that do not exist will be
+     * created via {@link com.threerings.stats.data.Stat.Type#newStat}.
+     *
+     * @return a mapping from player id to the stats that were actually modified for that player.
+     *
+     * @exception DatabaseException thrown if some stats could not be updated because of repeated
+     * collisions with other writers. All other stats will have been updated.
+     */
+    public IntMap<List<Stat>> updateStats (
+        IntMap<? extends Collection<? extends StatModifier<?>>> modifiers)
+    {
+        // group the modifiers by the stat they modify
+        Map<Long, List<StatModifier<?>>> pending = Maps.newLinkedHashMap();
+        for (IntMap.IntEntry<? extends Collection<? extends StatModifier<?>>> entry :
+                 modifiers.intEntrySet()) {
+            for (StatModifier<?> modifier : entry.getValue()) {
+                Long key = statKey(entry.getIntKey(), modifier.getType().code());
+                List<StatModifier<?>> mods = pending.get(key);
+                if (mods == null) {
+                    pending.put(key, mods = Lists.newArrayList());
+                }
+                mods.add(modifier);
+            }
+        }
+
+        IntMap<List<Stat>> results = IntMaps.newHashIntMap();
+        for (int ii = 0; ii < MAX_UPDATE_TRIES && !pending.isEmpty(); ii++) {
+            Map<Long, StatRecord> records = loadRecords(pending.keySet(), ii == 0);
+            Iterator<Map.Entry<Long, List<StatModifier<?>>>> iter = pending.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<Long, List<StatModifier<?>>> entry = iter.next();
+                int playerId = (int)(entry.getKey() >> 32);
+                StatRecord record = records.get(entry.getKey());
+                Stat.Type type = entry.getValue().get(0).getType();
+                Stat stat = (record == null) ? type.newStat() :
+                    decodeStat(record.statCode, record.statData, record.modCount);
+                if (stat == null) {
+                    iter.remove(); // decodeStat will have logged a warning
+                    continue;
+                }
+
+                for (StatModifier<?> modifier : entry.getValue()) {
+                    applyModifier(modifier, stat);
+                }
+                if (!stat.isModified()) {
+                    iter.remove();
+
+                } else if ((record == null) ? writeStat(playerId, stat, false) :
+                           updateStat(playerId, stat, false)) {
+                    List<Stat> stats = results.get(playerId);
+                    if (stats == null) {
+                        results.put(playerId, stats = Lists.newArrayList());
+                    }
+                    stats.add(stat);
+                    iter.remove();
+                }
+                // otherwise we collided with another writer and will try again
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            throw new DatabaseException(
+                "Unable to update stats after " + MAX_UPDATE_TRIES + " attempts " +
+                "[count=" + pending.size() + ", updated=" + results + "]");
+        }
+        return results;
+    }
+
     /**
      * Loads the stats associated with the specified player.
      *
@@ -113,6 +213,7 @@ public class StatRepository extends DepotRepository
         ArrayList<Stat> stats = Lists.newArrayList();
         Where where = new Where(StatRecord.PLAYER_ID, playerId);
         for (StatRecord record : findAll(StatRecord.class, where)) {
+            cacheRecord(record);
             Stat stat = decodeStat(record.statCode, record.statData, record.modCount);
             if (stat != null) {
                 stats.add(stat);
@@ -144,10 +245,56 @@ public class StatRepository extends DepotRepository
      */
     public void writeModified (int playerId, Iterable<Stat> stats)
     {
-        for (Stat stat : stats) {
+        IntMap<Iterable<Stat>> pstats = IntMaps.newHashIntMap();
+        pstats.put(playerId, stats);
+        writeModified(pstats);
+    }
+
+    /**
+     * Writes out any of the supplied stats that have been modified since they were first loaded,
+     * for many players at once (for example, all of the players in a just completed game). Stats
+     * that could not be written with a simple update (because they do not yet exist, or because
+     * another writer modified them) are resolved together rather than one at a time. Exceptions
+     * that occur while writing the stats will be caught and logged.
+     */
+    public void writeModified (IntMap<? extends Iterable<Stat>> stats)
+    {
+        // first try a simple conditional update of each modified stat
+        Map<Long, Stat> failed = Maps.newLinkedHashMap();
+        for (IntMap.IntEntry<? extends Iterable<Stat>> entry : stats.intEntrySet()) {
+            int playerId = entry.getIntKey();
+            for (Stat stat : entry.getValue()) {
+                try {
+                    if (stat.getType().isPersistent() && stat.isModified() &&
+                        !tryUpdateStat(playerId, stat)) {
+                        failed.put(statKey(playerId, stat.getCode()), stat);
+                    }
+                } catch (Exception e) {
+                    log.warning("Error flushing modified stat", "stat", stat, e);
+                }
+            }
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+
+        // the stats we failed to update either don't exist or collided with another writer; load
+        // the lot of them at once to find out which, then insert or overwrite as appropriate
+        Map<Long, StatRecord> existing;
+        try {
+            existing = loadRecords(failed.keySet(), false);
+        } catch (Exception e) {
+            log.warning("Error loading stats to flush", "count", failed.size(), e);
+            return;
+        }
+        for (Map.Entry<Long, Stat> entry : failed.entrySet()) {
+            int playerId = (int)(entry.getKey() >> 32);
+            Stat stat = entry.getValue();
             try {
-                if (stat.getType().isPersistent() && stat.isModified()) {
-                    updateStat(playerId, stat, true);
+                // if someone else inserts the stat before we do, overwrite it as we would have
+                // had it already existed
+                if (!writeStat(playerId, stat, existing.containsKey(entry.getKey()))) {
+                    writeStat(playerId, stat, true);
                 }
             } catch (Exception e) {
                 log.warning("Error flushing modified stat", "stat", stat, e);
@@ -155,6 +302,37 @@ public class StatRepository extends DepotRepository
         }
     }
 
+    /**
+     * Configures the number of players for which we cache stat records in memory. The cached
+     * records are used in place of loading a stat when it is modified; if the cached copy turns
+     * out to be out of date (its modification count does not match the database) it is flushed
+     * and the stat is reloaded. This should only be enabled if the stats of a given player are
+     * predominantly modified by this server.
+     *
+     * @param maxPlayers the number of players for which to cache stats, or zero to disable
+     * caching (the default).
+     */
+    public void setStatCacheSize (int maxPlayers)
+    {
+        synchronized (_statCache) {
+            _statCacheSize = Math.max(maxPlayers, 0);
+            if (_statCacheSize == 0) {
+                _statCache.clear();
+            }
+        }
+    }
+
+    /**
+     * Flushes any cached stat records for the specified player. This should be called if the
+     * player's stats are modified outside of this repository.
+     */
+    public void flushCachedStats (int playerId)
+    {
+        synchronized (_statCache) {
+            _statCache.remove(playerId);
+        }
+    }
+
     // documentation inherited from interface Stat.AuxDataSource
     public int getStringCode (Stat.Type type, String value)
     {
@@ -217,6 +395,93 @@ public class StatRepository extends DepotRepository
         deleteAll(StatRecord.class, new Where(StatRecord.PLAYER_ID.in(playerIds)));
     }
 
+    /**
+     * Applies the supplied modifier to the supplied stat (which must be of the modifier's type).
+     */
+    protected static <T extends Stat> void applyModifier (StatModifier<T> modifier, Stat stat)
+    {
+        @SuppressWarnings("unchecked") T tstat = (T)stat;
+        modifier.modify(tstat);
+    }
+
+    /**
+     * Loads the stat records identified by the supplied keys (see {@link #statKey}) with a single
+     * query, using cached records where possible if <code>useCache</code> is true.
+     *
+     * @return a mapping from key to record for those stats that exist.
+     */
+    protected Map<Long, StatRecord> loadRecords (Collection<Long> keys, boolean useCache)
+    {
+        Map<Long, StatRecord> records = Maps.newHashMap();
+        Set<Integer> playerIds = Sets.newHashSet(), statCodes = Sets.newHashSet();
+        for (Long key : keys) {
+            int playerId = (int)(key >> 32), statCode = (int)key.longValue();
+            StatRecord record = useCache ? getCachedRecord(playerId, statCode) : null;
+            if (record != null) {
+                records.put(key, record);
+            } else {
+                playerIds.add(playerId);
+                statCodes.add(statCode);
+            }
+        }
+        if (playerIds.isEmpty()) {
+            return records;
+        }
+
+        // this may load a few records we don't need, which we simply ignore
+        Where where = new Where(Ops.and(StatRecord.PLAYER_ID.in(playerIds),
+                                        StatRecord.STAT_CODE.in(statCodes)));
+        for (StatRecord record : findAll(StatRecord.class, where)) {
+            Long key = statKey(record.playerId, record.statCode);
+            if (keys.contains(key)) {
+                records.put(key, record);
+                cacheRecord(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Returns our cached copy of the specified stat record, or null.
+     */
+    protected StatRecord getCachedRecord (int playerId, int statCode)
+    {
+        synchronized (_statCache) {
+            IntMap<StatRecord> records = _statCache.get(playerId);
+            return (records == null) ? null : records.get(statCode);
+        }
+    }
+
+    /**
+     * Caches the supplied stat record (if caching is enabled).
+     */
+    protected void cacheRecord (StatRecord record)
+    {
+        synchronized (_statCache) {
+            if (_statCacheSize == 0) {
+                return;
+            }
+            IntMap<StatRecord> records = _statCache.get(record.playerId);
+            if (records == null) {
+                _statCache.put(record.playerId, records = IntMaps.newHashIntMap());
+            }
+            records.put(record.statCode, record);
+        }
+    }
+
+    /**
+     * Flushes our cached copy of the specified stat record, if we have one.
+     */
+    protected void uncacheRecord (int playerId, int statCode)
+    {
+        synchronized (_statCache) {
+            IntMap<StatRecord> records = _statCache.get(playerId);
+            if (records != null) {
+                records.remove(statCode);
+            }
+        }
+    }
+
     /**
      * Instantiates the appropriate stat class and decodes the stat from the data.
      */
@@ -239,9 +504,14 @@ public class StatRepository extends DepotRepository
         Exception error = null;
 
         try {
-            // decode its contents from the serialized data
+            // decode its contents from the serialized data; stats that persist only primitive
+            // data write identical bytes either way, so they can skip the object stream
             ByteArrayInputStream bin = new ByteArrayInputStream(data);
-            stat.unpersistFrom(new ObjectInputStream(bin), this);
+            if (stat.isDataPersistable()) {
+                ((Stat.DataPersistable)stat).readFrom(new DataInputStream(bin), this);
+            } else {
+                stat.unpersistFrom(new ObjectInputStream(bin), this);
+            }
             stat.setModCount(modCount);
             return stat;
 
@@ -261,56 +531,130 @@ public class StatRepository extends DepotRepository
     /**
      * Updates the specified stat in the database, inserting it if necessary.
      *
+     * @param forceWrite if true, the stat is written even if another database client modified
+     * (or inserted) it simultaneously.
+     *
      * @return true if the update was successful, false if it failed due to the stat being
-     * simultaneously modified by another database client.
+     * simultaneously modified or inserted by another database client (in which case the caller
+     * should reload the stat and try again).
      */
     protected boolean updateStat (int playerId, final Stat stat, boolean forceWrite)
     {
-        ByteArrayOutInputStream out = new ByteArrayOutInputStream();
-        try {
-            stat.persistTo(new ObjectOutputStream(out), this);
-        } catch (IOException ioe) {
-            throw new DatabaseException("Error serializing stat " + stat, ioe);
+        // update the row in the database only if it has the expected modCount
+        if (tryUpdateStat(playerId, stat)) {
+            return true;
         }
 
-        byte[] data = out.toByteArray();
-        byte nextModCount = (byte)((stat.getModCount() + 1) % Byte.MAX_VALUE);
+        // if we failed to update any rows, it could be because we saw an unexpected modCount, or
+        // because the stat did not already exist in the repo
         Key<StatRecord> key = StatRecord.getKey(playerId, stat.getCode());
+        if (load(StatRecord.class, key) == null) {
+            // if it didn't exist, let's try to create it
+            if (writeStat(playerId, stat, false)) {
+                return true;
+            }
+        }
 
-        // update the row in the database only if it has the expected modCount
+        // if it did exist (or another writer inserted it before we could), we may want to write
+        // anyway
+        return forceWrite && writeStat(playerId, stat, true);
+    }
+
+    /**
+     * Updates the specified stat in the database if its stored modification count matches that
+     * of the stat.
+     *
+     * @return true if the stat was updated, false if the stat does not exist in the database or
+     * was simultaneously modified by another database client.
+     */
+    protected boolean tryUpdateStat (int playerId, Stat stat)
+    {
+        byte[] data = encodeStat(stat);
+        byte nextModCount = nextModCount(stat);
         int numRows = updatePartial(
             StatRecord.class,
             new Where(StatRecord.PLAYER_ID, playerId,
                       StatRecord.STAT_CODE, stat.getCode(),
                       StatRecord.MOD_COUNT, stat.getModCount()),
-            key,
+            StatRecord.getKey(playerId, stat.getCode()),
             StatRecord.STAT_DATA, data, StatRecord.MOD_COUNT, nextModCount);
 
-        // if we failed to update any rows, it could be because we saw an unexpected modCount, or
-        // because the stat did not already exist in the repo
-        if (numRows == 0) {
-            // if it didn't exist, let's try to create it
-            if (load(StatRecord.class, key) == null) {
-                try {
-                    insert(new StatRecord(playerId, stat.getCode(), data, nextModCount));
-                    numRows = 1;
-                } catch (DuplicateKeyException e) {
-                    // someone else inserted the StatRecord before we were able to
-                    numRows = 0;
-                }
+        if (numRows > 0) {
+            cacheRecord(new StatRecord(playerId, stat.getCode(), data, nextModCount));
+            return true;
+        }
+
+        // our cached copy of this stat (if any) is out of date
+        uncacheRecord(playerId, stat.getCode());
+        return false;
+    }
+
+    /**
+     * Inserts the specified stat into the database or, if <code>overwrite</code> is true,
+     * overwrites the existing stat after a collision with another writer.
+     *
+     * @return true if the stat was written, false if it was not inserted because it already
+     * exists.
+     */
+    protected boolean writeStat (int playerId, Stat stat, boolean overwrite)
+    {
+        byte[] data = encodeStat(stat);
+        byte nextModCount = nextModCount(stat);
+        StatRecord record = new StatRecord(playerId, stat.getCode(), data, nextModCount);
+
+        if (overwrite) {
+            log.warning("Possible collision while storing StatRecord",
+                        "playerId", playerId, "stat", stat.getType().name(),
+                        "modCount", nextModCount, "overwriting",
+                        load(StatRecord.class, StatRecord.getKey(playerId, stat.getCode())));
+            store(record);
+
+        } else {
+            try {
+                insert(record);
+            } catch (DuplicateKeyException e) {
+                // someone else inserted the StatRecord before we were able to
+                return false;
             }
+        }
 
-            // if it did exist but we collided with another writer, we may want to write anyway
-            if (numRows == 0 && forceWrite) {
-                log.warning("Possible collision while storing StatRecord",
-                            "playerId", playerId, "stat", stat.getType().name(),
-                            "modCount", nextModCount, "overwriting", load(StatRecord.class, key));
-                store(new StatRecord(playerId, stat.getCode(), data, nextModCount));
-                numRows = 1;
+        cacheRecord(new StatRecord(playerId, stat.getCode(), data, nextModCount));
+        return true;
+    }
+
+    /**
+     * Serializes the supplied stat for storage in the database.
+     */
+    protected byte[] encodeStat (Stat stat)
+    {
+        ByteArrayOutInputStream out = _encodeBuffer.get();
+        out.reset();
+        try {
+            if (stat.isDataPersistable()) {
+                ((Stat.DataPersistable)stat).writeTo(new DataOutputStream(out), this);
+            } else {
+                stat.persistTo(new ObjectOutputStream(out), this);
             }
+        } catch (IOException ioe) {
+            throw new DatabaseException("Error serializing stat " + stat, ioe);
         }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the modification count to be stored with the next write of the supplied stat.
+     */
+    protected static byte nextModCount (Stat stat)
+    {
+        return (byte)((stat.getModCount() + 1) % Byte.MAX_VALUE);
+    }
 
-        return (numRows > 0);
+    /**
+     * Combines a player id and stat code into a single key.
+     */
+    protected static Long statKey (int playerId, int statCode)
+    {
+        return ((long)playerId << 32) | (statCode & 0xFFFFFFFFL);
     }
 
     /** Helper function for {@link #getStringCode}. */
@@ -404,6 +748,25 @@ public class StatRepository extends DepotRepository
         classes.add(StringCodeRecord.class);
     }
 
+    /** Our cached stat records, keyed on player id and then stat code, in LRU order. */
+    protected Map<Integer, IntMap<StatRecord>> _statCache =
+        new LinkedHashMap<Integer, IntMap<StatRecord>>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry (Map.Entry<Integer, IntMap<StatRecord>> e) {
+            return size() > _statCacheSize;
+        }
+    };
+
+    /** The maximum number of players for which we cache stat records. */
+    protected int _statCacheSize;
+
+    /** A per-thread buffer into which we serialize stats prior to writing them. */
+    protected ThreadLocal<ByteArrayOutInputStream> _encodeBuffer =
+        new ThreadLocal<ByteArrayOutInputStream>() {
+        @Override protected ByteArrayOutInputStream initialValue () {
+            return new ByteArrayOutInputStream();
+        }
+    };
+
     protected Map<Stat.Type,Map<String,Integer>> _stringToCode = Maps.newHashMap();
     protected Map<Stat.Type,IntMap<String>> _codeToString = Maps.newHashMap();
 
@@ -21,8 +21,12 @@
 
 package com.threerings.whirled.server;
 
+import java.util.List;
+
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
+import com.samskivert.util.Interval;
 import com.samskivert.util.Invoker;
 
 import com.samskivert.jdbc.WriteOnlyUnit;
@@ -36,6 +40,8 @@ import com.threerings.whirled.data.Scene;
 import com.threerings.whirled.data.SceneCodes;
 import com.threerings.whirled.data.ScenePlace;
 import com.threerings.whirled.data.SceneUpdate;
+import com.threerings.whirled.server.persist.BatchSceneRepository;
+import com.threerings.whirled.server.persist.SceneRepository;
 import com.threerings.whirled.util.UpdateList;
 
 import static com.threerings.whirled.Log.log;
@@ -79,6 +85,17 @@ public class SceneManager extends PlaceManager
         return true;
     }
 
+    /**
+     * Returns a rough estimate of the memory used by this scene manager and its scene, in bytes.
+     * This is used by the scene registry to limit the memory consumed by warm (empty but
+     * resident) scene managers. Derived classes that manage substantial additional data should
+     * override this method to account for it.
+     */
+    public long getEstimatedFootprint ()
+    {
+        return DEFAULT_FOOTPRINT;
+    }
+
     /**
      * Called by the scene registry once the scene manager has been created (and initialized), but
      * before it is started up.
@@ -132,11 +149,33 @@ public class SceneManager extends PlaceManager
         });
     }
 
+    @Override
+    protected void bodyEntered (int bodyOid)
+    {
+        super.bodyEntered(bodyOid);
+
+        // if we were being kept warm by the registry, we're no longer empty
+        _screg.sceneManagerOccupied(this);
+    }
+
+    @Override
+    protected void checkShutdownInterval ()
+    {
+        // if the registry is keeping empty scene managers warm, it takes care of shutting us down;
+        // managers that never unload when idle are left to our parent, which keeps them running
+        if (idleUnloadPeriod() <= 0 || _screg == null || !_screg.retainWarmSceneManager(this)) {
+            super.checkShutdownInterval();
+        }
+    }
+
     @Override
     protected void didShutdown ()
     {
         super.didShutdown();
 
+        // make sure any queued updates make it to the repository
+        flushUpdates();
+
         // unregister ourselves with the scene registry
         _screg.unmapSceneManager(this);
     }
@@ -151,8 +190,12 @@ public class SceneManager extends PlaceManager
      * data. Updates are not stored forever, but a sizable number of recent updates are stored so
      * that moderately current clients can apply incremental patches to their scenes rather than
      * redownloading entire scenes when they change.
+     *
+     * <p> The update is not written to the repository immediately but is queued up (see {@link
+     * #getUpdateFlushDelay}) so that bursts of updates can be written together. Any queued updates
+     * are flushed when the scene manager shuts down.
      */
-    protected void recordUpdate (final SceneUpdate update)
+    protected void recordUpdate (SceneUpdate update)
     {
         // instruct our in-memory copy of the scene to apply the update
         _scene.updateReceived(update);
@@ -160,20 +203,93 @@ public class SceneManager extends PlaceManager
         // add it to our in memory update list
         _updates.addUpdate(update);
 
-        // and apply and store it in the repository
+        // and queue it up to be applied and stored in the repository
         if (isPersistent()) {
-            _invoker.postUnit(new WriteOnlyUnit("recordUpdate(" + update + ")") {
-                @Override
-                public void invokePersist () throws Exception {
-                    _screg.getSceneRepository().applyAndRecordUpdate(_scene.getSceneModel(), update);
-                }
-            });
+            queueUpdateWrite(update);
         }
 
         // broadcast the update to all occupants of the scene
         _plobj.postMessage(SceneCodes.SCENE_UPDATE, new Object[] { update });
     }
 
+    /**
+     * Returns the number of updates waiting to be written to the repository.
+     */
+    public int getPendingUpdateCount ()
+    {
+        return _pendingUpdates.size();
+    }
+
+    /**
+     * Returns the maximum number of milliseconds for which recorded updates are queued up before
+     * being written to the repository. Updates recorded within this window are written together,
+     * which turns a burst of edits into a single repository operation. Derived classes may
+     * override this, returning zero to write every update immediately.
+     */
+    protected long getUpdateFlushDelay ()
+    {
+        return DEFAULT_UPDATE_FLUSH_DELAY;
+    }
+
+    /**
+     * Adds the supplied update to our write-behind queue, flushing the queue immediately if it is
+     * full or scheduling it to be flushed after our flush delay otherwise.
+     */
+    protected void queueUpdateWrite (SceneUpdate update)
+    {
+        _pendingUpdates.add(update);
+        _screg.noteUpdateQueued(_pendingUpdates.size());
+
+        long delay = getUpdateFlushDelay();
+        if (delay <= 0 || _pendingUpdates.size() >= MAX_PENDING_UPDATES) {
+            flushUpdates();
+
+        } else if (_pendingUpdates.size() == 1) {
+            if (_flushInterval == null) {
+                _flushInterval = new Interval(_omgr) {
+                    @Override public void expired () {
+                        flushUpdates();
+                    }
+                };
+            }
+            _flushInterval.schedule(delay);
+        }
+    }
+
+    /**
+     * Writes all queued updates to the repository in a single invoker unit.
+     */
+    protected void flushUpdates ()
+    {
+        if (_flushInterval != null) {
+            _flushInterval.cancel();
+        }
+        if (_pendingUpdates.isEmpty()) {
+            return;
+        }
+
+        final SceneUpdate[] updates = _pendingUpdates.toArray(
+            new SceneUpdate[_pendingUpdates.size()]);
+        _pendingUpdates.clear();
+
+        final SceneRepository screp = _screg.getSceneRepository();
+        _screg.noteUpdatesFlushed(updates.length, screp instanceof BatchSceneRepository);
+        _invoker.postUnit(new WriteOnlyUnit("recordUpdates(" + where() + ", " +
+                                            updates.length + ")") {
+            @Override
+            public void invokePersist () throws Exception {
+                if (screp instanceof BatchSceneRepository) {
+                    ((BatchSceneRepository)screp).applyAndRecordUpdates(
+                        _scene.getSceneModel(), updates);
+                } else {
+                    for (SceneUpdate update : updates) {
+                        screp.applyAndRecordUpdate(_scene.getSceneModel(), update);
+                    }
+                }
+            }
+        });
+    }
+
     @Override
     public String where ()
     {
@@ -202,4 +318,19 @@ public class SceneManager extends PlaceManager
 
     /** The invoker on which we'll do our database operations. */
     @Inject protected @MainInvoker Invoker _invoker;
+
+    /** Updates that have been recorded but not yet written to the repository. */
+    protected List<SceneUpdate> _pendingUpdates = Lists.newArrayList();
+
+    /** Flushes our pending updates when our flush delay expires. */
+    protected Interval _flushInterval;
+
+    /** The default number of milliseconds for which updates are queued before being written. */
+    protected static final long DEFAULT_UPDATE_FLUSH_DELAY = 1000L;
+
+    /** The number of queued updates at which we flush the queue regardless of delay. */
+    protected static final int MAX_PENDING_UPDATES = 64;
+
+    /** The footprint reported by {@link #getEstimatedFootprint} by default. */
+    protected static final long DEFAULT_FOOTPRINT = 64 * 1024L;
 }
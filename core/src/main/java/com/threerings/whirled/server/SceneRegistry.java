@@ -21,20 +21,27 @@
 
 package com.threerings.whirled.server;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
+import com.samskivert.util.ArrayIntSet;
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
+import com.samskivert.util.Interval;
 import com.samskivert.util.Invoker;
+import com.samskivert.util.StringUtil;
 
 import com.samskivert.jdbc.RepositoryUnit;
 
 import com.threerings.presents.annotation.MainInvoker;
 import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.dobj.RootDObjectManager;
 import com.threerings.presents.server.InvocationManager;
 
 import com.threerings.crowd.data.BodyObject;
@@ -50,6 +57,7 @@ import com.threerings.whirled.data.Scene;
 import com.threerings.whirled.data.SceneCodes;
 import com.threerings.whirled.data.SceneMarshaller;
 import com.threerings.whirled.data.SceneModel;
+import com.threerings.whirled.server.persist.BatchSceneRepository;
 import com.threerings.whirled.server.persist.SceneRepository;
 import com.threerings.whirled.util.NoSuchSceneException;
 import com.threerings.whirled.util.SceneFactory;
@@ -105,6 +113,171 @@ public class SceneRegistry
         public void sceneFailedToResolve (int sceneId, Exception reason);
     }
 
+    /**
+     * Tracks statistics on scene resolution so that the effects of resolution batching can be
+     * monitored.
+     */
+    public static class ResolutionStats
+        implements Cloneable
+    {
+        /** The number of scenes that were successfully resolved. */
+        public int resolved;
+
+        /** The number of scenes that failed to resolve. */
+        public int failed;
+
+        /** The total time spent resolving scenes (from request to startup), in milliseconds. */
+        public long totalLatency;
+
+        /** The longest time spent resolving a single scene, in milliseconds. */
+        public long maxLatency;
+
+        /** The number of batches loaded from the repository. */
+        public int batches;
+
+        /** The total number of scenes loaded in batches. */
+        public int batchedScenes;
+
+        /** The largest batch loaded from the repository. */
+        public int maxBatchSize;
+
+        /**
+         * Returns the average time taken to resolve a scene, in milliseconds.
+         */
+        public long getAverageLatency ()
+        {
+            int count = resolved + failed;
+            return (count == 0) ? 0L : (totalLatency / count);
+        }
+
+        /**
+         * Returns the average number of scenes loaded per batch.
+         */
+        public float getAverageBatchSize ()
+        {
+            return (batches == 0) ? 0f : (batchedScenes / (float)batches);
+        }
+
+        @Override
+        public ResolutionStats clone ()
+        {
+            try {
+                return (ResolutionStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+
+        protected void noteResolution (long latency, boolean success)
+        {
+            if (success) {
+                resolved++;
+            } else {
+                failed++;
+            }
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+        }
+
+        protected void noteBatch (int size)
+        {
+            batches++;
+            batchedScenes += size;
+            maxBatchSize = Math.max(maxBatchSize, size);
+        }
+    }
+
+    /**
+     * Tracks statistics on the retention of warm (empty but resident) scene managers.
+     */
+    public static class WarmStats
+        implements Cloneable
+    {
+        /** The number of resolution requests satisfied by a warm scene manager. */
+        public int hits;
+
+        /** The number of resolution requests that required loading from the repository. */
+        public int misses;
+
+        /** The number of warm scene managers shut down to stay within our size limits. */
+        public int evictions;
+
+        /** The number of warm scene managers shut down because they were idle too long. */
+        public int expirations;
+
+        /** The number of warm scene managers currently resident. */
+        public int resident;
+
+        /** The combined estimated footprint of the currently resident warm scene managers. */
+        public long residentFootprint;
+
+        /**
+         * Returns the fraction of resolution requests satisfied by warm scene managers.
+         */
+        public float getHitRate ()
+        {
+            int total = hits + misses;
+            return (total == 0) ? 0f : (hits / (float)total);
+        }
+
+        @Override
+        public WarmStats clone ()
+        {
+            try {
+                return (WarmStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
+    /**
+     * Tracks statistics on the write-behind queueing of scene updates by our scene managers.
+     */
+    public static class UpdateWriteStats
+        implements Cloneable
+    {
+        /** The number of updates queued to be written to the repository. */
+        public int updatesQueued;
+
+        /** The number of times a scene manager flushed its queued updates. */
+        public int flushes;
+
+        /** The number of repository writes avoided by writing queued updates together. */
+        public int writesSaved;
+
+        /** The deepest any scene manager's update queue has been. */
+        public int maxQueueDepth;
+
+        @Override
+        public UpdateWriteStats clone ()
+        {
+            try {
+                return (UpdateWriteStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
     /**
      * Constructs a scene registry.
      */
@@ -158,6 +331,9 @@ public class SceneRegistry
         SceneManager mgr = _scenemgrs.get(sceneId);
         if (mgr != null) {
             // the scene is already resolved, we're ready to roll
+            if (_warm.containsKey(sceneId)) {
+                _warmStats.hits++;
+            }
             target.sceneWasResolved(mgr);
             return;
         }
@@ -166,6 +342,16 @@ public class SceneRegistry
         if (!addResolutionListener(sceneId, target)) {
             return;
         }
+        _warmStats.misses++;
+
+        // note when we started resolving so that we can track resolution latency
+        _resolveStamps.put(sceneId, System.currentTimeMillis());
+
+        // if we're batching resolutions, queue this scene up with any others that arrive shortly
+        if (_batchWindow > 0) {
+            queueBatchedResolution(sceneId);
+            return;
+        }
 
         // otherwise we have to load the scene from the repository
         final int fsceneId = sceneId;
@@ -187,6 +373,79 @@ public class SceneRegistry
         });
     }
 
+    /**
+     * Configures batched scene resolution. When enabled, scenes that are requested within
+     * <code>window</code> milliseconds of the first unresolved request are collected and loaded
+     * from the repository in a single invoker unit (using the bulk methods of {@link
+     * BatchSceneRepository} if our repository supports them). This substantially reduces the
+     * load on the invoker when large numbers of scenes are resolved at once, for example after a
+     * server restart.
+     *
+     * @param window the number of milliseconds to wait for further requests before loading a
+     * batch, or zero to disable batching and resolve every scene individually (the default).
+     * @param maxBatchSize the maximum number of scenes to load in a single batch; a batch is
+     * loaded immediately once it reaches this size.
+     */
+    public void setResolutionBatching (long window, int maxBatchSize)
+    {
+        _batchWindow = Math.max(window, 0L);
+        _maxBatchSize = Math.max(maxBatchSize, 1);
+
+        // if batching was just turned off, don't leave anything languishing in the queue
+        if (_batchWindow == 0) {
+            flushResolutionBatch();
+        }
+    }
+
+    /**
+     * Configures the retention of "warm" scene managers. Normally a scene manager shuts down
+     * shortly after its last occupant leaves and must be fully resolved again when someone next
+     * enters. When warm retention is enabled, emptied scene managers are instead kept resident
+     * (and immediately available to {@link #resolveScene}) until they are evicted in least
+     * recently emptied order to stay within the supplied limits.
+     *
+     * @param maxScenes the maximum number of empty scene managers to retain, or zero to disable
+     * warm retention (the default).
+     * @param maxFootprint the maximum combined estimated memory footprint (in bytes, see {@link
+     * SceneManager#getEstimatedFootprint}) of the retained scene managers, or zero for no limit.
+     * @param maxIdle the maximum number of milliseconds an empty scene manager is retained, or
+     * zero for no limit.
+     */
+    public void setWarmRetention (int maxScenes, long maxFootprint, long maxIdle)
+    {
+        _warmMaxScenes = Math.max(maxScenes, 0);
+        _warmMaxFootprint = Math.max(maxFootprint, 0L);
+        _warmMaxIdle = Math.max(maxIdle, 0L);
+        trimWarmSceneManagers();
+    }
+
+    /**
+     * Returns a snapshot of our warm scene manager retention statistics.
+     */
+    public WarmStats getWarmStats ()
+    {
+        WarmStats stats = _warmStats.clone();
+        stats.resident = _warm.size();
+        stats.residentFootprint = _warmFootprint;
+        return stats;
+    }
+
+    /**
+     * Returns a snapshot of the statistics on scene updates written by our scene managers.
+     */
+    public UpdateWriteStats getUpdateWriteStats ()
+    {
+        return _writeStats.clone();
+    }
+
+    /**
+     * Returns a snapshot of our scene resolution statistics.
+     */
+    public ResolutionStats getResolutionStats ()
+    {
+        return _stats.clone();
+    }
+
     // from interface SceneService
     public void moveTo (ClientObject caller, int sceneId, int sceneVer,
                         SceneService.SceneMoveListener listener)
@@ -237,6 +496,125 @@ public class SceneRegistry
         return newList;
     }
 
+    /**
+     * Adds the specified scene to the pending resolution batch, loading the batch immediately if
+     * it is full or scheduling it to be loaded when our batch window expires.
+     */
+    protected void queueBatchedResolution (int sceneId)
+    {
+        _batchPending.add(sceneId);
+        if (_batchPending.size() >= _maxBatchSize) {
+            flushResolutionBatch();
+
+        } else if (_batchPending.size() == 1) {
+            if (_batchInterval == null) {
+                _batchInterval = new Interval(_omgr) {
+                    @Override public void expired () {
+                        flushResolutionBatch();
+                    }
+                };
+            }
+            _batchInterval.schedule(_batchWindow);
+        }
+    }
+
+    /**
+     * Loads all scenes in the pending resolution batch from the repository in a single unit.
+     */
+    protected void flushResolutionBatch ()
+    {
+        if (_batchInterval != null) {
+            _batchInterval.cancel();
+        }
+        if (_batchPending.isEmpty()) {
+            return;
+        }
+
+        final int[] sceneIds = _batchPending.toIntArray();
+        _batchPending.clear();
+        _stats.noteBatch(sceneIds.length);
+
+        _invoker.postUnit(new RepositoryUnit("resolveScenes(" + sceneIds.length + ")") {
+            @Override public void invokePersist () throws Exception {
+                _results = loadSceneBatch(sceneIds);
+            }
+            @Override public void handleSuccess () {
+                for (int sceneId : sceneIds) {
+                    BatchResult result = _results.get(sceneId);
+                    if (result == null) {
+                        processFailedResolution(sceneId, new NoSuchSceneException(sceneId));
+                    } else if (result.failure != null) {
+                        processFailedResolution(sceneId, result.failure);
+                    } else {
+                        processSuccessfulResolution(result.model, result.updates, result.extras);
+                    }
+                }
+            }
+            @Override public void handleFailure (Exception error) {
+                for (int sceneId : sceneIds) {
+                    processFailedResolution(sceneId, error);
+                }
+            }
+            protected IntMap<BatchResult> _results;
+        });
+    }
+
+    /**
+     * Loads the data for the specified batch of scenes. This is called on the invoker thread. If
+     * our repository is a {@link BatchSceneRepository} its bulk loading methods are used,
+     * otherwise each scene is loaded individually and failures are recorded per-scene so that one
+     * bad scene does not prevent the rest of the batch from resolving.
+     *
+     * @return a mapping from scene id to load result. Scenes that do not exist may be omitted.
+     */
+    protected IntMap<BatchResult> loadSceneBatch (int[] sceneIds)
+        throws Exception
+    {
+        IntMap<BatchResult> results = IntMaps.newHashIntMap();
+
+        if (_screp instanceof BatchSceneRepository) {
+            BatchSceneRepository brepo = (BatchSceneRepository)_screp;
+            IntMap<SceneModel> models = brepo.loadSceneModels(sceneIds);
+            IntMap<UpdateList> updates = brepo.loadUpdates(sceneIds);
+            IntMap<Object> extras = brepo.loadExtras(models);
+            for (IntMap.IntEntry<SceneModel> entry : models.intEntrySet()) {
+                BatchResult result = new BatchResult();
+                result.model = entry.getValue();
+                result.updates = updates.get(entry.getIntKey());
+                if (result.updates == null) {
+                    result.updates = new UpdateList();
+                }
+                result.extras = extras.get(entry.getIntKey());
+                results.put(entry.getIntKey(), result);
+            }
+            return results;
+        }
+
+        for (int sceneId : sceneIds) {
+            BatchResult result = new BatchResult();
+            try {
+                result.model = _screp.loadSceneModel(sceneId);
+                result.updates = _screp.loadUpdates(sceneId);
+                result.extras = _screp.loadExtras(sceneId, result.model);
+            } catch (Exception e) {
+                result.failure = e;
+            }
+            results.put(sceneId, result);
+        }
+        return results;
+    }
+
+    /**
+     * Records the latency of a completed (or failed) resolution of the specified scene.
+     */
+    protected void noteResolutionComplete (int sceneId, boolean success)
+    {
+        Long stamp = _resolveStamps.remove(sceneId);
+        if (stamp != null) {
+            _stats.noteResolution(System.currentTimeMillis() - stamp, success);
+        }
+    }
+
     /**
      * Called when the scene resolution has completed successfully.
      */
@@ -276,6 +654,7 @@ public class SceneRegistry
         if (!(cause instanceof NoSuchSceneException)) {
             log.info("Failed to resolve scene [sceneId=" + sceneId + "].", cause);
         }
+        noteResolutionComplete(sceneId, false);
 
         // alas things didn't work out, notify our penders
         List<ResolutionListener> penders = _penders.remove(sceneId);
@@ -301,6 +680,7 @@ public class SceneRegistry
         _scenemgrs.put(sceneId, scmgr);
 
         log.debug("Registering scene manager", "scid", sceneId, "scmgr", scmgr);
+        noteResolutionComplete(sceneId, true);
 
         // now notify any penders
         List<ResolutionListener> penders = _penders.remove(sceneId);
@@ -315,11 +695,129 @@ public class SceneRegistry
         }
     }
 
+    /**
+     * Called by a scene manager that has become empty. If warm retention is enabled, the scene
+     * manager is added to our warm set and the registry takes responsibility for shutting it down
+     * when it is evicted.
+     *
+     * @return true if the registry has taken responsibility for the scene manager (it is either
+     * retained warm or, if retaining it pushed us over our limits, has already been shut down),
+     * false if it should go about its normal idle shutdown.
+     */
+    protected boolean retainWarmSceneManager (SceneManager scmgr)
+    {
+        if (_warmMaxScenes <= 0 || !scmgr.isPersistent()) {
+            return false;
+        }
+
+        int sceneId = scmgr.getScene().getId();
+        WarmEntry entry = _warm.remove(sceneId);
+        if (entry != null) {
+            _warmFootprint -= entry.footprint;
+        }
+        entry = new WarmEntry(scmgr, System.currentTimeMillis(), scmgr.getEstimatedFootprint());
+        _warm.put(sceneId, entry);
+        _warmFootprint += entry.footprint;
+
+        trimWarmSceneManagers();
+
+        // prune idle managers periodically while we have any
+        if (_warmMaxIdle > 0 && _warmPruner == null && !_warm.isEmpty()) {
+            _warmPruner = new Interval(_omgr) {
+                @Override public void expired () {
+                    trimWarmSceneManagers();
+                }
+            };
+            _warmPruner.schedule(WARM_PRUNE_INTERVAL, true);
+        }
+
+        // if the trim evicted this very manager, it has already been shut down
+        return true;
+    }
+
+    /**
+     * Called by a warm scene manager when a body enters it, removing it from our warm set.
+     */
+    protected void sceneManagerOccupied (SceneManager scmgr)
+    {
+        clearWarmEntry(scmgr);
+    }
+
+    /**
+     * Evicts and shuts down warm scene managers until we are within our configured limits.
+     */
+    protected void trimWarmSceneManagers ()
+    {
+        long now = System.currentTimeMillis();
+        Iterator<WarmEntry> iter = _warm.values().iterator();
+        while (iter.hasNext()) {
+            WarmEntry entry = iter.next();
+            boolean expired = (_warmMaxIdle > 0) && (now - entry.emptied >= _warmMaxIdle);
+            if (!expired && _warm.size() <= _warmMaxScenes &&
+                (_warmMaxFootprint == 0 || _warmFootprint <= _warmMaxFootprint)) {
+                break; // entries are in emptied order, so the rest are fresher still
+            }
+
+            iter.remove();
+            _warmFootprint -= entry.footprint;
+            if (expired) {
+                _warmStats.expirations++;
+            } else {
+                _warmStats.evictions++;
+            }
+            log.debug("Shutting down warm scene manager", "scmgr", entry.scmgr,
+                      "expired", expired);
+            entry.scmgr.shutdown();
+        }
+
+        if (_warm.isEmpty() && _warmPruner != null) {
+            _warmPruner.cancel();
+            _warmPruner = null;
+        }
+    }
+
+    /**
+     * Removes the supplied scene manager from our warm set, if it is there.
+     */
+    protected void clearWarmEntry (SceneManager scmgr)
+    {
+        int sceneId = scmgr.getScene().getId();
+        WarmEntry entry = _warm.get(sceneId);
+        if (entry != null && entry.scmgr == scmgr) {
+            _warm.remove(sceneId);
+            _warmFootprint -= entry.footprint;
+        }
+    }
+
+    /**
+     * Called by a scene manager when it queues up an update to be written to the repository.
+     */
+    protected void noteUpdateQueued (int queueDepth)
+    {
+        _writeStats.updatesQueued++;
+        _writeStats.maxQueueDepth = Math.max(_writeStats.maxQueueDepth, queueDepth);
+    }
+
+    /**
+     * Called by a scene manager when it flushes its queued updates to the repository.
+     *
+     * @param batched true if the updates will be written in a single repository operation.
+     */
+    protected void noteUpdatesFlushed (int count, boolean batched)
+    {
+        _writeStats.flushes++;
+        if (batched) {
+            _writeStats.writesSaved += count - 1;
+        }
+    }
+
     /**
      * Called by the scene manager when it is shut down.
      */
     protected void unmapSceneManager (SceneManager scmgr)
     {
+        clearWarmEntry(scmgr);
+
         if (_scenemgrs.remove(scmgr.getScene().getId()) == null) {
             log.warning("Requested to unmap unmapped scene manager [scmgr=" + scmgr + "].");
             return;
@@ -328,6 +826,29 @@ public class SceneRegistry
         log.debug("Unmapped scene manager", "scmgr", scmgr);
     }
 
+    /** Holds the result of loading a single scene in a resolution batch. */
+    protected static class BatchResult
+    {
+        public SceneModel model;
+        public UpdateList updates;
+        public Object extras;
+        public Exception failure;
+    }
+
+    /** Tracks an empty scene manager that we are keeping warm. */
+    protected static class WarmEntry
+    {
+        public final SceneManager scmgr;
+        public final long emptied;
+        public final long footprint;
+
+        public WarmEntry (SceneManager scmgr, long emptied, long footprint) {
+            this.scmgr = scmgr;
+            this.emptied = emptied;
+            this.footprint = footprint;
+        }
+    }
+
     /** The entity from which we load scene models. */
     @Inject protected SceneRepository _screp;
 
@@ -349,9 +870,60 @@ public class SceneRegistry
     /** Provides location services. */
     @Inject protected LocationManager _locman;
 
+    /** Used to schedule our resolution batches. */
+    @Inject protected RootDObjectManager _omgr;
+
     /** A mapping from scene ids to scene managers. */
     protected IntMap<SceneManager> _scenemgrs = IntMaps.newHashIntMap();
 
     /** The table of pending resolution listeners. */
     protected IntMap<List<ResolutionListener>> _penders = IntMaps.newHashIntMap();
+
+    /** The times at which each of our pending scene resolutions were started. */
+    protected IntMap<Long> _resolveStamps = IntMaps.newHashIntMap();
+
+    /** The ids of scenes waiting to be loaded in the next resolution batch. */
+    protected ArrayIntSet _batchPending = new ArrayIntSet();
+
+    /** Loads our pending resolution batch when the batch window expires. */
+    protected Interval _batchInterval;
+
+    /** The number of milliseconds for which we collect resolutions into a batch, or zero. */
+    protected long _batchWindow;
+
+    /** The maximum number of scenes loaded in a single resolution batch. */
+    protected int _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /** Our scene resolution statistics. */
+    protected ResolutionStats _stats = new ResolutionStats();
+
+    /** Our warm scene managers, keyed on scene id, in the order in which they were emptied. */
+    protected LinkedHashMap<Integer, WarmEntry> _warm = Maps.newLinkedHashMap();
+
+    /** The combined estimated footprint of our warm scene managers. */
+    protected long _warmFootprint;
+
+    /** The maximum number of warm scene managers to retain, or zero if retention is disabled. */
+    protected int _warmMaxScenes;
+
+    /** The maximum combined footprint of our warm scene managers, or zero for no limit. */
+    protected long _warmMaxFootprint;
+
+    /** The maximum time for which a warm scene manager is retained, or zero for no limit. */
+    protected long _warmMaxIdle;
+
+    /** Periodically shuts down warm scene managers that have been idle too long. */
+    protected Interval _warmPruner;
+
+    /** Our warm scene manager retention statistics. */
+    protected WarmStats _warmStats = new WarmStats();
+
+    /** Our scene update write statistics. */
+    protected UpdateWriteStats _writeStats = new UpdateWriteStats();
+
+    /** How often we check for idle warm scene managers. */
+    protected static final long WARM_PRUNE_INTERVAL = 30 * 1000L;
+
+    /** The default maximum number of scenes loaded in a single resolution batch. */
+    protected static final int DEFAULT_MAX_BATCH_SIZE = 100;
 }
@@ -0,0 +1,77 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.server.persist;
+
+import com.samskivert.io.PersistenceException;
+import com.samskivert.util.IntMap;
+
+import com.threerings.whirled.data.SceneModel;
+import com.threerings.whirled.data.SceneUpdate;
+import com.threerings.whirled.util.UpdateList;
+
+/**
+ * An extension of the {@link SceneRepository} interface for repositories that are able to load
+ * the data for many scenes, or store many scene updates, at once. When the scene registry is
+ * configured to batch its scene resolutions, or a scene manager flushes a group of queued
+ * updates, these methods will be used if the repository implements this interface; otherwise the
+ * scene registry falls back to the single scene {@link SceneRepository} methods.
+ */
+public interface BatchSceneRepository extends SceneRepository
+{
+    /**
+     * Fetches the models for the scenes with the specified ids. Scenes that do not exist are
+     * simply omitted from the returned mapping.
+     *
+     * @exception PersistenceException thrown if an error occurs attempting to load the scene data.
+     */
+    public IntMap<SceneModel> loadSceneModels (int[] sceneIds)
+        throws PersistenceException;
+
+    /**
+     * Fetches the sets of updates associated with the specified scenes. Scenes with no updates
+     * may be omitted from the returned mapping.
+     *
+     * @exception PersistenceException thrown if an error occurs attempting to load the scene
+     * updates.
+     */
+    public IntMap<UpdateList> loadUpdates (int[] sceneIds)
+        throws PersistenceException;
+
+    /**
+     * Loads optional additional scene data for each of the supplied scene models. Scenes with no
+     * extra data may be omitted from the returned mapping.
+     *
+     * @see SceneRepository#loadExtras
+     */
+    public IntMap<Object> loadExtras (IntMap<SceneModel> models)
+        throws PersistenceException;
+
+    /**
+     * Applies the supplied scene updates (in order) to the persistent representation of their
+     * associated scene and stores them persistently, ideally in a single operation. The updates
+     * will all have already been applied to the supplied scene model.
+     *
+     * @see SceneRepository#applyAndRecordUpdate
+     */
+    public void applyAndRecordUpdates (SceneModel model, SceneUpdate[] updates)
+        throws PersistenceException;
+}
@@ -25,7 +25,13 @@ import java.util.HashMap;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.zip.CRC32;
 
 import com.google.common.collect.Maps;
 
@@ -39,9 +45,58 @@ import com.threerings.whirled.data.SceneUpdate;
 
 /**
  * A utility class to assist the management of scene updates by a SceneRepository.
+ *
+ * <p> By default updates are persisted using their bare streamable representation (see {@link
+ * SceneUpdate#persistTo}). Update types that are replayed frequently can additionally be
+ * registered with an {@link UpdateCodec}, in which case they are persisted in a compact format
+ * that is read and written directly by the codec. Updates persisted in the streamable format
+ * remain readable after a codec is registered for their type.
+ *
+ * <p> Compact data starts with a header containing a marker, a format version, the codec version
+ * and a checksum of the remaining data, and a codec must consume all of the data that follows the
+ * header. Streamed data has no header, so data is only treated as compact if its header is intact
+ * and its checksum matches.
  */
 public class SceneUpdateMarshaller
 {
+    /**
+     * Creates instances of a particular type of scene update.
+     */
+    public static interface UpdateFactory
+    {
+        /**
+         * Creates a blank update instance.
+         */
+        SceneUpdate createUpdate ();
+    }
+
+    /**
+     * Reads and writes the contents (excluding the scene id and version) of a particular type of
+     * scene update in a compact binary format.
+     */
+    public static interface UpdateCodec
+    {
+        /**
+         * Returns the version of the format written by this codec. This is stored along with each
+         * persisted update and supplied to {@link #read} so that codecs can evolve their format
+         * while remaining able to read older data. It must be between 0 and 255.
+         */
+        int getVersion ();
+
+        /**
+         * Writes the contents of the supplied update to the output.
+         */
+        void write (SceneUpdate update, DataOutput out)
+            throws IOException;
+
+        /**
+         * Reads the contents of the supplied (freshly created and initialized) update from the
+         * input, which was written by the specified version of this codec.
+         */
+        void read (SceneUpdate update, int version, DataInput in)
+            throws IOException;
+    }
+
     /**
      * Create a SceneUpdateMarshaller that understands the update types specified.
      *
@@ -81,19 +136,61 @@ public class SceneUpdateMarshaller
         return _typeToClass.get(type);
     }
 
+    /**
+     * Registers a compact codec to be used when persisting updates of the specified (already
+     * registered) type.
+     */
+    public void registerUpdateCodec (Class<?> typeClass, UpdateCodec codec)
+    {
+        int type = getUpdateType(typeClass);
+        if (type == -1) {
+            throw new IllegalArgumentException("Class not registered: " + typeClass);
+        }
+        if (codec.getVersion() < 0 || codec.getVersion() > 255) {
+            throw new IllegalArgumentException("Invalid codec version: " + codec.getVersion());
+        }
+        _codecs.put(type, codec);
+    }
+
     /**
      * Persists the specified update to a new ByteArrayOutInputStream.
      */
     public byte[] persistUpdate (SceneUpdate update)
         throws PersistenceException
     {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream out = _buffer.get();
+        out.reset();
+        boolean compact = false;
         try {
-            update.persistTo(new ObjectOutputStream(out));
+            UpdateCodec codec = _codecs.get(getUpdateType(update));
+            if (codec == null) {
+                update.persistTo(new ObjectOutputStream(out));
+            } else {
+                DataOutputStream dout = new DataOutputStream(out);
+                dout.write(COMPACT_MAGIC);
+                dout.writeByte(COMPACT_FORMAT_VERSION);
+                dout.writeByte(codec.getVersion());
+                dout.writeInt(0); // checksum, filled in below
+                codec.write(update, dout);
+                dout.flush();
+                compact = true;
+            }
         } catch (IOException ioe) {
             throw new PersistenceException("Error serializing update " + update, ioe);
         }
-        return out.toByteArray();
+        byte[] data = out.toByteArray();
+        if (compact) {
+            int crc = computeChecksum(data);
+            for (int ii = 0; ii < 4; ii++) {
+                data[CHECKSUM_OFFSET + ii] = (byte)(crc >>> (24 - 8*ii));
+            }
+        }
+
+        // don't let an unusually large update pin down a large buffer
+        if (out.size() > MAX_POOLED_BUFFER) {
+            _buffer.remove();
+        }
+        return data;
     }
 
     /**
@@ -106,15 +203,35 @@ public class SceneUpdateMarshaller
         Exception error = null;
 
         try {
-            Class<?> updateClass = getUpdateClass(updateType);
-            if (updateClass == null) {
+            UpdateFactory factory = _factories.get(updateType);
+            if (factory == null) {
                 errmsg = "No class registered for update type [sceneId=" + sceneId +
                     ", sceneVersion=" + sceneVersion + ", updateType=" + updateType + "].";
                 throw new PersistenceException(errmsg);
             }
 
+            // if the data is in our compact format and we have a codec, use it; the checksum
+            // rules out streamed data, so any failure here means the data is corrupt
+            UpdateCodec codec = _codecs.get(updateType);
+            if (codec != null && isCompact(data)) {
+                SceneUpdate update = factory.createUpdate();
+                update.init(sceneId, sceneVersion);
+                DataInputStream din = new DataInputStream(new ByteArrayInputStream(
+                    data, COMPACT_HEADER_SIZE, data.length - COMPACT_HEADER_SIZE));
+                try {
+                    codec.read(update, data[CODEC_VERSION_OFFSET] & 0xFF, din);
+                } catch (RuntimeException re) {
+                    throw new IOException("Codec failed to read compact update", re);
+                }
+                if (din.available() > 0) {
+                    throw new IOException(
+                        "Codec left " + din.available() + " bytes of compact update unread");
+                }
+                return update;
+            }
+
             // create the update
-            SceneUpdate update = (SceneUpdate)updateClass.newInstance();
+            SceneUpdate update = factory.createUpdate();
             update.init(sceneId, sceneVersion);
 
             // decode its contents from the serialized data
@@ -130,11 +247,8 @@ public class SceneUpdateMarshaller
             error = cnfe;
             errmsg = "Unable to instantiate update";
 
-        } catch (InstantiationException ie) {
-            error = ie;
-            errmsg = "Unable to instantiate update";
-        } catch (IllegalAccessException iae) {
-            error = iae;
+        } catch (RuntimeException re) {
+            error = re;
             errmsg = "Unable to instantiate update";
         }
 
@@ -145,9 +259,19 @@ public class SceneUpdateMarshaller
 
     /**
      * Registers the update class with the update factory. This should be called below in the
-     * canonical list of update registrations.
+     * canonical list of update registrations. Instances of the class will be created via its
+     * no-argument constructor.
      */
     protected void registerUpdateClass (Class<?> typeClass)
+    {
+        registerUpdateClass(typeClass, (typeClass == null) ? null : reflectiveFactory(typeClass));
+    }
+
+    /**
+     * Registers the update class with the update factory, using the supplied factory to create
+     * instances of the class when decoding updates.
+     */
+    protected void registerUpdateClass (Class<?> typeClass, UpdateFactory factory)
     {
         // ensure that callers can't fuck up the reciprocal nature of our two maps.
         if (_classToType.containsKey(typeClass)) {
@@ -161,15 +285,117 @@ public class SceneUpdateMarshaller
         if (typeClass != null) {
             _typeToClass.put(type, typeClass);
             _classToType.put(typeClass, Integer.valueOf(type));
+            _factories.put(type, factory);
         }
     }
 
+    /**
+     * Creates a factory that instantiates the supplied class via its no-argument constructor.
+     */
+    protected static UpdateFactory reflectiveFactory (Class<?> typeClass)
+    {
+        final Constructor<?> ctor;
+        try {
+            ctor = typeClass.getDeclaredConstructor();
+            ctor.setAccessible(true);
+        } catch (NoSuchMethodException nsme) {
+            throw new IllegalArgumentException("Update class has no no-arg constructor: " +
+                                               typeClass, nsme);
+        }
+        return new UpdateFactory() {
+            public SceneUpdate createUpdate () {
+                try {
+                    return (SceneUpdate)ctor.newInstance();
+                } catch (Exception e) {
+                    throw new RuntimeException("Unable to instantiate " + ctor, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns true if the supplied data starts with our compact format header and its checksum
+     * matches the data that follows.
+     */
+    protected static boolean isCompact (byte[] data)
+    {
+        if (!isCompactHeader(data)) {
+            return false;
+        }
+        int crc = 0;
+        for (int ii = 0; ii < 4; ii++) {
+            crc = (crc << 8) | (data[CHECKSUM_OFFSET + ii] & 0xFF);
+        }
+        return crc == computeChecksum(data);
+    }
+
+    /**
+     * Returns true if the supplied data starts with our compact format marker and format version.
+     */
+    protected static boolean isCompactHeader (byte[] data)
+    {
+        if (data.length < COMPACT_HEADER_SIZE) {
+            return false;
+        }
+        for (int ii = 0; ii < COMPACT_MAGIC.length; ii++) {
+            if (data[ii] != COMPACT_MAGIC[ii]) {
+                return false;
+            }
+        }
+        return data[COMPACT_MAGIC.length] == COMPACT_FORMAT_VERSION;
+    }
+
+    /**
+     * Computes the checksum of the data following the compact header in the supplied data.
+     */
+    protected static int computeChecksum (byte[] data)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(data, COMPACT_HEADER_SIZE, data.length - COMPACT_HEADER_SIZE);
+        return (int)crc.getValue();
+    }
+
     /** The table mapping update types to classes. */
     protected HashIntMap<Class<?>> _typeToClass = new HashIntMap<Class<?>>();
 
     /** The table mapping update classes to types. */
     protected HashMap<Class<?>, Integer> _classToType = Maps.newHashMap();
 
+    /** The table mapping update types to the factories that create them. */
+    protected HashIntMap<UpdateFactory> _factories = new HashIntMap<UpdateFactory>();
+
+    /** The table mapping update types to their compact codecs (if any). */
+    protected HashIntMap<UpdateCodec> _codecs = new HashIntMap<UpdateCodec>();
+
     /** A counter used in assigning update types to classes. */
     protected int _nextType = 0;
+
+    /** A per-thread buffer into which we persist updates. */
+    protected static final ThreadLocal<ByteArrayOutputStream> _buffer =
+        new ThreadLocal<ByteArrayOutputStream>() {
+        @Override protected ByteArrayOutputStream initialValue () {
+            return new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        }
+    };
+
+    /** Starts the header of an update persisted in our compact format. */
+    protected static final byte[] COMPACT_MAGIC = { (byte)0xFF, 'S', 'U' };
+
+    /** The version of our compact format, which follows {@link #COMPACT_MAGIC}. */
+    protected static final byte COMPACT_FORMAT_VERSION = 1;
+
+    /** The offset in the compact header of the codec version. */
+    protected static final int CODEC_VERSION_OFFSET = COMPACT_MAGIC.length + 1;
+
+    /** The offset in the compact header of the checksum of the data following the header. */
+    protected static final int CHECKSUM_OFFSET = CODEC_VERSION_OFFSET + 1;
+
+    /** The size of the compact header. */
+    protected static final int COMPACT_HEADER_SIZE = CHECKSUM_OFFSET + 4;
+
+    /** The initial size of our pooled persistence buffers. */
+    protected static final int INITIAL_BUFFER_SIZE = 512;
+
+    /** Pooled buffers that grow larger than this are discarded after use. */
+    protected static final int MAX_POOLED_BUFFER = 64 * 1024;
 }
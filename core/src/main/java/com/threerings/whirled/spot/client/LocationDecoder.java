@@ -0,0 +1,69 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.spot.client;
+
+import com.threerings.presents.client.InvocationDecoder;
+import com.threerings.whirled.spot.data.SceneLocation;
+
+/**
+ * Dispatches calls to a {@link LocationReceiver} instance.
+ */
+public class LocationDecoder extends InvocationDecoder
+{
+    /** The generated hash code used to identify this receiver class. */
+    public static final String RECEIVER_CODE = "0a17e3617535c2deda3ccf1c09364fb6";
+
+    /** The method id used to dispatch {@link LocationReceiver#locationsUpdated}
+     * notifications. */
+    public static final int LOCATIONS_UPDATED = 1;
+
+    /**
+     * Creates a decoder that may be registered to dispatch invocation
+     * service notifications to the specified receiver.
+     */
+    public LocationDecoder (LocationReceiver receiver)
+    {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public String getReceiverCode ()
+    {
+        return RECEIVER_CODE;
+    }
+
+    @Override
+    public void dispatchNotification (int methodId, Object[] args)
+    {
+        switch (methodId) {
+        case LOCATIONS_UPDATED:
+            ((LocationReceiver)receiver).locationsUpdated(
+                (SceneLocation[])args[0]
+            );
+            return;
+
+        default:
+            super.dispatchNotification(methodId, args);
+            return;
+        }
+    }
+}
@@ -21,6 +21,7 @@
 
 package com.threerings.whirled.spot.client;
 
+import com.samskivert.util.ObserverList;
 import com.samskivert.util.ResultListener;
 import com.threerings.presents.client.BasicDirector;
 import com.threerings.presents.client.Client;
@@ -47,6 +48,7 @@ import com.threerings.whirled.data.SceneUpdate;
 import com.threerings.whirled.spot.data.ClusteredBodyObject;
 import com.threerings.whirled.spot.data.Location;
 import com.threerings.whirled.spot.data.Portal;
+import com.threerings.whirled.spot.data.SceneLocation;
 import com.threerings.whirled.spot.data.SpotCodes;
 import com.threerings.whirled.spot.data.SpotScene;
 import com.threerings.whirled.util.WhirledContext;
@@ -57,7 +59,7 @@ import static com.threerings.whirled.spot.Log.log;
  * Extends the standard scene director with facilities to move between locations within a scene.
  */
 public class SpotSceneDirector extends BasicDirector
-    implements SpotCodes, Subscriber<DObject>, AttributeChangeListener
+    implements SpotCodes, Subscriber<DObject>, AttributeChangeListener, LocationReceiver
 {
     /**
      * Creates a new spot scene director with the specified context and which will cooperate with
@@ -82,6 +84,38 @@ public class SpotSceneDirector extends BasicDirector
                 handleDeparture();
             }
         });
+
+        // register to hear precise location updates from interest managed scenes
+        _ctx.getClient().getInvocationDirector().registerReceiver(new LocationDecoder(this));
+    }
+
+    /**
+     * Adds a receiver to be notified of the precise location changes sent by scenes that send
+     * them only to interested bodies. Scenes that do not do so publish all location changes via
+     * their scene object's occupant locations.
+     */
+    public void addLocationReceiver (LocationReceiver receiver)
+    {
+        _locationReceivers.add(receiver);
+    }
+
+    /**
+     * Removes a receiver added via {@link #addLocationReceiver}.
+     */
+    public void removeLocationReceiver (LocationReceiver receiver)
+    {
+        _locationReceivers.remove(receiver);
+    }
+
+    // from interface LocationReceiver
+    public void locationsUpdated (final SceneLocation[] locs)
+    {
+        _locationReceivers.apply(new ObserverList.ObserverOp<LocationReceiver>() {
+            public boolean apply (LocationReceiver receiver) {
+                receiver.locationsUpdated(locs);
+                return true;
+            }
+        });
     }
 
     /**
@@ -491,4 +525,7 @@ public class SpotSceneDirector extends BasicDirector
 
     /** The cluster chat object for the cluster we currently occupy. */
     protected DObject _clobj;
+
+    /** Receivers of precise location changes. */
+    protected ObserverList<LocationReceiver> _locationReceivers = ObserverList.newFastUnsafe();
 }
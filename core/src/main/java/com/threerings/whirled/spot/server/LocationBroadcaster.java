@@ -0,0 +1,462 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.spot.server;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.IntMap;
+import com.samskivert.util.IntMaps;
+import com.samskivert.util.Interval;
+import com.samskivert.util.StringUtil;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.RootDObjectManager;
+
+import com.threerings.whirled.spot.data.Location;
+import com.threerings.whirled.spot.data.SceneLocation;
+import com.threerings.whirled.spot.data.SpotSceneObject;
+
+/**
+ * Batches the location changes of the bodies in a scene, publishing them to the scene object's
+ * {@link SpotSceneObject#occupantLocs} set at most once per tick in a single compound event
+ * rather than as one event per change. A body that moves several times in a tick is published
+ * only at its final location.
+ *
+ * <p> A broadcaster may also be interest managed, in which case precise updates are sent each
+ * tick (via {@link LocationSender}) only to the bodies near the body that moved, or in its
+ * cluster, and the shared set is updated only every few ticks. Nearness is determined by {@link
+ * #getCell} and {@link #getNeighborCells}, which derived classes override with knowledge of the
+ * scene's coordinate system. The default implementations place all bodies in a single cell.
+ *
+ * <p> A {@link SpotSceneManager} uses a broadcaster if {@link
+ * SpotSceneManager#createLocationBroadcaster} returns one; by default it does not and location
+ * changes are published immediately, which is best for small scenes.
+ */
+public class LocationBroadcaster
+{
+    /** Statistics on a broadcaster's activity. */
+    public static class BroadcastStats
+        implements Cloneable
+    {
+        /** The number of location changes submitted. */
+        public long updates;
+
+        /** The number of changes superseded by a later change to the same body's location before
+         * being published. */
+        public long coalesced;
+
+        /** The number of ticks in which changes were processed. */
+        public int ticks;
+
+        /** The number of locations published to the scene object. */
+        public long published;
+
+        /** The number of precise update notifications sent to interested bodies. */
+        public long notifications;
+
+        @Override
+        public BroadcastStats clone ()
+        {
+            try {
+                return (BroadcastStats)super.clone();
+            } catch (CloneNotSupportedException cnse) {
+                throw new AssertionError(cnse);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return StringUtil.fieldsToString(this);
+        }
+    }
+
+    /**
+     * Creates a broadcaster that batches location changes for the specified interval.
+     */
+    public LocationBroadcaster (long tickInterval)
+    {
+        this(tickInterval, 1);
+    }
+
+    /**
+     * Creates a broadcaster that sends precise location changes to interested bodies every tick
+     * and publishes them to the scene object every <code>publishTicks</code> ticks. A value of
+     * one disables interest management.
+     */
+    public LocationBroadcaster (long tickInterval, int publishTicks)
+    {
+        _tickInterval = tickInterval;
+        _publishTicks = Math.max(publishTicks, 1);
+    }
+
+    /**
+     * Prepares this broadcaster to publish to the supplied scene object.
+     */
+    public void init (SpotSceneManager mgr, RootDObjectManager omgr, SpotSceneObject ssobj)
+    {
+        _mgr = mgr;
+        _omgr = omgr;
+        _ssobj = ssobj;
+        for (SceneLocation sloc : ssobj.occupantLocs) {
+            locationAdded(sloc);
+        }
+    }
+
+    /**
+     * Returns true if this broadcaster sends precise updates only to interested bodies.
+     */
+    public boolean isInterestManaged ()
+    {
+        return _publishTicks > 1;
+    }
+
+    /**
+     * Notes a location that has been added directly to the scene object.
+     */
+    public void locationAdded (SceneLocation sloc)
+    {
+        _latest.put(sloc.bodyOid, sloc);
+        if (isInterestManaged()) {
+            placeInCell(sloc);
+        }
+    }
+
+    /**
+     * Queues the supplied location change for broadcast.
+     */
+    public void locationUpdated (SceneLocation sloc)
+    {
+        _stats.updates++;
+        if (_pending.put(sloc.bodyOid, sloc) != null) {
+            _stats.coalesced++;
+        }
+        _latest.put(sloc.bodyOid, sloc);
+        if (isInterestManaged()) {
+            placeInCell(sloc);
+        }
+
+        if (_ticker == null) {
+            startTicking();
+        }
+    }
+
+    /**
+     * Clears out any record of the specified body, which has left the scene.
+     */
+    public void bodyLeft (int bodyOid)
+    {
+        _pending.remove(bodyOid);
+        _unpublished.remove(bodyOid);
+        _latest.remove(bodyOid);
+        Long cell = _bodyCells.remove(bodyOid);
+        if (cell != null) {
+            removeFromCell(cell, bodyOid);
+        }
+    }
+
+    /**
+     * Returns the most recent location of the specified body, which may not yet have been
+     * published to the scene object, or null if it has no location.
+     */
+    public SceneLocation getLocation (int bodyOid)
+    {
+        return _latest.get(bodyOid);
+    }
+
+    /**
+     * Publishes all queued location changes to the scene object immediately.
+     */
+    public void flush ()
+    {
+        deliver();
+        _unpublished.putAll(_pending);
+        _pending.clear();
+        publish();
+    }
+
+    /**
+     * Publishes any queued changes and stops ticking.
+     */
+    public void shutdown ()
+    {
+        flush();
+        stopTicking();
+    }
+
+    /**
+     * Returns a snapshot of our statistics.
+     */
+    public BroadcastStats getStats ()
+    {
+        return _stats.clone();
+    }
+
+    /**
+     * Processes the location changes queued since the last tick.
+     */
+    protected void tick ()
+    {
+        if (_pending.isEmpty() && _unpublished.isEmpty()) {
+            // we're idle, so stop ticking until we next have something to do
+            stopTicking();
+            return;
+        }
+
+        _stats.ticks++;
+        if (!isInterestManaged()) {
+            flush();
+            return;
+        }
+
+        deliver();
+        _unpublished.putAll(_pending);
+        _pending.clear();
+        if (++_ticksSincePublish >= _publishTicks) {
+            publish();
+        }
+    }
+
+    /**
+     * Sends the queued location changes to the bodies interested in them, if we are interest
+     * managed.
+     */
+    protected void deliver ()
+    {
+        if (!isInterestManaged() || _pending.isEmpty()) {
+            return;
+        }
+
+        // determine which of the changed locations each body is interested in
+        IntMap<List<SceneLocation>> updates = IntMaps.newHashIntMap();
+        ArrayIntSet observers = new ArrayIntSet();
+        for (SceneLocation sloc : _pending.values()) {
+            observers.clear();
+            addObservers(sloc, observers);
+            for (int observerOid : observers) {
+                List<SceneLocation> locs = updates.get(observerOid);
+                if (locs == null) {
+                    updates.put(observerOid, locs = Lists.newArrayList());
+                }
+                locs.add(sloc);
+            }
+        }
+
+        // and send them each one notification
+        for (IntMap.IntEntry<List<SceneLocation>> entry : updates.intEntrySet()) {
+            List<SceneLocation> locs = entry.getValue();
+            sendLocations(entry.getIntKey(), locs.toArray(new SceneLocation[locs.size()]));
+        }
+    }
+
+    /**
+     * Sends the supplied location changes to the specified interested body.
+     */
+    protected void sendLocations (int observerOid, SceneLocation[] locs)
+    {
+        DObject observer = _omgr.getObject(observerOid);
+        if (observer instanceof ClientObject) {
+            LocationSender.locationsUpdated((ClientObject)observer, locs);
+            _stats.notifications++;
+        }
+    }
+
+    /**
+     * Adds the oids of the bodies interested in the supplied location change to the supplied set:
+     * those in neighboring cells and those in the same cluster as the body that moved.
+     */
+    protected void addObservers (SceneLocation sloc, ArrayIntSet observers)
+    {
+        for (long cell : getNeighborCells(getCell(sloc.loc))) {
+            ArrayIntSet bodies = _cells.get(cell);
+            if (bodies != null) {
+                observers.addAll(bodies);
+            }
+        }
+        addClusterObservers(sloc, observers);
+    }
+
+    /**
+     * Adds the oids of the bodies in the same cluster as the body whose location changed to the
+     * supplied set.
+     */
+    protected void addClusterObservers (SceneLocation sloc, ArrayIntSet observers)
+    {
+        SpotSceneManager.ClusterRecord clrec = _mgr.getCluster(sloc.bodyOid);
+        if (clrec != null) {
+            for (int bodyOid : clrec.keySet()) {
+                observers.add(bodyOid);
+            }
+        }
+    }
+
+    /**
+     * Publishes the locations not yet published to the scene object in a single transaction.
+     */
+    protected void publish ()
+    {
+        _ticksSincePublish = 0;
+        if (_unpublished.isEmpty()) {
+            return;
+        }
+        publishLocations(_unpublished.values());
+        _unpublished.clear();
+    }
+
+    /**
+     * Updates the supplied locations in the scene object's occupant locations.
+     */
+    protected void publishLocations (Collection<SceneLocation> locs)
+    {
+        _ssobj.startTransaction();
+        try {
+            for (SceneLocation sloc : locs) {
+                // the body may have left since its location changed
+                if (_ssobj.occupantLocs.containsKey(sloc.getKey())) {
+                    _ssobj.updateOccupantLocs(sloc);
+                    _stats.published++;
+                }
+            }
+        } finally {
+            _ssobj.commitTransaction();
+        }
+    }
+
+    /**
+     * Starts ticking, such that {@link #tick} is called every tick interval.
+     */
+    protected void startTicking ()
+    {
+        _ticker = new Interval(_omgr) {
+            @Override public void expired () {
+                tick();
+            }
+        };
+        _ticker.schedule(_tickInterval, true);
+    }
+
+    /**
+     * Stops ticking, if we are.
+     */
+    protected void stopTicking ()
+    {
+        if (_ticker != null) {
+            _ticker.cancel();
+            _ticker = null;
+        }
+    }
+
+    /**
+     * Returns the cell containing the supplied location. Bodies in the same or neighboring cells
+     * are sent each other's precise location changes.
+     */
+    protected long getCell (Location loc)
+    {
+        return 0L;
+    }
+
+    /**
+     * Returns the cells whose occupants are interested in changes in the supplied cell, including
+     * the cell itself.
+     */
+    protected long[] getNeighborCells (long cell)
+    {
+        return new long[] { cell };
+    }
+
+    /**
+     * Updates our index of the cell in which the supplied location's body stands.
+     */
+    protected void placeInCell (SceneLocation sloc)
+    {
+        long cell = getCell(sloc.loc);
+        Long ocell = _bodyCells.put(sloc.bodyOid, Long.valueOf(cell));
+        if (ocell != null) {
+            if (ocell == cell) {
+                return;
+            }
+            removeFromCell(ocell, sloc.bodyOid);
+        }
+        ArrayIntSet bodies = _cells.get(cell);
+        if (bodies == null) {
+            _cells.put(cell, bodies = new ArrayIntSet());
+        }
+        bodies.add(sloc.bodyOid);
+    }
+
+    /**
+     * Removes the specified body from the specified cell.
+     */
+    protected void removeFromCell (long cell, int bodyOid)
+    {
+        ArrayIntSet bodies = _cells.get(cell);
+        if (bodies != null && bodies.remove(bodyOid) && bodies.isEmpty()) {
+            _cells.remove(cell);
+        }
+    }
+
+    /** The manager of the scene whose locations we broadcast. */
+    protected SpotSceneManager _mgr;
+
+    /** The distributed object manager. */
+    protected RootDObjectManager _omgr;
+
+    /** The scene object to which we publish. */
+    protected SpotSceneObject _ssobj;
+
+    /** The time between ticks. */
+    protected long _tickInterval;
+
+    /** The number of ticks between publications to the scene object. */
+    protected int _publishTicks;
+
+    /** The number of ticks since we last published to the scene object. */
+    protected int _ticksSincePublish;
+
+    /** Location changes queued since the last tick, by body oid. */
+    protected IntMap<SceneLocation> _pending = IntMaps.newHashIntMap();
+
+    /** Location changes delivered to interested bodies but not yet published, by body oid. */
+    protected IntMap<SceneLocation> _unpublished = IntMaps.newHashIntMap();
+
+    /** The most recent location of every body in the scene, by body oid. */
+    protected IntMap<SceneLocation> _latest = IntMaps.newHashIntMap();
+
+    /** The bodies in each occupied cell. */
+    protected Map<Long, ArrayIntSet> _cells = Maps.newHashMap();
+
+    /** The cell occupied by each body, by body oid. */
+    protected IntMap<Long> _bodyCells = IntMaps.newHashIntMap();
+
+    /** Ticks while we have changes to process. */
+    protected Interval _ticker;
+
+    /** Our statistics. */
+    protected BroadcastStats _stats = new BroadcastStats();
+}
@@ -0,0 +1,48 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.spot.server;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationSender;
+import com.threerings.whirled.spot.client.LocationDecoder;
+import com.threerings.whirled.spot.client.LocationReceiver;
+import com.threerings.whirled.spot.data.SceneLocation;
+
+/**
+ * Used to issue notifications to a {@link LocationReceiver} instance on a
+ * client.
+ */
+public class LocationSender extends InvocationSender
+{
+    /**
+     * Issues a notification that will result in a call to {@link
+     * LocationReceiver#locationsUpdated} on a client.
+     */
+    public static void locationsUpdated (
+        ClientObject target, SceneLocation[] arg1)
+    {
+        sendNotification(
+            target, LocationDecoder.RECEIVER_CODE, LocationDecoder.LOCATIONS_UPDATED,
+            new Object[] { arg1 });
+    }
+
+}
@@ -22,7 +22,6 @@
 package com.threerings.whirled.spot.server;
 
 import java.util.HashMap;
-import java.util.Iterator;
 
 import com.google.common.collect.Maps;
 
@@ -121,9 +120,35 @@ public class SpotSceneManager extends SceneManager
         // letting people into the scene)
         _ssobj = (SpotSceneObject)_plobj;
 
+        // set up our location broadcaster, if we use one
+        _broadcaster = createLocationBroadcaster();
+        if (_broadcaster != null) {
+            _broadcaster.init(this, _omgr, _ssobj);
+        }
+
         super.didStartup();
     }
 
+    @Override
+    protected void didShutdown ()
+    {
+        if (_broadcaster != null) {
+            _broadcaster.shutdown();
+        }
+
+        super.didShutdown();
+    }
+
+    /**
+     * Creates the broadcaster used to batch location changes in this scene, or returns null if
+     * they are to be published immediately (the default). Scenes with many occupants moving about
+     * should return a {@link LocationBroadcaster}.
+     */
+    protected LocationBroadcaster createLocationBroadcaster ()
+    {
+        return null;
+    }
+
     @Override
     protected void gotSceneData (Object extras)
     {
@@ -139,25 +164,54 @@ public class SpotSceneManager extends SceneManager
         super.bodyLeft(bodyOid);
 
         // clear out their location information
+        if (_broadcaster != null) {
+            _broadcaster.bodyLeft(bodyOid);
+        }
         _ssobj.removeFromOccupantLocs(Integer.valueOf(bodyOid));
 
-        // clear any cluster they may occupy
+        // clear any cluster they may occupy (our cluster index knows about them even if their
+        // body object has already gone away)
         removeFromCluster(bodyOid);
 
-        // let's make damned sure they're not in any cluster
-        Iterator<ClusterRecord> cliter = _clusters.values().iterator();
-        while (cliter.hasNext()) {
-            ClusterRecord clrec = cliter.next();
-            if (clrec.containsKey(bodyOid)) {
-                log.info("Pruning departed body from cluster", "boid", bodyOid, "cluster", clrec);
-                clrec.removeBody(bodyOid);
-                if (clrec.size() == 0) {
-                    // if we just removed the last body, destroy the cluster, need to use the
-                    // iterator's removal so we don't hose ourselves
-                    clrec.destroy(false);
-                    cliter.remove();
+        if (_validateClusters) {
+            validateClusters();
+        }
+    }
+
+    /**
+     * Enables or disables validation of our body to cluster index after every cluster change. This
+     * is expensive and should only be enabled during testing.
+     */
+    public static void setValidateClusters (boolean validate)
+    {
+        _validateClusters = validate;
+    }
+
+    /**
+     * Checks that our body to cluster index is consistent with the membership of our clusters.
+     *
+     * @exception IllegalStateException thrown if an inconsistency is found.
+     */
+    protected void validateClusters ()
+    {
+        int members = 0;
+        for (ClusterRecord clrec : _clusters.values()) {
+            if (clrec.size() == 0) {
+                throw new IllegalStateException("Empty cluster still registered " + clrec);
+            }
+            for (int bodyOid : clrec.keySet()) {
+                if (_bodyClusters.get(bodyOid) != clrec) {
+                    throw new IllegalStateException(
+                        "Cluster member not indexed [where=" + where() + ", boid=" + bodyOid +
+                        ", cluster=" + clrec + ", indexed=" + _bodyClusters.get(bodyOid) + "]");
                 }
             }
+            members += clrec.size();
+        }
+        if (members != _bodyClusters.size()) {
+            throw new IllegalStateException(
+                "Stale cluster index entries [where=" + where() + ", members=" + members +
+                ", indexed=" + _bodyClusters.size() + "]");
         }
     }
 
@@ -193,7 +247,11 @@ public class SpotSceneManager extends SceneManager
 
         // create a scene location for them located on the entrance portal but facing the opposite
         // direction
-        _ssobj.addToOccupantLocs(computeEnteringLocation(body, from, entry));
+        SceneLocation sloc = computeEnteringLocation(body, from, entry);
+        _ssobj.addToOccupantLocs(sloc);
+        if (_broadcaster != null) {
+            _broadcaster.locationAdded(sloc);
+        }
     }
 
     /**
@@ -284,6 +342,22 @@ public class SpotSceneManager extends SceneManager
             log.warning("Changing loc for occupant without previous loc",
                 "where", where(), "who", source.who(), "nloc", loc, new Exception());
             _ssobj.addToOccupantLocs(sloc);
+            if (_broadcaster != null) {
+                _broadcaster.locationAdded(sloc);
+            }
+        } else {
+            publishLocation(sloc);
+        }
+    }
+
+    /**
+     * Publishes the changed location of a body already located in the scene, via our broadcaster
+     * if we have one.
+     */
+    protected void publishLocation (SceneLocation sloc)
+    {
+        if (_broadcaster != null) {
+            _broadcaster.locationUpdated(sloc);
         } else {
             _ssobj.updateOccupantLocs(sloc);
         }
@@ -383,12 +457,7 @@ public class SpotSceneManager extends SceneManager
      */
     protected ClusterRecord getCluster (int bodyOid)
     {
-        BodyObject bobj = (BodyObject)_omgr.getObject(bodyOid);
-        if (bobj instanceof ClusteredBodyObject) {
-            return _clusters.get(((ClusteredBodyObject)bobj).getClusterOid());
-        } else {
-            return null;
-        }
+        return _bodyClusters.get(bodyOid);
     }
 
     /**
@@ -421,6 +490,10 @@ public class SpotSceneManager extends SceneManager
      */
     protected SceneLocation locationForBody (int bodyOid)
     {
+        // our broadcaster may know of a location that has not yet been published
+        if (_broadcaster != null) {
+            return _broadcaster.getLocation(bodyOid);
+        }
         return _ssobj.occupantLocs.get(Integer.valueOf(bodyOid));
     }
 
@@ -493,6 +566,7 @@ public class SpotSceneManager extends SceneManager
             removeFromCluster(body.getOid());
 
             put(body.getOid(), (ClusteredBodyObject)body);
+            _bodyClusters.put(body.getOid(), this);
             _ssobj.startTransaction();
             try {
                 body.startTransaction();
@@ -512,6 +586,9 @@ public class SpotSceneManager extends SceneManager
             }
 
 //             log.debug("Added " + body.who() + " to "+ this + ".");
+            if (_validateClusters) {
+                validateClusters();
+            }
             return true;
         }
 
@@ -523,6 +600,9 @@ public class SpotSceneManager extends SceneManager
                     "cloid", _clobj.getOid(), "size", size(), "who", bodyOid);
                 return;
             }
+            if (_bodyClusters.get(bodyOid) == this) {
+                _bodyClusters.remove(bodyOid);
+            }
 
             if (body.isActive()) {
                 body.startTransaction();
@@ -576,6 +656,13 @@ public class SpotSceneManager extends SceneManager
             if (doRemoval) {
                 _clusters.remove(_clobj.getOid());
             }
+
+            // clear out any members that remain in our index
+            for (int bodyOid : keySet()) {
+                if (_bodyClusters.get(bodyOid) == this) {
+                    _bodyClusters.remove(bodyOid);
+                }
+            }
             _omgr.destroyObject(_clobj.getOid());
         }
 
@@ -589,9 +676,18 @@ public class SpotSceneManager extends SceneManager
     /** A casted reference to our scene instance. */
     protected SpotScene _sscene;
 
+    /** Batches our location changes, or null if they are published immediately. */
+    protected LocationBroadcaster _broadcaster;
+
     /** Records with information on all clusters in this scene. */
     protected HashIntMap<ClusterRecord> _clusters = new HashIntMap<ClusterRecord>();
 
+    /** A mapping from body oid to the record of the cluster that body occupies. */
+    protected HashIntMap<ClusterRecord> _bodyClusters = new HashIntMap<ClusterRecord>();
+
+    /** Whether to validate {@link #_bodyClusters} after every cluster change. */
+    protected static boolean _validateClusters = Boolean.getBoolean("whirled.validate_clusters");
+
     /** A mapping of entering bodies to portal ids. */
     protected HashMap<Integer, Portal> _enterers = Maps.newHashMap();
 }
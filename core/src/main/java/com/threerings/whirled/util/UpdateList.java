@@ -21,19 +21,49 @@
 
 package com.threerings.whirled.util;
 
-import java.util.List;
-
-import com.google.common.collect.Lists;
-
 import com.threerings.whirled.data.SceneUpdate;
 
 import static com.threerings.whirled.Log.log;
 
 /**
- * A list specialized for storing {@link SceneUpdate} objects.
+ * A list specialized for storing {@link SceneUpdate} objects. The updates are kept in a ring
+ * buffer ordered by scene version, which allows the updates needed to bring a client up to date
+ * to be located with a binary search. Only a bounded window of recent updates is retained (by
+ * default the most recent {@link #DEFAULT_MAX_UPDATES}, see {@link #UpdateList(int,long)});
+ * clients whose scene version predates that window must instead be sent the entire scene model.
+ * The first time a list discards updates to stay within its limits it logs the fact, and the
+ * total number discarded is available via {@link #getDiscardedCount}.
  */
 public class UpdateList
 {
+    /** The maximum number of updates retained by a list created with the default limits.
+     * Clients that fall more than this many updates behind are sent the entire scene model. */
+    public static final int DEFAULT_MAX_UPDATES = 256;
+
+    /**
+     * Creates an update list with the default retention limits.
+     */
+    public UpdateList ()
+    {
+        this(DEFAULT_MAX_UPDATES, 0L);
+    }
+
+    /**
+     * Creates an update list that retains at most the specified number of updates and (estimated)
+     * bytes of update data. When either limit is exceeded, the oldest updates are discarded.
+     *
+     * @param maxUpdates the maximum number of updates to retain, or zero for no limit.
+     * @param maxBytes the maximum estimated size (see {@link #estimateSize}) of the retained
+     * updates, or zero for no limit.
+     */
+    public UpdateList (int maxUpdates, long maxBytes)
+    {
+        _maxUpdates = Math.max(maxUpdates, 0);
+        _maxBytes = Math.max(maxBytes, 0L);
+        _ring = new SceneUpdate[(_maxUpdates == 0) ? INITIAL_CAPACITY :
+                                Math.min(_maxUpdates, INITIAL_CAPACITY)];
+    }
+
     /**
      * Adds an update to this list. The update must follow appropriately the chain of updates
      * established by the updates already in the list (meaning it must operate on one version
@@ -42,27 +72,38 @@ public class UpdateList
     public void addUpdate (SceneUpdate update)
     {
         // if this is our first update, great, we let it in with no questions asked
-        if (_updates.isEmpty()) {
-            _updates.add(update);
-            return;
+        if (_count > 0) {
+            // otherwise make sure this update conforms to our update sequence
+            SceneUpdate last = get(_count-1);
+            int expVersion = last.getSceneVersion() + last.getVersionIncrement();
+            int gotVersion = update.getSceneVersion();
+            if (gotVersion > expVersion) {
+                log.warning("Update continuity broken, flushing list [got=" + update +
+                            ", expect=" + expVersion + ", ucount=" + _count + "].");
+                clear(); // flush out our old updates, fall through and add this one
+
+            } else if (gotVersion < expVersion) {
+                // we somehow got an update that's older than updates we already have?
+                String errmsg = "Invalid update version [want=" + expVersion +
+                    ", got=" + update + "]";
+                throw new IllegalArgumentException(errmsg);
+            }
         }
 
-        // otherwise make sure this update conforms to our update sequence
-        SceneUpdate last = _updates.get(_updates.size()-1);
-        int expVersion = last.getSceneVersion() + last.getVersionIncrement();
-        int gotVersion = update.getSceneVersion();
-        if (gotVersion > expVersion) {
-            log.warning("Update continuity broken, flushing list [got=" + update +
-                        ", expect=" + expVersion + ", ucount=" + _updates.size() + "].");
-            _updates.clear(); // flush out our old updates, fall through and add this one
-
-        } else if (gotVersion < expVersion) {
-            // we somehow got an update that's older than updates we already have?
-            String errmsg = "Invalid update version [want=" + expVersion + ", got=" + update + "]";
-            throw new IllegalArgumentException(errmsg);
+        // make room for the new update, discarding the oldest if we're at our retention limit
+        if (_maxUpdates > 0 && _count == _maxUpdates) {
+            removeOldest();
+        } else if (_count == _ring.length) {
+            grow();
         }
+        _ring[(_start + _count) % _ring.length] = update;
+        _count++;
+        _bytes += estimateSize(update);
 
-        _updates.add(update);
+        // now trim any excess bytes, but always keep the update we just added
+        while (_maxBytes > 0 && _bytes > _maxBytes && _count > 1) {
+            removeOldest();
+        }
     }
 
     /**
@@ -75,17 +116,29 @@ public class UpdateList
     {
         // If we don't have updates, or our updates start from someplace later than our fromVersion,
         // we can't give updates from our known ones.
-        if (_updates.size() == 0 || _updates.get(0).getSceneVersion() > fromVersion) {
+        if (_count == 0 || get(0).getSceneVersion() > fromVersion) {
             return null;
         }
 
-        List<SceneUpdate> updates = Lists.newArrayList();
-        for (SceneUpdate update : _updates) {
-            if (update.getSceneVersion() >= fromVersion) {
-                updates.add(update);
+        // binary search for the first update that operates on fromVersion or later
+        int low = 0, high = _count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid).getSceneVersion() < fromVersion) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
-        return (updates.size() == 0) ? null : updates.toArray(new SceneUpdate[updates.size()]);
+        if (low == _count) {
+            return null;
+        }
+
+        SceneUpdate[] updates = new SceneUpdate[_count - low];
+        for (int ii = 0; ii < updates.length; ii++) {
+            updates[ii] = get(low + ii);
+        }
+        return updates;
     }
 
     /**
@@ -94,12 +147,125 @@ public class UpdateList
      */
     public boolean validate (int sceneVersion)
     {
-        if (_updates.size() == 0) {
+        if (_count == 0) {
             return true;
         }
-        SceneUpdate last = _updates.get(_updates.size()-1);
+        SceneUpdate last = get(_count-1);
         return sceneVersion == (last.getSceneVersion() + last.getVersionIncrement());
     }
 
-    protected List<SceneUpdate> _updates = Lists.newArrayList();
+    /**
+     * Returns the number of updates currently retained in this list.
+     */
+    public int size ()
+    {
+        return _count;
+    }
+
+    /**
+     * Returns the number of updates this list has discarded to stay within its retention limits.
+     */
+    public int getDiscardedCount ()
+    {
+        return _discarded;
+    }
+
+    /**
+     * Returns the oldest scene version that can be brought up to date using this list, or -1 if
+     * the list is empty.
+     */
+    public int getOldestVersion ()
+    {
+        return (_count == 0) ? -1 : get(0).getSceneVersion();
+    }
+
+    /**
+     * Returns an estimate of the memory occupied by the supplied update, in bytes. This is used
+     * to enforce the byte retention limit. The default implementation returns a fixed estimate;
+     * derived classes that know more about their updates can do better.
+     */
+    protected int estimateSize (SceneUpdate update)
+    {
+        return DEFAULT_UPDATE_SIZE;
+    }
+
+    /**
+     * Returns the <code>index</code>th oldest update in the list.
+     */
+    protected SceneUpdate get (int index)
+    {
+        return _ring[(_start + index) % _ring.length];
+    }
+
+    /**
+     * Discards the oldest update in the list to stay within our retention limits.
+     */
+    protected void removeOldest ()
+    {
+        if (_discarded++ == 0) {
+            log.info("Update list reached its retention limit, discarding oldest updates",
+                     "oldest", _ring[_start].getSceneVersion(), "maxUpdates", _maxUpdates,
+                     "maxBytes", _maxBytes);
+        }
+        _bytes -= estimateSize(_ring[_start]);
+        _ring[_start] = null;
+        _start = (_start + 1) % _ring.length;
+        _count--;
+    }
+
+    /**
+     * Discards all updates in the list.
+     */
+    protected void clear ()
+    {
+        for (int ii = 0; ii < _count; ii++) {
+            _ring[(_start + ii) % _ring.length] = null;
+        }
+        _start = _count = 0;
+        _bytes = 0L;
+    }
+
+    /**
+     * Expands our ring buffer (which must be full), unrolling its contents in the process.
+     */
+    protected void grow ()
+    {
+        int ncap = _ring.length * 2;
+        if (_maxUpdates > 0) {
+            ncap = Math.min(ncap, _maxUpdates);
+        }
+        SceneUpdate[] nring = new SceneUpdate[ncap];
+        for (int ii = 0; ii < _count; ii++) {
+            nring[ii] = get(ii);
+        }
+        _ring = nring;
+        _start = 0;
+    }
+
+    /** Our updates, in version order starting at {@link #_start}. */
+    protected SceneUpdate[] _ring;
+
+    /** The index in {@link #_ring} of our oldest update. */
+    protected int _start;
+
+    /** The number of updates in our ring. */
+    protected int _count;
+
+    /** The estimated combined size of our updates. */
+    protected long _bytes;
+
+    /** The maximum number of updates we retain, or zero. */
+    protected int _maxUpdates;
+
+    /** The maximum estimated size of the updates we retain, or zero. */
+    protected long _maxBytes;
+
+    /** The number of updates discarded to stay within our retention limits. */
+    protected int _discarded;
+
+    /** The size we assume for an update when estimating our memory usage. */
+    protected static final int DEFAULT_UPDATE_SIZE = 256;
+
+    /** The initial capacity of our ring buffer. */
+    protected static final int INITIAL_CAPACITY = 16;
 }
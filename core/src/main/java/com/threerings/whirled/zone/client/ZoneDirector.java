@@ -22,6 +22,8 @@
 package com.threerings.whirled.zone.client;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.google.common.collect.Lists;
 
@@ -36,6 +38,7 @@ import com.threerings.whirled.client.SceneDirector;
 import com.threerings.whirled.data.SceneModel;
 import com.threerings.whirled.data.SceneUpdate;
 import com.threerings.whirled.util.WhirledContext;
+import com.threerings.whirled.zone.data.ZoneCodes;
 import com.threerings.whirled.zone.data.ZoneSummary;
 import com.threerings.whirled.zone.util.ZoneUtil;
 
@@ -140,6 +143,14 @@ public class ZoneDirector extends BasicDirector
         // let our zone observers know that we're attempting to switch zones
         notifyObservers(Integer.valueOf(_pendingZoneId));
 
+        issueMoveRequest();
+    }
+
+    /**
+     * Issues the zoned moveTo request for our pending zone and scene.
+     */
+    protected void issueMoveRequest ()
+    {
         // check the version of our cached copy of the scene to which we're requesting to move; if
         // we were unable to load it, assume a cached version of zero
         int sceneVers = 0;
@@ -149,10 +160,14 @@ public class ZoneDirector extends BasicDirector
             sceneVers = pendingModel.version;
         }
 
+        // let the server know which version of the zone summary we have cached, if any
+        _pendingSummary = _summaries.get(_pendingZoneId);
+        int zoneVers = (_pendingSummary == null) ? 0 : _pendingSummary.version;
+
         // issue a moveTo request
         log.info("Issuing zoned moveTo(" + ZoneUtil.toString(_pendingZoneId) +
-                 ", " + sceneId + ", " + sceneVers + ").");
-        _zservice.moveTo(_pendingZoneId, sceneId, sceneVers, this);
+                 ", " + sceneId + ", " + sceneVers + ", " + zoneVers + ").");
+        _zservice.moveTo(_pendingZoneId, sceneId, sceneVers, zoneVers, this);
     }
 
     @Override
@@ -190,6 +205,11 @@ public class ZoneDirector extends BasicDirector
     // from interface ZoneService.ZoneMoveListener
     public void moveSucceeded (int placeId, PlaceConfig config, ZoneSummary summary)
     {
+        summary = resolveSummary(summary);
+        if (summary == null) {
+            return; // we've asked again for the complete summary
+        }
+
         if (_summary != null) {
             // keep track of our previous zone info
             _previousZoneId = _summary.zoneId;
@@ -212,6 +232,11 @@ public class ZoneDirector extends BasicDirector
     public void moveSucceededWithUpdates (
         int placeId, PlaceConfig config, ZoneSummary summary, SceneUpdate[] updates)
     {
+        summary = resolveSummary(summary);
+        if (summary == null) {
+            return; // we've asked again for the complete summary
+        }
+
         // keep track of the summary
         _summary = summary;
 
@@ -229,6 +254,11 @@ public class ZoneDirector extends BasicDirector
     public void moveSucceededWithScene (
         int placeId, PlaceConfig config, ZoneSummary summary, SceneModel model)
     {
+        summary = resolveSummary(summary);
+        if (summary == null) {
+            return; // we've asked again for the complete summary
+        }
+
         // keep track of the summary
         _summary = summary;
 
@@ -302,6 +332,41 @@ public class ZoneDirector extends BasicDirector
         }
     }
 
+    /**
+     * Converts a summary received from the server into a complete summary by applying it to our
+     * cached copy if it is a delta, and caches the resulting summary if it is versioned.
+     *
+     * @return the complete summary, or null if we received a delta that we could not apply. In
+     * that case our cached copy has been discarded and the move re-requested, so that the server
+     * responds with the complete summary, and the caller should do nothing further.
+     */
+    protected ZoneSummary resolveSummary (ZoneSummary summary)
+    {
+        ZoneSummary base = _pendingSummary;
+        _pendingSummary = null;
+
+        if (summary.isDelta()) {
+            if (base == null || base.zoneId != summary.zoneId ||
+                    base.version != summary.baseVersion) {
+                log.warning("Received zone summary delta without matching base",
+                    "base", base, "delta", summary);
+                _summaries.remove(summary.zoneId);
+                if (base == null) {
+                    // we reported no cached version, so asking again won't help
+                    requestFailed(ZoneCodes.INTERNAL_ERROR);
+                } else {
+                    issueMoveRequest();
+                }
+                return null;
+            }
+            summary = summary.applyTo(base);
+        }
+        if (summary.version != 0) {
+            _summaries.put(summary.zoneId, summary);
+        }
+        return summary;
+    }
+
     /**
      * Notifies observers of success or failure, depending on the type of object provided as data.
      */
@@ -340,9 +405,23 @@ public class ZoneDirector extends BasicDirector
     /** Our zone observer list. */
     protected ArrayList<ZoneObserver> _observers = Lists.newArrayList();
 
+    /** Recently visited zones' summaries, which the server need not resend if unchanged. */
+    protected Map<Integer, ZoneSummary> _summaries =
+        new LinkedHashMap<Integer, ZoneSummary>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry (Map.Entry<Integer, ZoneSummary> eldest) {
+            return size() > MAX_CACHED_SUMMARIES;
+        }
+    };
+
+    /** Our cached summary of the zone to which we're headed, if any. */
+    protected ZoneSummary _pendingSummary;
+
     /** Our previous zone id. */
     protected int _previousZoneId = -1;
 
     /** Where we're headed. */
     protected int _pendingZoneId = -1;
+
+    /** The number of zone summaries we keep cached. */
+    protected static final int MAX_CACHED_SUMMARIES = 16;
 }
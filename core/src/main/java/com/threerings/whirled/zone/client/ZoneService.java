@@ -69,7 +69,11 @@ public interface ZoneService extends InvocationService
      * @param zoneId the zone id to which we want to move.
      * @param sceneId the scene id to which we want to move.
      * @param version the version number of the scene object that we have in our local repository.
+     * @param zoneVersion the version number of the zone summary that we have cached, or zero. If
+     * non-zero, the summary delivered to the listener may be a delta relative to our cached copy
+     * (see {@link ZoneSummary#isDelta}).
      * @param listener receives the callback when the request succeeds or fails.
      */
-    public void moveTo (int zoneId, int sceneId, int version, ZoneMoveListener listener);
+    public void moveTo (
+        int zoneId, int sceneId, int version, int zoneVersion, ZoneMoveListener listener);
 }
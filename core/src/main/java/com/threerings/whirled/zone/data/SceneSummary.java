@@ -21,6 +21,10 @@
 
 package com.threerings.whirled.zone.data;
 
+import java.util.Arrays;
+
+import com.google.common.base.Objects;
+
 import com.samskivert.util.StringUtil;
 
 import com.threerings.io.Streamable;
@@ -46,6 +50,24 @@ public class SceneSummary implements Streamable
     /** The directions in which each of the neighbors lay. */
     public int[] neighborDirs;
 
+    @Override
+    public boolean equals (Object other)
+    {
+        if (!(other instanceof SceneSummary)) {
+            return false;
+        }
+        SceneSummary oscene = (SceneSummary)other;
+        return sceneId == oscene.sceneId && Objects.equal(name, oscene.name) &&
+            Arrays.equals(neighbors, oscene.neighbors) &&
+            Arrays.equals(neighborDirs, oscene.neighborDirs);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+        return sceneId;
+    }
+
     @Override
     public String toString ()
     {
@@ -122,12 +122,12 @@ public class ZoneMarshaller extends InvocationMarshaller
     public static final int MOVE_TO = 1;
 
     // from interface ZoneService
-    public void moveTo (int arg1, int arg2, int arg3, ZoneService.ZoneMoveListener arg4)
+    public void moveTo (int arg1, int arg2, int arg3, int arg4, ZoneService.ZoneMoveListener arg5)
     {
-        ZoneMarshaller.ZoneMoveMarshaller listener4 = new ZoneMarshaller.ZoneMoveMarshaller();
-        listener4.listener = arg4;
+        ZoneMarshaller.ZoneMoveMarshaller listener5 = new ZoneMarshaller.ZoneMoveMarshaller();
+        listener5.listener = arg5;
         sendRequest(MOVE_TO, new Object[] {
-            Integer.valueOf(arg1), Integer.valueOf(arg2), Integer.valueOf(arg3), listener4
+            Integer.valueOf(arg1), Integer.valueOf(arg2), Integer.valueOf(arg3), Integer.valueOf(arg4), listener5
         });
     }
 }
@@ -21,6 +21,10 @@
 
 package com.threerings.whirled.zone.data;
 
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
 import com.samskivert.util.StringUtil;
 
 import com.threerings.io.SimpleStreamableObject;
@@ -31,6 +35,12 @@ import com.threerings.util.Name;
  * The zone summary contains information on a zone, including its name and
  * summary info on all of the scenes in this zone (which can be used to
  * generate a map of the zone on the client).
+ *
+ * <p> Zone managers that version their summaries allow clients to cache
+ * them, in which case the server sends only an acknowledgement or a delta
+ * when a client enters a zone whose summary it already has. A versioned
+ * summary must not be modified once it has been delivered; instead a new
+ * summary with a higher version should be created.
  */
 public class ZoneSummary extends SimpleStreamableObject
 {
@@ -40,13 +50,123 @@ public class ZoneSummary extends SimpleStreamableObject
     /** The name of the zone. */
     public Name name;
 
-    /** The summary information for all of the scenes in the zone. */
+    /** The summary information for all of the scenes in the zone, or in
+     * a delta, for the scenes added or modified since the base version. */
     public SceneSummary[] scenes;
 
+    /** The version of this summary, or zero if the zone manager does not
+     * version its summaries (in which case they are never cached). */
+    public int version;
+
+    /** If non-zero, this summary is a delta relative to the client's
+     * cached summary with this version. */
+    public int baseVersion;
+
+    /** In a delta, the ids of the scenes removed since the base version. */
+    public int[] removedSceneIds;
+
+    /**
+     * Returns true if this summary is a delta (or an acknowledgement that
+     * the client's cached summary is current) rather than a complete
+     * summary.
+     */
+    public boolean isDelta ()
+    {
+        return (baseVersion != 0);
+    }
+
+    /**
+     * Creates a delta that will transform the supplied base summary into
+     * this summary when applied via {@link #applyTo}. Returns null if the
+     * delta would not be usable, which is the case if the base summary's
+     * scenes were reordered or if new scenes were inserted among them
+     * rather than appended.
+     */
+    public ZoneSummary createDelta (ZoneSummary base)
+    {
+        Map<Integer, SceneSummary> bscenes = Maps.newLinkedHashMap();
+        for (SceneSummary scene : base.scenes) {
+            bscenes.put(scene.sceneId, scene);
+        }
+
+        // note the scenes that were removed, leaving only the survivors
+        Map<Integer, SceneSummary> survivors = Maps.newLinkedHashMap(bscenes);
+        for (SceneSummary scene : scenes) {
+            survivors.remove(scene.sceneId);
+        }
+        int[] removed = new int[survivors.size()];
+        int ridx = 0;
+        for (Integer sceneId : survivors.keySet()) {
+            removed[ridx++] = sceneId;
+            bscenes.remove(sceneId);
+        }
+
+        // the surviving scenes must appear first and in their original
+        // order, followed by any new scenes
+        SceneSummary[] changed = new SceneSummary[scenes.length];
+        int ccount = 0, sidx = 0;
+        Integer[] order = bscenes.keySet().toArray(new Integer[bscenes.size()]);
+        for (SceneSummary scene : scenes) {
+            SceneSummary bscene = bscenes.get(scene.sceneId);
+            if (bscene == null) {
+                sidx = order.length; // everything from here on must be new
+                changed[ccount++] = scene;
+            } else if (sidx >= order.length || order[sidx++] != scene.sceneId) {
+                return null;
+            } else if (!bscene.equals(scene)) {
+                changed[ccount++] = scene;
+            }
+        }
+
+        ZoneSummary delta = new ZoneSummary();
+        delta.zoneId = zoneId;
+        delta.name = name;
+        delta.version = version;
+        delta.baseVersion = base.version;
+        if (ccount > 0) {
+            delta.scenes = new SceneSummary[ccount];
+            System.arraycopy(changed, 0, delta.scenes, 0, ccount);
+        }
+        if (removed.length > 0) {
+            delta.removedSceneIds = removed;
+        }
+        return delta;
+    }
+
+    /**
+     * Creates a complete summary by applying this delta to the supplied
+     * base summary, which must be the summary with this delta's base
+     * version.
+     */
+    public ZoneSummary applyTo (ZoneSummary base)
+    {
+        Map<Integer, SceneSummary> merged = Maps.newLinkedHashMap();
+        for (SceneSummary scene : base.scenes) {
+            merged.put(scene.sceneId, scene);
+        }
+        if (removedSceneIds != null) {
+            for (int sceneId : removedSceneIds) {
+                merged.remove(sceneId);
+            }
+        }
+        if (scenes != null) {
+            for (SceneSummary scene : scenes) {
+                merged.put(scene.sceneId, scene);
+            }
+        }
+
+        ZoneSummary summary = new ZoneSummary();
+        summary.zoneId = zoneId;
+        summary.name = name;
+        summary.version = version;
+        summary.scenes = merged.values().toArray(new SceneSummary[merged.size()]);
+        return summary;
+    }
+
     @Override
     public String toString ()
     {
-        return "[zoneId=" + zoneId + ", name=" + name +
-            ", scenes=" + StringUtil.toString(scenes) + "]";
+        return "[zoneId=" + zoneId + ", name=" + name + ", version=" + version +
+            ", baseVersion=" + baseVersion + ", scenes=" + StringUtil.toString(scenes) + "]";
     }
 }
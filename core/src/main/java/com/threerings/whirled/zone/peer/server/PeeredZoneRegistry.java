@@ -56,6 +56,13 @@ public abstract class PeeredZoneRegistry extends ZoneRegistry
          * Called when the zone is already hosted on another node.
          */
         public void zoneOnNode (Tuple<String, HostedZone> nodeInfo);
+
+        /**
+         * Called when the zone is not hosted anywhere but should be resolved on another, less
+         * loaded node rather than on this one. This is only called if the {@link ZonePeerManager}
+         * has enabled placement via {@link ZonePeerManager#getLoadSlack}.
+         */
+        public void zoneShouldResolveOnNode (String nodeName, int zoneId);
     }
 
     /**
@@ -78,6 +85,15 @@ public abstract class PeeredZoneRegistry extends ZoneRegistry
         {
             super(locman, zmgr, scReg, body, sceneId, sceneVer, listener);
         }
+
+        /**
+         * The default implementation treats the zone as though it were already hosted on the
+         * chosen node, passing a {@link HostedZone} with no name to {@link #zoneOnNode}.
+         */
+        public void zoneShouldResolveOnNode (String nodeName, int zoneId)
+        {
+            zoneOnNode(Tuple.newTuple(nodeName, new HostedZone(zoneId, null)));
+        }
     }
 
     protected abstract PeerZoneMoveHandler createMoveHandler (LocationManager locman,
@@ -108,7 +124,7 @@ public abstract class PeeredZoneRegistry extends ZoneRegistry
 
     @Override
     public void moveTo (ClientObject caller, int zoneId, int sceneId,
-        int sceneVer, ZoneService.ZoneMoveListener listener)
+        int sceneVer, int zoneVer, ZoneService.ZoneMoveListener listener)
         throws InvocationException
     {
         if (!(caller instanceof BodyObject)) {
@@ -120,6 +136,7 @@ public abstract class PeeredZoneRegistry extends ZoneRegistry
 
         PeerZoneMoveHandler handler = createMoveHandler(_locman, getZoneManager(zoneId),
             _screg, body, sceneId, sceneVer, listener);
+        handler.setKnownZoneVersion(zoneVer, _summaryHistory);
 
         resolvePeerZone(zoneId, handler);
     }
@@ -163,6 +180,15 @@ public abstract class PeeredZoneRegistry extends ZoneRegistry
      */
     protected void resolveNewZone (final int zoneId, final PeerZoneResolutionListener listener)
     {
+        // if another node is notably less loaded than we are, send the client there to resolve
+        // the zone instead
+        String host = _peerMgr.selectZoneHost(zoneId);
+        if (host != null) {
+            log.debug("Placing zone on less loaded node", "zoneId", zoneId, "node", host);
+            listener.zoneShouldResolveOnNode(host, zoneId);
+            return;
+        }
+
         // otherwise the zone is not resolved here nor there; so we claim the zone by acquiring a
         // distributed lock and then resolve it locally
         _peerMgr.acquireLock(ZonePeerManager.getZoneLock(zoneId), new ResultListener<String>() {
@@ -21,14 +21,25 @@
 
 package com.threerings.whirled.zone.peer.server;
 
+import java.util.Iterator;
+import java.util.Map;
+
 import com.google.common.base.Function;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.samskivert.util.Lifecycle;
 import com.samskivert.util.Tuple;
 
 import com.threerings.util.Name;
 
+import com.threerings.presents.dobj.AttributeChangeListener;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.EntryAddedEvent;
+import com.threerings.presents.dobj.EntryRemovedEvent;
+import com.threerings.presents.dobj.EntryUpdatedEvent;
+import com.threerings.presents.dobj.SetListener;
 import com.threerings.presents.peer.data.NodeObject;
+import com.threerings.presents.peer.server.PeerNode;
 import com.threerings.crowd.peer.server.CrowdPeerManager;
 
 import com.threerings.whirled.zone.peer.data.HostedZone;
@@ -59,17 +70,45 @@ public abstract class ZonePeerManager extends CrowdPeerManager
 
     /**
      * Returns the node name of the peer that is hosting the specified scene, or null if no peer
-     * has published that they are hosting the scene.
+     * has published that they are hosting the scene. This consults an index maintained from the
+     * hosted zones of all connected nodes rather than searching every node.
      */
-    public Tuple<String, HostedZone> getZoneHost (final int zoneId)
+    public Tuple<String, HostedZone> getZoneHost (int zoneId)
     {
-        return lookupNodeDatum(new NodeFunc<Tuple<String, HostedZone>>() {
-            @Override
-            public Tuple<String, HostedZone> apply (ZoneNodeObject nodeobj) {
-                HostedZone info = nodeobj.hostedZones.get(zoneId);
-                return (info == null) ? null : Tuple.newTuple(nodeobj.nodeName, info);
-            }
-        });
+        return _zoneHosts.get(zoneId);
+    }
+
+    /**
+     * Returns the name of the node on which a zone that is not yet hosted anywhere should be
+     * resolved, or null if it should be resolved on this node. The zone is placed on the node with
+     * the lowest {@link #getNodeLoad} unless this node's load is within {@link #getLoadSlack} of
+     * that, which keeps nodes with slightly differing views of the cluster from redirecting
+     * clients back and forth. Placement is disabled (and zones are always resolved locally)
+     * unless a derived class overrides {@link #getLoadSlack}.
+     */
+    public String selectZoneHost (int zoneId)
+    {
+        int slack = getLoadSlack();
+        if (slack == Integer.MAX_VALUE) {
+            return null;
+        }
+        Map<String, Integer> loads = Maps.newHashMap();
+        for (String nodeName : _nodeZones.keySet()) {
+            loads.put(nodeName, getNodeLoad(nodeName));
+        }
+        String localName = _nodeobj.nodeName;
+        loads.put(localName, getNodeLoad(localName));
+        return selectLeastLoaded(localName, loads, slack);
+    }
+
+    /**
+     * Returns a measure of the load on the specified node, used to place new zones. The default
+     * implementation returns the number of zones hosted by the node.
+     */
+    public int getNodeLoad (String nodeName)
+    {
+        Integer count = _nodeZones.get(nodeName);
+        return (count == null) ? 0 : count;
     }
 
     /**
@@ -78,7 +117,10 @@ public abstract class ZonePeerManager extends CrowdPeerManager
     public void zoneDidStartup (int zoneId, Name name)
     {
         log.debug("Hosting zone", "id", zoneId, "name", name);
-        ((ZoneNodeObject)_nodeobj).addToHostedZones(new HostedZone(zoneId, name));
+        HostedZone zone = new HostedZone(zoneId, name);
+        ((ZoneNodeObject)_nodeobj).addToHostedZones(zone);
+        // index the zone immediately rather than waiting for the event to be dispatched
+        indexZone(_nodeobj.nodeName, zone);
     }
 
     /**
@@ -88,8 +130,170 @@ public abstract class ZonePeerManager extends CrowdPeerManager
     {
         log.debug("No longer hosting zone", "id", zoneId);
         ((ZoneNodeObject)_nodeobj).removeFromHostedZones(zoneId);
+        unindexZone(_nodeobj.nodeName, zoneId);
+    }
+
+    @Override // from PeerManager
+    protected void connectedToPeer (PeerNode peer)
+    {
+        super.connectedToPeer(peer);
+
+        ZoneNodeObject nodeobj = (ZoneNodeObject)peer.nodeobj;
+        indexNode(nodeobj);
+        nodeobj.addListener(new HostedZonesListener(nodeobj));
+    }
+
+    @Override // from PeerManager
+    protected void disconnectedFromPeer (PeerNode peer)
+    {
+        super.disconnectedFromPeer(peer);
+
+        unindexNode(peer.getNodeName());
+    }
+
+    /**
+     * Indexes all of the zones hosted by the supplied node, replacing any previously indexed
+     * zones for that node.
+     */
+    protected void indexNode (ZoneNodeObject nodeobj)
+    {
+        unindexNode(nodeobj.nodeName);
+        _nodeZones.put(nodeobj.nodeName, 0);
+        for (HostedZone zone : nodeobj.hostedZones) {
+            indexZone(nodeobj.nodeName, zone);
+        }
+    }
+
+    /**
+     * Removes all of the zones hosted by the specified node from our index.
+     */
+    protected void unindexNode (String nodeName)
+    {
+        if (_nodeZones.remove(nodeName) == null) {
+            return;
+        }
+        for (Iterator<Tuple<String, HostedZone>> iter = _zoneHosts.values().iterator();
+             iter.hasNext(); ) {
+            if (iter.next().left.equals(nodeName)) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Notes that the specified node hosts the supplied zone.
+     */
+    protected void indexZone (String nodeName, HostedZone zone)
+    {
+        Tuple<String, HostedZone> ohost =
+            _zoneHosts.put(zone.zoneId, Tuple.newTuple(nodeName, zone));
+        if (ohost != null) {
+            if (ohost.left.equals(nodeName)) {
+                return; // just an update
+            }
+            log.warning("Zone hosted on multiple nodes?", "zoneId", zone.zoneId,
+                "old", ohost.left, "new", nodeName);
+            adjustZoneCount(ohost.left, -1);
+        }
+        adjustZoneCount(nodeName, 1);
     }
 
+    /**
+     * Notes that the specified node no longer hosts the specified zone.
+     */
+    protected void unindexZone (String nodeName, int zoneId)
+    {
+        Tuple<String, HostedZone> ohost = _zoneHosts.get(zoneId);
+        if (ohost != null && ohost.left.equals(nodeName)) {
+            _zoneHosts.remove(zoneId);
+            adjustZoneCount(nodeName, -1);
+        }
+    }
+
+    /**
+     * Adjusts the count of zones hosted by the specified node.
+     */
+    protected void adjustZoneCount (String nodeName, int delta)
+    {
+        Integer count = _nodeZones.get(nodeName);
+        _nodeZones.put(nodeName, Math.max(0, ((count == null) ? 0 : count) + delta));
+    }
+
+    /**
+     * Returns the amount by which this node's load may exceed that of the least loaded node
+     * before new zones are placed elsewhere. The default, {@link #DEFAULT_LOAD_SLACK}, disables
+     * placement; derived classes that wish to spread new zones across the cluster should return
+     * a small value (two or so) and ensure that their move handlers follow
+     * {@link PeeredZoneRegistry.PeerZoneResolutionListener#zoneShouldResolveOnNode}.
+     */
+    protected int getLoadSlack ()
+    {
+        return DEFAULT_LOAD_SLACK;
+    }
+
+    /**
+     * Returns the least loaded node in the supplied mapping if the local node's load exceeds its
+     * load by more than the specified slack, or null if the local node should be used.
+     */
+    protected static String selectLeastLoaded (
+        String localName, Map<String, Integer> loads, int slack)
+    {
+        int localLoad = loads.get(localName), bestLoad = localLoad;
+        String best = null;
+        for (Map.Entry<String, Integer> entry : loads.entrySet()) {
+            int load = entry.getValue();
+            if (!entry.getKey().equals(localName) && load < bestLoad) {
+                best = entry.getKey();
+                bestLoad = load;
+            }
+        }
+        return (best == null || localLoad - bestLoad <= slack) ? null : best;
+    }
+
+    /** Keeps our index up to date with a peer's hosted zones. */
+    protected class HostedZonesListener
+        implements SetListener<HostedZone>, AttributeChangeListener
+    {
+        public HostedZonesListener (ZoneNodeObject nodeobj) {
+            _peerobj = nodeobj;
+        }
+
+        public void entryAdded (EntryAddedEvent<HostedZone> event) {
+            if (event.getName().equals(ZoneNodeObject.HOSTED_ZONES)) {
+                indexZone(_peerobj.nodeName, event.getEntry());
+            }
+        }
+
+        public void entryUpdated (EntryUpdatedEvent<HostedZone> event) {
+            if (event.getName().equals(ZoneNodeObject.HOSTED_ZONES)) {
+                indexZone(_peerobj.nodeName, event.getEntry());
+            }
+        }
+
+        public void entryRemoved (EntryRemovedEvent<HostedZone> event) {
+            if (event.getName().equals(ZoneNodeObject.HOSTED_ZONES)) {
+                unindexZone(_peerobj.nodeName, (Integer)event.getKey());
+            }
+        }
+
+        public void attributeChanged (AttributeChangedEvent event) {
+            if (event.getName().equals(ZoneNodeObject.HOSTED_ZONES)) {
+                indexNode(_peerobj);
+            }
+        }
+
+        protected ZoneNodeObject _peerobj;
+    }
+
+    /** The host of every zone hosted by this or a connected node, indexed by zone id. */
+    protected Map<Integer, Tuple<String, HostedZone>> _zoneHosts = Maps.newHashMap();
+
+    /** The number of zones hosted by each node, indexed by node name. */
+    protected Map<String, Integer> _nodeZones = Maps.newHashMap();
+
+    /** The default amount by which our load may exceed the least loaded node's (unlimited). */
+    protected static final int DEFAULT_LOAD_SLACK = Integer.MAX_VALUE;
+
     /** Useful with {@link #lookupNodeDatum}. */
     public static abstract class NodeFunc<T> implements Function<NodeObject, T>
     {
@@ -56,6 +56,16 @@ public class ZoneMoveHandler extends AbstractSceneMoveHandler
         _version = sceneVer;
     }
 
+    /**
+     * Notes the version of the target zone's summary that the client has cached, allowing us to
+     * send it an acknowledgement or delta rather than the complete summary.
+     */
+    public void setKnownZoneVersion (int zoneVersion, ZoneSummaryHistory history)
+    {
+        _zoneVersion = zoneVersion;
+        _history = history;
+    }
+
     // from interface ZoneManager.ResolutionListener
     public void zoneWasResolved (ZoneSummary summary)
     {
@@ -89,6 +99,10 @@ public class ZoneMoveHandler extends AbstractSceneMoveHandler
         // now that we've moved, we can update the user object with the new zone id
         ((ZonedBodyObject)_body).setZoneId(_summary.zoneId);
 
+        // send only what they need of the zone summary
+        ZoneSummary summary = (_history == null) ? _summary :
+            _history.getSummaryFor(_summary, _zoneVersion);
+
         // check to see if they need a newer version of the scene data
         ZoneService.ZoneMoveListener listener = (ZoneService.ZoneMoveListener)_listener;
         SceneModel model = scmgr.getScene().getSceneModel();
@@ -98,12 +112,12 @@ public class ZoneMoveHandler extends AbstractSceneMoveHandler
                 updates = scmgr.getUpdates(_version);
             }
             if (updates != null) {
-                listener.moveSucceededWithUpdates(ploid, config, _summary, updates);
+                listener.moveSucceededWithUpdates(ploid, config, summary, updates);
             } else {
-                listener.moveSucceededWithScene(ploid, config, _summary, model);
+                listener.moveSucceededWithScene(ploid, config, summary, model);
             }
         } else {
-            listener.moveSucceeded(ploid, config, _summary);
+            listener.moveSucceeded(ploid, config, summary);
         }
 
         // let the zone manager know that someone just came on in
@@ -122,4 +136,10 @@ public class ZoneMoveHandler extends AbstractSceneMoveHandler
     protected SceneRegistry _screg;
     protected int _sceneId, _version;
     protected ZoneSummary _summary;
+
+    /** The version of the zone summary cached by the client, or zero. */
+    protected int _zoneVersion;
+
+    /** Used to compute summary deltas, or null if we always send the complete summary. */
+    protected ZoneSummaryHistory _history;
 }
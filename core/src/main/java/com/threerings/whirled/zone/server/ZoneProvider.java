@@ -38,6 +38,6 @@ public interface ZoneProvider extends InvocationProvider
     /**
      * Handles a {@link ZoneService#moveTo} request.
      */
-    void moveTo (ClientObject caller, int arg1, int arg2, int arg3, ZoneService.ZoneMoveListener arg4)
+    void moveTo (ClientObject caller, int arg1, int arg2, int arg3, int arg4, ZoneService.ZoneMoveListener arg5)
         throws InvocationException;
 }
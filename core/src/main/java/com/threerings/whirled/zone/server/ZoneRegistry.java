@@ -143,7 +143,7 @@ public class ZoneRegistry
 
     // from interface ZoneProvider
     public void moveTo (ClientObject caller, int zoneId, int sceneId,
-                        int sceneVer, ZoneService.ZoneMoveListener listener)
+                        int sceneVer, int zoneVer, ZoneService.ZoneMoveListener listener)
         throws InvocationException
     {
         if (!(caller instanceof ZonedBodyObject)) {
@@ -172,7 +172,9 @@ public class ZoneRegistry
         }
 
         // resolve the zone and move the user
-        zmgr.resolveZone(zoneId, createZoneMoveHandler(zmgr, body, sceneId, sceneVer, listener));
+        ZoneMoveHandler handler = createZoneMoveHandler(zmgr, body, sceneId, sceneVer, listener);
+        handler.setKnownZoneVersion(zoneVer, _summaryHistory);
+        zmgr.resolveZone(zoneId, handler);
     }
 
     /**
@@ -185,6 +187,9 @@ public class ZoneRegistry
         return new ZoneMoveHandler(_locman, zmgr, _screg, body, sceneId, sceneVer, listener);
     }
 
+    /** Recent versions of zone summaries, used to send deltas to clients. */
+    protected ZoneSummaryHistory _summaryHistory = new ZoneSummaryHistory();
+
     /** A table of zone managers. */
     protected IntMap<ZoneManager> _managers = IntMaps.newHashIntMap();
 
@@ -0,0 +1,91 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.zone.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.threerings.whirled.zone.data.ZoneSummary;
+
+/**
+ * Retains the recent versions of each zone's summary so that clients that have cached an older
+ * version can be sent a delta rather than the complete summary.
+ */
+public class ZoneSummaryHistory
+{
+    /**
+     * Returns the summary that should be delivered to a client entering the zone described by the
+     * supplied current summary, given the version of that zone's summary that the client has
+     * cached (or zero). This will be an acknowledgement if the client's summary is current, a
+     * delta if we still have the client's version, or the complete summary otherwise.
+     */
+    public ZoneSummary getSummaryFor (ZoneSummary current, int knownVersion)
+    {
+        if (current.version == 0) {
+            return current; // unversioned summaries are always sent in full
+        }
+
+        ZoneSummary[] versions = record(current);
+        if (knownVersion == 0) {
+            return current;
+        }
+        for (ZoneSummary base : versions) {
+            if (base != null && base.version == knownVersion) {
+                ZoneSummary delta = current.createDelta(base);
+                return (delta == null) ? current : delta;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Notes the supplied summary as the latest version of its zone's summary, returning the
+     * recent versions of that zone's summary.
+     */
+    protected ZoneSummary[] record (ZoneSummary current)
+    {
+        ZoneSummary[] versions = _versions.get(current.zoneId);
+        if (versions == null) {
+            _versions.put(current.zoneId, versions = new ZoneSummary[MAX_VERSIONS]);
+        }
+        if (versions[0] == null || versions[0].version != current.version) {
+            System.arraycopy(versions, 0, versions, 1, versions.length-1);
+            versions[0] = current;
+        }
+        return versions;
+    }
+
+    /** The recent versions of each zone's summary, newest first, for the most recently entered
+     * zones. */
+    protected Map<Integer, ZoneSummary[]> _versions =
+        new LinkedHashMap<Integer, ZoneSummary[]>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry (Map.Entry<Integer, ZoneSummary[]> eldest) {
+            return size() > MAX_ZONES;
+        }
+    };
+
+    /** The number of versions of each zone's summary that we retain. */
+    protected static final int MAX_VERSIONS = 4;
+
+    /** The number of zones for which we retain summaries. */
+    protected static final int MAX_ZONES = 1024;
+}
@@ -0,0 +1,87 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.rating.util;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ConcurrentPercentiler} class.
+ */
+public class ConcurrentPercentilerTest
+{
+    @Test public void testSerialization ()
+    {
+        ConcurrentPercentiler tiler = new ConcurrentPercentiler();
+        Random rando = new Random();
+        for (int ii = 0; ii < 500; ii++) {
+            tiler.recordValue((float)rando.nextGaussian() + 5.0f);
+        }
+
+        // our serialized form should be readable by the single-threaded percentiler and vice versa
+        Percentiler t2 = new Percentiler(tiler.toBytes());
+        assertEquals(500, t2.getRecordedCount());
+        assertArrayEquals(tiler.getCounts(), t2.getCounts());
+        assertArrayEquals(t2.toBytes(), new ConcurrentPercentiler(t2.toBytes()).toBytes());
+    }
+
+    @Test public void testConcurrentRecording ()
+        throws InterruptedException
+    {
+        final ConcurrentPercentiler tiler = new ConcurrentPercentiler();
+        Thread[] threads = new Thread[THREADS];
+        for (int tt = 0; tt < threads.length; tt++) {
+            final int seed = tt;
+            threads[tt] = new Thread() {
+                @Override public void run () {
+                    // record steadily growing values so that we race with range expansions
+                    Random rando = new Random(seed);
+                    for (int ii = 0; ii < VALUES; ii++) {
+                        tiler.recordValue(Math.abs((float)rando.nextGaussian()) * (1 + ii/100));
+                    }
+                }
+            };
+            threads[tt].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // no values should have been lost to a resize
+        long total = 0;
+        for (int count : tiler.getCounts()) {
+            total += count;
+        }
+        assertEquals(THREADS * VALUES, tiler.getRecordedCount());
+        assertEquals(THREADS * VALUES, total);
+
+        tiler.recomputePercentiles();
+        assertEquals(0, tiler.getPercentile(tiler.getMinScore()));
+        assertEquals(100, tiler.getPercentile(tiler.getMaxScore()+1));
+    }
+
+    protected static final int THREADS = 4;
+    protected static final int VALUES = 50000;
+}
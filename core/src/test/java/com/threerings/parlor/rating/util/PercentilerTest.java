@@ -66,6 +66,51 @@ public class PercentilerTest
         assertEquals(100, tiler.getPercentile(tiler.getMaxScore()+1));
     }
 
+    @Test public void testMerge ()
+    {
+        Percentiler t1 = createGaussian();
+        Percentiler t2 = createGaussian();
+        long total = t1.getRecordedCount() + t2.getRecordedCount();
+        int min = Math.min(t1.getMinScore(), t2.getMinScore());
+        int max = Math.max(t1.getMaxScore(), t2.getMaxScore());
+
+        t1.merge(t2);
+        assertEquals(total, t1.getRecordedCount());
+        assertEquals(min, t1.getMinScore());
+        assertEquals(max, t1.getMaxScore());
+        assertEquals(total, sum(t1.getCounts()));
+
+        // merging into an empty percentiler adopts the other distribution
+        Percentiler t3 = new Percentiler();
+        t3.merge(t2);
+        assertArrayEquals(t2.getCounts(), t3.getCounts());
+        assertEquals(t2.getRecordedCount(), t3.getRecordedCount());
+    }
+
+    @Test public void testMergeDisjoint ()
+    {
+        Percentiler low = new Percentiler(), high = new Percentiler();
+        for (int ii = 0; ii < 100; ii++) {
+            low.recordValue(ii % 10, false);
+            high.recordValue(1000 + ii % 10, false);
+        }
+
+        low.merge(high);
+        assertEquals(200, low.getRecordedCount());
+        assertEquals(200, sum(low.getCounts()));
+        assertTrue(low.getMaxScore() >= 1009);
+        assertEquals(50, low.getPercentile(500));
+    }
+
+    protected static long sum (int[] counts)
+    {
+        long total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
     protected Percentiler createGaussian ()
     {
         // create a percentiler
@@ -0,0 +1,122 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.server;
+
+import java.util.List;
+import java.util.Random;
+
+import com.threerings.crowd.data.BodyObject;
+
+import com.threerings.parlor.server.MatchmakingManager.Queue;
+import com.threerings.parlor.server.MatchmakingManager.RatingWindow;
+import com.threerings.parlor.server.MatchmakingManager.Ticket;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the matching logic of {@link MatchmakingManager.Queue}.
+ */
+public class MatchmakingQueueTest
+{
+    @Test public void testRatingWindow ()
+    {
+        Queue queue = new Queue(2);
+        Ticket low = add(queue, 1, 1000, 0L), high = add(queue, 1, 1200, 0L);
+
+        // the two parties are too far apart to be matched straight away
+        assertTrue(queue.formMatches(0L, WINDOW).isEmpty());
+        assertEquals(2, queue.getStats().queued);
+
+        // but their windows widen as they wait
+        assertTrue(queue.formMatches(10000L, WINDOW).isEmpty());
+        List<List<Ticket>> matches = queue.formMatches(15000L, WINDOW);
+        assertEquals(1, matches.size());
+        assertSame(low, matches.get(0).get(0));
+        assertSame(high, matches.get(0).get(1));
+        assertEquals(0, queue.getStats().queued);
+        assertEquals(15f, queue.getStats().medianWait, 1f);
+    }
+
+    @Test public void testParties ()
+    {
+        Queue queue = new Queue(4);
+        Ticket trio = add(queue, 3, 1500, 0L);
+        add(queue, 2, 1500, 0L);
+        add(queue, 2, 1500, 0L);
+        assertEquals(1, queue.formMatches(0L, WINDOW).size());
+        assertEquals(3, queue.getStats().queued);
+
+        // a single fills out the trio
+        Ticket single = add(queue, 1, 1510, 0L);
+        List<List<Ticket>> matches = queue.formMatches(0L, WINDOW);
+        assertEquals(1, matches.size());
+        assertTrue(matches.get(0).contains(trio));
+        assertTrue(matches.get(0).contains(single));
+    }
+
+    @Test public void testCancelAndReady ()
+    {
+        Queue queue = new Queue(2);
+        Ticket gone = add(queue, 1, 1200, 0L);
+        Ticket pending = add(queue, 1, 1200, 0L);
+        pending.ready = false;
+        add(queue, 1, 1200, 0L);
+
+        queue.cancel(gone);
+        assertEquals(2, queue.getStats().queued);
+        assertTrue(queue.formMatches(0L, WINDOW).isEmpty());
+
+        pending.ready = true;
+        assertEquals(1, queue.formMatches(0L, WINDOW).size());
+        assertTrue(queue.isEmpty());
+        assertEquals(1, queue.getStats().cancelled);
+    }
+
+    @Test public void testLargeQueue ()
+    {
+        Queue queue = new Queue(2);
+        Random rando = new Random(1);
+        for (int ii = 0; ii < 20000; ii++) {
+            add(queue, 1, 800 + rando.nextInt(1600), 0L);
+        }
+        int matched = 0;
+        for (List<Ticket> match : queue.formMatches(0L, WINDOW)) {
+            assertTrue(match.get(1).rating - match.get(0).rating <= WINDOW.initial);
+            matched++;
+        }
+        assertTrue(matched > 9000);
+        assertEquals(20000 - matched * 2, queue.getStats().queued);
+    }
+
+    protected static Ticket add (Queue queue, int size, int rating, long queuedAt)
+    {
+        Ticket ticket = new Ticket(new BodyObject[size], null, queuedAt, null);
+        ticket.rating = rating;
+        ticket.ready = true;
+        queue.add(ticket);
+        return ticket;
+    }
+
+    protected static final RatingWindow WINDOW = new RatingWindow(50, 10, 400);
+}
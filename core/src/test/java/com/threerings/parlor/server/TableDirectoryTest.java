@@ -0,0 +1,190 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.server;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.IntMap;
+import com.samskivert.util.IntMaps;
+
+import com.threerings.util.Name;
+
+import com.threerings.presents.data.ClientObject;
+
+import com.threerings.parlor.data.Table;
+import com.threerings.parlor.data.TableQuery;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link TableDirectory} class.
+ */
+public class TableDirectoryTest
+{
+    @Test public void testWindow ()
+    {
+        TestDirectory dir = new TestDirectory();
+        for (int ii = 0; ii < 50; ii++) {
+            dir.list(ii, 4, 0);
+        }
+
+        TableQuery query = new TableQuery();
+        query.offset = 10;
+        query.count = 5;
+        dir.subscribe(newClient(1), query);
+        assertEquals("10,11,12,13,14/50", dir.lastWindow);
+
+        // a table created after the window does not affect it
+        long ignored = dir.getStats().changesIgnored;
+        dir.sent.clear();
+        dir.list(50, 4, 0);
+        assertTrue(dir.sent.isEmpty());
+        assertEquals(ignored + 1, dir.getStats().changesIgnored);
+
+        // a table removed before the window shifts it
+        dir.tableUnlisted(3);
+        assertEquals("11,12,13,14,15/50", dir.lastWindow);
+
+        // a table changed in place is sent on its own
+        dir.sent.clear();
+        dir.tableUpdated(dir.tables.get(12));
+        assertEquals(Lists.newArrayList("update 12"), dir.sent);
+    }
+
+    @Test public void testFilterAndSort ()
+    {
+        TestDirectory dir = new TestDirectory();
+        dir.list(1, 4, 3); // one open seat
+        dir.list(2, 4, 0); // four open seats
+        dir.list(3, 2, 2); // full
+        dir.list(4, 4, 2); // two open seats
+
+        TableQuery query = new TableQuery();
+        query.minOpenSeats = 1;
+        query.sortOrder = TableQuery.SORT_BY_OPEN_SEATS;
+        dir.subscribe(newClient(1), query);
+        assertEquals("1,4,2/3", dir.lastWindow);
+
+        // filling a seat at table 2 moves it ahead of table 4
+        dir.tables.get(2).players[0] = new Name("p");
+        dir.tables.get(2).players[1] = new Name("q");
+        dir.tables.get(2).players[2] = new Name("r");
+        dir.tableUpdated(dir.tables.get(2));
+        assertEquals("1,2,4/3", dir.lastWindow);
+
+        // filling table 1 removes it from the view
+        dir.tables.get(1).players[3] = new Name("s");
+        dir.tableUpdated(dir.tables.get(1));
+        assertEquals("2,4/2", dir.lastWindow);
+
+        // emptying table 3 brings it into the view
+        dir.tables.get(3).players[0] = null;
+        dir.tableUpdated(dir.tables.get(3));
+        assertEquals("2,3,4/3", dir.lastWindow);
+        assertEquals(3, dir.getMatchCount(query));
+    }
+
+    @Test public void testSharedViews ()
+    {
+        TestDirectory dir = new TestDirectory();
+        for (int ii = 0; ii < 10; ii++) {
+            dir.list(ii, 2, 0);
+        }
+
+        TableQuery first = new TableQuery(), second = new TableQuery();
+        first.count = second.count = second.offset = 5;
+        dir.subscribe(newClient(1), first);
+        dir.subscribe(newClient(2), second);
+        assertEquals(1, dir.getStats().views);
+        assertEquals(2, dir.getStats().subscriptions);
+
+        // only the first page sees a change at its end
+        dir.sent.clear();
+        dir.tableUpdated(dir.tables.get(4));
+        assertEquals(Lists.newArrayList("update 4"), dir.sent);
+
+        // resubscribing replaces the client's existing subscription
+        dir.subscribe(newClient(2), first);
+        assertEquals(2, dir.getStats().subscriptions);
+
+        dir.unsubscribe(1);
+        dir.unsubscribe(2);
+        assertEquals(0, dir.getStats().views);
+    }
+
+    protected static ClientObject newClient (int oid)
+    {
+        ClientObject client = new ClientObject();
+        client.setOid(oid);
+        return client;
+    }
+
+    protected static class TestDirectory extends TableDirectory
+    {
+        public IntMap<Table> tables;
+        public List<String> sent = Lists.newArrayList();
+        public String lastWindow;
+
+        public TestDirectory () {
+            this(IntMaps.<Table>newHashIntMap());
+        }
+
+        public TestDirectory (IntMap<Table> tables) {
+            super(tables);
+            this.tables = tables;
+        }
+
+        public void list (int tableId, int seats, int occupied) {
+            Table table = new Table();
+            table.tableId = tableId;
+            table.players = new Name[seats];
+            for (int ii = 0; ii < occupied; ii++) {
+                table.players[ii] = new Name("p" + ii);
+            }
+            tables.put(tableId, table);
+            tableListed(table);
+        }
+
+        @Override protected boolean isConnected (ClientObject client) {
+            return true;
+        }
+
+        @Override protected void sendWindow (Subscription sub) {
+            StringBuilder buf = new StringBuilder();
+            int end = Math.min(sub.getEnd(), sub.view.entries.size());
+            for (int ii = sub.query.offset; ii < end; ii++) {
+                buf.append(ii > sub.query.offset ? "," : "");
+                buf.append(sub.view.entries.get(ii).table.tableId);
+            }
+            lastWindow = buf.append("/").append(sub.view.entries.size()).toString();
+            sent.add("window " + lastWindow);
+        }
+
+        @Override protected void sendUpdate (Subscription sub, Table table) {
+            sent.add("update " + table.tableId);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.server;
+
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.threerings.util.Name;
+
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.DSet;
+
+import com.threerings.parlor.data.Table;
+import com.threerings.parlor.data.TableLobbyObject;
+import com.threerings.parlor.data.TableMarshaller;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the coalescing of lobby table changes by {@link TableManager}.
+ */
+public class TableManagerTest
+{
+    @Test public void testAddIsImmediate ()
+    {
+        TestTableManager tmgr = new TestTableManager();
+        tmgr.addTableToLobby(newTable(1));
+        assertEquals(Lists.newArrayList("add 1"), tmgr.events);
+        assertEquals(0, tmgr.scheduled);
+    }
+
+    @Test public void testUpdatesCoalesce ()
+    {
+        TestTableManager tmgr = new TestTableManager();
+        Table table = newTable(1);
+        tmgr.addTableToLobby(table);
+        tmgr.events.clear();
+
+        for (int ii = 0; ii < 3; ii++) {
+            tmgr.updateTableInLobby(table);
+        }
+        assertTrue(tmgr.events.isEmpty());
+        assertEquals(1, tmgr.scheduled);
+
+        tmgr.flushLobby();
+        assertEquals(Lists.newArrayList("update 1"), tmgr.events);
+        assertEquals(2, tmgr.getLobbyStats().suppressed);
+        assertEquals(1, tmgr.getLobbyStats().flushes);
+    }
+
+    @Test public void testRemoveSupersedesUpdate ()
+    {
+        TestTableManager tmgr = new TestTableManager();
+        Table table = newTable(1);
+        tmgr.addTableToLobby(table);
+        tmgr.events.clear();
+
+        tmgr.updateTableInLobby(table);
+        tmgr.removeTableFromLobby(table.tableId);
+        tmgr.updateTableInLobby(table);
+        tmgr.flushLobby();
+        assertEquals(Lists.newArrayList("remove 1"), tmgr.events);
+        assertFalse(tmgr.lobby.contains(1));
+    }
+
+    @Test public void testRemoveThenAdd ()
+    {
+        TestTableManager tmgr = new TestTableManager();
+        Table table = newTable(1);
+        tmgr.addTableToLobby(table);
+        tmgr.events.clear();
+
+        // the table is still published when re-added, so it is just updated
+        tmgr.removeTableFromLobby(table.tableId);
+        tmgr.addTableToLobby(table);
+        assertTrue(tmgr.events.isEmpty());
+        tmgr.flushLobby();
+        assertEquals(Lists.newArrayList("update 1"), tmgr.events);
+        assertTrue(tmgr.lobby.contains(1));
+    }
+
+    @Test public void testUnpublishedIgnored ()
+    {
+        // tables filtered by shouldPublish() are never added, so changes to them are ignored
+        TestTableManager tmgr = new TestTableManager();
+        Table table = newTable(1);
+        tmgr.updateTableInLobby(table);
+        tmgr.removeTableFromLobby(table.tableId);
+        assertEquals(0, tmgr.scheduled);
+        tmgr.flushLobby();
+        assertTrue(tmgr.events.isEmpty());
+        assertEquals(0, tmgr.getLobbyStats().flushes);
+    }
+
+    @Test public void testLobbyPublishingDisabled ()
+    {
+        // subscription-only lobbies keep their tables out of the lobby object entirely
+        TestTableManager tmgr = new TestTableManager();
+        tmgr.setLobbyPublishing(false);
+        Table table = newTable(1);
+        tmgr.addTableToLobby(table);
+        tmgr.updateTableInLobby(table);
+        tmgr.removeTableFromLobby(table.tableId);
+        assertEquals(0, tmgr.scheduled);
+        tmgr.flushLobby();
+        assertTrue(tmgr.events.isEmpty());
+        assertTrue(tmgr.lobby.isEmpty());
+    }
+
+    protected static Table newTable (int tableId)
+    {
+        Table table = new Table();
+        table.tableId = tableId;
+        table.players = new Name[2];
+        return table;
+    }
+
+    protected static class TestTableManager extends TableManager
+    {
+        public Set<Integer> lobby = Sets.newHashSet();
+        public List<String> events = Lists.newArrayList();
+        public int scheduled;
+
+        public TestTableManager () {
+            super(null, null, null, null);
+            _dobj = new DObject() {
+                @Override public void startTransaction () {
+                    // nothing doing
+                }
+                @Override public void commitTransaction () {
+                    // nothing doing
+                }
+            };
+            _tlobj = new TableLobbyObject() {
+                public DSet<Table> getTables () {
+                    throw new UnsupportedOperationException();
+                }
+                public void addToTables (Table table) {
+                    lobby.add(table.tableId);
+                    events.add("add " + table.tableId);
+                }
+                public void updateTables (Table table) {
+                    events.add("update " + table.tableId);
+                }
+                public void removeFromTables (Comparable<?> key) {
+                    lobby.remove(key);
+                    events.add("remove " + key);
+                }
+                public TableMarshaller getTableService () {
+                    return null;
+                }
+                public void setTableService (TableMarshaller service) {
+                    // nothing doing
+                }
+            };
+            setPublishInterval(1000L);
+        }
+
+        @Override protected boolean isInLobby (int tableId) {
+            return lobby.contains(tableId);
+        }
+
+        @Override protected void schedulePublish () {
+            scheduled++;
+        }
+    }
+}
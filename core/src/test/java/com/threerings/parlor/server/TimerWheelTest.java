@@ -0,0 +1,160 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.parlor.server;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link TimerWheel} class.
+ */
+public class TimerWheelTest
+{
+    @Test public void testSchedule ()
+    {
+        TimerWheel wheel = new TimerWheel(null, 100L);
+        CountingTimer once = new CountingTimer(wheel), repeat = new CountingTimer(wheel);
+        once.schedule(250L); // rounds up to three ticks
+        repeat.schedule(100L, true);
+
+        wheel.advance(2);
+        assertEquals(0, once.count);
+        assertEquals(2, repeat.count);
+        wheel.advance(1);
+        assertEquals(1, once.count);
+        assertFalse(once.isScheduled());
+
+        assertTrue(repeat.cancel());
+        assertFalse(repeat.cancel());
+        wheel.advance(10);
+        assertEquals(3, repeat.count);
+        assertEquals(0, wheel.getStats().scheduled);
+    }
+
+    @Test public void testLongDelays ()
+    {
+        TimerWheel wheel = new TimerWheel(null, 100L);
+        Random rando = new Random(1);
+        CountingTimer[] timers = new CountingTimer[500];
+        long[] deadlines = new long[timers.length];
+        for (int ii = 0; ii < timers.length; ii++) {
+            // spread our deadlines across all levels of the wheel
+            deadlines[ii] = 1 + (long)Math.pow(10, rando.nextDouble() * 6);
+            timers[ii] = new CountingTimer(wheel);
+            timers[ii].schedule(deadlines[ii] * 100L);
+        }
+
+        for (long tick = 1; tick <= 1000000; tick++) {
+            wheel.advance(1);
+            for (int ii = 0; ii < timers.length; ii++) {
+                if (timers[ii].count > 0 && timers[ii].expiredAt == 0) {
+                    timers[ii].expiredAt = tick;
+                }
+            }
+            if (wheel.getStats().scheduled == 0) {
+                break;
+            }
+        }
+        for (int ii = 0; ii < timers.length; ii++) {
+            assertEquals(deadlines[ii], timers[ii].expiredAt);
+        }
+    }
+
+    @Test public void testCancelDuringBatch ()
+    {
+        TimerWheel wheel = new TimerWheel(null, 100L);
+        final CountingTimer victim = new CountingTimer(wheel);
+        CountingTimer killer = new CountingTimer(wheel) {
+            @Override public void expired () {
+                super.expired();
+                victim.cancel();
+            }
+        };
+        // the killer is linked in after the victim and thus expires first
+        victim.schedule(100L);
+        killer.schedule(100L);
+        wheel.advance(1);
+        assertEquals(1, killer.count);
+        assertEquals(0, victim.count);
+    }
+
+    @Test public void testSimulatedGames ()
+    {
+        simulateGames(10000);
+        simulateGames(50000);
+    }
+
+    /**
+     * Simulates the timers of the specified number of games (a game tick, an AI tick and a
+     * frequently rescheduled turn timeout for each) for ten minutes of game time.
+     */
+    protected void simulateGames (int games)
+    {
+        TimerWheel wheel = new TimerWheel(null, 100L);
+        Random rando = new Random(games);
+        CountingTimer[] turns = new CountingTimer[games];
+        for (int ii = 0; ii < games; ii++) {
+            new CountingTimer(wheel).schedule(5000L, true);
+            new CountingTimer(wheel).schedule(3333L, true);
+            turns[ii] = new CountingTimer(wheel);
+            turns[ii].schedule(30000L);
+        }
+
+        for (int tick = 0; tick < 6000; tick++) {
+            // a handful of players take their turn each tick, rescheduling their timeouts
+            for (int ii = 0; ii < games / 100; ii++) {
+                turns[rando.nextInt(games)].schedule(30000L);
+            }
+            wheel.advance(1);
+        }
+
+        TimerWheel.WheelStats stats = wheel.getStats();
+        assertEquals(games * 3 - countIdle(turns), stats.scheduled);
+        assertTrue(stats.expired >= games * (6000 / 50 + 6000 / 34));
+    }
+
+    protected static int countIdle (CountingTimer[] timers)
+    {
+        int idle = 0;
+        for (CountingTimer timer : timers) {
+            idle += timer.isScheduled() ? 0 : 1;
+        }
+        return idle;
+    }
+
+    protected static class CountingTimer extends TimerWheel.Timer
+    {
+        public int count;
+        public long expiredAt;
+
+        public CountingTimer (TimerWheel wheel) {
+            super(wheel);
+        }
+
+        @Override public void expired () {
+            count++;
+        }
+    }
+}
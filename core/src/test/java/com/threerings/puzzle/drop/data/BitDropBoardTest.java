@@ -0,0 +1,145 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.puzzle.drop.data;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link BitDropBoard} agrees with a plain {@link DropBoard}.
+ */
+public class BitDropBoardTest
+    implements DropPieceCodes
+{
+    @Test public void testAgainstDropBoard ()
+    {
+        Random rando = new Random(42);
+        for (int trial = 0; trial < 50; trial++) {
+            int bwid = 1 + rando.nextInt(BitDropBoard.MAX_DIMENSION);
+            int bhei = 1 + rando.nextInt(BitDropBoard.MAX_DIMENSION);
+            DropBoard plain = new DropBoard(bwid, bhei);
+            BitDropBoard bits = new BitDropBoard(bwid, bhei, PIECE_TYPES);
+
+            for (int op = 0; op < 500; op++) {
+                int col = rando.nextInt(bwid), row = rando.nextInt(bhei);
+                int piece = rando.nextInt(4) == 0 ? PIECE_NONE : rando.nextInt(PIECE_TYPES + 2);
+                switch (rando.nextInt(20)) {
+                case 0:
+                    // replace the board wholesale
+                    int[] data = randomData(rando, bwid * bhei);
+                    plain.setBoard(data.clone());
+                    bits.setBoard(data.clone());
+                    break;
+                case 1:
+                    plain.copyInto(bits);
+                    break;
+                case 2:
+                    plain.applyRisingPieces(randomData(rando, bwid));
+                    bits.setBoard(plain.getBoard().clone());
+                    break;
+                default:
+                    plain.setPiece(col, row, piece);
+                    bits.setPiece(col, row, piece);
+                    break;
+                }
+                assertAgrees(plain, bits);
+            }
+        }
+    }
+
+    @Test public void testRuns ()
+    {
+        BitDropBoard board = new BitDropBoard(8, 8, 4);
+        int[] row = { 1, 1, 1, 2, 1, 1, 1, 1 };
+        for (int col = 0; col < row.length; col++) {
+            board.setPiece(col, 7, row[col]);
+        }
+        assertEquals(0xF7L, board.getHorizontalRuns(1, 7, 3));
+        assertEquals(0xF0L, board.getHorizontalRuns(1, 7, 4));
+        assertEquals(0L, board.getHorizontalRuns(1, 7, 5));
+        assertEquals(0L, board.getHorizontalRuns(2, 7, 2));
+
+        for (int yy = 4; yy < 8; yy++) {
+            board.setPiece(0, yy, 3);
+        }
+        assertEquals(0xF0L, board.getVerticalRuns(3, 0, 4));
+        assertEquals(0L, board.getHorizontalRuns(1, 7, 4) & 1L);
+        assertEquals(0L, board.getVerticalRuns(PIECE_NONE, 0, 1));
+    }
+
+    @Test public void testClone ()
+    {
+        BitDropBoard board = new BitDropBoard(6, 6, 4);
+        board.initializeSeed(0L);
+        board.setPiece(2, 5, 1);
+        assertEquals(4, board.getDropDistance(2, 0));
+
+        BitDropBoard copy = board.clone();
+        copy.setPiece(2, 3, 1);
+        assertEquals(2, copy.getDropDistance(2, 0));
+        assertEquals(4, board.getDropDistance(2, 0));
+    }
+
+    protected static int[] randomData (Random rando, int size)
+    {
+        int[] data = new int[size];
+        for (int ii = 0; ii < size; ii++) {
+            data[ii] = rando.nextBoolean() ? PIECE_NONE : rando.nextInt(PIECE_TYPES + 2);
+        }
+        return data;
+    }
+
+    protected static void assertAgrees (DropBoard plain, BitDropBoard bits)
+    {
+        int bwid = plain.getWidth(), bhei = plain.getHeight();
+        byte[] plevels = new byte[bwid], blevels = new byte[bwid];
+        plain.getColumnLevels(plevels);
+        bits.getColumnLevels(blevels);
+        assertArrayEquals(plevels, blevels);
+
+        for (int row = 0; row < bhei; row++) {
+            assertEquals(plain.isRowEmpty(row), bits.isRowEmpty(row));
+            assertEquals(plain.rowContainsPieces(row, PIECE_NONE),
+                         bits.rowContainsPieces(row, PIECE_NONE));
+        }
+        for (int col = 0; col < bwid; col++) {
+            for (int row = -1; row < bhei; row++) {
+                assertEquals(plain.getDropDistance(col, row), bits.getDropDistance(col, row));
+            }
+            for (int piece = 0; piece < PIECE_TYPES; piece++) {
+                long expect = 0L;
+                for (int row = 0; row < bhei; row++) {
+                    if (plain.getPiece(col, row) == piece) {
+                        expect |= (1L << row);
+                    }
+                }
+                assertEquals(expect, bits.getColumnPieces(piece, col));
+            }
+        }
+    }
+
+    /** The number of piece types tracked by our test boards. */
+    protected static final int PIECE_TYPES = 5;
+}
@@ -0,0 +1,92 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.puzzle.drop.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link DropBoardSummary} change detection and deltas.
+ */
+public class DropBoardSummaryTest
+    implements DropPieceCodes
+{
+    @Test public void testDelta ()
+    {
+        DropBoard board = new DropBoard(8, 12);
+        DropBoardSummary summary = new DropBoardSummary(board);
+        assertTrue(summary.isModified());
+        assertNull(summary.createDelta());
+
+        // the client receives the initial summary in full
+        summary.published();
+        DropBoardSummary client = new DropBoardSummary();
+        client.columns = summary.columns.clone();
+        assertFalse(summary.isModified());
+
+        board.setPiece(2, 11, 0);
+        board.setPiece(5, 9, 1);
+        summary.summarize();
+        assertTrue(summary.isModified());
+
+        DropBoardSummary delta = (DropBoardSummary)summary.createDelta();
+        assertNotNull(delta);
+        assertTrue(delta.isDelta());
+        assertEquals(2, delta.changed.length);
+        assertTrue(delta.getPayloadSize() < summary.getPayloadSize());
+
+        client.applyDelta(delta);
+        assertArrayEquals(summary.columns, client.columns);
+        summary.published();
+        assertFalse(summary.isModified());
+    }
+
+    @Test public void testDerivedSummary ()
+    {
+        // derived summaries may publish more than the columns, so they're always republished
+        DropBoard board = new DropBoard(8, 12);
+        DropBoardSummary summary = new DropBoardSummary(board) {
+            // nothing added
+        };
+        summary.published();
+        assertTrue(summary.isModified());
+        board.setPiece(2, 11, 0);
+        summary.summarize();
+        assertNull(summary.createDelta());
+    }
+
+    @Test public void testLargeChange ()
+    {
+        DropBoard board = new DropBoard(4, 6);
+        DropBoardSummary summary = new DropBoardSummary(board);
+        summary.published();
+
+        // when most columns change, the complete summary is cheaper than a delta
+        for (int col = 0; col < 3; col++) {
+            board.setPiece(col, 5, 0);
+        }
+        summary.summarize();
+        assertTrue(summary.isModified());
+        assertNull(summary.createDelta());
+    }
+}
@@ -0,0 +1,90 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.puzzle.drop.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link DropBoard} class.
+ */
+public class DropBoardTest
+    implements DropPieceCodes
+{
+    @Test public void testClonesDoNotShareScratchState ()
+        throws Exception
+    {
+        DropBoard board = new DropBoard(12, 24);
+        board.initializeSeed(42L);
+        board.setSegment(VERTICAL, 0, 23, 3, 7);
+        final DropBoard clone = board.clone();
+        clone.setSegment(VERTICAL, 1, 23, new int[] { 1, 2, 3 });
+        board.setSegment(VERTICAL, 2, 23, new int[] { 4, 5, 6 });
+
+        assertEquals(PIECE_NONE, board.getPiece(1, 23));
+        assertEquals(1, clone.getPiece(1, 23));
+        assertEquals(3, clone.getPiece(1, 21));
+        assertEquals(PIECE_NONE, clone.getPiece(2, 23));
+        assertEquals(7, clone.getPiece(0, 21));
+
+        // each board must have its own scratch operations
+        assertNotNull(board._setSegmentOp);
+        assertNotNull(clone._setSegmentOp);
+        assertNotSame(board._setSegmentOp, clone._setSegmentOp);
+        board.setSegment(VERTICAL, 3, 23, 3, 1);
+        clone.setSegment(VERTICAL, 3, 23, 3, 2);
+        assertNotNull(board._setPieceOp);
+        assertNotSame(board._setPieceOp, clone._setPieceOp);
+
+        // and manipulating the board and its clone on different threads must not interfere
+        Thread other = new Thread() {
+            @Override public void run () {
+                fillSegments(clone, 1);
+            }
+        };
+        other.start();
+        fillSegments(board, 2);
+        other.join();
+        checkSegments(clone, 1);
+        checkSegments(board, 2);
+    }
+
+    protected static void fillSegments (DropBoard board, int piece)
+    {
+        int[] pieces = { piece, piece, piece };
+        for (int ii = 0; ii < ITERATIONS; ii++) {
+            board.setSegment(VERTICAL, ii % board.getWidth(), 23, pieces);
+        }
+    }
+
+    protected static void checkSegments (DropBoard board, int piece)
+    {
+        for (int xx = 0; xx < board.getWidth(); xx++) {
+            for (int yy = 21; yy <= 23; yy++) {
+                assertEquals(piece, board.getPiece(xx, yy));
+            }
+        }
+    }
+
+    protected static final int ITERATIONS = 100000;
+}
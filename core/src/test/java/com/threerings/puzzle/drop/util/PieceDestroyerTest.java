@@ -0,0 +1,109 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.puzzle.drop.util;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.threerings.puzzle.drop.data.DropBoard;
+import com.threerings.puzzle.drop.data.DropPieceCodes;
+import com.threerings.puzzle.drop.data.SegmentInfo;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link PieceDestroyer} and {@link PieceDropper} classes.
+ */
+public class PieceDestroyerTest
+    implements DropPieceCodes
+{
+    @Test public void testCascade ()
+    {
+        DropBoard board = new DropBoard(12, 24);
+        int bottom = board.getHeight() - 1;
+        setRow(board, 0, bottom, 5, 1, 1, 1, 2);
+        setRow(board, 1, bottom - 1, 5, 5, 2);
+
+        PieceDestroyer destroyer = new PieceDestroyer(new PieceDestroyer.DestroyLogic() {
+            public int getMinimumLength () {
+                return 3;
+            }
+            public boolean isEquivalent (int a, int b) {
+                return a == b;
+            }
+        });
+        PieceDropper dropper = new PieceDropper(new SimpleDropLogic());
+
+        // the first pass destroys the ones, after which the fives drop into a run of their own
+        List<SegmentInfo> segs = destroyer.destroyPieces(board, DropBoard.CLEAR_OP);
+        assertEquals(1, segs.size());
+        SegmentInfo first = segs.get(0);
+        assertEquals(1, first.x);
+        assertEquals(3, first.len);
+        assertEquals(3, dropper.dropPieces(board, null));
+
+        segs = destroyer.destroyPieces(board, DropBoard.CLEAR_OP);
+        assertEquals(1, segs.size());
+        assertSame(first, segs.get(0)); // segment infos are reused
+        assertEquals(0, segs.get(0).x);
+        assertEquals(0, dropper.dropPieces(board, null));
+        assertEquals(0, destroyer.destroyPieces(board, DropBoard.CLEAR_OP).size());
+
+        // only the twos should remain
+        assertEquals(2, board.getPiece(3, bottom));
+        assertEquals(2, board.getPiece(4, bottom));
+        int remaining = 0;
+        for (int piece : board.getBoard()) {
+            remaining += (piece == PIECE_NONE) ? 0 : 1;
+        }
+        assertEquals(2, remaining);
+    }
+
+    protected static void setRow (DropBoard board, int col, int row, int... pieces)
+    {
+        for (int ii = 0; ii < pieces.length; ii++) {
+            board.setPiece(col + ii, row, pieces[ii]);
+        }
+    }
+
+    /** A drop logic in which all pieces fall independently. */
+    protected static class SimpleDropLogic
+        implements PieceDropLogic
+    {
+        public boolean boardAlwaysFilled () {
+            return false;
+        }
+        public boolean isDroppablePiece (int piece) {
+            return piece != PIECE_NONE;
+        }
+        public boolean isConstrainedPiece (int piece) {
+            return false;
+        }
+        public boolean isClimbablePiece (boolean allowConst, int piece, boolean pre) {
+            return false;
+        }
+        public int getConstrainedEdge (DropBoard board, int col, int row, int dir) {
+            return col;
+        }
+    }
+}
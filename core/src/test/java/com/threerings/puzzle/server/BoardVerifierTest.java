@@ -0,0 +1,113 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.puzzle.server;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import com.samskivert.util.Lifecycle;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link BoardVerifier}.
+ */
+public class BoardVerifierTest
+{
+    @Test public void testPerPlayerOrdering ()
+        throws InterruptedException
+    {
+        BoardVerifier verifier = new BoardVerifier(new Lifecycle());
+        verifier.configure(4, CHECKS * PLAYERS);
+        BoardVerifier.Queue queue = verifier.createQueue();
+
+        final CountDownLatch done = new CountDownLatch(CHECKS * PLAYERS);
+        List<List<Integer>> results = Lists.newArrayList();
+        for (int pidx = 0; pidx < PLAYERS; pidx++) {
+            results.add(Lists.<Integer>newArrayList());
+        }
+        for (int ii = 0; ii < CHECKS; ii++) {
+            for (int pidx = 0; pidx < PLAYERS; pidx++) {
+                // lanes are never run concurrently, so these lists need no synchronization
+                final List<Integer> result = results.get(pidx);
+                final int value = ii;
+                assertTrue(queue.submit(pidx, new Runnable() {
+                    public void run () {
+                        result.add(value);
+                        done.countDown();
+                    }
+                }));
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        verifier.shutdown();
+
+        for (List<Integer> result : results) {
+            assertEquals(CHECKS, result.size());
+            for (int ii = 0; ii < CHECKS; ii++) {
+                assertEquals(ii, (int)result.get(ii));
+            }
+        }
+    }
+
+    @Test public void testOverflow ()
+        throws InterruptedException
+    {
+        BoardVerifier verifier = new BoardVerifier(new Lifecycle());
+        verifier.configure(1, 2);
+        BoardVerifier.Queue queue = verifier.createQueue();
+
+        // block the lone worker so that subsequent checks back up
+        final CountDownLatch release = new CountDownLatch(1), started = new CountDownLatch(1);
+        assertTrue(queue.submit(0, new Runnable() {
+            public void run () {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    // fall through
+                }
+            }
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.submit(0, NOOP));
+        assertFalse(queue.submit(1, NOOP));
+        release.countDown();
+        verifier.shutdown();
+
+        BoardVerifier.VerifyStats stats = queue.getStats();
+        assertEquals(1, stats.dropped);
+        assertEquals(2, stats.maxPending);
+    }
+
+    protected static final Runnable NOOP = new Runnable() {
+        public void run () {
+        }
+    };
+
+    protected static final int PLAYERS = 6, CHECKS = 2000;
+}
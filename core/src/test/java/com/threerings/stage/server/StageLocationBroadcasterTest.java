@@ -0,0 +1,107 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.stage.server;
+
+import java.util.Collection;
+
+import com.samskivert.util.ArrayIntSet;
+
+import com.threerings.miso.util.MisoUtil;
+
+import com.threerings.whirled.spot.data.SceneLocation;
+
+import com.threerings.stage.data.StageLocation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the interest cells of {@link StageLocationBroadcaster}.
+ */
+public class StageLocationBroadcasterTest
+{
+    @Test public void testInterestRadius ()
+    {
+        // cells of four by four tiles
+        TestBroadcaster bcast = new TestBroadcaster(4);
+        bcast.locationAdded(at(1, 0, 0));
+        bcast.locationAdded(at(2, 5, 5));   // in the diagonally adjacent cell
+        bcast.locationAdded(at(3, 8, 0));   // two cells over
+        bcast.locationAdded(at(4, -1, -1)); // in the cell on the other side of the origin
+
+        // a move within the first cell is heard by its neighbors but not by those further away
+        bcast.locationUpdated(at(1, 1, 1));
+        bcast.deliver();
+        assertEquals(new ArrayIntSet(new int[] { 1, 2, 4 }), bcast.observers);
+
+        // a move out to an empty neighborhood is heard only by the mover
+        bcast.observers.clear();
+        bcast.locationUpdated(at(3, 12, 12));
+        bcast.deliver();
+        assertEquals(new ArrayIntSet(new int[] { 3 }), bcast.observers);
+
+        // and the bodies that were near the mover's old location no longer hear of it
+        bcast.observers.clear();
+        bcast.locationUpdated(at(1, 15, 15));
+        bcast.deliver();
+        assertEquals(new ArrayIntSet(new int[] { 1, 3 }), bcast.observers);
+    }
+
+    protected static SceneLocation at (int bodyOid, int tx, int ty)
+    {
+        return new SceneLocation(
+            new StageLocation(MisoUtil.toFull(tx, 0), MisoUtil.toFull(ty, 0), (byte)0), bodyOid);
+    }
+
+    /** Records the recipients of location changes rather than sending them. */
+    protected static class TestBroadcaster extends StageLocationBroadcaster
+    {
+        public ArrayIntSet observers = new ArrayIntSet();
+
+        public TestBroadcaster (int cellTiles) {
+            super(100L, 3, cellTiles);
+        }
+
+        @Override public void deliver () {
+            super.deliver();
+            _pending.clear();
+        }
+
+        @Override protected void startTicking () {
+            // we deliver manually
+        }
+
+        @Override protected void sendLocations (int observerOid, SceneLocation[] locs) {
+            observers.add(observerOid);
+        }
+
+        @Override protected void addClusterObservers (
+            SceneLocation sloc, ArrayIntSet observers) {
+            // no clusters here
+        }
+
+        @Override protected void publishLocations (Collection<SceneLocation> locs) {
+            // nothing doing
+        }
+    }
+}
@@ -0,0 +1,157 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.stage.util;
+
+import java.util.Arrays;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+
+import com.threerings.media.util.AStarPathUtil;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link NavGrid} class.
+ */
+public class NavGridTest
+{
+    @Test public void testStandable ()
+    {
+        OccupancyGrid foots = new OccupancyGrid();
+        TestGrid grid = new TestGrid(foots);
+        assertTrue(grid.isStandable(3, 3));
+        assertFalse(grid.isStandable(-1, 3));
+        assertFalse(grid.isStandable(3, ROOM_SIZE));
+
+        foots.add(new Rectangle(2, 2, 2, 2));
+        grid.footprintsChanged();
+        assertTrue(grid.isPassable(3, 3));
+        assertFalse(grid.isStandable(3, 3));
+
+        // passability is only looked up once per tile
+        int lookups = grid.lookups;
+        for (int ii = 0; ii < 10; ii++) {
+            grid.isStandable(3, 3);
+            grid.isStandable(-1, 3);
+        }
+        assertEquals(lookups, grid.lookups);
+
+        grid.baseTilesChanged();
+        grid.isStandable(3, 3);
+        assertEquals(lookups+1, grid.lookups);
+    }
+
+    @Test public void testOutOfBounds ()
+    {
+        TestGrid grid = new TestGrid(new OccupancyGrid());
+        assertTrue(grid.isStandable(3, 3));
+        int buckets = grid._cells.size();
+
+        // tiles far outside the scene are impassable and are neither looked up nor cached
+        int lookups = grid.lookups;
+        for (int ii = 1; ii <= 100; ii++) {
+            assertFalse(grid.isStandable(1000 * ii, -1000 * ii));
+            assertFalse(grid.isPortal(-1000 * ii, 1000 * ii));
+        }
+        grid.setPortals(Arrays.asList(new Point(5000, 5000)));
+        assertFalse(grid.isPortal(5000, 5000));
+        assertEquals(lookups, grid.lookups);
+        assertEquals(buckets, grid._cells.size());
+    }
+
+    @Test public void testPortals ()
+    {
+        TestGrid grid = new TestGrid(new OccupancyGrid());
+        grid.setPortals(Arrays.asList(new Point(0, 5), new Point(9, 5)));
+        assertTrue(grid.isPortal(0, 5));
+        assertTrue(grid.isPortal(9, 5));
+        assertFalse(grid.isPortal(5, 5));
+
+        // portals survive base tile changes but not replacement
+        grid.baseTilesChanged();
+        assertTrue(grid.isPortal(0, 5));
+        grid.setPortals(Arrays.asList(new Point(5, 0)));
+        assertFalse(grid.isPortal(0, 5));
+        assertTrue(grid.isPortal(5, 0));
+    }
+
+    @Test public void testDistance ()
+    {
+        OccupancyGrid foots = new OccupancyGrid();
+        TestGrid grid = new TestGrid(foots);
+        assertEquals(0, grid.getDistance(0, 0, 0, 0));
+        assertEquals(4, grid.getDistance(0, 0, 4, 4));
+        assertEquals(-1, grid.getDistance(0, 0, ROOM_SIZE, 0));
+
+        // build a wall with a gap at the bottom and make sure we walk around it
+        foots.add(new Rectangle(5, 0, 1, ROOM_SIZE-1));
+        grid.footprintsChanged();
+        assertEquals(-1, grid.getDistance(0, 0, 5, 0));
+        assertEquals(2*(ROOM_SIZE-1), grid.getDistance(0, 0, 6, 0));
+    }
+
+    @Test public void testNearestSpot ()
+    {
+        TestGrid grid = new TestGrid(new OccupancyGrid());
+
+        // reject everything within two tiles of the origin
+        AStarPathUtil.TraversalPred pred = new AStarPathUtil.TraversalPred() {
+            public boolean canTraverse (Object traverser, int x, int y) {
+                return Math.max(Math.abs(x), Math.abs(y)) > 2;
+            }
+        };
+        Point spot = grid.findNearestSpot(0, 0, 1, pred, null);
+        assertEquals(3, Math.max(spot.x, spot.y));
+
+        // respect the minimum distance
+        spot = grid.findNearestSpot(0, 0, 5, pred, null);
+        assertEquals(5, Math.max(spot.x, spot.y));
+
+        // nothing is available beyond the room
+        assertNull(grid.findNearestSpot(0, 0, ROOM_SIZE, pred, null));
+    }
+
+    protected static class TestGrid extends NavGrid
+    {
+        public int lookups;
+
+        public TestGrid (OccupancyGrid foots) {
+            super(null, null, foots);
+        }
+
+        @Override
+        protected boolean isInBounds (int tx, int ty) {
+            return tx >= 0 && ty >= 0 && tx < ROOM_SIZE && ty < ROOM_SIZE;
+        }
+
+        @Override
+        protected boolean computePassable (int tx, int ty) {
+            lookups++;
+            return isInBounds(tx, ty);
+        }
+    }
+
+    protected static final int ROOM_SIZE = 10;
+}
@@ -0,0 +1,123 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.stats.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the compact {@link Stat} persistence methods are interchangeable with the object
+ * stream persistence used by previous versions.
+ */
+public class StatPersistenceTest
+{
+    @Test public void testIntStat ()
+        throws Exception
+    {
+        IntStat stat = new IntStat();
+        stat.setValue(42);
+        IntStat copy = new IntStat();
+        checkCompatible(stat, copy);
+        assertEquals(42, copy.getValue());
+    }
+
+    @Test public void testMaxIntStat ()
+        throws Exception
+    {
+        MaxIntStat stat = new MaxIntStat();
+        stat.increment(17);
+        stat.increment(-5);
+        MaxIntStat copy = new MaxIntStat();
+        checkCompatible(stat, copy);
+        assertEquals(12, copy.getValue());
+        assertEquals(17, copy.getMaxValue());
+    }
+
+    @Test public void testIntSetStat ()
+        throws Exception
+    {
+        IntSetStat stat = new IntSetStat();
+        stat.add(3);
+        stat.add(9);
+        stat.add(27);
+        IntSetStat copy = new IntSetStat();
+        checkCompatible(stat, copy);
+        assertEquals(3, copy.size());
+        assertTrue(copy.contains(9));
+    }
+
+    @Test public void testNotInherited ()
+    {
+        // a derived class that customizes its persistence must not be persisted compactly
+        // unless it declares so itself
+        assertFalse(new IntStat() {
+            @Override public void persistTo (ObjectOutputStream out, AuxDataSource aux)
+                throws IOException {
+                super.persistTo(out, aux);
+                out.writeInt(7);
+            }
+        }.isDataPersistable());
+        assertTrue(new MaxIntStat().isDataPersistable());
+    }
+
+    /**
+     * Verifies that the supplied stat writes identical bytes via both persistence paths and that
+     * data written by the legacy path can be read by the compact path.
+     */
+    protected void checkCompatible (Stat stat, Stat copy)
+        throws IOException
+    {
+        assertTrue(stat.isDataPersistable());
+
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(legacy);
+        stat.persistTo(oout, null);
+        oout.flush();
+
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(compact);
+        ((Stat.DataPersistable)stat).writeTo(dout, null);
+        dout.flush();
+
+        assertArrayEquals(legacy.toByteArray(), compact.toByteArray());
+        ((Stat.DataPersistable)copy).readFrom(
+            new DataInputStream(new ByteArrayInputStream(legacy.toByteArray())), null);
+
+        // make sure the legacy read path still works as well
+        try {
+            stat.getClass().newInstance().unpersistFrom(
+                new ObjectInputStream(new ByteArrayInputStream(compact.toByteArray())), null);
+        } catch (Exception e) {
+            fail("Legacy unpersist failed: " + e);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.server.persist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.samskivert.io.PersistenceException;
+
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.whirled.data.SceneUpdate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SceneUpdateMarshaller} class.
+ */
+public class SceneUpdateMarshallerTest
+{
+    public static class TestUpdate extends SceneUpdate
+    {
+        public int value;
+        public String name;
+    }
+
+    public static class HeaderLikeUpdate extends TestUpdate
+    {
+        @Override public void persistTo (ObjectOutputStream out)
+            throws IOException
+        {
+            // streamed data that happens to begin like a compact header
+            out.write(new byte[] { (byte)0xFF, 'S', 'U', 1, 1, 0, 0, 0, 0 });
+            super.persistTo(out);
+        }
+    }
+
+    @Test public void testStreamed ()
+        throws Exception
+    {
+        SceneUpdateMarshaller marsh = new SceneUpdateMarshaller(TestUpdate.class);
+        TestUpdate update = roundTrip(marsh, marsh, createUpdate());
+        assertEquals(42, update.value);
+        assertEquals("bob", update.name);
+    }
+
+    @Test public void testCompact ()
+        throws Exception
+    {
+        SceneUpdateMarshaller marsh = createCompactMarshaller();
+        byte[] data = marsh.persistUpdate(createUpdate());
+        assertTrue(SceneUpdateMarshaller.isCompact(data));
+
+        TestUpdate update = roundTrip(marsh, marsh, createUpdate());
+        assertEquals(42, update.value);
+        assertEquals("bob", update.name);
+        assertEquals(3, update.getSceneId());
+        assertEquals(7, update.getSceneVersion());
+    }
+
+    @Test public void testReadsStreamedWithCodec ()
+        throws Exception
+    {
+        // updates persisted before a codec was registered must still be readable
+        TestUpdate update = roundTrip(new SceneUpdateMarshaller(TestUpdate.class),
+                                      createCompactMarshaller(), createUpdate());
+        assertEquals(42, update.value);
+        assertEquals("bob", update.name);
+    }
+
+    @Test public void testHeaderWithoutChecksum ()
+        throws Exception
+    {
+        // data that merely starts with our marker is not mistaken for a compact update
+        SceneUpdateMarshaller marsh = createCompactMarshaller();
+        byte[] data = marsh.persistUpdate(createUpdate());
+        data[data.length-1]++;
+        assertFalse(SceneUpdateMarshaller.isCompact(data));
+    }
+
+    @Test public void testStreamedLikeHeader ()
+        throws Exception
+    {
+        // streamed data is stored untouched, even if it happens to look like a compact header
+        SceneUpdateMarshaller marsh = new SceneUpdateMarshaller(HeaderLikeUpdate.class);
+        HeaderLikeUpdate update = new HeaderLikeUpdate();
+        update.init(3, 7);
+        update.value = 42;
+        update.name = "bob";
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        update.persistTo(oout);
+        oout.flush();
+
+        byte[] data = marsh.persistUpdate(update);
+        assertArrayEquals(bout.toByteArray(), data);
+        assertFalse(SceneUpdateMarshaller.isCompact(data));
+    }
+
+    @Test public void testUnreadCompactData ()
+        throws Exception
+    {
+        // a codec that doesn't consume all of its data is reported as a failure
+        SceneUpdateMarshaller writer = createCompactMarshaller();
+        SceneUpdateMarshaller reader = new SceneUpdateMarshaller(TestUpdate.class);
+        reader.registerUpdateCodec(TestUpdate.class, new SceneUpdateMarshaller.UpdateCodec() {
+            public int getVersion () {
+                return 1;
+            }
+            public void write (SceneUpdate update, DataOutput out) throws IOException {
+                out.writeInt(((TestUpdate)update).value);
+            }
+            public void read (SceneUpdate update, int version, DataInput in) throws IOException {
+                ((TestUpdate)update).value = in.readInt();
+            }
+        });
+        try {
+            roundTrip(writer, reader, createUpdate());
+            fail();
+        } catch (PersistenceException pe) {
+            // expected
+        }
+    }
+
+    @Test public void testFailingCodec ()
+        throws Exception
+    {
+        // runtime failures in a codec are reported as persistence failures
+        SceneUpdateMarshaller writer = createCompactMarshaller();
+        SceneUpdateMarshaller reader = new SceneUpdateMarshaller(TestUpdate.class);
+        reader.registerUpdateCodec(TestUpdate.class, new SceneUpdateMarshaller.UpdateCodec() {
+            public int getVersion () {
+                return 1;
+            }
+            public void write (SceneUpdate update, DataOutput out) throws IOException {
+                throw new UnsupportedOperationException();
+            }
+            public void read (SceneUpdate update, int version, DataInput in) throws IOException {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+        });
+        try {
+            roundTrip(writer, reader, createUpdate());
+            fail();
+        } catch (PersistenceException pe) {
+            // expected
+        }
+    }
+
+    protected TestUpdate roundTrip (
+        SceneUpdateMarshaller writer, SceneUpdateMarshaller reader, TestUpdate update)
+        throws Exception
+    {
+        byte[] data = writer.persistUpdate(update);
+        return (TestUpdate)reader.decodeUpdate(
+            update.getSceneId(), update.getSceneVersion(), writer.getUpdateType(update), data);
+    }
+
+    protected TestUpdate createUpdate ()
+    {
+        TestUpdate update = new TestUpdate();
+        update.init(3, 7);
+        update.value = 42;
+        update.name = "bob";
+        return update;
+    }
+
+    protected SceneUpdateMarshaller createCompactMarshaller ()
+    {
+        SceneUpdateMarshaller marsh = new SceneUpdateMarshaller(TestUpdate.class);
+        marsh.registerUpdateCodec(TestUpdate.class, new SceneUpdateMarshaller.UpdateCodec() {
+            public int getVersion () {
+                return 1;
+            }
+            public void write (SceneUpdate update, DataOutput out) throws IOException {
+                out.writeInt(((TestUpdate)update).value);
+                out.writeUTF(((TestUpdate)update).name);
+            }
+            public void read (SceneUpdate update, int version, DataInput in) throws IOException {
+                ((TestUpdate)update).value = in.readInt();
+                ((TestUpdate)update).name = in.readUTF();
+            }
+        });
+        return marsh;
+    }
+}
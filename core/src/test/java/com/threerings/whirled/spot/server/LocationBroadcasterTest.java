@@ -0,0 +1,151 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.spot.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.ArrayIntSet;
+
+import com.threerings.whirled.spot.data.SceneLocation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the batching of location changes by {@link LocationBroadcaster}.
+ */
+public class LocationBroadcasterTest
+{
+    @Test public void testBatching ()
+    {
+        TestBroadcaster bcast = new TestBroadcaster(1);
+        SceneLocation first = new SceneLocation(null, 1), last = new SceneLocation(null, 1);
+        SceneLocation other = new SceneLocation(null, 2);
+        bcast.locationUpdated(first);
+        bcast.locationUpdated(other);
+        bcast.locationUpdated(last);
+        assertTrue(bcast.ticking);
+        assertTrue(bcast.published.isEmpty());
+        assertSame(last, bcast.getLocation(1));
+
+        // the changes are published in one batch, with only the body's final location
+        bcast.tick();
+        assertEquals(1, bcast.published.size());
+        List<SceneLocation> batch = bcast.published.get(0);
+        assertEquals(2, batch.size());
+        for (SceneLocation sloc : batch) {
+            assertSame((sloc.bodyOid == 1) ? last : other, sloc);
+        }
+        assertTrue(bcast.sent.isEmpty());
+
+        LocationBroadcaster.BroadcastStats stats = bcast.getStats();
+        assertEquals(3, stats.updates);
+        assertEquals(1, stats.coalesced);
+        assertEquals(1, stats.ticks);
+
+        // we stop ticking once idle
+        bcast.tick();
+        assertFalse(bcast.ticking);
+        assertEquals(1, bcast.published.size());
+    }
+
+    @Test public void testFlush ()
+    {
+        TestBroadcaster bcast = new TestBroadcaster(1);
+        SceneLocation sloc = new SceneLocation(null, 1);
+        bcast.locationUpdated(sloc);
+        bcast.flush();
+        assertEquals(1, bcast.published.size());
+        assertSame(sloc, bcast.published.get(0).get(0));
+
+        // nothing is left to publish on the next tick
+        bcast.tick();
+        assertEquals(1, bcast.published.size());
+    }
+
+    @Test public void testInterestManaged ()
+    {
+        TestBroadcaster bcast = new TestBroadcaster(3);
+        assertTrue(bcast.isInterestManaged());
+        bcast.locationAdded(new SceneLocation(null, 1));
+        bcast.locationAdded(new SceneLocation(null, 2));
+
+        // everyone is in the same cell by default, so hears of every change straight away
+        bcast.locationUpdated(new SceneLocation(null, 1));
+        bcast.tick();
+        assertEquals(Lists.newArrayList("1 <- 1", "2 <- 1"), bcast.sortedSent());
+        assertTrue(bcast.published.isEmpty());
+
+        // but the change is published to the scene object only every third tick
+        bcast.tick();
+        assertTrue(bcast.published.isEmpty());
+        bcast.tick();
+        assertEquals(1, bcast.published.size());
+        assertEquals(1, bcast.published.get(0).size());
+    }
+
+    /** Records rather than delivers and publishes location changes. */
+    protected static class TestBroadcaster extends LocationBroadcaster
+    {
+        public List<List<SceneLocation>> published = Lists.newArrayList();
+        public List<String> sent = Lists.newArrayList();
+        public boolean ticking;
+
+        public TestBroadcaster (int publishTicks) {
+            super(100L, publishTicks);
+        }
+
+        public List<String> sortedSent () {
+            List<String> sorted = Lists.newArrayList(sent);
+            Collections.sort(sorted);
+            return sorted;
+        }
+
+        @Override protected void startTicking () {
+            ticking = true;
+        }
+
+        @Override protected void stopTicking () {
+            ticking = false;
+        }
+
+        @Override protected void sendLocations (int observerOid, SceneLocation[] locs) {
+            for (SceneLocation sloc : locs) {
+                sent.add(observerOid + " <- " + sloc.bodyOid);
+            }
+        }
+
+        @Override protected void addClusterObservers (
+            SceneLocation sloc, ArrayIntSet observers) {
+            // no clusters here
+        }
+
+        @Override protected void publishLocations (Collection<SceneLocation> locs) {
+            published.add(Lists.newArrayList(locs));
+        }
+    }
+}
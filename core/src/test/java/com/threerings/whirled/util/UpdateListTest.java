@@ -0,0 +1,107 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.util;
+
+import org.junit.Test;
+
+import com.threerings.whirled.data.SceneUpdate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link UpdateList} class.
+ */
+public class UpdateListTest
+{
+    @Test public void testGetUpdates ()
+    {
+        UpdateList list = createList(new UpdateList(), 10, 20);
+
+        assertNull(list.getUpdates(9));
+        assertNull(list.getUpdates(20));
+        assertEquals(10, list.getUpdates(10).length);
+        SceneUpdate[] updates = list.getUpdates(15);
+        assertEquals(5, updates.length);
+        for (int ii = 0; ii < updates.length; ii++) {
+            assertEquals(15 + ii, updates[ii].getSceneVersion());
+        }
+        assertTrue(list.validate(20));
+        assertFalse(list.validate(19));
+    }
+
+    @Test public void testRetention ()
+    {
+        UpdateList list = createList(new UpdateList(8, 0L), 0, 50);
+
+        assertEquals(8, list.size());
+        assertEquals(42, list.getOldestVersion());
+        assertNull(list.getUpdates(41));
+        assertEquals(8, list.getUpdates(42).length);
+        assertEquals(1, list.getUpdates(49).length);
+        assertTrue(list.validate(50));
+        assertEquals(42, list.getDiscardedCount());
+
+        // byte retention should also discard the oldest updates
+        list = createList(new UpdateList(0, 10 * UpdateList.DEFAULT_UPDATE_SIZE), 0, 50);
+        assertEquals(10, list.size());
+        assertEquals(40, list.getOldestVersion());
+        assertEquals(40, list.getDiscardedCount());
+
+        // the default limit retains a fixed number of updates
+        list = createList(new UpdateList(), 0, UpdateList.DEFAULT_MAX_UPDATES + 5);
+        assertEquals(UpdateList.DEFAULT_MAX_UPDATES, list.size());
+        assertEquals(5, list.getDiscardedCount());
+    }
+
+    @Test public void testContinuity ()
+    {
+        UpdateList list = createList(new UpdateList(), 0, 5);
+
+        // a gap in the versions flushes the list
+        list.addUpdate(createUpdate(10));
+        assertEquals(1, list.size());
+        assertEquals(10, list.getOldestVersion());
+
+        // but an old update is rejected
+        try {
+            list.addUpdate(createUpdate(3));
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    protected UpdateList createList (UpdateList list, int fromVersion, int toVersion)
+    {
+        for (int vv = fromVersion; vv < toVersion; vv++) {
+            list.addUpdate(createUpdate(vv));
+        }
+        return list;
+    }
+
+    protected SceneUpdate createUpdate (int version)
+    {
+        SceneUpdate update = new SceneUpdate();
+        update.init(1, version);
+        return update;
+    }
+}
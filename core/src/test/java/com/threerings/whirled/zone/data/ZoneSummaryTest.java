@@ -0,0 +1,108 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.zone.data;
+
+import org.junit.Test;
+
+import com.threerings.whirled.zone.server.ZoneSummaryHistory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link ZoneSummary} deltas.
+ */
+public class ZoneSummaryTest
+{
+    @Test public void testDelta ()
+    {
+        ZoneSummary v1 = createSummary(1, scene(1, "Dock"), scene(2, "Town"), scene(3, "Hill"));
+        ZoneSummary v2 = createSummary(2, scene(1, "Dock"), scene(3, "Summit"), scene(4, "Cave"));
+
+        ZoneSummary delta = v2.createDelta(v1);
+        assertNotNull(delta);
+        assertTrue(delta.isDelta());
+        assertEquals(2, delta.scenes.length); // the renamed hill and the new cave
+        assertArrayEquals(new int[] { 2 }, delta.removedSceneIds);
+
+        ZoneSummary resolved = delta.applyTo(v1);
+        assertEquals(2, resolved.version);
+        assertFalse(resolved.isDelta());
+        assertArrayEquals(v2.scenes, resolved.scenes);
+    }
+
+    @Test public void testAck ()
+    {
+        ZoneSummary v1 = createSummary(1, scene(1, "Dock"), scene(2, "Town"));
+        ZoneSummary ack = v1.createDelta(v1);
+        assertTrue(ack.isDelta());
+        assertNull(ack.scenes);
+        assertNull(ack.removedSceneIds);
+        assertArrayEquals(v1.scenes, ack.applyTo(v1).scenes);
+    }
+
+    @Test public void testReorder ()
+    {
+        ZoneSummary v1 = createSummary(1, scene(1, "Dock"), scene(2, "Town"));
+        assertNull(createSummary(2, scene(2, "Town"), scene(1, "Dock")).createDelta(v1));
+        assertNull(createSummary(2, scene(1, "Dock"), scene(3, "Cave"), scene(2, "Town"))
+                   .createDelta(v1));
+    }
+
+    @Test public void testHistory ()
+    {
+        ZoneSummaryHistory history = new ZoneSummaryHistory();
+        ZoneSummary v1 = createSummary(1, scene(1, "Dock"), scene(2, "Town"));
+        ZoneSummary v2 = createSummary(2, scene(1, "Dock"), scene(2, "City"));
+
+        assertSame(v1, history.getSummaryFor(v1, 0));
+        assertTrue(history.getSummaryFor(v1, 1).isDelta());
+        ZoneSummary delta = history.getSummaryFor(v2, 1);
+        assertTrue(delta.isDelta());
+        assertEquals(1, delta.scenes.length);
+
+        // versions we never saw get the complete summary
+        assertSame(v2, history.getSummaryFor(v2, 7));
+
+        // as do unversioned summaries
+        ZoneSummary v0 = createSummary(0, scene(1, "Dock"));
+        assertSame(v0, history.getSummaryFor(v0, 0));
+    }
+
+    protected static ZoneSummary createSummary (int version, SceneSummary... scenes)
+    {
+        ZoneSummary summary = new ZoneSummary();
+        summary.zoneId = 42;
+        summary.version = version;
+        summary.scenes = scenes;
+        return summary;
+    }
+
+    protected static SceneSummary scene (int sceneId, String name)
+    {
+        SceneSummary scene = new SceneSummary();
+        scene.sceneId = sceneId;
+        scene.name = name;
+        scene.neighbors = new int[] { sceneId + 1 };
+        scene.neighborDirs = new int[] { 2 };
+        return scene;
+    }
+}
@@ -0,0 +1,63 @@
+//
+// $Id$
+//
+// Vilya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/vilya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.whirled.zone.peer.server;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link ZonePeerManager}'s placement of new zones.
+ */
+public class ZonePeerManagerTest
+{
+    @Test public void testSelectLeastLoaded ()
+    {
+        // we host locally when we're the only node or the least loaded one
+        assertNull(ZonePeerManager.selectLeastLoaded("a", loads("a", 5), 2));
+        assertNull(ZonePeerManager.selectLeastLoaded("a", loads("a", 1, "b", 4, "c", 9), 2));
+
+        // the least loaded node is chosen once we exceed its load by more than the slack
+        assertNull(ZonePeerManager.selectLeastLoaded("a", loads("a", 6, "b", 4, "c", 5), 2));
+        assertEquals("b",
+            ZonePeerManager.selectLeastLoaded("a", loads("a", 7, "b", 4, "c", 5), 2));
+        assertEquals("c",
+            ZonePeerManager.selectLeastLoaded("a", loads("a", 7, "b", 6, "c", 3), 2));
+
+        // with no slack, any less loaded node wins
+        assertNull(ZonePeerManager.selectLeastLoaded("a", loads("a", 3, "b", 3), 0));
+        assertEquals("b", ZonePeerManager.selectLeastLoaded("a", loads("a", 3, "b", 2), 0));
+    }
+
+    protected static Map<String, Integer> loads (Object... nodesAndLoads)
+    {
+        Map<String, Integer> loads = Maps.newHashMap();
+        for (int ii = 0; ii < nodesAndLoads.length; ii += 2) {
+            loads.put((String)nodesAndLoads[ii], (Integer)nodesAndLoads[ii+1]);
+        }
+        return loads;
+    }
+}